@@ -454,6 +454,7 @@ public final class Config {
 	public static int IO_PACKET_THREAD_CORE_SIZE;
 	public static int GENERAL_THREAD_CORE_SIZE;
 	public static int AI_MAX_THREAD;
+	public static int MOVEMENT_THREADS;
 	public static int CLIENT_PACKET_QUEUE_SIZE;
 	public static int CLIENT_PACKET_QUEUE_MAX_BURST_SIZE;
 	public static int CLIENT_PACKET_QUEUE_MAX_PACKETS_PER_SECOND;
@@ -484,6 +485,11 @@ public final class Config {
 	public static boolean MULTIPLE_ITEM_DROP;
 	public static boolean FORCE_INVENTORY_UPDATE;
 	public static boolean LAZY_CACHE;
+	public static boolean HTM_CACHE_COMPACT;
+	public static int HTM_CACHE_TEMPLATES;
+	public static boolean HTM_CACHE_WATCH;
+	public static boolean LAZY_SKILLS;
+	public static boolean DATAPACK_CACHE;
 	public static boolean CACHE_CHAR_NAMES;
 	public static int MIN_NPC_ANIMATION;
 	public static int MAX_NPC_ANIMATION;
@@ -501,6 +507,12 @@ public final class Config {
 	public static int GEODATA;
 	public static boolean GEODATA_CELLFINDING;
 	public static String PATHFIND_BUFFERS;
+	public static boolean PATHFIND_HIERARCHICAL;
+	public static int PATHFIND_CLUSTER_THREADS;
+	public static boolean PATHFIND_ASYNC;
+	public static int PATHFIND_THREADS;
+	public static int PATHFIND_QUEUE_SIZE;
+	public static int PATHFIND_TIMEOUT;
 	public static float LOW_WEIGHT;
 	public static float MEDIUM_WEIGHT;
 	public static float HIGH_WEIGHT;
@@ -509,8 +521,13 @@ public final class Config {
 	public static int MAX_POSTFILTER_PASSES;
 	public static boolean DEBUG_PATH;
 	public static boolean FORCE_GEODATA;
+	public static int GEODATA_CACHE_SIZE;
+	public static long GEODATA_CACHE_TTL;
 	public static boolean MOVE_BASED_KNOWNLIST;
 	public static long KNOWNLIST_UPDATE_INTERVAL;
+	public static boolean EVENT_BASED_KNOWNLIST;
+	public static long KNOWNLIST_CHECK_INTERVAL;
+	public static boolean STAT_CALC_CACHE;
 	public static int ZONE_TOWN;
 	public static String DEFAULT_GLOBAL_CHAT;
 	public static String DEFAULT_TRADE_CHAT;
@@ -823,6 +840,11 @@ public final class Config {
 	public static String LOGIN_BIND_ADDRESS;
 	public static int LOGIN_TRY_BEFORE_BAN;
 	public static int LOGIN_BLOCK_AFTER_BAN;
+	public static int LOGIN_AUTH_THREADS;
+	public static int LOGIN_AUTH_QUEUE_SIZE;
+	public static int LOGIN_ACCOUNT_CACHE_TIME;
+	public static int LOGIN_RSA_KEY_POOL_SIZE;
+	public static int LOGIN_RSA_KEY_LIFETIME;
 	public static String GAMESERVER_HOSTNAME;
 	public static String DATABASE_DRIVER;
 	public static String DATABASE_URL;
@@ -830,6 +852,9 @@ public final class Config {
 	public static String DATABASE_PASSWORD;
 	public static int DATABASE_MAX_CONNECTIONS;
 	public static int DATABASE_MAX_IDLE_TIME;
+	public static boolean DATABASE_WRITE_BEHIND;
+	public static int DATABASE_WRITER_THREADS;
+	public static int DATABASE_WRITER_DELAY;
 	public static int MAXIMUM_ONLINE_USERS;
 	public static String CNAME_TEMPLATE;
 	public static String PET_NAME_TEMPLATE;
@@ -843,9 +868,13 @@ public final class Config {
 	// MMO Settings
 	//--------------------------------------------------
 	public static int MMO_SELECTOR_SLEEP_TIME;
+	public static int MMO_SELECTOR_THREAD_COUNT;
 	public static int MMO_MAX_SEND_PER_PASS;
 	public static int MMO_MAX_READ_PER_PASS;
 	public static int MMO_HELPER_BUFFER_COUNT;
+	public static int MMO_OUTBOUND_PACKET_BUDGET;
+	public static int MMO_OUTBOUND_BYTE_BUDGET;
+	public static String MMO_OUTBOUND_BUDGET_ACTION;
 	
 	//--------------------------------------------------
 	// Vitality Settings
@@ -22,83 +22,50 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
 import java.util.Iterator;
 
 /**
+ * Accepts incoming connections and spreads them over {@link CoreConfig#SELECTOR_THREAD_COUNT}
+ * selector threads. Each selector owns its connections (and buffers) until they are closed.
+ *
  * @param <T>
  * @author KenM<BR>
  * Parts of design based on networkcore from WoodenGil
  */
 public final class Core<T extends MMOClient<?>> extends Thread {
-	// default BYTE_ORDER
-	private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
-	// default HEADER_SIZE
-	private static final int HEADER_SIZE = 2;
 	// Selector
 	private final Selector selector;
 	// Implementations
-	private final IPacketHandler<T> packetHandler;
-	private final IMMOExecutor<T> executor;
-	private final IClientFactory<T> clientFactory;
 	private final IAcceptFilter acceptFilter;
 	// Configurations
-	private final int HELPER_BUFFER_SIZE;
-	private final int HELPER_BUFFER_COUNT;
-	private final int MAX_SEND_PER_PASS;
-	private final int MAX_READ_PER_PASS;
-	private final long SLEEP_TIME;
 	public boolean TCP_NODELAY;
-	// Main Buffers
-	private final ByteBuffer DIRECT_WRITE_BUFFER;
-	private final ByteBuffer WRITE_BUFFER;
-	private final ByteBuffer READ_BUFFER;
-	// String Buffer
-	private final NioNetStringBuffer STRING_BUFFER;
-	// ByteBuffers General Purpose Pool
-	private final ArrayList<ByteBuffer> bufferPool;
-	// Pending Close
-	private final NioNetStackList<MMOConnection<T>> pendingClose;
+	// Selector Threads
+	private final SelectorThread<T>[] selectorThreads;
+	// Next selector thread to get a connection
+	private int nextSelectorThread;
 	
-	private boolean shutdown;
+	private volatile boolean shutdown;
 	
+	@SuppressWarnings("unchecked")
 	public Core(final CoreConfig sc,
 	            final IMMOExecutor<T> executor,
 	            final IPacketHandler<T> packetHandler,
 	            final IClientFactory<T> clientFactory,
 	            final IAcceptFilter acceptFilter) throws IOException {
-		super.setName("SelectorThread-" + super.getId());
+		super.setName("AcceptorThread-" + super.getId());
 		
-		HELPER_BUFFER_SIZE = sc.HELPER_BUFFER_SIZE;
-		HELPER_BUFFER_COUNT = sc.HELPER_BUFFER_COUNT;
-		MAX_SEND_PER_PASS = sc.MAX_SEND_PER_PASS;
-		MAX_READ_PER_PASS = sc.MAX_READ_PER_PASS;
-		SLEEP_TIME = sc.SLEEP_TIME;
 		TCP_NODELAY = sc.TCP_NODELAY;
 		
-		DIRECT_WRITE_BUFFER = ByteBuffer.allocateDirect(sc.WRITE_BUFFER_SIZE).order(BYTE_ORDER);
-		WRITE_BUFFER = ByteBuffer.wrap(new byte[sc.WRITE_BUFFER_SIZE]).order(BYTE_ORDER);
-		READ_BUFFER = ByteBuffer.wrap(new byte[sc.READ_BUFFER_SIZE]).order(BYTE_ORDER);
-		
-		STRING_BUFFER = new NioNetStringBuffer(64 * 1024);
-		
-		pendingClose = new NioNetStackList<>();
-		bufferPool = new ArrayList<>();
-		
-		for (int i = 0; i < HELPER_BUFFER_COUNT; i++) {
-			bufferPool.add(ByteBuffer.wrap(new byte[HELPER_BUFFER_SIZE]).order(BYTE_ORDER));
+		selectorThreads = new SelectorThread[Math.max(1, sc.SELECTOR_THREAD_COUNT)];
+		for (int i = 0; i < selectorThreads.length; i++) {
+			selectorThreads[i] = new SelectorThread<>(this, i, sc, executor, packetHandler, clientFactory);
 		}
 		
 		this.acceptFilter = acceptFilter;
-		this.packetHandler = packetHandler;
-		this.clientFactory = clientFactory;
-		this.executor = executor;
 		selector = Selector.open();
 	}
 	
@@ -117,118 +84,66 @@ public final class Core<T extends MMOClient<?>> extends Thread {
 		selectable.register(selector, SelectionKey.OP_ACCEPT);
 	}
 	
-	final ByteBuffer getPooledBuffer() {
-		if (bufferPool.isEmpty()) {
-			return ByteBuffer.wrap(new byte[HELPER_BUFFER_SIZE]).order(BYTE_ORDER);
-		}
-		
-		return bufferPool.remove(0);
+	public final int getSelectorThreadCount() {
+		return selectorThreads.length;
 	}
 	
-	final void recycleBuffer(final ByteBuffer buf) {
-		if (bufferPool.size() < HELPER_BUFFER_COUNT) {
-			buf.clear();
-			bufferPool.add(buf);
+	public final String[] getStats() {
+		final String[] stats = new String[selectorThreads.length + 3];
+		long superseded = 0;
+		long disconnections = 0;
+		stats[0] = "Selectors:";
+		for (int i = 0; i < selectorThreads.length; i++) {
+			stats[i + 1] = " |- " + selectorThreads[i].getName() + ": " + selectorThreads[i].getConnectionCount() + " connections";
+			superseded += selectorThreads[i].getSupersededPackets();
+			disconnections += selectorThreads[i].getBudgetDisconnections();
 		}
+		stats[selectorThreads.length + 1] = " |- Superseded packets (over budget): " + superseded;
+		stats[selectorThreads.length + 2] = " |- Disconnections (over budget): " + disconnections;
+		return stats;
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Override
 	public final void run() {
-		int selectedKeysCount = 0;
-		
-		SelectionKey key;
-		MMOConnection<T> con;
+		for (SelectorThread<T> selectorThread : selectorThreads) {
+			selectorThread.start();
+		}
 		
 		Iterator<SelectionKey> selectedKeys;
+		SelectionKey key;
 		
 		while (!shutdown) {
 			try {
-				selectedKeysCount = selector.selectNow();
+				if (selector.select() == 0) {
+					continue;
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
+				continue;
 			}
 			
-			if (selectedKeysCount > 0) {
-				selectedKeys = selector.selectedKeys().iterator();
+			selectedKeys = selector.selectedKeys().iterator();
+			while (selectedKeys.hasNext()) {
+				key = selectedKeys.next();
+				selectedKeys.remove();
 				
-				while (selectedKeys.hasNext()) {
-					key = selectedKeys.next();
-					selectedKeys.remove();
-					
-					con = (MMOConnection<T>) key.attachment();
-					
-					switch (key.readyOps()) {
-						case SelectionKey.OP_CONNECT:
-							finishConnection(key, con);
-							break;
-						case SelectionKey.OP_ACCEPT:
-							acceptConnection(key, con);
-							break;
-						case SelectionKey.OP_READ:
-							readPacket(key, con);
-							break;
-						case SelectionKey.OP_WRITE:
-							writePacket(key, con);
-							break;
-						case SelectionKey.OP_READ | SelectionKey.OP_WRITE:
-							writePacket(key, con);
-							if (key.isValid()) {
-								readPacket(key, con);
-							}
-							break;
-					}
+				if (key.isValid() && key.isAcceptable()) {
+					acceptConnection(key);
 				}
 			}
-			
-			synchronized (pendingClose) {
-				while (!pendingClose.isEmpty()) {
-					try {
-						con = pendingClose.removeFirst();
-						writeClosePacket(con);
-						closeConnectionImpl(con.getSelectionKey(), con);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				}
-			}
-			
-			try {
-				Thread.sleep(SLEEP_TIME);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
 		}
 		closeSelectorThread();
 	}
 	
-	private void finishConnection(final SelectionKey key, final MMOConnection<T> con) {
-		try {
-			((SocketChannel) key.channel()).finishConnect();
-		} catch (IOException e) {
-			con.getClient().onForcedDisconnection();
-			closeConnectionImpl(key, con);
-		}
-		
-		// key might have been invalidated on finishConnect()
-		if (key.isValid()) {
-			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
-			key.interestOps(key.interestOps() & ~SelectionKey.OP_CONNECT);
-		}
-	}
-	
-	private void acceptConnection(final SelectionKey key, MMOConnection<T> con) {
+	private void acceptConnection(final SelectionKey key) {
 		ServerSocketChannel ssc = (ServerSocketChannel) key.channel();
 		SocketChannel sc;
 		
 		try {
 			while ((sc = ssc.accept()) != null) {
 				if (acceptFilter == null || acceptFilter.accept(sc)) {
-					sc.configureBlocking(false);
-					SelectionKey clientKey = sc.register(selector, SelectionKey.OP_READ);
-					con = new MMOConnection<>(this, sc.socket(), clientKey, TCP_NODELAY);
-					con.setClient(clientFactory.create(con));
-					clientKey.attach(con);
+					selectorThreads[nextSelectorThread].register(sc);
+					nextSelectorThread = (nextSelectorThread + 1) % selectorThreads.length;
 				} else {
 					sc.socket().close();
 				}
@@ -238,335 +153,13 @@ public final class Core<T extends MMOClient<?>> extends Thread {
 		}
 	}
 	
-	private void readPacket(final SelectionKey key, final MMOConnection<T> con) {
-		if (!con.isClosed()) {
-			
-			ByteBuffer buf;
-			if ((buf = con.getReadBuffer()) == null) {
-				buf = READ_BUFFER;
-			}
-			
-			// if we try to to do a read with no space in the buffer it will
-			// read 0 bytes
-			// going into infinite loop
-			if (buf.position() == buf.limit()) {
-				System.exit(0);
-			}
-			
-			int result = -2;
-			
-			try {
-				result = con.read(buf);
-				//System.out.println(result);
-			} catch (IOException e) {
-				// error handling goes bellow
-			}
-			
-			if (result > 0) {
-				buf.flip();
-				
-				final T client = con.getClient();
-				
-				for (int i = 0; i < MAX_READ_PER_PASS; i++) {
-					if (!tryReadPacket(key, client, buf, con)) {
-						return;
-					}
-				}
-				
-				// only reachable if MAX_READ_PER_PASS has been reached
-				// check if there are some more bytes in buffer
-				// and allocate/compact to prevent content lose.
-				if (buf.remaining() > 0) {
-					// did we use the READ_BUFFER ?
-					if (buf == READ_BUFFER)
-					// move the pending byte to the connections READ_BUFFER
-					{
-						allocateReadBuffer(con);
-					} else
-					// move the first byte to the beginning :)
-					{
-						buf.compact();
-					}
-				}
-			} else {
-				switch (result) {
-					case 0:
-					case -1:
-						closeConnectionImpl(key, con);
-						break;
-					case -2:
-						con.getClient().onForcedDisconnection();
-						closeConnectionImpl(key, con);
-						break;
-				}
-			}
-		}
-	}
-	
-	private boolean tryReadPacket(final SelectionKey key, final T client, final ByteBuffer buf, final MMOConnection<T> con) {
-		switch (buf.remaining()) {
-			case 0:
-				// buffer is full
-				// nothing to read
-				return false;
-			case 1:
-				// we don`t have enough data for header so we need to read
-				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
-				
-				// did we use the READ_BUFFER ?
-				if (buf == READ_BUFFER)
-				// move the pending byte to the connections READ_BUFFER
-				{
-					allocateReadBuffer(con);
-				} else
-				// move the first byte to the beginning :)
-				{
-					buf.compact();
-				}
-				return false;
-			default:
-				// data size excluding header size :>
-				final int dataPending = (buf.getShort() & 0xFFFF) - HEADER_SIZE;
-				
-				// do we got enough bytes for the packet?
-				if (dataPending <= buf.remaining()) {
-					// avoid parsing dummy packets (packets without body)
-					if (dataPending > 0) {
-						final int pos = buf.position();
-						parseClientPacket(pos, buf, dataPending, client);
-						buf.position(pos + dataPending);
-					}
-					
-					// if we are done with this buffer
-					if (!buf.hasRemaining()) {
-						if (buf != READ_BUFFER) {
-							con.setReadBuffer(null);
-							recycleBuffer(buf);
-						} else {
-							READ_BUFFER.clear();
-						}
-						return false;
-					}
-					return true;
-				}
-				
-				// we don`t have enough bytes for the dataPacket so we need
-				// to read
-				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
-				
-				// did we use the READ_BUFFER ?
-				if (buf == READ_BUFFER) {
-					// move it`s position
-					buf.position(buf.position() - HEADER_SIZE);
-					// move the pending byte to the connections READ_BUFFER
-					allocateReadBuffer(con);
-				} else {
-					buf.position(buf.position() - HEADER_SIZE);
-					buf.compact();
-				}
-				return false;
-		}
-	}
-	
-	private void allocateReadBuffer(final MMOConnection<T> con) {
-		con.setReadBuffer(getPooledBuffer().put(READ_BUFFER));
-		READ_BUFFER.clear();
-	}
-	
-	private void parseClientPacket(final int pos, final ByteBuffer buf, final int dataSize, final T client) {
-		final boolean ret = client.decrypt(buf, dataSize);
-		
-		if (ret && buf.hasRemaining()) {
-			// apply limit
-			final int limit = buf.limit();
-			buf.limit(pos + dataSize);
-			final ReceivablePacket<T> cp = packetHandler.handlePacket(buf, client);
-			
-			if (cp != null) {
-				cp.buf = buf;
-				cp.sbuf = STRING_BUFFER;
-				cp.client = client;
-				
-				if (cp.read()) {
-					executor.execute(cp);
-				}
-				
-				cp.buf = null;
-				cp.sbuf = null;
-			}
-			buf.limit(limit);
-		}
-	}
-	
-	private void writeClosePacket(final MMOConnection<T> con) {
-		SendablePacket<T> sp;
-		synchronized (con.getSendQueue()) {
-			if (con.getSendQueue().isEmpty()) {
-				return;
-			}
-			
-			while ((sp = con.getSendQueue().removeFirst()) != null) {
-				WRITE_BUFFER.clear();
-				
-				putPacketIntoWriteBuffer(con.getClient(), sp);
-				
-				WRITE_BUFFER.flip();
-				
-				try {
-					con.write(WRITE_BUFFER);
-				} catch (IOException e) {
-					// error handling goes on the if bellow
-				}
-			}
-		}
-	}
-	
-	protected final void writePacket(final SelectionKey key, final MMOConnection<T> con) {
-		if (!prepareWriteBuffer(con)) {
-			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
-			return;
-		}
-		
-		DIRECT_WRITE_BUFFER.flip();
-		
-		final int size = DIRECT_WRITE_BUFFER.remaining();
-		
-		int result = -1;
-		
-		try {
-			result = con.write(DIRECT_WRITE_BUFFER);
-		} catch (IOException e) {
-			// error handling goes on the if bellow
-		}
-		
-		// check if no error happened
-		if (result >= 0) {
-			// check if we written everything
-			if (result == size) {
-				// complete write
-				synchronized (con.getSendQueue()) {
-					if (con.getSendQueue().isEmpty() && !con.hasPendingWriteBuffer()) {
-						key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
-					}
-				}
-			} else {
-				// incomplete write
-				con.createWriteBuffer(DIRECT_WRITE_BUFFER);
-			}
-		} else {
-			con.getClient().onForcedDisconnection();
-			closeConnectionImpl(key, con);
-		}
-	}
-	
-	private boolean prepareWriteBuffer(final MMOConnection<T> con) {
-		boolean hasPending = false;
-		DIRECT_WRITE_BUFFER.clear();
-		
-		// if there is pending content add it
-		if (con.hasPendingWriteBuffer()) {
-			con.movePendingWriteBufferTo(DIRECT_WRITE_BUFFER);
-			hasPending = true;
-		}
-		
-		if (DIRECT_WRITE_BUFFER.remaining() > 1 && !con.hasPendingWriteBuffer()) {
-			final NioNetStackList<SendablePacket<T>> sendQueue = con.getSendQueue();
-			final T client = con.getClient();
-			SendablePacket<T> sp;
-			
-			for (int i = 0; i < MAX_SEND_PER_PASS; i++) {
-				synchronized (con.getSendQueue()) {
-					if (sendQueue.isEmpty()) {
-						sp = null;
-					} else {
-						sp = sendQueue.removeFirst();
-					}
-				}
-				
-				if (sp == null) {
-					break;
-				}
-				
-				hasPending = true;
-				
-				// put into WriteBuffer
-				putPacketIntoWriteBuffer(client, sp);
-				
-				WRITE_BUFFER.flip();
-				
-				if (DIRECT_WRITE_BUFFER.remaining() >= WRITE_BUFFER.limit()) {
-					DIRECT_WRITE_BUFFER.put(WRITE_BUFFER);
-				} else {
-					con.createWriteBuffer(WRITE_BUFFER);
-					break;
-				}
-			}
-		}
-		return hasPending;
-	}
-	
-	private void putPacketIntoWriteBuffer(final T client, final SendablePacket<T> sp) {
-		WRITE_BUFFER.clear();
-		
-		// reserve space for the size
-		final int headerPos = WRITE_BUFFER.position();
-		final int dataPos = headerPos + HEADER_SIZE;
-		WRITE_BUFFER.position(dataPos);
-		
-		// set client
-		sp.writeClient = client;
-		// set the write buffer
-		sp.buf = WRITE_BUFFER;
-		// write content to buffer
-		sp.write();
-		// delete the write buffer
-		sp.buf = null;
-		// release client
-		sp.writeClient = null;
-		
-		// size (inclusive header)
-		int dataSize = WRITE_BUFFER.position() - dataPos;
-		
-		WRITE_BUFFER.position(dataPos);
-		client.encrypt(WRITE_BUFFER, dataSize);
-		
-		// recalculate size after encryption
-		dataSize = WRITE_BUFFER.position() - dataPos;
-		
-		WRITE_BUFFER.position(headerPos);
-		// write header
-		WRITE_BUFFER.putShort((short) (dataSize + HEADER_SIZE));
-		WRITE_BUFFER.position(dataPos + dataSize);
-	}
-	
-	final void closeConnection(final MMOConnection<T> con) {
-		synchronized (pendingClose) {
-			pendingClose.addLast(con);
-		}
-	}
-	
-	private void closeConnectionImpl(final SelectionKey key, final MMOConnection<T> con) {
-		try {
-			// notify connection
-			con.getClient().onDisconnection();
-		} finally {
-			try {
-				// close socket and the SocketChannel
-				con.close();
-			} catch (IOException e) {
-				// ignore, we are closing anyway
-			} finally {
-				con.releaseBuffers();
-				// clear attachment
-				key.attach(null);
-				// cancel key
-				key.cancel();
-			}
-		}
-	}
-	
 	public final void shutdown() {
 		shutdown = true;
+		selector.wakeup();
+		
+		for (SelectorThread<T> selectorThread : selectorThreads) {
+			selectorThread.shutdown();
+		}
 	}
 	
 	protected void closeSelectorThread() {
@@ -43,15 +43,44 @@ public final class CoreConfig {
 	public int MAX_READ_PER_PASS = 10;
 	
 	/**
-	 * Defines how much time (in milis) should the selector sleep, an higher value increases throughput but also increases latency(to a max of the sleep value itself).<BR>
-	 * Also an extremely high value(usually > 100) will decrease throughput due to the server not doing enough sends per second (depends on max sends per pass).<BR>
+	 * Defines how many selector threads will share the connections. The acceptor hands every new connection to one of them (round robin)<BR>
+	 * and that thread does all the reads, decrypts, encrypts and writes of it from then on.<BR>
 	 * <BR>
 	 * Recommended values:<BR>
-	 * 1 for minimal latency.<BR>
-	 * 10-30 for an latency/troughput trade-off based on your needs.<BR>
+	 * 1 for small servers.<BR>
+	 * 2-4 (never more than the available cores) for servers with thousands of concurrent players.<BR>
+	 */
+	public int SELECTOR_THREAD_COUNT = 1;
+	
+	/**
+	 * Defines the maximum time (in milis) the selectors will block waiting for network events. Selectors are woken up as soon as a packet is queued,<BR>
+	 * a connection is closed or a new connection is accepted, so this is only a safety net and doesn't add any latency.<BR>
+	 * <BR>
+	 * 0 will block until something happens.<BR>
 	 */
 	public int SLEEP_TIME = 10;
 	
+	/**
+	 * Maximum number of packets a connection may have waiting to be sent, 0 for no limit.<BR>
+	 * Clients on a bad link stop draining their queue, and everything broadcasted to them keeps piling up in memory.
+	 */
+	public int OUTBOUND_PACKET_BUDGET = 0;
+	
+	/**
+	 * Maximum number of bytes a connection may have waiting to be sent, 0 for no limit.<BR>
+	 * Queued packets aren't serialized yet, so they are counted with the average packet size of that connection.
+	 */
+	public int OUTBOUND_BYTE_BUDGET = 0;
+	
+	/**
+	 * What to do with a connection once it goes over its outbound budget.<BR>
+	 * <BR>
+	 * DROP_SUPERSEDED: packets that can be superseded (positions, status...) replace the older one about the same object
+	 * still waiting in the queue, latest wins. If the connection keeps growing to twice its budget anyway, it is disconnected.<BR>
+	 * DISCONNECT: the connection is disconnected right away.<BR>
+	 */
+	public OutboundBudgetAction OUTBOUND_BUDGET_ACTION = OutboundBudgetAction.DROP_SUPERSEDED;
+	
 	/**
 	 * Used to enable/disable TCP_NODELAY which disable/enable Nagle's algorithm.<BR>
 	 * <BR>
@@ -61,4 +90,9 @@ public final class CoreConfig {
 	 * Summary, data will be sent earlier, thus lowering the ping, at the cost of a small increase in bandwidth consumption.
 	 */
 	public boolean TCP_NODELAY = false;
+	
+	public enum OutboundBudgetAction {
+		DROP_SUPERSEDED,
+		DISCONNECT
+	}
 }
@@ -23,17 +23,18 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
-import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @param <T>
  * @author KenM
  */
 public class MMOConnection<T extends MMOClient<?>> {
-	private final Core<T> selectorThread;
+	private final SelectorThread<T> selectorThread;
 	
 	private final Socket socket;
 	
@@ -45,11 +46,25 @@ public class MMOConnection<T extends MMOClient<?>> {
 	
 	private final int port;
 	
-	private final NioNetStackList<SendablePacket<T>> sendQueue;
+	private final NioNetMpscQueue<SendablePacket<T>> sendQueue;
 	
 	private final SelectionKey selectionKey;
 	
-	// private SendablePacket<T> closePacket;
+	private SendablePacket<T>[] closePackets;
+	
+	// Packets replacing an older one still in the queue while over budget, by the queued packet
+	private final ConcurrentHashMap<SendablePacket<T>, SupersedeSlot<T>> supersededPackets = new ConcurrentHashMap<>();
+	
+	// Slot of the last packet queued for each supersede group, the only one of its group that can still be replaced
+	private final ConcurrentHashMap<Long, SupersedeSlot<T>> lastOfGroup = new ConcurrentHashMap<>();
+	
+	// Taken by producers to replace or register a packet
+	private final Object supersedeLock = new Object();
+	
+	// Written by the selector thread, read by producers to check the outbound budget
+	private volatile int averagePacketSize;
+	
+	private volatile int pendingWriteBytes;
 	
 	private ByteBuffer readBuffer;
 	
@@ -61,7 +76,7 @@ public class MMOConnection<T extends MMOClient<?>> {
 	
 	private T client;
 	
-	public MMOConnection(final Core<T> selectorThread, final Socket socket, final SelectionKey key, boolean tcpNoDelay) {
+	MMOConnection(final SelectorThread<T> selectorThread, final Socket socket, final SelectionKey key, boolean tcpNoDelay) {
 		this.selectorThread = selectorThread;
 		this.socket = socket;
 		address = socket.getInetAddress();
@@ -70,7 +85,7 @@ public class MMOConnection<T extends MMOClient<?>> {
 		port = socket.getPort();
 		selectionKey = key;
 		
-		sendQueue = new NioNetStackList<>();
+		sendQueue = new NioNetMpscQueue<>();
 		
 		try {
 			socket.setTcpNoDelay(tcpNoDelay);
@@ -94,16 +109,19 @@ public class MMOConnection<T extends MMOClient<?>> {
 			return;
 		}
 		
-		synchronized (getSendQueue()) {
-			sendQueue.addLast(sp);
+		// while an older packet with the same key is still queued, this one must take its place to keep the order
+		if (!supersededPackets.isEmpty() && supersede(sp.getSupersedeKey(), sp, false)) {
+			selectorThread.onPacketSuperseded();
+			return;
 		}
 		
-		if (!sendQueue.isEmpty()) {
-			try {
-				selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
-			} catch (CancelledKeyException e) {
-				// ignore
-			}
+		if (selectorThread.isOverBudget(this) && !selectorThread.onOverBudget(this, sp)) {
+			return;
+		}
+		
+		// only the first packet of a burst needs to notify the selector, it will drain the rest
+		if (sendQueue.offer(sp)) {
+			selectorThread.scheduleWrite(this);
 		}
 	}
 	
@@ -182,13 +200,119 @@ public class MMOConnection<T extends MMOClient<?>> {
 		return pendingClose;
 	}
 	
-	final NioNetStackList<SendablePacket<T>> getSendQueue() {
+	final NioNetMpscQueue<SendablePacket<T>> getSendQueue() {
 		return sendQueue;
 	}
 	
-	/*
-	 * final SendablePacket<T> getClosePacket() { return closePacket; }
+	/**
+	 * @return the number of packets waiting to be written to this connection
+	 */
+	public final int getSendQueueSize() {
+		return sendQueue.size();
+	}
+	
+	/**
+	 * @return the highest number of packets that have been waiting at once to be written to this connection
 	 */
+	public final int getSendQueuePeak() {
+		return sendQueue.getPeakSize();
+	}
+	
+	final synchronized SendablePacket<T>[] getClosePackets() {
+		return closePackets;
+	}
+	
+	/**
+	 * @return an estimation of the bytes waiting to be sent to this connection
+	 */
+	public final long getOutboundBytes() {
+		return (long) sendQueue.size() * averagePacketSize + pendingWriteBytes;
+	}
+	
+	final void onPacketWritten(final int size) {
+		final int average = averagePacketSize;
+		averagePacketSize = average == 0 ? size : average + (size - average >> 4);
+	}
+	
+	final void updatePendingWriteBytes() {
+		int bytes = 0;
+		if (primaryWriteBuffer != null) {
+			bytes += primaryWriteBuffer.position();
+			if (secondaryWriteBuffer != null) {
+				bytes += secondaryWriteBuffer.position();
+			}
+		}
+		pendingWriteBytes = bytes;
+	}
+	
+	/**
+	 * Tries to replace the packet with the same supersede key that is still waiting in the queue.
+	 * It is only replaced if no other packet of its {@link SendablePacket#getSupersedeGroup() group} was queued after it,
+	 * so that the newer state never overtakes one of another kind.
+	 *
+	 * @param create if there is no such packet, register this one to be replaced by the next ones
+	 * @return true if an older packet got replaced, false if this one has to be queued
+	 */
+	final boolean supersede(final long key, final SendablePacket<T> sp, final boolean create) {
+		if (key < 0) {
+			return false;
+		}
+		
+		final long group = sp.getSupersedeGroup();
+		synchronized (supersedeLock) {
+			final SupersedeSlot<T> slot = lastOfGroup.get(group);
+			if (slot != null && slot.key == key) {
+				final SendablePacket<T> current = slot.get();
+				// null if the selector already took it
+				if (current != null && slot.compareAndSet(current, sp)) {
+					return true;
+				}
+			}
+			
+			// this one is queued and becomes the last of its group
+			if (create) {
+				final SupersedeSlot<T> newSlot = new SupersedeSlot<>(sp, key);
+				supersededPackets.put(sp, newSlot);
+				lastOfGroup.put(group, newSlot);
+			} else {
+				lastOfGroup.remove(group);
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Called by the selector thread for every packet taken from the queue.
+	 *
+	 * @return the packet that must be written in place of the given one
+	 */
+	final SendablePacket<T> getLatest(final SendablePacket<T> sp) {
+		if (supersededPackets.isEmpty()) {
+			return sp;
+		}
+		
+		final SupersedeSlot<T> slot = supersededPackets.remove(sp);
+		if (slot == null) {
+			return sp;
+		}
+		
+		lastOfGroup.remove(sp.getSupersedeGroup(), slot);
+		return slot.getAndSet(null);
+	}
+	
+	/**
+	 * Marks the connection as closed without any close packet, for the selector to drop it.
+	 *
+	 * @return false if it was already being closed
+	 */
+	final synchronized boolean markForcedClose() {
+		if (pendingClose) {
+			return false;
+		}
+		
+		pendingClose = true;
+		return true;
+	}
 	
 	@SuppressWarnings("unchecked")
 	public final void close(final SendablePacket<T> sp) {
@@ -201,23 +325,16 @@ public class MMOConnection<T extends MMOClient<?>> {
 			return;
 		}
 		
-		synchronized (getSendQueue()) {
-			if (!pendingClose) {
-				pendingClose = true;
-				sendQueue.clear();
-				for (SendablePacket<T> sp : closeList) {
-					sendQueue.addLast(sp);
-				}
+		synchronized (this) {
+			if (pendingClose) {
+				return;
 			}
+			
+			// the selector thread will drop whatever is still queued and send these instead
+			closePackets = closeList;
+			pendingClose = true;
 		}
 		
-		try {
-			selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
-		} catch (CancelledKeyException e) {
-			// ignore
-		}
-		
-		// closePacket = sp;
 		selectorThread.closeConnection(this);
 	}
 	
@@ -237,4 +354,17 @@ public class MMOConnection<T extends MMOClient<?>> {
 			readBuffer = null;
 		}
 	}
+	
+	/**
+	 * Holds the latest packet for a supersede key, until the selector reaches the one that was queued for it.
+	 */
+	@SuppressWarnings("serial")
+	private static final class SupersedeSlot<T extends MMOClient<?>> extends AtomicReference<SendablePacket<T>> {
+		private final long key;
+		
+		SupersedeSlot(final SendablePacket<T> queued, final long key) {
+			super(queued);
+			this.key = key;
+		}
+	}
 }
@@ -0,0 +1,106 @@
+/* This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ *
+ * http://www.gnu.org/copyleft/gpl.html
+ */
+
+package l2server.network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free multi producer / single consumer queue (Vyukov's intrusive node queue).<BR>
+ * Any thread can {@link #offer(Object)}, but only the selector thread owning the connection may
+ * {@link #poll()} or {@link #clear()}.
+ *
+ * @param <E>
+ * @author Pere
+ */
+public final class NioNetMpscQueue<E> {
+	private final AtomicReference<Node<E>> tail;
+	
+	// consumer side only
+	private Node<E> head;
+	
+	private final AtomicInteger size = new AtomicInteger();
+	
+	private volatile int peakSize;
+	
+	public NioNetMpscQueue() {
+		head = new Node<>(null);
+		tail = new AtomicReference<>(head);
+	}
+	
+	/**
+	 * @return true if the queue was empty before adding this element
+	 */
+	public final boolean offer(final E elem) {
+		final Node<E> node = new Node<>(elem);
+		
+		final int oldSize = size.getAndIncrement();
+		if (oldSize >= peakSize) {
+			peakSize = oldSize + 1;
+		}
+		
+		final Node<E> prev = tail.getAndSet(node);
+		prev.next = node;
+		return oldSize == 0;
+	}
+	
+	/**
+	 * @return the first element, or null if the queue is empty (or the next producer hasn't finished linking it yet)
+	 */
+	public final E poll() {
+		final Node<E> next = head.next;
+		if (next == null) {
+			return null;
+		}
+		
+		final E value = next.value;
+		next.value = null;
+		head = next;
+		size.decrementAndGet();
+		return value;
+	}
+	
+	public final void clear() {
+		while (poll() != null) {
+			// discard
+		}
+	}
+	
+	public final boolean isEmpty() {
+		return size.get() == 0;
+	}
+	
+	public final int size() {
+		return size.get();
+	}
+	
+	public final int getPeakSize() {
+		return peakSize;
+	}
+	
+	private static final class Node<E> {
+		private volatile Node<E> next;
+		
+		private E value;
+		
+		Node(final E value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,717 @@
+/* This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ *
+ * http://www.gnu.org/copyleft/gpl.html
+ */
+
+package l2server.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One shard of the network core. Every connection is owned by exactly one SelectorThread for its
+ * whole life: reads, decryption, encryption and writes of that connection only ever happen here,
+ * so the buffers below don't need any synchronization.
+ *
+ * @param <T>
+ * @author KenM, Pere
+ */
+final class SelectorThread<T extends MMOClient<?>> extends Thread {
+	// default BYTE_ORDER
+	static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+	// default HEADER_SIZE
+	static final int HEADER_SIZE = 2;
+	// Owner
+	private final Core<T> core;
+	// Selector
+	private final Selector selector;
+	// Implementations
+	private final IPacketHandler<T> packetHandler;
+	private final IMMOExecutor<T> executor;
+	private final IClientFactory<T> clientFactory;
+	// Configurations
+	private final int HELPER_BUFFER_SIZE;
+	private final int HELPER_BUFFER_COUNT;
+	private final int MAX_SEND_PER_PASS;
+	private final int MAX_READ_PER_PASS;
+	private final long SLEEP_TIME;
+	private final int OUTBOUND_PACKET_BUDGET;
+	private final int OUTBOUND_BYTE_BUDGET;
+	private final CoreConfig.OutboundBudgetAction OUTBOUND_BUDGET_ACTION;
+	// Main Buffers
+	private final ByteBuffer DIRECT_WRITE_BUFFER;
+	private final ByteBuffer WRITE_BUFFER;
+	private final ByteBuffer READ_BUFFER;
+	// String Buffer
+	private final NioNetStringBuffer STRING_BUFFER;
+	// ByteBuffers General Purpose Pool
+	private final ArrayList<ByteBuffer> bufferPool;
+	// Pending Close
+	private final NioNetStackList<MMOConnection<T>> pendingClose;
+	// Accepted sockets waiting to be registered on this selector
+	private final Queue<SocketChannel> pendingRegister = new ConcurrentLinkedQueue<>();
+	// Connections whose send queue went from empty to non empty
+	private final Queue<MMOConnection<T>> pendingWrite = new ConcurrentLinkedQueue<>();
+	// Connections that went over their outbound budget and must be dropped
+	private final Queue<MMOConnection<T>> pendingForcedClose = new ConcurrentLinkedQueue<>();
+	// Connections owned by this selector
+	private final AtomicInteger connectionCount = new AtomicInteger();
+	// Outbound budget stats
+	private final AtomicLong supersededPackets = new AtomicLong();
+	private final AtomicLong budgetDisconnections = new AtomicLong();
+	// Set while a wakeup is already on its way, so producers don't hammer the selector
+	private final AtomicBoolean wakeupPending = new AtomicBoolean();
+	
+	private volatile boolean shutdown;
+	
+	SelectorThread(final Core<T> core,
+	               final int index,
+	               final CoreConfig sc,
+	               final IMMOExecutor<T> executor,
+	               final IPacketHandler<T> packetHandler,
+	               final IClientFactory<T> clientFactory) throws IOException {
+		super.setName("SelectorThread-" + index);
+		
+		this.core = core;
+		
+		HELPER_BUFFER_SIZE = sc.HELPER_BUFFER_SIZE;
+		HELPER_BUFFER_COUNT = sc.HELPER_BUFFER_COUNT;
+		MAX_SEND_PER_PASS = sc.MAX_SEND_PER_PASS;
+		MAX_READ_PER_PASS = sc.MAX_READ_PER_PASS;
+		SLEEP_TIME = sc.SLEEP_TIME;
+		OUTBOUND_PACKET_BUDGET = sc.OUTBOUND_PACKET_BUDGET;
+		OUTBOUND_BYTE_BUDGET = sc.OUTBOUND_BYTE_BUDGET;
+		OUTBOUND_BUDGET_ACTION = sc.OUTBOUND_BUDGET_ACTION;
+		
+		DIRECT_WRITE_BUFFER = ByteBuffer.allocateDirect(sc.WRITE_BUFFER_SIZE).order(BYTE_ORDER);
+		WRITE_BUFFER = ByteBuffer.wrap(new byte[sc.WRITE_BUFFER_SIZE]).order(BYTE_ORDER);
+		READ_BUFFER = ByteBuffer.wrap(new byte[sc.READ_BUFFER_SIZE]).order(BYTE_ORDER);
+		
+		STRING_BUFFER = new NioNetStringBuffer(64 * 1024);
+		
+		pendingClose = new NioNetStackList<>();
+		bufferPool = new ArrayList<>();
+		
+		for (int i = 0; i < HELPER_BUFFER_COUNT; i++) {
+			bufferPool.add(ByteBuffer.wrap(new byte[HELPER_BUFFER_SIZE]).order(BYTE_ORDER));
+		}
+		
+		this.packetHandler = packetHandler;
+		this.clientFactory = clientFactory;
+		this.executor = executor;
+		selector = Selector.open();
+	}
+	
+	final ByteBuffer getPooledBuffer() {
+		if (bufferPool.isEmpty()) {
+			return ByteBuffer.wrap(new byte[HELPER_BUFFER_SIZE]).order(BYTE_ORDER);
+		}
+		
+		return bufferPool.remove(bufferPool.size() - 1);
+	}
+	
+	final void recycleBuffer(final ByteBuffer buf) {
+		if (bufferPool.size() < HELPER_BUFFER_COUNT) {
+			buf.clear();
+			bufferPool.add(buf);
+		}
+	}
+	
+	/**
+	 * Hands an accepted socket over to this selector. Registration itself is done by this thread,
+	 * since registering from the acceptor would block while we are inside select().
+	 */
+	final void register(final SocketChannel sc) {
+		pendingRegister.add(sc);
+		wakeup();
+	}
+	
+	/**
+	 * Called by producers when the send queue of a connection owned by this selector stops being empty.
+	 * The selector is the only one touching the interest ops, so it won't race with itself clearing OP_WRITE.
+	 */
+	final void scheduleWrite(final MMOConnection<T> con) {
+		pendingWrite.add(con);
+		wakeup();
+	}
+	
+	final boolean isOverBudget(final MMOConnection<T> con) {
+		return isOverBudget(con, 1);
+	}
+	
+	private boolean isOverBudget(final MMOConnection<T> con, final int factor) {
+		return OUTBOUND_PACKET_BUDGET > 0 && con.getSendQueueSize() >= OUTBOUND_PACKET_BUDGET * factor ||
+				OUTBOUND_BYTE_BUDGET > 0 && con.getOutboundBytes() >= (long) OUTBOUND_BYTE_BUDGET * factor;
+	}
+	
+	/**
+	 * Called by producers when a connection is over its outbound budget.
+	 *
+	 * @return true if the packet must still be queued
+	 */
+	final boolean onOverBudget(final MMOConnection<T> con, final SendablePacket<T> sp) {
+		if (OUTBOUND_BUDGET_ACTION == CoreConfig.OutboundBudgetAction.DROP_SUPERSEDED) {
+			final long key = sp.getSupersedeKey();
+			if (key >= 0) {
+				if (con.supersede(key, sp, true)) {
+					onPacketSuperseded();
+					return false;
+				}
+				return true;
+			}
+			
+			// nothing we can drop, give it some margin before giving up on the client
+			if (!isOverBudget(con, 2)) {
+				return true;
+			}
+		}
+		
+		if (con.markForcedClose()) {
+			budgetDisconnections.incrementAndGet();
+			pendingForcedClose.add(con);
+			wakeup();
+		}
+		return false;
+	}
+	
+	final void onPacketSuperseded() {
+		supersededPackets.incrementAndGet();
+	}
+	
+	/**
+	 * Wakes the selector up from select() so it can pick up new interest ops, pending registrations
+	 * or pending closes. Calls made while a wakeup is already pending are coalesced.
+	 */
+	final void wakeup() {
+		if (wakeupPending.compareAndSet(false, true)) {
+			selector.wakeup();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public final void run() {
+		int selectedKeysCount = 0;
+		
+		SelectionKey key;
+		MMOConnection<T> con;
+		
+		Iterator<SelectionKey> selectedKeys;
+		
+		while (!shutdown) {
+			try {
+				selectedKeysCount = SLEEP_TIME > 0 ? selector.select(SLEEP_TIME) : selector.select();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			
+			// anything queued from now on needs a new wakeup
+			wakeupPending.set(false);
+			
+			registerPendingConnections();
+			
+			writePendingConnections();
+			
+			if (selectedKeysCount > 0) {
+				selectedKeys = selector.selectedKeys().iterator();
+				
+				while (selectedKeys.hasNext()) {
+					key = selectedKeys.next();
+					selectedKeys.remove();
+					
+					con = (MMOConnection<T>) key.attachment();
+					
+					switch (key.readyOps()) {
+						case SelectionKey.OP_CONNECT:
+							finishConnection(key, con);
+							break;
+						case SelectionKey.OP_READ:
+							readPacket(key, con);
+							break;
+						case SelectionKey.OP_WRITE:
+							writePacket(key, con);
+							break;
+						case SelectionKey.OP_READ | SelectionKey.OP_WRITE:
+							writePacket(key, con);
+							if (key.isValid()) {
+								readPacket(key, con);
+							}
+							break;
+					}
+				}
+			}
+			
+			synchronized (pendingClose) {
+				while (!pendingClose.isEmpty()) {
+					try {
+						con = pendingClose.removeFirst();
+						writeClosePacket(con);
+						closeConnectionImpl(con.getSelectionKey(), con);
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			}
+			
+			while ((con = pendingForcedClose.poll()) != null) {
+				try {
+					if (con.getSelectionKey().isValid()) {
+						con.getClient().onForcedDisconnection();
+						closeConnectionImpl(con.getSelectionKey(), con);
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		closeSelectorThread();
+	}
+	
+	private void registerPendingConnections() {
+		SocketChannel sc;
+		while ((sc = pendingRegister.poll()) != null) {
+			try {
+				sc.configureBlocking(false);
+				SelectionKey clientKey = sc.register(selector, SelectionKey.OP_READ);
+				MMOConnection<T> con = new MMOConnection<>(this, sc.socket(), clientKey, core.TCP_NODELAY);
+				con.setClient(clientFactory.create(con));
+				clientKey.attach(con);
+				connectionCount.incrementAndGet();
+			} catch (IOException e) {
+				e.printStackTrace();
+				try {
+					sc.socket().close();
+				} catch (IOException e1) {
+					// ignore
+				}
+			}
+		}
+	}
+	
+	private void writePendingConnections() {
+		MMOConnection<T> con;
+		while ((con = pendingWrite.poll()) != null) {
+			final SelectionKey key = con.getSelectionKey();
+			// socket is most likely writable, so don't wait for the next select to find it out
+			if (key.isValid() && !con.isClosed()) {
+				writePacket(key, con);
+			}
+		}
+	}
+	
+	private void finishConnection(final SelectionKey key, final MMOConnection<T> con) {
+		try {
+			((SocketChannel) key.channel()).finishConnect();
+		} catch (IOException e) {
+			con.getClient().onForcedDisconnection();
+			closeConnectionImpl(key, con);
+		}
+		
+		// key might have been invalidated on finishConnect()
+		if (key.isValid()) {
+			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_CONNECT);
+		}
+	}
+	
+	private void readPacket(final SelectionKey key, final MMOConnection<T> con) {
+		if (!con.isClosed()) {
+			
+			ByteBuffer buf;
+			if ((buf = con.getReadBuffer()) == null) {
+				buf = READ_BUFFER;
+			}
+			
+			// if we try to to do a read with no space in the buffer it will
+			// read 0 bytes
+			// going into infinite loop
+			if (buf.position() == buf.limit()) {
+				System.exit(0);
+			}
+			
+			int result = -2;
+			
+			try {
+				result = con.read(buf);
+			} catch (IOException e) {
+				// error handling goes bellow
+			}
+			
+			if (result > 0) {
+				buf.flip();
+				
+				final T client = con.getClient();
+				
+				for (int i = 0; i < MAX_READ_PER_PASS; i++) {
+					if (!tryReadPacket(key, client, buf, con)) {
+						return;
+					}
+				}
+				
+				// only reachable if MAX_READ_PER_PASS has been reached
+				// check if there are some more bytes in buffer
+				// and allocate/compact to prevent content lose.
+				if (buf.remaining() > 0) {
+					// did we use the READ_BUFFER ?
+					if (buf == READ_BUFFER)
+					// move the pending byte to the connections READ_BUFFER
+					{
+						allocateReadBuffer(con);
+					} else
+					// move the first byte to the beginning :)
+					{
+						buf.compact();
+					}
+				}
+			} else {
+				switch (result) {
+					case 0:
+					case -1:
+						closeConnectionImpl(key, con);
+						break;
+					case -2:
+						con.getClient().onForcedDisconnection();
+						closeConnectionImpl(key, con);
+						break;
+				}
+			}
+		}
+	}
+	
+	private boolean tryReadPacket(final SelectionKey key, final T client, final ByteBuffer buf, final MMOConnection<T> con) {
+		switch (buf.remaining()) {
+			case 0:
+				// buffer is full
+				// nothing to read
+				return false;
+			case 1:
+				// we don`t have enough data for header so we need to read
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+				
+				// did we use the READ_BUFFER ?
+				if (buf == READ_BUFFER)
+				// move the pending byte to the connections READ_BUFFER
+				{
+					allocateReadBuffer(con);
+				} else
+				// move the first byte to the beginning :)
+				{
+					buf.compact();
+				}
+				return false;
+			default:
+				// data size excluding header size :>
+				final int dataPending = (buf.getShort() & 0xFFFF) - HEADER_SIZE;
+				
+				// do we got enough bytes for the packet?
+				if (dataPending <= buf.remaining()) {
+					// avoid parsing dummy packets (packets without body)
+					if (dataPending > 0) {
+						final int pos = buf.position();
+						parseClientPacket(pos, buf, dataPending, client);
+						buf.position(pos + dataPending);
+					}
+					
+					// if we are done with this buffer
+					if (!buf.hasRemaining()) {
+						if (buf != READ_BUFFER) {
+							con.setReadBuffer(null);
+							recycleBuffer(buf);
+						} else {
+							READ_BUFFER.clear();
+						}
+						return false;
+					}
+					return true;
+				}
+				
+				// we don`t have enough bytes for the dataPacket so we need
+				// to read
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+				
+				// did we use the READ_BUFFER ?
+				if (buf == READ_BUFFER) {
+					// move it`s position
+					buf.position(buf.position() - HEADER_SIZE);
+					// move the pending byte to the connections READ_BUFFER
+					allocateReadBuffer(con);
+				} else {
+					buf.position(buf.position() - HEADER_SIZE);
+					buf.compact();
+				}
+				return false;
+		}
+	}
+	
+	private void allocateReadBuffer(final MMOConnection<T> con) {
+		con.setReadBuffer(getPooledBuffer().put(READ_BUFFER));
+		READ_BUFFER.clear();
+	}
+	
+	private void parseClientPacket(final int pos, final ByteBuffer buf, final int dataSize, final T client) {
+		final boolean ret = client.decrypt(buf, dataSize);
+		
+		if (ret && buf.hasRemaining()) {
+			// apply limit
+			final int limit = buf.limit();
+			buf.limit(pos + dataSize);
+			final ReceivablePacket<T> cp = packetHandler.handlePacket(buf, client);
+			
+			if (cp != null) {
+				cp.buf = buf;
+				cp.sbuf = STRING_BUFFER;
+				cp.client = client;
+				
+				if (cp.read()) {
+					executor.execute(cp);
+				}
+				
+				cp.buf = null;
+				cp.sbuf = null;
+			}
+			buf.limit(limit);
+		}
+	}
+	
+	private void writeClosePacket(final MMOConnection<T> con) {
+		// whatever was still queued is dropped, only the close packets are sent
+		con.getSendQueue().clear();
+		
+		final SendablePacket<T>[] closePackets = con.getClosePackets();
+		if (closePackets == null) {
+			return;
+		}
+		
+		for (SendablePacket<T> sp : closePackets) {
+			if (sp == null) {
+				continue;
+			}
+			
+			sp.client = con.getClient();
+			
+			WRITE_BUFFER.clear();
+			
+			putPacketIntoWriteBuffer(con.getClient(), sp);
+			
+			WRITE_BUFFER.flip();
+			
+			try {
+				con.write(WRITE_BUFFER);
+			} catch (IOException e) {
+				// we are closing anyway
+			}
+		}
+	}
+	
+	private void writePacket(final SelectionKey key, final MMOConnection<T> con) {
+		// pending close will send the close packets
+		if (con.isClosed() || !prepareWriteBuffer(con)) {
+			setWriteInterest(key, false);
+			return;
+		}
+		
+		DIRECT_WRITE_BUFFER.flip();
+		
+		final int size = DIRECT_WRITE_BUFFER.remaining();
+		
+		int result = -1;
+		
+		try {
+			result = con.write(DIRECT_WRITE_BUFFER);
+		} catch (IOException e) {
+			// error handling goes on the if bellow
+		}
+		
+		// check if no error happened
+		if (result >= 0) {
+			// check if we written everything
+			if (result == size) {
+				// complete write, keep OP_WRITE only while there is something left
+				// (a producer that finds the queue empty will schedule us again)
+				setWriteInterest(key, !con.getSendQueue().isEmpty() || con.hasPendingWriteBuffer());
+			} else {
+				// incomplete write
+				con.createWriteBuffer(DIRECT_WRITE_BUFFER);
+				setWriteInterest(key, true);
+			}
+			con.updatePendingWriteBytes();
+		} else {
+			con.getClient().onForcedDisconnection();
+			closeConnectionImpl(key, con);
+		}
+	}
+	
+	private boolean prepareWriteBuffer(final MMOConnection<T> con) {
+		boolean hasPending = false;
+		DIRECT_WRITE_BUFFER.clear();
+		
+		// if there is pending content add it
+		if (con.hasPendingWriteBuffer()) {
+			con.movePendingWriteBufferTo(DIRECT_WRITE_BUFFER);
+			hasPending = true;
+		}
+		
+		if (DIRECT_WRITE_BUFFER.remaining() > 1 && !con.hasPendingWriteBuffer()) {
+			final NioNetMpscQueue<SendablePacket<T>> sendQueue = con.getSendQueue();
+			final T client = con.getClient();
+			SendablePacket<T> sp;
+			
+			// coalesce as many packets as fit into a single socket write
+			for (int i = 0; i < MAX_SEND_PER_PASS; i++) {
+				sp = sendQueue.poll();
+				if (sp == null) {
+					break;
+				}
+				
+				// a newer packet may have replaced it while the client was over budget
+				sp = con.getLatest(sp);
+				
+				hasPending = true;
+				
+				// put into WriteBuffer
+				putPacketIntoWriteBuffer(client, sp);
+				
+				WRITE_BUFFER.flip();
+				
+				con.onPacketWritten(WRITE_BUFFER.limit());
+				
+				if (DIRECT_WRITE_BUFFER.remaining() >= WRITE_BUFFER.limit()) {
+					DIRECT_WRITE_BUFFER.put(WRITE_BUFFER);
+				} else {
+					con.createWriteBuffer(WRITE_BUFFER);
+					break;
+				}
+			}
+		}
+		return hasPending;
+	}
+	
+	private void setWriteInterest(final SelectionKey key, final boolean write) {
+		final int ops = key.interestOps();
+		final int newOps = write ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE;
+		if (newOps != ops) {
+			key.interestOps(newOps);
+		}
+	}
+	
+	private void putPacketIntoWriteBuffer(final T client, final SendablePacket<T> sp) {
+		WRITE_BUFFER.clear();
+		
+		// reserve space for the size
+		final int headerPos = WRITE_BUFFER.position();
+		final int dataPos = headerPos + HEADER_SIZE;
+		WRITE_BUFFER.position(dataPos);
+		
+		// write content to buffer (or copy the shared body of a broadcast)
+		sp.writeTo(client, WRITE_BUFFER);
+		
+		// size (inclusive header)
+		int dataSize = WRITE_BUFFER.position() - dataPos;
+		
+		WRITE_BUFFER.position(dataPos);
+		client.encrypt(WRITE_BUFFER, dataSize);
+		
+		// recalculate size after encryption
+		dataSize = WRITE_BUFFER.position() - dataPos;
+		
+		WRITE_BUFFER.position(headerPos);
+		// write header
+		WRITE_BUFFER.putShort((short) (dataSize + HEADER_SIZE));
+		WRITE_BUFFER.position(dataPos + dataSize);
+	}
+	
+	final void closeConnection(final MMOConnection<T> con) {
+		synchronized (pendingClose) {
+			pendingClose.addLast(con);
+		}
+		wakeup();
+	}
+	
+	private void closeConnectionImpl(final SelectionKey key, final MMOConnection<T> con) {
+		try {
+			// notify connection
+			con.getClient().onDisconnection();
+		} finally {
+			try {
+				// close socket and the SocketChannel
+				con.close();
+			} catch (IOException e) {
+				// ignore, we are closing anyway
+			} finally {
+				con.releaseBuffers();
+				// clear attachment (only the first close of a connection counts)
+				if (key.attach(null) != null) {
+					connectionCount.decrementAndGet();
+				}
+				// cancel key
+				key.cancel();
+			}
+		}
+	}
+	
+	final int getConnectionCount() {
+		return connectionCount.get();
+	}
+	
+	final long getSupersededPackets() {
+		return supersededPackets.get();
+	}
+	
+	final long getBudgetDisconnections() {
+		return budgetDisconnections.get();
+	}
+	
+	final void shutdown() {
+		shutdown = true;
+		selector.wakeup();
+	}
+	
+	private void closeSelectorThread() {
+		SocketChannel sc;
+		while ((sc = pendingRegister.poll()) != null) {
+			try {
+				sc.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		
+		for (final SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// Ignore
+		}
+	}
+}
@@ -18,6 +18,8 @@
 
 package l2server.network;
 
+import java.nio.ByteBuffer;
+
 /**
  * @param <T>
  * @author KenM
@@ -25,10 +27,92 @@ package l2server.network;
 public abstract class SendablePacket<T extends MMOClient<?>> extends AbstractPacket<T> {
 	protected T writeClient;
 	
+	// Set when the packet goes to several clients and its content doesn't depend on them
+	private boolean broadcast;
+	
+	// Plaintext body serialized by the first receiver of a broadcast, reused by all the others
+	private volatile byte[] sharedBody;
+	
 	public final T getWriteClient() {
 		return writeClient;
 	}
 	
+	/**
+	 * Packets whose content depends on the client they are written to (e.g. they read {@link #getWriteClient()} or
+	 * {@link #getClient()} while writing) must return true, so they are always written once per client.
+	 */
+	public boolean isReceiverDependent() {
+		return false;
+	}
+	
+	/**
+	 * Packets that only carry the latest state of something (position, status...) can return a non negative key here, built
+	 * from the object they are about and the kind of state they carry. When a client falls behind, a queued packet is replaced
+	 * by a newer one with the same key instead of queuing both.
+	 *
+	 * @return the supersede key of this packet, or -1 if it can't be superseded
+	 */
+	public long getSupersedeKey() {
+		return -1;
+	}
+	
+	/**
+	 * Packets with different supersede keys that must still keep their order, such as two kinds of position packets about the
+	 * same object, return the same group here. A queued packet is only replaced if no other packet of its group came after it.
+	 *
+	 * @return the supersede group of this packet, the supersede key by default
+	 */
+	public long getSupersedeGroup() {
+		return getSupersedeKey();
+	}
+	
+	/**
+	 * Marks this packet as going to several clients: its body will be serialized only once and each connection
+	 * will just copy and encrypt it. Receiver dependent packets are left untouched.
+	 */
+	public final void setBroadcast() {
+		if (!isReceiverDependent()) {
+			broadcast = true;
+		}
+	}
+	
+	public final boolean isBroadcast() {
+		return broadcast;
+	}
+	
+	/**
+	 * Writes the plaintext body of this packet for the given client into the buffer.
+	 * The same packet can be queued on connections owned by different selector threads, so the write itself is
+	 * serialized on the packet.
+	 */
+	final void writeTo(final T client, final ByteBuffer buffer) {
+		byte[] body = sharedBody;
+		if (body == null) {
+			synchronized (this) {
+				body = sharedBody;
+				if (body == null) {
+					final int start = buffer.position();
+					writeClient = client;
+					buf = buffer;
+					write();
+					buf = null;
+					writeClient = null;
+					
+					if (broadcast) {
+						final int end = buffer.position();
+						body = new byte[end - start];
+						buffer.position(start);
+						buffer.get(body);
+						sharedBody = body;
+					}
+					return;
+				}
+			}
+		}
+		
+		buffer.put(body);
+	}
+	
 	protected final void putInt(final int value) {
 		buf.putInt(value);
 	}
@@ -0,0 +1,451 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.util;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent hash map with primitive int keys, meant for the many small object id keyed maps
+ * (known lists, world regions) where a ConcurrentHashMap costs a boxed Integer and a Node per entry.<br>
+ * <br>
+ * Keys and values are stored in two open addressing (linear probing) arrays. Reads and iterations
+ * are lock free, writes are synchronized on the map. A removed entry leaves its key in place with
+ * a null value, a slot never changes of key until the next rehash, which copies the live entries
+ * to a new table. So readers always see a consistent key/value pair, and iterators are weakly
+ * consistent like the ConcurrentHashMap ones: they never throw ConcurrentModificationException
+ * and reflect the table at the time they were created.<br>
+ * <br>
+ * The int methods (get(int), put(int, V), remove(int)...) are picked by the compiler over the
+ * Map ones when called with an int, so existing callers avoid boxing without changes. With Integer
+ * values, a put of two ints is ambiguous and needs an explicit Integer value.<br>
+ * An empty map shares a single read only table and allocates its own on the first put, as most
+ * known lists of NPCs far from players stay empty.<br>
+ * Integer.MIN_VALUE can't be used as key and null values are not allowed.
+ *
+ * @param <V> type of the values
+ */
+public final class ConcurrentIntObjectHashMap<V> extends AbstractMap<Integer, V> {
+	private static final int FREE = Integer.MIN_VALUE;
+	private static final int INITIAL_CAPACITY = 8;
+
+	private static final class Table<V> {
+		final AtomicIntegerArray keys;
+		final AtomicReferenceArray<V> values;
+		final int mask;
+		final int threshold;
+
+		Table(int capacity) {
+			int[] freeKeys = new int[capacity];
+			Arrays.fill(freeKeys, FREE);
+			keys = new AtomicIntegerArray(freeKeys);
+			values = new AtomicReferenceArray<>(capacity);
+			mask = capacity - 1;
+			// 0 for the shared empty table, so the first put always rehashes out of it
+			threshold = capacity * 3 >> 2;
+		}
+	}
+
+	private static final Table<Object> EMPTY = new Table<>(1);
+
+	private volatile Table<V> table;
+	private volatile int size;
+	// Slots holding a key, live or removed, guarded by this
+	private int used;
+
+	private Set<Integer> keySet;
+	private Collection<V> values;
+	private Set<Map.Entry<Integer, V>> entrySet;
+
+	public ConcurrentIntObjectHashMap() {
+		this(0);
+	}
+
+	public ConcurrentIntObjectHashMap(int expectedSize) {
+		table = expectedSize > 0 ? new Table<>(capacityFor(expectedSize)) : empty();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> Table<V> empty() {
+		return (Table<V>) EMPTY;
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = INITIAL_CAPACITY;
+		while (capacity * 3 >> 2 <= expectedSize) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static int hash(int key) {
+		// object ids are sequential, spread them over the table
+		int h = key * 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public V get(int key) {
+		final Table<V> t = table;
+		for (int i = hash(key) & t.mask; ; i = i + 1 & t.mask) {
+			int k = t.keys.get(i);
+			if (k == key) {
+				return t.values.get(i);
+			}
+			if (k == FREE) {
+				return null;
+			}
+		}
+	}
+
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	public synchronized V put(int key, V value) {
+		return put(key, value, false);
+	}
+
+	public synchronized V putIfAbsent(int key, V value) {
+		return put(key, value, true);
+	}
+
+	private V put(int key, V value, boolean onlyIfAbsent) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		if (key == FREE) {
+			throw new IllegalArgumentException("Invalid key " + key);
+		}
+
+		Table<V> t = table;
+		int i = hash(key) & t.mask;
+		for (; ; i = i + 1 & t.mask) {
+			int k = t.keys.get(i);
+			if (k == key) {
+				V old = t.values.get(i);
+				if (old == null) {
+					size++;
+				} else if (onlyIfAbsent) {
+					return old;
+				}
+				t.values.set(i, value);
+				return old;
+			}
+			if (k == FREE) {
+				break;
+			}
+		}
+
+		if (used >= t.threshold) {
+			t = rehash(size + 1);
+			for (i = hash(key) & t.mask; t.keys.get(i) != FREE; i = i + 1 & t.mask) {
+				// find a free slot, the key can't be there
+			}
+		}
+
+		// key first: a reader seeing the key before the value just finds the entry absent
+		t.keys.set(i, key);
+		t.values.set(i, value);
+		used++;
+		size++;
+		return null;
+	}
+
+	public synchronized V remove(int key) {
+		final Table<V> t = table;
+		for (int i = hash(key) & t.mask; ; i = i + 1 & t.mask) {
+			int k = t.keys.get(i);
+			if (k == key) {
+				V old = t.values.get(i);
+				if (old != null) {
+					t.values.set(i, null);
+					if (--size == 0) {
+						// start again on a clean table instead of probing over removed keys
+						table = empty();
+						used = 0;
+					}
+				}
+				return old;
+			}
+			if (k == FREE) {
+				return null;
+			}
+		}
+	}
+
+	public synchronized boolean remove(int key, Object value) {
+		V current = get(key);
+		if (current == null || !current.equals(value)) {
+			return false;
+		}
+		remove(key);
+		return true;
+	}
+
+	@Override
+	public synchronized void clear() {
+		table = empty();
+		used = 0;
+		size = 0;
+	}
+
+	private Table<V> rehash(int minSize) {
+		final Table<V> old = table;
+		final Table<V> t = new Table<>(capacityFor(minSize << 1));
+		for (int j = 0; j <= old.mask; j++) {
+			V value = old.values.get(j);
+			if (value == null) {
+				continue;
+			}
+
+			int key = old.keys.get(j);
+			int i = hash(key) & t.mask;
+			while (t.keys.get(i) != FREE) {
+				i = i + 1 & t.mask;
+			}
+			t.keys.set(i, key);
+			t.values.set(i, value);
+		}
+
+		used = size;
+		table = t;
+		return t;
+	}
+
+	// Map<Integer, V> methods, with boxed keys
+
+	@Override
+	public V get(Object key) {
+		return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public V put(Integer key, V value) {
+		return put(key.intValue(), value);
+	}
+
+	@Override
+	public V putIfAbsent(Integer key, V value) {
+		return putIfAbsent(key.intValue(), value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		return key instanceof Integer && remove(((Integer) key).intValue(), value);
+	}
+
+	@Override
+	public Set<Integer> keySet() {
+		if (keySet == null) {
+			keySet = new AbstractSet<Integer>() {
+				@Override
+				public Iterator<Integer> iterator() {
+					return new TableIterator<Integer>() {
+						@Override
+						Integer current() {
+							return lastKey;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					return containsKey(o);
+				}
+
+				@Override
+				public boolean remove(Object o) {
+					return ConcurrentIntObjectHashMap.this.remove(o) != null;
+				}
+
+				@Override
+				public void clear() {
+					ConcurrentIntObjectHashMap.this.clear();
+				}
+			};
+		}
+		return keySet;
+	}
+
+	@Override
+	public Collection<V> values() {
+		if (values == null) {
+			values = new AbstractCollection<V>() {
+				@Override
+				public Iterator<V> iterator() {
+					return new TableIterator<V>() {
+						@Override
+						V current() {
+							return lastValue;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					return containsValue(o);
+				}
+
+				@Override
+				public void clear() {
+					ConcurrentIntObjectHashMap.this.clear();
+				}
+			};
+		}
+		return values;
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<Integer, V>>() {
+				@Override
+				public Iterator<Map.Entry<Integer, V>> iterator() {
+					return new TableIterator<Map.Entry<Integer, V>>() {
+						@Override
+						Map.Entry<Integer, V> current() {
+							return new SimpleImmutableEntry<>(lastKey, lastValue);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					if (!(o instanceof Map.Entry)) {
+						return false;
+					}
+					Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+					V value = get(e.getKey());
+					return value != null && value.equals(e.getValue());
+				}
+
+				@Override
+				public boolean remove(Object o) {
+					if (!(o instanceof Map.Entry) || !(((Map.Entry<?, ?>) o).getKey() instanceof Integer)) {
+						return false;
+					}
+					Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+					return ConcurrentIntObjectHashMap.this.remove(((Integer) e.getKey()).intValue(), e.getValue());
+				}
+
+				@Override
+				public void clear() {
+					ConcurrentIntObjectHashMap.this.clear();
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Weakly consistent iterator over the table at the time of its creation.
+	 */
+	private abstract class TableIterator<E> implements Iterator<E> {
+		private final Table<V> t = table;
+		private int index = -1;
+		private int nextKey;
+		private V nextValue;
+		int lastKey;
+		V lastValue;
+
+		TableIterator() {
+			advance();
+		}
+
+		private void advance() {
+			while (++index <= t.mask) {
+				V value = t.values.get(index);
+				if (value != null) {
+					nextKey = t.keys.get(index);
+					nextValue = value;
+					return;
+				}
+			}
+			nextValue = null;
+		}
+
+		abstract E current();
+
+		@Override
+		public boolean hasNext() {
+			return nextValue != null;
+		}
+
+		@Override
+		public E next() {
+			if (nextValue == null) {
+				throw new NoSuchElementException();
+			}
+			lastKey = nextKey;
+			lastValue = nextValue;
+			advance();
+			return current();
+		}
+
+		@Override
+		public void remove() {
+			if (lastValue == null) {
+				throw new IllegalStateException();
+			}
+			ConcurrentIntObjectHashMap.this.remove(lastKey, lastValue);
+			lastValue = null;
+		}
+	}
+}
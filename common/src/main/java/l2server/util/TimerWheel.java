@@ -0,0 +1,476 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed hierarchical timing wheel, for the huge amount of short lived or cancelled timers of the game
+ * (AI think tasks, effects...) that a ScheduledThreadPoolExecutor keeps in a locked binary heap.<br>
+ * <br>
+ * Time is cut in ticks of a fixed duration. A timer due in less than 256 ticks is put in the slot of its
+ * tick in the first wheel, later ones go in one of the three coarser wheels of 64 slots and are moved
+ * down (cascaded) when their slot comes up. Timers due in more than 2^26 ticks wait in the last wheel.<br>
+ * <br>
+ * Only the wheel thread touches the slots: schedule and cancel just queue the timer, so both are O(1) and
+ * lock free. On each tick the expired timers are handed to the executor of their category in batches.
+ * Fixed rate timers are queued again by the worker once they ran, like in a ScheduledThreadPoolExecutor
+ * they never run concurrently with themselves and a late run doesn't shift the next ones.
+ */
+public final class TimerWheel {
+	private static final Logger log = LoggerFactory.getLogger(TimerWheel.class.getName());
+
+	private static final int WHEEL0_BITS = 8;
+	private static final int WHEELN_BITS = 6;
+	private static final int WHEELS = 4;
+	private static final int WHEEL0_MASK = (1 << WHEEL0_BITS) - 1;
+	private static final int WHEELN_MASK = (1 << WHEELN_BITS) - 1;
+	private static final long MAX_TICKS = 1L << WHEEL0_BITS + (WHEELS - 1) * WHEELN_BITS;
+
+	// Expired timers handed to a worker thread at once
+	private static final int BATCH_SIZE = 64;
+
+	private static final int WAITING = 0;
+	private static final int RUNNING = 1;
+	private static final int CANCELLED = 2;
+	private static final int DONE = 3;
+
+	private final String name;
+	private final LongSupplier clock;
+	private final long tickNanos;
+	private final long startTime;
+	private final Slot[][] wheels = new Slot[WHEELS][];
+	private final List<Category> categories = new ArrayList<>();
+
+	private final ConcurrentLinkedQueue<Timer> scheduled = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<Timer> cancelled = new ConcurrentLinkedQueue<>();
+
+	private final Thread thread;
+	private volatile boolean stopped;
+	// Next tick to process, only written by the wheel thread
+	private volatile long tick;
+	private final LongAdder lateTicks = new LongAdder();
+
+	/**
+	 * @param name       name of the wheel thread
+	 * @param tickMillis duration of a tick, the precision of the timers
+	 */
+	public TimerWheel(String name, long tickMillis) {
+		this(name, tickMillis, System::nanoTime);
+	}
+
+	/**
+	 * @param clock time source in nanoseconds, replaced by the tests to drive the wheel without its thread
+	 */
+	TimerWheel(String name, long tickMillis, LongSupplier clock) {
+		this.name = name;
+		this.clock = clock;
+		tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		startTime = clock.getAsLong();
+		for (int i = 0; i < WHEELS; i++) {
+			wheels[i] = new Slot[i == 0 ? 1 << WHEEL0_BITS : 1 << WHEELN_BITS];
+			for (int j = 0; j < wheels[i].length; j++) {
+				wheels[i][j] = new Slot();
+			}
+		}
+
+		thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+	}
+
+	/**
+	 * Create a category of timers, run by the given executor. Must be called before start.
+	 */
+	public Category createCategory(String categoryName, Executor executor) {
+		final Category category = new Category(categoryName, executor);
+		categories.add(category);
+		return category;
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	 * Stop the wheel thread, the pending timers never run.
+	 */
+	public void stop() {
+		stopped = true;
+		thread.interrupt();
+	}
+
+	public String[] getStats() {
+		final String[] stats = new String[categories.size() + 1];
+		stats[0] = name + ": tick(ms): " + TimeUnit.NANOSECONDS.toMillis(tickNanos) + ", ticks: " + tick + ", late ticks: " + lateTicks.sum();
+		for (int i = 0; i < categories.size(); i++) {
+			final Category category = categories.get(i);
+			stats[i + 1] = " + " + category.name + ": pending: " + category.getPending() + ", fired: " + category.fired.sum() + ", batches: " +
+					category.batches.sum() + ", cancelled: " + category.cancels.sum();
+		}
+		return stats;
+	}
+
+	private long toTick(long time) {
+		return (time - startTime + tickNanos - 1) / tickNanos;
+	}
+
+	private void run() {
+		while (!stopped) {
+			final long wait = advance(clock.getAsLong());
+			if (wait > 0) {
+				LockSupport.parkNanos(this, wait);
+			}
+		}
+	}
+
+	/**
+	 * Process the next tick if it is due at the given time.
+	 *
+	 * @return 0 if a tick was processed, else the time to wait for the next one (ns)
+	 */
+	long advance(long now) {
+		final long wait = startTime + tick * tickNanos - now;
+		if (wait > 0) {
+			return wait;
+		}
+		if (-wait > tickNanos) {
+			lateTicks.increment();
+		}
+
+		try {
+			processTick(tick);
+		} catch (Throwable e) {
+			log.warn(name + ": error on tick " + tick, e);
+		}
+		tick++;
+		return 0;
+	}
+
+	private void processTick(long currentTick) {
+		Timer timer;
+		while ((timer = scheduled.poll()) != null) {
+			if (timer.state == WAITING) {
+				place(timer, currentTick);
+			}
+		}
+		while ((timer = cancelled.poll()) != null) {
+			if (timer.slot != null) {
+				timer.slot.remove(timer);
+			}
+		}
+
+		// Move the coarser slots starting now down the wheels, each wheel when the finer one wrapped
+		if ((currentTick & WHEEL0_MASK) == 0) {
+			int shift = WHEEL0_BITS;
+			for (int i = 1; i < WHEELS; i++) {
+				final int index = (int) (currentTick >>> shift) & WHEELN_MASK;
+				cascade(wheels[i][index], currentTick);
+				if (index != 0) {
+					break;
+				}
+				shift += WHEELN_BITS;
+			}
+		}
+
+		final Slot slot = wheels[0][(int) currentTick & WHEEL0_MASK];
+		for (timer = slot.head; timer != null; ) {
+			final Timer next = timer.next;
+			slot.remove(timer);
+			if (timer.state == WAITING) {
+				timer.category.expired.add(timer);
+			}
+			timer = next;
+		}
+
+		for (Category category : categories) {
+			category.dispatch();
+		}
+	}
+
+	private void cascade(Slot slot, long currentTick) {
+		for (Timer timer = slot.head; timer != null; ) {
+			final Timer next = timer.next;
+			slot.remove(timer);
+			if (timer.state == WAITING) {
+				place(timer, currentTick);
+			}
+			timer = next;
+		}
+	}
+
+	private void place(Timer timer, long currentTick) {
+		long deadline = Math.max(toTick(timer.deadline), currentTick);
+		long delta = deadline - currentTick;
+		if (delta >= MAX_TICKS) {
+			// Waits in the last wheel and gets placed again when its slot comes up
+			deadline = currentTick + MAX_TICKS - 1;
+			delta = MAX_TICKS - 1;
+		}
+
+		if (delta < 1 << WHEEL0_BITS) {
+			wheels[0][(int) deadline & WHEEL0_MASK].add(timer);
+			return;
+		}
+		int shift = WHEEL0_BITS;
+		for (int i = 1; i < WHEELS; i++) {
+			if (delta < 1L << shift + WHEELN_BITS || i == WHEELS - 1) {
+				wheels[i][(int) (deadline >>> shift) & WHEELN_MASK].add(timer);
+				return;
+			}
+			shift += WHEELN_BITS;
+		}
+	}
+
+	/**
+	 * Doubly linked list of the timers of a wheel slot, only used by the wheel thread.
+	 */
+	private static final class Slot {
+		Timer head;
+		Timer tail;
+
+		void add(Timer timer) {
+			timer.slot = this;
+			timer.prev = tail;
+			timer.next = null;
+			if (tail == null) {
+				head = timer;
+			} else {
+				tail.next = timer;
+			}
+			tail = timer;
+		}
+
+		void remove(Timer timer) {
+			if (timer.prev == null) {
+				head = timer.next;
+			} else {
+				timer.prev.next = timer.next;
+			}
+			if (timer.next == null) {
+				tail = timer.prev;
+			} else {
+				timer.next.prev = timer.prev;
+			}
+			timer.slot = null;
+			timer.prev = null;
+			timer.next = null;
+		}
+	}
+
+	/**
+	 * Timers run by the same executor, with their own pending count.
+	 */
+	public final class Category {
+		private final String name;
+		private final Executor executor;
+		private final AtomicInteger pending = new AtomicInteger();
+		private final LongAdder fired = new LongAdder();
+		private final LongAdder batches = new LongAdder();
+		private final LongAdder cancels = new LongAdder();
+		// Timers expired on the current tick, only used by the wheel thread
+		private List<Timer> expired = new ArrayList<>();
+
+		private Category(String name, Executor executor) {
+			this.name = name;
+			this.executor = executor;
+		}
+
+		public ScheduledFuture<?> schedule(Runnable task, long delay) {
+			return add(new Timer(this, task, clock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(delay), 0));
+		}
+
+		public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initial, long period) {
+			return add(new Timer(this, task, clock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(initial), TimeUnit.MILLISECONDS.toNanos(period)));
+		}
+
+		/**
+		 * Run a task on the executor of this category without delay.
+		 */
+		public void execute(Runnable task) {
+			executor.execute(task);
+		}
+
+		public int getPending() {
+			return pending.get();
+		}
+
+		private Timer add(Timer timer) {
+			if (stopped) {
+				throw new RejectedExecutionException(TimerWheel.this.name + " is stopped");
+			}
+			pending.incrementAndGet();
+			scheduled.add(timer);
+			return timer;
+		}
+
+		private void dispatch() {
+			if (expired.isEmpty()) {
+				return;
+			}
+
+			final List<Timer> timers = expired;
+			expired = new ArrayList<>();
+			fired.add(timers.size());
+			for (int i = 0; i < timers.size(); i += BATCH_SIZE) {
+				final List<Timer> batch = timers.subList(i, Math.min(i + BATCH_SIZE, timers.size()));
+				batches.increment();
+				try {
+					executor.execute(() -> {
+						for (Timer timer : batch) {
+							timer.run();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					// shutdown, ignore
+				}
+			}
+		}
+	}
+
+	private static final AtomicIntegerFieldUpdater<Timer> STATE = AtomicIntegerFieldUpdater.newUpdater(Timer.class, "state");
+
+	private final class Timer implements ScheduledFuture<Object>, Runnable {
+		private final Category category;
+		private final Runnable task;
+		private final long period;
+		private volatile long deadline;
+		// Not private: before Java 11 the updater can't reach a private field of a nested class
+		volatile int state = WAITING;
+
+		// Position in the wheels, only used by the wheel thread
+		private Slot slot;
+		private Timer prev;
+		private Timer next;
+
+		Timer(Category category, Runnable task, long deadline, long period) {
+			this.category = category;
+			this.task = task;
+			this.deadline = deadline;
+			this.period = period;
+		}
+
+		@Override
+		public void run() {
+			if (!STATE.compareAndSet(this, WAITING, RUNNING)) {
+				return;
+			}
+
+			try {
+				task.run();
+			} catch (Throwable e) {
+				log.warn(category.name + ": error in " + task, e);
+			}
+
+			if (period > 0) {
+				deadline += period;
+				if (STATE.compareAndSet(this, RUNNING, WAITING)) {
+					scheduled.add(this);
+				}
+			} else if (STATE.compareAndSet(this, RUNNING, DONE)) {
+				category.pending.decrementAndGet();
+				signal();
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			for (; ; ) {
+				final int current = state;
+				if (current == CANCELLED || current == DONE) {
+					return false;
+				}
+				if (STATE.compareAndSet(this, current, CANCELLED)) {
+					category.pending.decrementAndGet();
+					category.cancels.increment();
+					if (current == WAITING) {
+						cancelled.add(this);
+					}
+					signal();
+					return true;
+				}
+			}
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return state == CANCELLED;
+		}
+
+		@Override
+		public boolean isDone() {
+			return state >= CANCELLED;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deadline - clock.getAsLong(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			return o == this ? 0 : Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+		}
+
+		private synchronized void signal() {
+			notifyAll();
+		}
+
+		@Override
+		public synchronized Object get() throws InterruptedException {
+			while (!isDone()) {
+				wait();
+			}
+			if (isCancelled()) {
+				throw new CancellationException();
+			}
+			return null;
+		}
+
+		@Override
+		public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			final long end = System.nanoTime() + unit.toNanos(timeout);
+			while (!isDone()) {
+				final long wait = end - System.nanoTime();
+				if (wait <= 0) {
+					throw new TimeoutException();
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, wait);
+			}
+			if (isCancelled()) {
+				throw new CancellationException();
+			}
+			return null;
+		}
+	}
+}
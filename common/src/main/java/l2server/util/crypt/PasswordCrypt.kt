@@ -8,8 +8,11 @@ import java.security.MessageDigest
  */
 object PasswordCrypt {
 
+	// MessageDigest isn't thread safe, each thread hashing passwords keeps its own
+	private val digests = ThreadLocal.withInitial { MessageDigest.getInstance("SHA-512") }
+
 	fun encryptPassword(username: String, password: String): ByteArray {
-		val md = MessageDigest.getInstance("SHA-512")
+		val md = digests.get()
 		val raw = (password.toLowerCase() + "XjCSl+n/mpc4" + username.toLowerCase()).toByteArray(charset("UTF-8"))
 		return md.digest(raw)
 	}
@@ -23,6 +23,7 @@ import l2server.util.TreeNode
 import l2server.util.concurrent.ThreadPool
 import l2server.util.loader.annotations.Load
 import l2server.util.loader.annotations.Reload
+import java.io.File
 import java.io.IOException
 import java.lang.reflect.InvocationTargetException
 import java.lang.reflect.Modifier
@@ -32,7 +33,12 @@ import java.nio.file.StandardOpenOption
 import java.util.*
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import java.util.function.Function
 
 /**
  * @author Pere
@@ -43,6 +49,20 @@ object Loader {
 	private val reloads = HashMap<String, LoadHolder>()
 	private val executionTimes = ConcurrentHashMap<LoadHolder, Long>()
 
+	/**
+	 * A loader or file load, with its start and end in nanoseconds since the load started.
+	 */
+	private class Timing(val name: String, val loader: LoadHolder?, val file: Boolean, val thread: String, val start: Long, val end: Long) {
+		val duration: Long
+			get() = end - start
+	}
+
+	@Volatile
+	private var startTime = System.nanoTime()
+	private val loaderTimings = ConcurrentLinkedQueue<Timing>()
+	private val fileTimings = ConcurrentLinkedQueue<Timing>()
+	private val currentLoadHolder = ThreadLocal<LoadHolder>()
+
 	fun initialize(prefix: String) {
 		try {
             val loadMethods = ClassPathUtil.getAllMethodsAnnotatedWith(prefix, Load::class.java)
@@ -131,6 +151,7 @@ object Loader {
 	}
 
 	fun runAsync(): CompletableFuture<Void> {
+		resetTimings()
 		val loadGroupCompletableFutures = LinkedList<CompletableFuture<Void>>()
 		val previousLoadGroupCompletableFuture = loadGroupCompletableFutures.peekLast()
 		val completableFutures = HashMap<LoadHolder, CompletableFuture<Void>>()
@@ -157,6 +178,7 @@ object Loader {
 	}
 
 	fun run() {
+		resetTimings()
 		val runNodes = HashSet<LoadHolder>()
 		for (loadTreeNode in loadTrees) {
 			for (treeNode in loadTreeNode.postOrderTraversal()) {
@@ -167,12 +189,25 @@ object Loader {
 		}
 	}
 
+	private fun resetTimings() {
+		startTime = System.nanoTime()
+		loaderTimings.clear()
+		fileTimings.clear()
+	}
+
 	@Throws(RuntimeException::class)
 	private fun runTreeNode(treeNode: TreeNode<LoadHolder>) {
 		try {
-			val startTime = System.nanoTime()
-			treeNode.value.call()
-			executionTimes[treeNode.value] = (treeNode.children.map { executionTimes[it.value] ?: 0 }.max() ?: 0) + (System.nanoTime() - startTime)
+			val start = System.nanoTime()
+			currentLoadHolder.set(treeNode.value)
+			try {
+				treeNode.value.call()
+			} finally {
+				currentLoadHolder.remove()
+			}
+			val end = System.nanoTime()
+			executionTimes[treeNode.value] = (treeNode.children.map { executionTimes[it.value] ?: 0 }.max() ?: 0) + (end - start)
+			loaderTimings.add(Timing(treeNode.value.toString(), treeNode.value, false, Thread.currentThread().name, start - startTime, end - startTime))
 		} catch (e: IllegalAccessException) {
 			throw RuntimeException("Calling " + treeNode.value + " failed", e)
 		} catch (e: InvocationTargetException) {
@@ -181,6 +216,127 @@ object Loader {
 
 	}
 
+	/**
+	 * Parses the given files concurrently on the thread pool, for loaders reading many files.<br>
+	 * The calling thread parses files as well, so this can't starve the pool even when every pool thread is
+	 * running a loader. The results are returned in the order of the files, so the caller can merge them in
+	 * the same order as a sequential load would. The time spent on each file is recorded for the load reports.
+	 *
+	 * @param files  the files to parse
+	 * @param parser the parsing of a single file, called concurrently for different files
+	 * @return the result of each file, in the order of the files
+	 * @throws RuntimeException if the parsing of any file failed, once every file has been parsed
+	 */
+	@JvmStatic
+	fun <T> parseFiles(files: List<File>, parser: Function<File, T>): List<T> {
+		val loadHolder = currentLoadHolder.get()
+		val results = arrayOfNulls<Any>(files.size)
+		val next = AtomicInteger()
+		val pending = CountDownLatch(files.size)
+		val failure = AtomicReference<Throwable>()
+		val task = Runnable {
+			while (true) {
+				val index = next.getAndIncrement()
+				if (index >= files.size) {
+					break
+				}
+
+				val start = System.nanoTime()
+				try {
+					results[index] = parser.apply(files[index])
+				} catch (e: Throwable) {
+					failure.compareAndSet(null, e)
+				} finally {
+					// reloads aren't part of the load reports
+					if (loadHolder != null) {
+						fileTimings.add(Timing(getFileName(files[index]), loadHolder, true, Thread.currentThread().name,
+								start - startTime, System.nanoTime() - startTime))
+					}
+					pending.countDown()
+				}
+			}
+		}
+
+		// helpers starting once every file has been taken just return
+		val helpers = Math.min(files.size - 1, ThreadPool.threadPoolExecutor.maximumPoolSize)
+		for (i in 0 until helpers) {
+			ThreadPool.threadPoolExecutor.execute(task)
+		}
+		task.run()
+		pending.await()
+
+		val error = failure.get()
+		if (error != null) {
+			throw RuntimeException("Failed to parse the files of " + (loadHolder ?: "a reload"), error)
+		}
+
+		@Suppress("UNCHECKED_CAST")
+		return results.asList() as List<T>
+	}
+
+	private fun getFileName(file: File): String {
+		val parent = file.parentFile
+		return if (parent != null) parent.name + "/" + file.name else file.name
+	}
+
+	/**
+	 * @return the longest dependency chain of the last load, with the slowest loaders and files
+	 */
+	fun getCriticalPathReport(limit: Int = 10): String {
+		val sj = StringJoiner(System.lineSeparator())
+		val end = (loaderTimings.map { it.end } + fileTimings.map { it.end }).max() ?: 0L
+		sj.add("Load took " + TimeUnit.NANOSECONDS.toMillis(end) + " ms")
+
+		// follow the dependencies which took the longest to be ready
+		val selfTimes = loaderTimings.associateBy({ it.loader }, { it.duration })
+		var node = loadTrees.maxBy { executionTimes[it.value] ?: 0L }
+		val path = LinkedList<TreeNode<LoadHolder>>()
+		while (node != null) {
+			path.addFirst(node)
+			node = node.children.maxBy { executionTimes[it.value] ?: 0L }
+		}
+		if (!path.isEmpty()) {
+			sj.add("Critical path, " + TimeUnit.NANOSECONDS.toMillis(executionTimes[path.last.value] ?: 0L) + " ms:")
+			for (pathNode in path) {
+				sj.add("    " + pathNode.value + " " + TimeUnit.NANOSECONDS.toMillis(selfTimes[pathNode.value] ?: 0L) + " ms")
+			}
+		}
+
+		sj.add("Slowest loaders:")
+		for (timing in loaderTimings.sortedByDescending { it.duration }.take(limit)) {
+			val files = fileTimings.filter { it.loader == timing.loader }
+			sj.add("    " + timing.name + " " + TimeUnit.NANOSECONDS.toMillis(timing.duration) + " ms" +
+					if (files.isEmpty()) "" else " (" + files.size + " files, " + TimeUnit.NANOSECONDS.toMillis(files.map { it.duration }.sum()) + " ms parsing)")
+		}
+
+		if (!fileTimings.isEmpty()) {
+			sj.add("Slowest files:")
+			for (timing in fileTimings.sortedByDescending { it.duration }.take(limit)) {
+				sj.add("    " + timing.name + " " + TimeUnit.NANOSECONDS.toMillis(timing.duration) + " ms (" + timing.loader + ")")
+			}
+		}
+		return sj.toString()
+	}
+
+	/**
+	 * @return every loader and parsed file of the last load, by start time, as start, end and duration in ms, thread and name
+	 */
+	fun getTimelineString(): String {
+		val sj = StringJoiner(System.lineSeparator())
+		val timings = (loaderTimings + fileTimings).sortedWith(compareBy<Timing> { it.start }.thenBy { it.name })
+		for (timing in timings) {
+			sj.add(String.format("%8d %8d %8d  %-8s %s%s", TimeUnit.NANOSECONDS.toMillis(timing.start),
+					TimeUnit.NANOSECONDS.toMillis(timing.end), TimeUnit.NANOSECONDS.toMillis(timing.duration), timing.thread,
+					if (timing.file) "    " else "", timing.name))
+		}
+		return sj.toString()
+	}
+
+	@Throws(IOException::class)
+	fun writeTimelineToFile(path: Path) {
+		Files.write(path, getTimelineString().toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+	}
+
 	fun getDependencyTreeString(): String {
 		val sj = StringJoiner(System.lineSeparator())
 		val loadTreesIterator = loadTrees.sortedBy { executionTimes[it.value] ?: 0L }.iterator()
@@ -0,0 +1,224 @@
+package l2server.util.xml
+
+import l2server.Config
+import org.slf4j.LoggerFactory
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.*
+import java.util.zip.CRC32
+
+/**
+ * Compiled cache of the datapack XML files.<br>
+ * <br>
+ * After a datapack file is parsed, its tree is written to a binary snapshot under cache/xml in the datapack root,
+ * and on the next boots the snapshot is memory mapped and read instead of parsing the XML again.
+ * A snapshot is used while the XML keeps its size and modification time, or its content checksum when only the
+ * modification time changed (a checkout or a copy). Otherwise the XML is parsed and the snapshot rebuilt.
+ * Snapshots carry a format version and a checksum of their own content, and are simply rebuilt when any of them
+ * doesn't match.
+ */
+internal object XmlCache {
+	private val log = LoggerFactory.getLogger(XmlCache::class.java.name)
+
+	// "L2XC"
+	private const val MAGIC = 0x4C325843
+	// Increase on any change of the format below
+	private const val VERSION = 1
+	// magic, version, source length, source modification time, source checksum, content checksum
+	private const val HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4
+
+	private class Snapshot(val sourceLength: Long, val sourceModified: Long, val sourceChecksum: Int, val content: ByteBuffer)
+
+	fun load(file: File, parser: (InputStream) -> XmlNode): XmlNode {
+		val cacheFile = getCacheFile(file) ?: return FileInputStream(file).use(parser)
+
+		val length = file.length()
+		val modified = file.lastModified()
+		val snapshot = open(cacheFile)
+		if (snapshot != null && snapshot.sourceLength == length && snapshot.sourceModified == modified) {
+			val root = read(cacheFile, snapshot)
+			if (root != null) {
+				return root
+			}
+		}
+
+		val bytes = Files.readAllBytes(file.toPath())
+		val checksum = checksum(ByteBuffer.wrap(bytes))
+		if (snapshot != null && snapshot.sourceLength == length && snapshot.sourceChecksum == checksum) {
+			val root = read(cacheFile, snapshot)
+			if (root != null) {
+				// same content, only store the new modification time
+				write(cacheFile, length, modified, checksum, root)
+				return root
+			}
+		}
+
+		val root = ByteArrayInputStream(bytes).use(parser)
+		write(cacheFile, length, modified, checksum, root)
+		log.debug("Compiled " + file.path + " to " + cacheFile.path)
+		return root
+	}
+
+	fun isCached(file: File) = getCacheFile(file) != null
+
+	/**
+	 * @return the snapshot file of the given XML, or null if it isn't a cached datapack file
+	 */
+	private fun getCacheFile(file: File): File? {
+		if (!Config.DATAPACK_CACHE) {
+			return null
+		}
+
+		val root = Config.DATAPACK_ROOT.canonicalPath + File.separator
+		val path = file.canonicalPath
+		if (!path.startsWith(root)) {
+			return null
+		}
+
+		return File(Config.DATAPACK_ROOT, "cache/xml/" + path.substring(root.length) + ".bin")
+	}
+
+	private fun checksum(buffer: ByteBuffer): Int {
+		val crc = CRC32()
+		crc.update(buffer)
+		return crc.value.toInt()
+	}
+
+	private fun open(cacheFile: File): Snapshot? {
+		if (!cacheFile.exists()) {
+			return null
+		}
+
+		try {
+			FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ).use { channel ->
+				// the mapping stays valid after the channel is closed
+				val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+				if (buffer.remaining() < HEADER_SIZE || buffer.int != MAGIC || buffer.int != VERSION) {
+					return null
+				}
+
+				return Snapshot(buffer.long, buffer.long, buffer.int, buffer)
+			}
+		} catch (e: IOException) {
+			log.warn("Could not open " + cacheFile.path, e)
+			return null
+		}
+	}
+
+	private fun read(cacheFile: File, snapshot: Snapshot): XmlNode? {
+		val buffer = snapshot.content.duplicate()
+		try {
+			val contentChecksum = buffer.int
+			if (checksum(buffer.slice()) != contentChecksum) {
+				log.warn("Corrupted " + cacheFile.path + ", rebuilding it")
+				return null
+			}
+
+			val strings = Array(buffer.int) {
+				val bytes = ByteArray(buffer.int)
+				buffer.get(bytes)
+				String(bytes, Charsets.UTF_8)
+			}
+			return readNode(buffer, strings, arrayOfNulls(strings.size))
+		} catch (e: RuntimeException) {
+			log.warn("Could not read " + cacheFile.path + ", rebuilding it", e)
+			return null
+		}
+	}
+
+	private fun readNode(buffer: ByteBuffer, strings: Array<String>, names: Array<String?>): XmlNode {
+		val name = getName(buffer.int, strings, names)
+		val textIndex = buffer.int
+		val attributeCount = buffer.int
+		val attributeNames = Array(attributeCount) { "" }
+		val attributeValues = Array(attributeCount) { "" }
+		for (i in 0 until attributeCount) {
+			attributeNames[i] = getName(buffer.int, strings, names)
+			attributeValues[i] = strings[buffer.int]
+		}
+
+		val childCount = buffer.int
+		val children = ArrayList<XmlNode>(childCount)
+		for (i in 0 until childCount) {
+			children.add(readNode(buffer, strings, names))
+		}
+
+		return XmlNode(name, if (textIndex < 0) null else strings[textIndex], attributeNames, attributeValues, children)
+	}
+
+	/**
+	 * Element and attribute names are interned, once per string of the snapshot.
+	 */
+	private fun getName(index: Int, strings: Array<String>, names: Array<String?>): String {
+		var name = names[index]
+		if (name == null) {
+			name = strings[index].intern()
+			names[index] = name
+		}
+		return name
+	}
+
+	private fun write(cacheFile: File, sourceLength: Long, sourceModified: Long, sourceChecksum: Int, root: XmlNode) {
+		try {
+			// every distinct string is written once and referenced by its index
+			val stringIndexes = HashMap<String, Int>()
+			val strings = ArrayList<String>()
+			val tree = ByteArrayOutputStream()
+			DataOutputStream(tree).use { writeNode(it, root, stringIndexes, strings) }
+
+			val content = ByteArrayOutputStream(tree.size() + strings.size * 16)
+			DataOutputStream(content).use { out ->
+				out.writeInt(strings.size)
+				for (string in strings) {
+					val bytes = string.toByteArray(Charsets.UTF_8)
+					out.writeInt(bytes.size)
+					out.write(bytes)
+				}
+				tree.writeTo(out)
+			}
+
+			val contentBytes = content.toByteArray()
+			cacheFile.parentFile.mkdirs()
+			val tempFile = File(cacheFile.path + ".tmp")
+			DataOutputStream(BufferedOutputStream(FileOutputStream(tempFile))).use { out ->
+				out.writeInt(MAGIC)
+				out.writeInt(VERSION)
+				out.writeLong(sourceLength)
+				out.writeLong(sourceModified)
+				out.writeInt(sourceChecksum)
+				out.writeInt(checksum(ByteBuffer.wrap(contentBytes)))
+				out.write(contentBytes)
+			}
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+		} catch (e: IOException) {
+			log.warn("Could not write " + cacheFile.path, e)
+		}
+	}
+
+	private fun writeNode(out: DataOutputStream, node: XmlNode, stringIndexes: MutableMap<String, Int>, strings: MutableList<String>) {
+		out.writeInt(indexOf(node.name, stringIndexes, strings))
+		out.writeInt(if (node.text == null) -1 else indexOf(node.text, stringIndexes, strings))
+		out.writeInt(node.attributeCount)
+		for (i in 0 until node.attributeCount) {
+			out.writeInt(indexOf(node.getAttributeName(i), stringIndexes, strings))
+			out.writeInt(indexOf(node.getAttributeValue(i), stringIndexes, strings))
+		}
+
+		val children = node.getChildren()
+		out.writeInt(children.size)
+		for (child in children) {
+			writeNode(out, child, stringIndexes, strings)
+		}
+	}
+
+	private fun indexOf(string: String, stringIndexes: MutableMap<String, Int>, strings: MutableList<String>): Int {
+		return stringIndexes.getOrPut(string) {
+			strings.add(string)
+			strings.size - 1
+		}
+	}
+}
@@ -1,13 +1,18 @@
 package l2server.util.xml
 
-import org.w3c.dom.Node
 import java.io.File
 import java.io.FileInputStream
 import java.io.FileNotFoundException
 import java.io.InputStream
-import javax.xml.parsers.DocumentBuilderFactory
+import java.util.*
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamReader
 
 /**
+ * A loaded XML document. Files are read with a streaming (StAX) parser straight into XmlNodes, without building
+ * a DOM first, or from their compiled cache (see XmlCache).
+ *
  * @author Pere
  */
 class XmlDocument {
@@ -20,9 +25,8 @@ class XmlDocument {
 			throw FileNotFoundException("The following XML could not be loaded: " + file.absolutePath)
 		}
 
-		val stream = FileInputStream(file)
 		try {
-			root = load(stream)
+			root = XmlCache.load(file) { load(it) }
 		} catch (e: Exception) {
 			throw RuntimeException("Failed to load XML file $file", e)
 		}
@@ -34,26 +38,157 @@ class XmlDocument {
 
 	fun getChildren(): List<XmlNode> = root.getChildren()
 
-	private fun load(stream: InputStream): XmlNode {
-		val doc = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder().parse(stream)
+	companion object {
+		private val INPUT_FACTORY = XMLInputFactory.newInstance()
+
+		init {
+			INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+			INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, false)
+		}
 
-		var baseNode: Node? = doc.firstChild
-		while (baseNode != null) {
-			if (baseNode.nodeType == Node.ELEMENT_NODE) {
-				return XmlNode(baseNode)
+		/**
+		 * Iterates the children of the root element of the given file, reading them one at a time, so only the
+		 * current element is in memory instead of the whole document. The result can be iterated only once.
+		 * A file with a compiled cache is read from it instead, which is faster than parsing it again.
+		 */
+		@JvmStatic
+		fun streamChildren(file: File): Iterable<XmlNode> {
+			if (!file.exists()) {
+				throw FileNotFoundException("The following XML could not be loaded: " + file.absolutePath)
+			}
+			if (XmlCache.isCached(file)) {
+				return XmlDocument(file).getChildren()
+			}
+
+			return Iterable {
+				val stream = FileInputStream(file)
+				try {
+					val reader = INPUT_FACTORY.createXMLStreamReader(stream)
+					nextElement(reader)
+					ChildIterator(file, stream, reader)
+				} catch (e: Exception) {
+					stream.close()
+					throw RuntimeException("Failed to load XML file $file", e)
+				}
 			}
-			baseNode = baseNode.nextSibling
 		}
 
-		throw RuntimeException("Tried to load an empty XML document!")
+		private fun load(stream: InputStream): XmlNode {
+			val reader = INPUT_FACTORY.createXMLStreamReader(stream)
+			try {
+				nextElement(reader)
+				return readElement(reader)
+			} finally {
+				reader.close()
+			}
+		}
+
+		/**
+		 * Moves the reader to the next start element.
+		 */
+		private fun nextElement(reader: XMLStreamReader) {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					return
+				}
+			}
+
+			throw RuntimeException("Tried to load an empty XML document!")
+		}
+
+		/**
+		 * Reads the element at the reader position with all its children, leaving the reader on its end element.
+		 */
+		private fun readElement(reader: XMLStreamReader): XmlNode {
+			val name = qualifiedName(reader.prefix, reader.localName)
+
+			// namespace declarations are kept as attributes, like the DOM did
+			val namespaceCount = reader.namespaceCount
+			val attributeCount = namespaceCount + reader.attributeCount
+			val names = Array(attributeCount) { "" }
+			val values = Array(attributeCount) { "" }
+			for (i in 0 until namespaceCount) {
+				names[i] = qualifiedName("xmlns", reader.getNamespacePrefix(i))
+				values[i] = reader.getNamespaceURI(i)
+			}
+			for (i in namespaceCount until attributeCount) {
+				val index = i - namespaceCount
+				names[i] = qualifiedName(reader.getAttributePrefix(index), reader.getAttributeLocalName(index))
+				values[i] = reader.getAttributeValue(index)
+			}
+
+			// the text before the first child element
+			var text: StringBuilder? = null
+			var children: ArrayList<XmlNode>? = null
+			while (true) {
+				when (reader.next()) {
+					XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+						if (children == null) {
+							if (text == null) {
+								text = StringBuilder()
+							}
+							text.append(reader.textCharacters, reader.textStart, reader.textLength)
+						}
+					}
+					XMLStreamConstants.START_ELEMENT -> {
+						if (children == null) {
+							children = ArrayList()
+						}
+						children.add(readElement(reader))
+					}
+					XMLStreamConstants.END_ELEMENT -> {
+						children?.trimToSize()
+						return XmlNode(name, text?.toString(), names, values, children ?: Collections.emptyList())
+					}
+				}
+			}
+		}
+
+		private fun qualifiedName(prefix: String?, localName: String?): String {
+			val name = if (prefix == null || prefix.isEmpty()) localName ?: "" else if (localName == null || localName.isEmpty()) prefix else "$prefix:$localName"
+			return name.intern()
+		}
 	}
 
-	companion object {
-		private val DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance()
+	/**
+	 * Reads the children of the root element one at a time, and closes the file after the last one.
+	 */
+	private class ChildIterator(private val file: File, private val stream: InputStream, private val reader: XMLStreamReader) : Iterator<XmlNode> {
+		private var next: XmlNode? = null
 
 		init {
-			DOCUMENT_BUILDER_FACTORY.isValidating = false
-			DOCUMENT_BUILDER_FACTORY.isIgnoringComments = true
+			advance()
+		}
+
+		private fun advance() {
+			try {
+				loop@ while (reader.hasNext()) {
+					when (reader.next()) {
+						XMLStreamConstants.START_ELEMENT -> {
+							next = readElement(reader)
+							return
+						}
+						// end of the root element
+						XMLStreamConstants.END_ELEMENT -> break@loop
+					}
+				}
+				next = null
+				reader.close()
+				stream.close()
+			} catch (e: Exception) {
+				next = null
+				reader.close()
+				stream.close()
+				throw RuntimeException("Failed to load XML file $file", e)
+			}
+		}
+
+		override fun hasNext() = next != null
+
+		override fun next(): XmlNode {
+			val node = next ?: throw NoSuchElementException()
+			advance()
+			return node
 		}
 	}
 }
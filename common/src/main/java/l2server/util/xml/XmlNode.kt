@@ -1,6 +1,5 @@
 package l2server.util.xml
 
-import org.w3c.dom.Node
 import java.util.ArrayList
 import java.util.function.Function
 import kotlin.collections.HashMap
@@ -9,27 +8,45 @@ import kotlin.collections.component2
 import kotlin.collections.set
 
 /**
+ * An element of a loaded XML document, with its attributes and child elements.
+ * The tree is the same whether the document was parsed from the XML or read from its compiled cache, see XmlCache.
+ *
  * @author Pere
  */
-class XmlNode internal constructor(private val base: Node) {
+class XmlNode internal constructor(
+		val name: String,
+		val text: String?,
+		// Attribute names and values, in document order
+		private val attributeNames: Array<String>,
+		private val attributeValues: Array<String>,
+		private val children: List<XmlNode>) {
 
-	val name: String = base.nodeName
+	// Children by name, built on the first lookup by name
+	@Volatile
+	private var childrenByName: Map<String, List<XmlNode>>? = null
 
-	val text: String? = base.firstChild?.nodeValue
+	internal val attributeCount: Int
+		get() = attributeNames.size
+
+	internal fun getAttributeName(index: Int) = attributeNames[index]
+
+	internal fun getAttributeValue(index: Int) = attributeValues[index]
 
 	val firstChild: XmlNode?
-		get() {
-			val children = getChildren()
-			return if (children.isEmpty()) {
-				null
-			} else children[0]
-		}
+		get() = if (children.isEmpty()) null else children[0]
 
-	fun hasAttributes() = base.attributes.length > 0
+	fun hasAttributes() = attributeNames.isNotEmpty()
 
-	fun hasAttribute(name: String) = base.attributes.getNamedItem(name) != null
+	fun hasAttribute(name: String) = getAttributeValue(name) != null
 
-	private fun getAttributeValue(name: String): String? = base.attributes.getNamedItem(name)?.nodeValue
+	private fun getAttributeValue(name: String): String? {
+		for (i in attributeNames.indices) {
+			if (attributeNames[i] == name) {
+				return attributeValues[i]
+			}
+		}
+		return null
+	}
 
 	private fun <T> parse(name: String, value: String?, expectedType: Class<T>, parseFunction: Function<String, T>): T {
 		if (value == null) {
@@ -105,44 +122,33 @@ class XmlNode internal constructor(private val base: Node) {
 
 	fun getAttributes(): Map<String, String> {
 		val attributes = HashMap<String, String>()
-		for (i in 0 until base.attributes.length) {
-			val name = base.attributes.item(i).nodeName
-			val value = base.attributes.item(i).nodeValue
-			attributes[name] = value
+		for (i in attributeNames.indices) {
+			attributes[attributeNames[i]] = attributeValues[i]
 		}
 		return attributes
 	}
 
-	fun getChildren(): List<XmlNode> {
-		val children = ArrayList<XmlNode>()
-		var baseSubNode: Node? = base.firstChild
-		while (baseSubNode != null) {
-			if (baseSubNode.nodeType == Node.ELEMENT_NODE) {
-				val child = XmlNode(baseSubNode)
-				children.add(child)
-			}
-			baseSubNode = baseSubNode.nextSibling
-		}
-		return children
-	}
+	fun getChildren(): List<XmlNode> = children
 
-	fun getChildren(name: String): List<XmlNode> {
-		val list = ArrayList<XmlNode>()
-		for (node in getChildren()) {
-			if (node.name == name) {
-				list.add(node)
-			}
-		}
+	fun getChildren(name: String): List<XmlNode> = getChildrenByName()[name] ?: emptyList()
 
-		return list
-	}
+	fun getChild(name: String): XmlNode? = getChildrenByName()[name]?.get(0)
 
-	fun getChild(name: String): XmlNode? {
-		val children = getChildren(name)
-		return if (children.isEmpty()) {
-			null
-		} else children[0]
+	private fun getChildrenByName(): Map<String, List<XmlNode>> {
+		var index = childrenByName
+		if (index == null) {
+			if (children.isEmpty()) {
+				return emptyMap()
+			}
 
+			val map = HashMap<String, MutableList<XmlNode>>()
+			for (child in children) {
+				map.getOrPut(child.name) { ArrayList(1) }.add(child)
+			}
+			index = map
+			childrenByName = index
+		}
+		return index
 	}
 
 	override fun toString(): String {
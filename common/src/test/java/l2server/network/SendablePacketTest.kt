@@ -0,0 +1,101 @@
+package l2server.network
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.concurrent.CyclicBarrier
+import kotlin.concurrent.thread
+
+/**
+ * The same packet can be queued on connections owned by different selector threads, which then write it at the same time.
+ */
+class SendablePacketTest {
+
+	private val values = 4096
+
+	private class TestClient(val id: Int) : MMOClient<MMOConnection<TestClient>>(null) {
+		override fun decrypt(buf: ByteBuffer, size: Int) = true
+
+		override fun encrypt(buf: ByteBuffer, size: Int) = true
+
+		override fun onDisconnection() {
+		}
+
+		override fun onForcedDisconnection() {
+		}
+	}
+
+	/**
+	 * Writes the packet for two clients from two threads at once and returns what each of them got.
+	 */
+	private fun writeFromTwoThreads(packet: SendablePacket<TestClient>, first: TestClient, second: TestClient): List<ByteBuffer> {
+		val barrier = CyclicBarrier(2)
+		val buffers = List(2) { ByteBuffer.allocate(values * 4).order(ByteOrder.LITTLE_ENDIAN) }
+		var failure: Throwable? = null
+		listOf(first, second).mapIndexed { i, client ->
+			thread {
+				try {
+					barrier.await()
+					packet.writeTo(client, buffers[i])
+				} catch (e: Throwable) {
+					failure = e
+				}
+			}
+		}.forEach { it.join() }
+
+		failure?.let { throw it }
+		buffers.forEach { it.flip() }
+		return buffers
+	}
+
+	@Test
+	fun testConcurrentWrites() {
+		val first = TestClient(1)
+		val second = TestClient(2)
+		repeat(200) {
+			val packet = object : SendablePacket<TestClient>() {
+				override fun isReceiverDependent() = true
+
+				override fun write() {
+					repeat(values) { writeD(writeClient.id) }
+				}
+			}
+
+			val (firstBuffer, secondBuffer) = writeFromTwoThreads(packet, first, second)
+			assertEquals(values * 4, firstBuffer.remaining())
+			assertEquals(values * 4, secondBuffer.remaining())
+			while (firstBuffer.hasRemaining()) {
+				assertEquals(1, firstBuffer.int)
+				assertEquals(2, secondBuffer.int)
+			}
+		}
+	}
+
+	@Test
+	fun testBroadcastPacket() {
+		repeat(200) {
+			var writes = 0
+			val packet = object : SendablePacket<TestClient>() {
+				override fun write() {
+					writes++
+					for (i in 0 until values) {
+						writeD(i)
+					}
+				}
+			}
+			packet.setBroadcast()
+
+			val bodies = writeFromTwoThreads(packet, TestClient(1), TestClient(2)).map {
+				val body = ByteArray(it.remaining())
+				it.get(body)
+				body
+			}
+			// serialized once, then copied
+			assertEquals(1, writes)
+			assertEquals(values * 4, bodies[0].size)
+			assertArrayEquals(bodies[0], bodies[1])
+		}
+	}
+}
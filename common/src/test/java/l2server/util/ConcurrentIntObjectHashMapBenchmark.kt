@@ -0,0 +1,124 @@
+package l2server.util
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import org.openjdk.jmh.infra.Blackhole
+import org.openjdk.jmh.runner.Runner
+import org.openjdk.jmh.runner.options.OptionsBuilder
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+// Object ids are given in sequence from this one
+private const val FIRST_ID = 0x10000000
+
+/**
+ * Compares ConcurrentIntObjectHashMap with the ConcurrentHashMap it replaced in the known lists, for what the known
+ * lists do: iterating all the known objects, looking one up by object id and an object coming in and out of range.
+ * JMH subclasses the class, hence open.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class ConcurrentIntObjectHashMapBenchmark {
+
+	@Param("16", "128", "1024")
+	@JvmField
+	var size = 0
+
+	@Param("int", "chm")
+	@JvmField
+	var type = ""
+
+	private lateinit var map: MutableMap<Int, Any>
+	private var intMap: ConcurrentIntObjectHashMap<Any>? = null
+	private var next = 0
+
+	@Setup
+	fun setup() {
+		map = newMap(type)
+		intMap = map as? ConcurrentIntObjectHashMap<Any>
+		for (i in 0 until size) {
+			map[FIRST_ID + i * 7] = Any()
+		}
+	}
+
+	@Benchmark
+	fun iterate(bh: Blackhole) {
+		for (value in map.values) {
+			bh.consume(value)
+		}
+	}
+
+	@Benchmark
+	fun get(): Any? {
+		val id = FIRST_ID + next++ % size * 7
+		// the known lists call the int method
+		val intMap = intMap
+		return if (intMap != null) intMap.get(id) else map[id]
+	}
+
+	@Benchmark
+	fun putRemove(): Any? {
+		val id = FIRST_ID - 1 - (next++ and 1023)
+		intMap?.let {
+			it.put(id, Any())
+			return it.remove(id)
+		}
+		map[id] = Any()
+		return map.remove(id)
+	}
+
+	companion object {
+		// Keeps the measured maps reachable while the heap is read
+		private var retained: Any? = null
+
+		private fun newMap(type: String): MutableMap<Int, Any> =
+				if (type == "int") ConcurrentIntObjectHashMap() else ConcurrentHashMap()
+
+		/**
+		 * Heap taken by one map (that is, one NPC known list) of the given size, without its values.
+		 */
+		private fun footprint(type: String, size: Int): Long {
+			val maps = Math.max(200000 / Math.max(size, 1), 100)
+			val values = Array(size) { Any() }
+
+			val before = usedHeap()
+			retained = Array(maps) {
+				val map = newMap(type)
+				values.forEachIndexed { i, value -> map[FIRST_ID + i * 7] = value }
+				map
+			}
+			val after = usedHeap()
+			retained = null
+			return (after - before) / maps
+		}
+
+		private fun usedHeap(): Long {
+			val runtime = Runtime.getRuntime()
+			repeat(5) { System.gc() }
+			return runtime.totalMemory() - runtime.freeMemory()
+		}
+
+		@JvmStatic
+		fun main(args: Array<String>) {
+			for (size in intArrayOf(0, 16, 128, 1024)) {
+				println("Bytes per map of $size entries: ConcurrentIntObjectHashMap ${footprint("int", size)}, " +
+						"ConcurrentHashMap ${footprint("chm", size)}")
+			}
+
+			Runner(OptionsBuilder().include(ConcurrentIntObjectHashMapBenchmark::class.java.simpleName).build()).run()
+		}
+	}
+}
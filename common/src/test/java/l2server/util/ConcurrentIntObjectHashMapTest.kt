@@ -0,0 +1,180 @@
+package l2server.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.concurrent.thread
+
+class ConcurrentIntObjectHashMapTest {
+
+	private val map = ConcurrentIntObjectHashMap<String>()
+
+	@Test
+	fun testPutGetRemove() {
+		assertTrue(map.isEmpty())
+		assertNull(map.put(1, "a"))
+		assertNull(map.put(-5, "b"))
+		assertEquals("a", map.put(1, "c"))
+		assertEquals("c", map.putIfAbsent(1, "d"))
+		assertEquals(2, map.size)
+		assertEquals("c", map.get(1))
+		assertEquals("b", (map as Map<Int, String>)[-5])
+		assertNull(map.get(2))
+
+		assertFalse(map.remove(1, "x" as Any))
+		assertTrue(map.remove(1, "c" as Any))
+		assertNull(map.remove(1))
+		assertEquals("b", map.remove(-5))
+		assertTrue(map.isEmpty())
+	}
+
+	@Test(expected = IllegalArgumentException::class)
+	fun testReservedKey() {
+		map.put(Int.MIN_VALUE, "a")
+	}
+
+	@Test
+	fun testRemovedKeys() {
+		for (i in 0 until 4) {
+			map.put(i, i.toString())
+		}
+		// the removed key stays in its slot, putting it again must bring the entry back
+		map.remove(2)
+		assertFalse(map.containsKey(2))
+		assertNull(map.put(2, "20"))
+		assertEquals("20", map.get(2))
+		assertEquals(4, map.size)
+
+		// keys probing over removed ones must still be found
+		for (key in 1000 until 1500 step 5) {
+			(key until key + 5).forEach { map.put(it, it.toString()) }
+			(key until key + 5).forEach { assertEquals(it.toString(), map.remove(it)) }
+		}
+		assertEquals(setOf(0, 1, 2, 3), map.keys)
+	}
+
+	@Test
+	fun testResize() {
+		val expected = HashMap<Int, String>()
+		for (i in 0 until 10000) {
+			// sequential ids, like object ids
+			val id = 0x10000000 + i
+			map.put(id, i.toString())
+			expected[id] = i.toString()
+			if (i % 3 == 0) {
+				map.remove(0x10000000 + i / 2)
+				expected.remove(0x10000000 + i / 2)
+			}
+		}
+		assertEquals(expected.size, map.size)
+		assertEquals(expected, HashMap(map))
+	}
+
+	@Test
+	fun testEmptyAgain() {
+		val other = ConcurrentIntObjectHashMap<String>()
+		for (i in 0 until 1000) {
+			map.put(i, i.toString())
+		}
+		for (i in 0 until 1000) {
+			map.remove(i)
+		}
+		assertTrue(map.isEmpty())
+		assertFalse(map.values.iterator().hasNext())
+
+		// back on the shared empty table, which must stay empty for the other maps
+		assertTrue(other.isEmpty())
+		map.put(7, "7")
+		assertNull(other.get(7))
+		other.put(7, "b")
+		map.clear()
+		assertEquals("b", other.get(7))
+		assertNull(map.get(7))
+	}
+
+	@Test
+	fun testIterator() {
+		for (i in 0 until 100) {
+			map.put(i, i.toString())
+		}
+		val it = map.values.iterator()
+		while (it.hasNext()) {
+			if (it.next().toInt() % 2 == 0) {
+				it.remove()
+			}
+		}
+		assertEquals((1 until 100 step 2).toSet(), map.keys)
+
+		// an iterator keeps walking the table it started on while the map grows several times
+		val entries = map.entries.iterator()
+		val seen = hashSetOf(entries.next().key)
+		for (i in 100 until 1000) {
+			map.put(i, i.toString())
+		}
+		entries.forEach {
+			assertEquals(it.key.toString(), it.value)
+			assertTrue(seen.add(it.key))
+		}
+		assertTrue(seen.containsAll((1 until 100 step 2).toList()))
+	}
+
+	@Test
+	fun testConcurrentAccess() {
+		// keys below 1000 are never removed, every reader must always see them
+		for (i in 0 until 1000) {
+			map.put(i, i.toString())
+		}
+
+		val failure = AtomicReference<Throwable>()
+		val start = CountDownLatch(1)
+		val writers = (1..4).map { w ->
+			thread {
+				try {
+					start.await()
+					val keys = w * 100000 until w * 100000 + 500
+					repeat(200) {
+						// enough keys to resize, then back to the stable ones
+						keys.forEach { map.put(it, it.toString()) }
+						keys.forEach { check(map.remove(it) == it.toString()) { "lost key $it" } }
+					}
+				} catch (e: Throwable) {
+					failure.compareAndSet(null, e)
+				}
+			}
+		}
+		val running = AtomicBoolean(true)
+		val readers = (1..2).map {
+			thread {
+				try {
+					start.await()
+					while (running.get()) {
+						var stable = 0
+						for ((key, value) in map) {
+							check(key.toString() == value) { "mismatched entry $key=$value" }
+							if (key < 1000) {
+								stable++
+							}
+						}
+						check(stable == 1000) { "saw $stable stable keys" }
+						(0 until 1000).forEach { check(map.get(it) != null) { "missing key $it" } }
+					}
+				} catch (e: Throwable) {
+					failure.compareAndSet(null, e)
+				}
+			}
+		}
+
+		start.countDown()
+		writers.forEach { it.join() }
+		running.set(false)
+		readers.forEach { it.join() }
+
+		failure.get()?.let { throw it }
+		assertEquals(1000, map.size)
+	}
+}
@@ -0,0 +1,186 @@
+package l2server.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * The wheel is driven by hand on a fake clock, one millisecond per tick, and runs the timers on the calling thread.
+ */
+class TimerWheelTest {
+
+	private val tick = TimeUnit.MILLISECONDS.toNanos(1)
+	private val start = 123456789L
+	private var now = start
+	private val wheel = TimerWheel("TestWheel", 1, { now })
+	private val category = wheel.createCategory("test", Runnable::run)
+
+	/**
+	 * Moves the clock one tick at a time up to the given tick, processing each tick as it comes.
+	 */
+	private fun advanceTo(ticks: Long) {
+		while (now < start + ticks * tick) {
+			now += tick
+			catchUp()
+		}
+		catchUp()
+	}
+
+	/**
+	 * Processes all the ticks due at the current time.
+	 */
+	private fun catchUp() {
+		while (wheel.advance(now) == 0L) {
+		}
+	}
+
+	private val currentTick get() = (now - start) / tick
+
+	@Test
+	fun testWithinOneTick() {
+		val runs = AtomicInteger()
+		category.schedule({ runs.incrementAndGet() }, 0)
+		advanceTo(0)
+		assertEquals(1, runs.get())
+		assertEquals(0, category.pending)
+	}
+
+	@Test
+	fun testCascades() {
+		// 300 is in the second wheel, 20000 in the third one, both must cascade down and fire on their own tick
+		for (delay in longArrayOf(5, 300, 20000)) {
+			val from = currentTick
+			var ranAt = -1L
+			category.schedule({ ranAt = currentTick }, delay)
+			while (ranAt < 0 && currentTick <= from + delay * 2) {
+				advanceTo(currentTick + 1)
+			}
+			assertEquals("delay $delay", from + delay, ranAt)
+		}
+		assertEquals(0, category.pending)
+	}
+
+	@Test
+	fun testPastTheLastWheel() {
+		// the wheels cover 2^26 ticks, a later timer waits in the last one until it is in range
+		val delay = (1L shl 26) + 500
+		val runs = AtomicInteger()
+		category.schedule({ runs.incrementAndGet() }, delay)
+
+		advanceTo(delay - 1)
+		assertEquals(0, runs.get())
+		assertEquals(1, category.pending)
+		advanceTo(delay)
+		assertEquals(1, runs.get())
+		assertEquals(0, category.pending)
+	}
+
+	@Test
+	fun testCancelBeforeRun() {
+		val runs = AtomicInteger()
+		val queued = category.schedule({ runs.incrementAndGet() }, 0)
+		val placed = category.schedule({ runs.incrementAndGet() }, 50)
+		// the first one is still in the queue of new timers, the second one in a slot
+		assertTrue(queued.cancel(false))
+		advanceTo(10)
+		assertTrue(placed.cancel(false))
+
+		assertTrue(placed.isCancelled)
+		assertTrue(placed.isDone)
+		assertFalse(placed.cancel(false))
+		assertEquals(0, category.pending)
+
+		advanceTo(100)
+		assertEquals(0, runs.get())
+	}
+
+	@Test
+	fun testCancelAfterRun() {
+		val future = category.schedule({ }, 5)
+		advanceTo(5)
+
+		assertTrue(future.isDone)
+		future.get()
+		assertFalse(future.cancel(false))
+		assertFalse(future.isCancelled)
+		assertEquals(0, category.pending)
+	}
+
+	@Test
+	fun testFixedRate() {
+		val ticks = ArrayList<Long>()
+		val future = category.scheduleAtFixedRate({ ticks.add(currentTick) }, 10, 25)
+		advanceTo(100)
+		assertEquals(listOf(10L, 35L, 60L, 85L), ticks)
+		assertEquals(1, category.pending)
+
+		// a hundred late ticks processed at once: the runs stay on their schedule
+		now += 100 * tick
+		catchUp()
+		assertEquals(8, ticks.size)
+
+		assertTrue(future.cancel(false))
+		advanceTo(400)
+		assertEquals(8, ticks.size)
+		assertEquals(0, category.pending)
+	}
+
+	@Test
+	fun testFixedRateCancelledByItself() {
+		var runs = 0
+		var future: ScheduledFuture<*>? = null
+		future = category.scheduleAtFixedRate({
+			if (++runs == 3) {
+				future!!.cancel(false)
+			}
+		}, 0, 10)
+
+		advanceTo(100)
+		assertEquals(3, runs)
+		assertTrue(future.isCancelled)
+		assertEquals(0, category.pending)
+	}
+
+	@Test
+	fun testPendingReturnsToZero() {
+		val other = wheel.createCategory("other", Runnable::run)
+		val toCancel = ArrayList<ScheduledFuture<*>>()
+		for (i in 0 until 100) {
+			category.schedule({ }, i * 5L)
+			toCancel.add(other.schedule({ }, 1000L + i))
+			toCancel.add(category.scheduleAtFixedRate({ }, i.toLong(), 3))
+		}
+		assertEquals(200, category.pending)
+		assertEquals(100, other.pending)
+
+		// the one-shot timers of the first category are all done, the fixed rate ones keep running
+		advanceTo(500)
+		assertEquals(100, category.pending)
+
+		toCancel.forEach { it.cancel(false) }
+		advanceTo(2000)
+		assertEquals(0, category.pending)
+		assertEquals(0, other.pending)
+		assertTrue(wheel.stats.filter { it.contains("pending: ") }.all { it.contains("pending: 0,") })
+	}
+
+	@Test
+	fun testWheelThread() {
+		val realWheel = TimerWheel("TestWheelThread", 1)
+		val realCategory = realWheel.createCategory("test", Runnable::run)
+		realWheel.start()
+		try {
+			val latch = CountDownLatch(3)
+			realCategory.schedule({ latch.countDown() }, 5)
+			realCategory.scheduleAtFixedRate({ latch.countDown() }, 1, 2)
+			assertTrue(latch.await(5, TimeUnit.SECONDS))
+		} finally {
+			realWheel.stop()
+		}
+	}
+}
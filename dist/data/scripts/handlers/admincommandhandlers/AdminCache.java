@@ -43,6 +43,7 @@ public class AdminCache implements IAdminCommandHandler {
 			HtmCache.getInstance().reload(Config.DATAPACK_ROOT);
 			activeChar.sendMessage("Cache[HTML]: " + HtmCache.getInstance().getMemoryUsage() + " MB on " + HtmCache.getInstance().getLoadedFiles() +
 					" file(s) loaded.");
+			activeChar.sendMessage(HtmCache.getInstance().getStats());
 		} else if (command.startsWith("admin_cache_reload_path ")) {
 			try {
 				String path = command.split(" ")[1];
@@ -50,6 +51,7 @@ public class AdminCache implements IAdminCommandHandler {
 				activeChar.sendMessage(
 						"Cache[HTML]: " + HtmCache.getInstance().getMemoryUsage() + " MB in " + HtmCache.getInstance().getLoadedFiles() +
 								" file(s) loaded.");
+				activeChar.sendMessage(HtmCache.getInstance().getStats());
 			} catch (Exception e) {
 				activeChar.sendMessage("Usage: //cache_reload_path <path>");
 			}
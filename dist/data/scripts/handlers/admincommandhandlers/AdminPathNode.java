@@ -16,15 +16,18 @@
 package handlers.admincommandhandlers;
 
 import l2server.Config;
+import l2server.gameserver.GeoData;
 import l2server.gameserver.handler.IAdminCommandHandler;
 import l2server.gameserver.model.actor.instance.Player;
 import l2server.gameserver.pathfinding.AbstractNodeLoc;
 import l2server.gameserver.pathfinding.PathFinding;
+import l2server.gameserver.pathfinding.PathFindingService;
+import l2server.gameserver.pathfinding.clusters.HierarchicalPathFinding;
 
 import java.util.List;
 
 public class AdminPathNode implements IAdminCommandHandler {
-	private static final String[] ADMIN_COMMANDS = {"admin_pn_info", "admin_show_path", "admin_path_debug", "admin_show_pn", "admin_find_path",};
+	private static final String[] ADMIN_COMMANDS = {"admin_pn_info", "admin_show_path", "admin_path_debug", "admin_show_pn", "admin_find_path", "admin_path_bench",};
 	
 	@Override
 	public boolean useAdminCommand(String command, Player activeChar) {
@@ -37,6 +40,17 @@ public class AdminPathNode implements IAdminCommandHandler {
 					activeChar.sendMessage(msg);
 				}
 			}
+			final String[] cacheInfo = GeoData.getInstance().getCacheStats();
+			if (cacheInfo != null) {
+				for (String msg : cacheInfo) {
+					activeChar.sendMessage(msg);
+				}
+			}
+			if (Config.PATHFIND_ASYNC) {
+				for (String msg : PathFindingService.getInstance().getStats()) {
+					activeChar.sendMessage(msg);
+				}
+			}
 		} else if (command.equals("admin_show_path")) {
 		
 		} else if (command.equals("admin_path_debug")) {
@@ -68,6 +82,14 @@ public class AdminPathNode implements IAdminCommandHandler {
 			} else {
 				activeChar.sendMessage("No Target!");
 			}
+		} else if (command.equals("admin_path_bench")) {
+			if (!(PathFinding.getInstance() instanceof HierarchicalPathFinding)) {
+				activeChar.sendMessage("HierarchicalPathFinding has not been enabled.");
+				return true;
+			}
+			for (String msg : ((HierarchicalPathFinding) PathFinding.getInstance()).benchmark()) {
+				activeChar.sendMessage(msg);
+			}
 		}
 		return true;
 	}
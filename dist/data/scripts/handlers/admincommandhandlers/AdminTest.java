@@ -26,10 +26,13 @@ package handlers.admincommandhandlers;
 
 import l2server.Config;
 import l2server.DatabasePool;
+import l2server.gameserver.DatabaseWriter;
 import l2server.gameserver.ThreadPoolManager;
+import l2server.gameserver.TimeController;
 import l2server.gameserver.ai.CtrlIntention;
 import l2server.gameserver.datatables.*;
 import l2server.gameserver.handler.IAdminCommandHandler;
+import l2server.gameserver.instancemanager.ChatChannelManager;
 import l2server.gameserver.instancemanager.CustomAuctionManager;
 import l2server.gameserver.instancemanager.GrandBossManager;
 import l2server.gameserver.instancemanager.InstanceManager;
@@ -40,6 +43,7 @@ import l2server.gameserver.model.actor.instance.GuardInstance;
 import l2server.gameserver.model.actor.instance.MonsterInstance;
 import l2server.gameserver.model.actor.instance.Player;
 import l2server.gameserver.model.actor.instance.RaidBossInstance;
+import l2server.gameserver.model.actor.stat.CharStat;
 import l2server.gameserver.model.actor.stat.PcStat;
 import l2server.gameserver.model.entity.ClanWarManager;
 import l2server.gameserver.model.entity.ClanWarManager.ClanWar;
@@ -49,9 +53,11 @@ import l2server.gameserver.network.L2GameClient;
 import l2server.gameserver.network.L2GameClient.GameClientState;
 import l2server.gameserver.network.clientpackets.Say2;
 import l2server.gameserver.network.serverpackets.*;
+import l2server.gameserver.taskmanager.KnownListUpdateTaskManager;
 import l2server.gameserver.templates.chars.NpcTemplate;
 import l2server.gameserver.templates.item.ItemTemplate;
 import l2server.gameserver.util.Util;
+import l2server.network.MMOConnection;
 import l2server.util.Rnd;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,10 +68,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
+import static l2server.gameserver.GameApplicationKt.getSelectorThread;
+
 /**
  * This class ...
  *
@@ -93,6 +103,31 @@ public class AdminTest implements IAdminCommandHandler {
 			for (String line : ThreadPoolManager.getInstance().getStats()) {
 				activeChar.sendMessage(line);
 			}
+			for (String line : getSelectorThread().getStats()) {
+				activeChar.sendMessage(line);
+			}
+			for (String line : KnownListUpdateTaskManager.getInstance().getStats()) {
+				activeChar.sendMessage(line);
+			}
+			for (String line : TimeController.getInstance().getStats()) {
+				activeChar.sendMessage(line);
+			}
+			for (String line : CharStat.getCacheStats()) {
+				activeChar.sendMessage(line);
+			}
+			for (String line : DatabaseWriter.getInstance().getStats()) {
+				activeChar.sendMessage(line);
+			}
+			for (String line : Player.getStoreStats()) {
+				activeChar.sendMessage(line);
+			}
+			for (String line : SkillTable.getInstance().getStats()) {
+				activeChar.sendMessage(line);
+			}
+			for (String line : ChatChannelManager.getInstance().getStats()) {
+				activeChar.sendMessage(line);
+			}
+			showSendQueues(activeChar);
 		} else if (command.startsWith("admin_skill_test") || command.startsWith("admin_st")) {
 			try {
 				int id = Integer.parseInt(st.nextToken());
@@ -910,6 +945,35 @@ public class AdminTest implements IAdminCommandHandler {
 		}
 	}
 
+	/**
+	 * Lists the players with the most packets waiting to be sent, slow clients pile them up
+	 */
+	private void showSendQueues(Player activeChar) {
+		// sizes keep changing and players log out while we look at them, so sort and print a snapshot
+		Map<Player, int[]> queues = new HashMap<>();
+		for (Player player : World.getInstance().getAllPlayers().values()) {
+			L2GameClient client = player.getClient();
+			if (client == null || client.isDetached()) {
+				continue;
+			}
+
+			MMOConnection<L2GameClient> con = client.getConnection();
+			if (con != null) {
+				queues.put(player, new int[]{con.getSendQueueSize(), con.getSendQueuePeak()});
+			}
+		}
+
+		List<Player> players = new ArrayList<>(queues.keySet());
+		players.sort((p1, p2) -> queues.get(p2)[0] - queues.get(p1)[0]);
+
+		activeChar.sendMessage("Send queues:");
+		for (int i = 0; i < players.size() && i < 5; i++) {
+			Player player = players.get(i);
+			int[] queue = queues.get(player);
+			activeChar.sendMessage(" |- " + player.getName() + ": " + queue[0] + " (peak " + queue[1] + ")");
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see l2server.gameserver.handler.IAdminCommandHandler#getAdminCommandList()
 	 */
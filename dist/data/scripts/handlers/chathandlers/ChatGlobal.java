@@ -20,9 +20,9 @@ import l2server.gameserver.ThreadPoolManager;
 import l2server.gameserver.gui.ConsoleTab;
 import l2server.gameserver.gui.ConsoleTab.ConsoleFilter;
 import l2server.gameserver.handler.IChatHandler;
+import l2server.gameserver.instancemanager.ChatChannelManager;
+import l2server.gameserver.instancemanager.ChatChannelManager.Channel;
 import l2server.gameserver.instancemanager.DiscussionManager;
-import l2server.gameserver.model.BlockList;
-import l2server.gameserver.model.World;
 import l2server.gameserver.model.actor.instance.Player;
 import l2server.gameserver.network.SystemMessageId;
 import l2server.gameserver.network.serverpackets.CreatureSay;
@@ -30,8 +30,6 @@ import l2server.gameserver.network.serverpackets.ExWorldChatCnt;
 import l2server.gameserver.network.serverpackets.SystemMessage;
 import l2server.gameserver.stats.Stats;
 
-import java.util.Collection;
-
 /**
  * Global chat handler.
  *
@@ -59,7 +57,7 @@ public class ChatGlobal implements IChatHandler {
 	@Override
 	public void handleChat(int type, Player activeChar, String target, String text) {
 		if (!activeChar.isGM() && (DiscussionManager.getInstance().isGlobalChatDisabled() ||
-				!activeChar.getFloodProtectors().getTradeChat().tryPerformAction("global chat"))) {
+				!ChatChannelManager.getInstance().tryChat(Channel.GLOBAL, activeChar))) {
 			activeChar.sendPacket(SystemMessage.getSystemMessage(SystemMessageId.CHATTING_PROHIBITED));
 			return;
 		}
@@ -90,12 +88,7 @@ public class ChatGlobal implements IChatHandler {
 
 		CreatureSay cs = new CreatureSay(activeChar, type, activeChar.getName(), text);
 
-		Collection<Player> pls = World.getInstance().getAllPlayers().values();
-		for (Player player : pls) {
-			if (!BlockList.isBlocked(player, activeChar)) {
-				player.sendPacket(cs);
-			}
-		}
+		ChatChannelManager.getInstance().sendToAll(Channel.GLOBAL, activeChar, cs, true);
 
 		while (text.contains("Type=") && text.contains("Title=")) {
 			int index1 = text.indexOf("Type=");
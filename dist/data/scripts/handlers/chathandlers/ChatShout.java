@@ -21,14 +21,12 @@ import l2server.gameserver.datatables.MapRegionTable;
 import l2server.gameserver.gui.ConsoleTab;
 import l2server.gameserver.gui.ConsoleTab.ConsoleFilter;
 import l2server.gameserver.handler.IChatHandler;
+import l2server.gameserver.instancemanager.ChatChannelManager;
+import l2server.gameserver.instancemanager.ChatChannelManager.Channel;
 import l2server.gameserver.instancemanager.DiscussionManager;
-import l2server.gameserver.model.BlockList;
-import l2server.gameserver.model.World;
 import l2server.gameserver.model.actor.instance.Player;
 import l2server.gameserver.network.serverpackets.CreatureSay;
 
-import java.util.Collection;
-
 /**
  * Shout chat handler.
  *
@@ -61,7 +59,7 @@ public class ChatShout implements IChatHandler {
 		if (DiscussionManager.getInstance().isGlobalChatDisabled()) {
 			activeChar.sendMessage("Global chat is disabled right now.");
 			return;
-		} else if (!activeChar.getFloodProtectors().getShoutChat().tryPerformAction("shout chat")) {
+		} else if (!ChatChannelManager.getInstance().tryChat(Channel.SHOUT, activeChar)) {
 			activeChar.sendMessage("Do not spam shout channel.");
 			return;
 		}
@@ -72,32 +70,14 @@ public class ChatShout implements IChatHandler {
 				activeChar.getName(),
 				"[" + MapRegionTable.getInstance().getClosestTownSimpleName(activeChar) + "]" + text);
 
-		Collection<Player> pls = World.getInstance().getAllPlayers().values();
-
 		if (Config.DEFAULT_GLOBAL_CHAT.equalsIgnoreCase("on") || Config.DEFAULT_GLOBAL_CHAT.equalsIgnoreCase("gm") && activeChar.isGM()) {
-			int region = MapRegionTable.getInstance().getMapRegion(activeChar.getX(), activeChar.getY());
-			for (Player player : pls) {
-				/*
-				if (!player.isGM())
-				{
-					if (activeChar.getServerInstanceId() != player.getServerInstanceId())
-						continue;
-				}*/
-
-				if (activeChar.isGM() || region == MapRegionTable.getInstance().getMapRegion(player.getX(), player.getY()) &&
-						!BlockList.isBlocked(player, activeChar) && activeChar.getEvent() == null &&
-						player.getInstanceId() == activeChar.getInstanceId()) {
-					player.sendPacket(cs);
-				} else if (player.isGM()) {
-					player.sendPacket(csReg);
-				}
+			if (activeChar.isGM()) {
+				ChatChannelManager.getInstance().sendToAll(Channel.SHOUT, activeChar, cs, false);
+			} else {
+				ChatChannelManager.getInstance().sendToRegion(Channel.SHOUT, activeChar, cs, csReg);
 			}
 		} else if (Config.DEFAULT_GLOBAL_CHAT.equalsIgnoreCase("global")) {
-			for (Player player : pls) {
-				if (!BlockList.isBlocked(player, activeChar)) {
-					player.sendPacket(cs);
-				}
-			}
+			ChatChannelManager.getInstance().sendToAll(Channel.SHOUT, activeChar, cs, true);
 		}
 
 		while (text.contains("Type=") && text.contains("Title=")) {
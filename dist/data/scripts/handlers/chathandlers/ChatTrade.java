@@ -20,16 +20,14 @@ import l2server.gameserver.datatables.MapRegionTable;
 import l2server.gameserver.gui.ConsoleTab;
 import l2server.gameserver.gui.ConsoleTab.ConsoleFilter;
 import l2server.gameserver.handler.IChatHandler;
+import l2server.gameserver.instancemanager.ChatChannelManager;
+import l2server.gameserver.instancemanager.ChatChannelManager.Channel;
 import l2server.gameserver.instancemanager.DiscussionManager;
-import l2server.gameserver.model.BlockList;
-import l2server.gameserver.model.World;
 import l2server.gameserver.model.actor.instance.Player;
 import l2server.gameserver.network.SystemMessageId;
 import l2server.gameserver.network.serverpackets.CreatureSay;
 import l2server.gameserver.network.serverpackets.SystemMessage;
 
-import java.util.Collection;
-
 /**
  * Trade chat handler.
  *
@@ -44,7 +42,7 @@ public class ChatTrade implements IChatHandler {
 	@Override
 	public void handleChat(int type, Player activeChar, String target, String text) {
 		if (!activeChar.isGM() && (DiscussionManager.getInstance().isGlobalChatDisabled() ||
-				!activeChar.getFloodProtectors().getTradeChat().tryPerformAction("trade chat"))) {
+				!ChatChannelManager.getInstance().tryChat(Channel.TRADE, activeChar))) {
 			activeChar.sendPacket(SystemMessage.getSystemMessage(SystemMessageId.CHATTING_PROHIBITED));
 			return;
 		}
@@ -67,24 +65,10 @@ public class ChatTrade implements IChatHandler {
 				activeChar.getName(),
 				"[" + MapRegionTable.getInstance().getClosestTownSimpleName(activeChar) + "]" + text);
 
-		Collection<Player> pls = World.getInstance().getAllPlayers().values();
-
 		if (Config.DEFAULT_TRADE_CHAT.equalsIgnoreCase("on") || Config.DEFAULT_TRADE_CHAT.equalsIgnoreCase("gm") && activeChar.isGM()) {
-			int region = MapRegionTable.getInstance().getMapRegion(activeChar.getX(), activeChar.getY());
-			for (Player player : pls) {
-				if (region == MapRegionTable.getInstance().getMapRegion(player.getX(), player.getY()) && !BlockList.isBlocked(player, activeChar) &&
-						player.getInstanceId() == activeChar.getInstanceId() && activeChar.getEvent() == null) {
-					player.sendPacket(cs);
-				} else if (player.isGM()) {
-					player.sendPacket(csReg);
-				}
-			}
+			ChatChannelManager.getInstance().sendToRegion(Channel.TRADE, activeChar, cs, csReg);
 		} else if (Config.DEFAULT_TRADE_CHAT.equalsIgnoreCase("global")) {
-			for (Player player : pls) {
-				if (!BlockList.isBlocked(player, activeChar)) {
-					player.sendPacket(cs);
-				}
-			}
+			ChatChannelManager.getInstance().sendToAll(Channel.TRADE, activeChar, cs, true);
 		}
 
 		if (text.contains("Type=") && text.contains("Title=")) {
@@ -0,0 +1,495 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver;
+
+import l2server.Config;
+import l2server.DatabasePool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind of the character, item and quest variable updates.<br>
+ * <br>
+ * The state of a row is captured in {@link Rows} when the game changes it, and kept under a key naming the row
+ * (for example "items:268477212"). Writing the same key again before it is flushed replaces the older state,
+ * so an item whose count changes 50 times between two flushes is written once. The writer threads flush the
+ * pending rows every {@link Config#DATABASE_WRITER_DELAY} ms with one connection, in one transaction using JDBC
+ * batches, in the order the rows were last written.<br>
+ * <br>
+ * The rows are given an owner (the character object id) so that everything pending for a character can be
+ * written before it is loaded again or when it must be on disk, see {@link #flush(int)}.<br>
+ * <br>
+ * The statements of a flush are batched by query, so the rows of different keys must never overlap and the
+ * queries of a key must always be in the same order.
+ */
+public class DatabaseWriter {
+	private static Logger log = LoggerFactory.getLogger(DatabaseWriter.class.getName());
+
+	// Keys written in a transaction
+	private static final int MAX_BATCH = 500;
+
+	/**
+	 * Statements writing the state of a row, or of a group of rows always written together.
+	 */
+	public static final class Rows {
+		private final List<String> queries = new ArrayList<>(2);
+		private final List<Object[]> parameters = new ArrayList<>(2);
+		// Statements before this one are compared by isSame
+		private int tracked = -1;
+		private volatile boolean failed;
+
+		public Rows add(String query, Object... params) {
+			if (tracked != -1) {
+				throw new IllegalStateException("Tracked statements must be added before the untracked ones");
+			}
+			queries.add(query);
+			parameters.add(params);
+			return this;
+		}
+
+		/**
+		 * Adds a statement written with the others but left out of {@link #isSame(Rows)},
+		 * for values changing all the time such as a time counter.
+		 */
+		public Rows addUntracked(String query, Object... params) {
+			if (tracked == -1) {
+				tracked = queries.size();
+			}
+			queries.add(query);
+			parameters.add(params);
+			return this;
+		}
+
+		public boolean isEmpty() {
+			return queries.isEmpty();
+		}
+
+		public int size() {
+			return queries.size();
+		}
+
+		private int getTracked() {
+			return tracked == -1 ? queries.size() : tracked;
+		}
+
+		/**
+		 * @return true if the rows were handed to the writer and couldn't be written
+		 */
+		public boolean isFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return true if both rows have the same tracked statements with the same parameters
+		 */
+		public boolean isSame(Rows other) {
+			if (other == null || getTracked() != other.getTracked()) {
+				return false;
+			}
+			for (int i = 0; i < getTracked(); i++) {
+				if (!queries.get(i).equals(other.queries.get(i)) || !Arrays.equals(parameters.get(i), other.parameters.get(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	static final class Entry {
+		final String key;
+		final int ownerId;
+		final Rows rows;
+
+		Entry(String key, int ownerId, Rows rows) {
+			this.key = key;
+			this.ownerId = ownerId;
+			this.rows = rows;
+		}
+	}
+
+	private final Writer[] writers;
+	private volatile boolean shutdown;
+
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder flushes = new LongAdder();
+	private final LongAdder flushTime = new LongAdder();
+	private final AtomicLong maxFlushTime = new AtomicLong();
+	private volatile long lastFlushTime;
+
+	public static DatabaseWriter getInstance() {
+		return SingletonHolder.instance;
+	}
+
+	private DatabaseWriter() {
+		this(Config.DATABASE_WRITE_BEHIND ? Math.max(1, Config.DATABASE_WRITER_THREADS) : 0);
+		for (Writer writer : writers) {
+			writer.start();
+		}
+	}
+
+	/**
+	 * @param threads number of writers, not started: the tests flush them with {@link #flushAll()}
+	 */
+	DatabaseWriter(int threads) {
+		writers = new Writer[threads];
+		for (int i = 0; i < writers.length; i++) {
+			writers[i] = new Writer(i);
+		}
+	}
+
+	private Writer getWriter(String key) {
+		return writers[(key.hashCode() & Integer.MAX_VALUE) % writers.length];
+	}
+
+	/**
+	 * Writes the rows in the background, replacing the pending rows of the same key.
+	 * If write-behind is disabled or the server is shutting down, they are written right away.
+	 */
+	public void write(int ownerId, String key, Rows rows) {
+		submitted.increment();
+		final Entry entry = new Entry(key, ownerId, rows);
+		if (writers.length == 0 || shutdown) {
+			write(Collections.singletonList(entry));
+			return;
+		}
+
+		getWriter(key).add(entry);
+	}
+
+	/**
+	 * Drops the pending rows of the key, waiting if they are being written.
+	 * To call before writing the same rows directly.
+	 */
+	public void cancel(String key) {
+		if (writers.length != 0) {
+			getWriter(key).cancel(entry -> entry.key.equals(key), -1);
+		}
+	}
+
+	/**
+	 * Drops the pending rows of the owner whose key starts with the prefix, waiting if they are being written.
+	 */
+	public void cancel(int ownerId, String keyPrefix) {
+		for (Writer writer : writers) {
+			writer.cancel(entry -> entry.ownerId == ownerId && entry.key.startsWith(keyPrefix), ownerId);
+		}
+	}
+
+	/**
+	 * Writes now everything pending for the owner.
+	 */
+	public void flush(int ownerId) {
+		for (Writer writer : writers) {
+			writer.flush(ownerId);
+		}
+	}
+
+	/**
+	 * Writes now everything pending, as the writer threads do.
+	 */
+	void flushAll() {
+		for (Writer writer : writers) {
+			writer.flushAll();
+		}
+	}
+
+	/**
+	 * Writes everything pending and stops the writer threads, the next writes are done right away.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		for (Writer writer : writers) {
+			writer.interrupt();
+			try {
+				writer.join(TimeUnit.MINUTES.toMillis(1));
+			} catch (InterruptedException e) {
+				log.warn("", e);
+			}
+			writer.flushAll();
+		}
+		log.info("DatabaseWriter: " + written.sum() + " rows written, " + failed.sum() + " failed.");
+	}
+
+	public String[] getStats() {
+		int pending = 0;
+		for (Writer writer : writers) {
+			pending += writer.getPending();
+		}
+		final long flushCount = flushes.sum();
+		return new String[]{
+				"Database writer: " + (writers.length == 0 ? "disabled" : writers.length + " threads, delay(ms): " + Config.DATABASE_WRITER_DELAY),
+				" |- Pending:		 " + pending,
+				" |- Submitted:	   " + submitted.sum(),
+				" |- Coalesced:	   " + coalesced.sum(),
+				" |- Written:		 " + written.sum(),
+				" |- Failed:		  " + failed.sum(),
+				" |- Flushes:		 " + flushCount,
+				" |- FlushTime(ms):   last " + TimeUnit.NANOSECONDS.toMillis(lastFlushTime) + ", avg " +
+						(flushCount > 0 ? TimeUnit.NANOSECONDS.toMillis(flushTime.sum() / flushCount) : 0) + ", max " +
+						TimeUnit.NANOSECONDS.toMillis(maxFlushTime.get())};
+	}
+
+	/**
+	 * Writes the entries in one transaction, batching the statements by query.
+	 * If the transaction fails, the entries are written again one by one so that a bad row doesn't lose the others.
+	 * Overridden by the tests, which record the writes instead.
+	 */
+	void write(List<Entry> entries) {
+		if (entries.isEmpty()) {
+			return;
+		}
+
+		final long start = System.nanoTime();
+		Connection con = null;
+		try {
+			con = DatabasePool.getInstance().getConnection();
+			try {
+				con.setAutoCommit(false);
+				execute(con, entries);
+				con.commit();
+				written.add(entries.size());
+			} catch (SQLException e) {
+				con.rollback();
+				if (entries.size() == 1) {
+					throw e;
+				}
+
+				log.warn("DatabaseWriter: could not write " + entries.size() + " rows in a batch, writing them one by one: " + e.getMessage());
+				con.setAutoCommit(true);
+				for (Entry entry : entries) {
+					try {
+						execute(con, Collections.singletonList(entry));
+						written.increment();
+					} catch (SQLException e2) {
+						entry.rows.failed = true;
+						failed.increment();
+						log.warn("DatabaseWriter: could not write " + entry.key + ": " + e2.getMessage(), e2);
+					}
+				}
+			} finally {
+				con.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			for (Entry entry : entries) {
+				entry.rows.failed = true;
+			}
+			failed.add(entries.size());
+			log.warn("DatabaseWriter: could not write " + entries.get(0).key + ": " + e.getMessage(), e);
+		} finally {
+			DatabasePool.close(con);
+		}
+
+		final long time = System.nanoTime() - start;
+		flushes.increment();
+		flushTime.add(time);
+		lastFlushTime = time;
+		maxFlushTime.accumulateAndGet(time, Math::max);
+	}
+
+	private static void execute(Connection con, List<Entry> entries) throws SQLException {
+		final Map<String, PreparedStatement> statements = new LinkedHashMap<>();
+		try {
+			for (Entry entry : entries) {
+				for (int i = 0; i < entry.rows.queries.size(); i++) {
+					final String query = entry.rows.queries.get(i);
+					PreparedStatement statement = statements.get(query);
+					if (statement == null) {
+						statement = con.prepareStatement(query);
+						statements.put(query, statement);
+					}
+
+					final Object[] params = entry.rows.parameters.get(i);
+					for (int j = 0; j < params.length; j++) {
+						statement.setObject(j + 1, params[j]);
+					}
+					statement.addBatch();
+				}
+			}
+
+			for (PreparedStatement statement : statements.values()) {
+				statement.executeBatch();
+			}
+		} finally {
+			for (PreparedStatement statement : statements.values()) {
+				statement.close();
+			}
+		}
+	}
+
+	private interface EntryFilter {
+		boolean accept(Entry entry);
+	}
+
+	private class Writer extends Thread {
+		// Pending rows in the order of their last write, guarded by itself
+		private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<>();
+		// Pending rows count by owner, guarded by pending
+		private final Map<Integer, Integer> owners = new HashMap<>();
+		// Held while writing
+		private final ReentrantLock writeLock = new ReentrantLock();
+		// Rows being written, set with the lock of pending when they leave it so that a cancel never misses them
+		private volatile List<Entry> inFlight = Collections.emptyList();
+
+		Writer(int id) {
+			super("DatabaseWriter-" + id);
+			setDaemon(true);
+		}
+
+		void add(Entry entry) {
+			synchronized (pending) {
+				// Removed first so that it moves to the end, after the rows written in between
+				final Entry old = pending.remove(entry.key);
+				if (old != null) {
+					removeOwner(old);
+					coalesced.increment();
+				}
+				pending.put(entry.key, entry);
+				owners.merge(entry.ownerId, 1, Integer::sum);
+			}
+		}
+
+		private void removeOwner(Entry entry) {
+			owners.computeIfPresent(entry.ownerId, (id, count) -> count == 1 ? null : count - 1);
+		}
+
+		int getPending() {
+			synchronized (pending) {
+				return pending.size();
+			}
+		}
+
+		/**
+		 * Removes the pending rows accepted by the filter, or of the owner if not -1.
+		 */
+		private List<Entry> remove(EntryFilter filter, int ownerId) {
+			final List<Entry> removed = new ArrayList<>();
+			synchronized (pending) {
+				if (ownerId != -1 && !owners.containsKey(ownerId)) {
+					return removed;
+				}
+
+				for (Iterator<Entry> it = pending.values().iterator(); it.hasNext(); ) {
+					final Entry entry = it.next();
+					if (filter.accept(entry)) {
+						it.remove();
+						removeOwner(entry);
+						removed.add(entry);
+					}
+				}
+			}
+			return removed;
+		}
+
+		void cancel(EntryFilter filter, int ownerId) {
+			remove(filter, ownerId);
+
+			// Wait for the rows being written, they must not land after the caller's own write
+			for (Entry entry : inFlight) {
+				if (filter.accept(entry)) {
+					writeLock.lock();
+					writeLock.unlock();
+					return;
+				}
+			}
+		}
+
+		void flush(int ownerId) {
+			writeLock.lock();
+			try {
+				final List<Entry> entries;
+				synchronized (pending) {
+					entries = remove(entry -> entry.ownerId == ownerId, ownerId);
+					inFlight = entries;
+				}
+				write(entries);
+			} finally {
+				inFlight = Collections.emptyList();
+				writeLock.unlock();
+			}
+		}
+
+		/**
+		 * Writes all the pending rows, one batch at a time.
+		 */
+		void flushAll() {
+			for (; ; ) {
+				final List<Entry> batch = new ArrayList<>(MAX_BATCH);
+				writeLock.lock();
+				try {
+					synchronized (pending) {
+						for (Iterator<Entry> it = pending.values().iterator(); it.hasNext() && batch.size() < MAX_BATCH; ) {
+							final Entry entry = it.next();
+							it.remove();
+							removeOwner(entry);
+							batch.add(entry);
+						}
+						inFlight = batch;
+					}
+					if (batch.isEmpty()) {
+						return;
+					}
+
+					write(batch);
+				} finally {
+					inFlight = Collections.emptyList();
+					writeLock.unlock();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			while (!shutdown) {
+				try {
+					Thread.sleep(Config.DATABASE_WRITER_DELAY);
+				} catch (InterruptedException e) {
+					// shutdown, flushed by shutdown()
+					return;
+				}
+
+				try {
+					flushAll();
+				} catch (Exception e) {
+					log.error("DatabaseWriter: error while flushing", e);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("synthetic-access")
+	private static class SingletonHolder {
+		protected static final DatabaseWriter instance = new DatabaseWriter();
+	}
+}
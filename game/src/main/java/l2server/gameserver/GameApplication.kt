@@ -58,6 +58,12 @@ fun main(args: Array<String>) {
 
 	Loader.initialize("l2server.gameserver")
 	Loader.run()
+	log.info(Loader.getCriticalPathReport())
+	try {
+		Loader.writeTimelineToFile(File("log", "boot-timeline.txt").toPath())
+	} catch (e: IOException) {
+		log.warn("Could not write the boot timeline: " + e.message)
+	}
 
 	UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName())
 	gui = ServerGui()
@@ -96,10 +102,21 @@ fun main(args: Array<String>) {
 	sc.MAX_READ_PER_PASS = Config.MMO_MAX_READ_PER_PASS
 	sc.MAX_SEND_PER_PASS = Config.MMO_MAX_SEND_PER_PASS
 	sc.SLEEP_TIME = Config.MMO_SELECTOR_SLEEP_TIME
+	sc.SELECTOR_THREAD_COUNT = Config.MMO_SELECTOR_THREAD_COUNT
 	sc.HELPER_BUFFER_COUNT = Config.MMO_HELPER_BUFFER_COUNT
+	sc.OUTBOUND_PACKET_BUDGET = Config.MMO_OUTBOUND_PACKET_BUDGET
+	sc.OUTBOUND_BYTE_BUDGET = Config.MMO_OUTBOUND_BYTE_BUDGET
+	val budgetAction = CoreConfig.OutboundBudgetAction.values().firstOrNull {
+		it.name.equals(Config.MMO_OUTBOUND_BUDGET_ACTION?.trim(), ignoreCase = true)
+	}
+	if (budgetAction != null) {
+		sc.OUTBOUND_BUDGET_ACTION = budgetAction
+	} else {
+		log.warn("Unknown OutboundBudgetAction " + Config.MMO_OUTBOUND_BUDGET_ACTION + ", using " + sc.OUTBOUND_BUDGET_ACTION)
+	}
 
 	val gamePacketHandler = L2GamePacketHandler()
-	val selectorThread = Core<L2GameClient>(sc, gamePacketHandler, gamePacketHandler, gamePacketHandler, IPv4Filter())
+	selectorThread = Core<L2GameClient>(sc, gamePacketHandler, gamePacketHandler, gamePacketHandler, IPv4Filter())
 
 	var bindAddress: InetAddress? = null
 	if (Config.GAMESERVER_HOSTNAME != "*") {
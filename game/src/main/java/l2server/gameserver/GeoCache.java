@@ -0,0 +1,187 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short lived cache of the geodata walks done by GeoEngine for line of sight and move checks.<br>
+ * <br>
+ * Queries are keyed by their geo cells (16x16 world units) and z, so the same attacker/target pair
+ * asking again while neither moved to another cell is answered without walking the geodata again.
+ * The table is direct mapped: a new result simply replaces whatever was in its slot, so the memory
+ * is bounded by the configured size and lookups and stores never lock. Results expire after the
+ * configured time to live, and the whole cache is dropped when a geodata file is loaded or unloaded.<br>
+ * <br>
+ * Doors are not part of the geodata and are still checked by GeoEngine on every query, so a door
+ * opening or closing is seen immediately and never has to invalidate anything here.
+ */
+final class GeoCache {
+	// Outcomes of a move check, see GeoEngine#moveCheck(Location, Location, int, int, double, int, int, int)
+	static final byte MOVE_START = 0;
+	static final byte MOVE_DESTINY = 1;
+	static final byte MOVE_DESTINY_Z = 2;
+	static final byte MOVE_BLOCKED = 3;
+
+	static final class Entry {
+		final long from;
+		final long to;
+		final int generation;
+		final long expireTime;
+		// LOS result, or move outcome with the stop point for the move checks
+		final byte result;
+		final int x;
+		final int y;
+		final int z;
+
+		Entry(long from, long to, int generation, long expireTime, byte result, int x, int y, int z) {
+			this.from = from;
+			this.to = to;
+			this.generation = generation;
+			this.expireTime = expireTime;
+			this.result = result;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		byte getResult() {
+			return result;
+		}
+
+		int getX() {
+			return x;
+		}
+
+		int getY() {
+			return y;
+		}
+
+		int getZ() {
+			return z;
+		}
+	}
+
+	private final AtomicReferenceArray<Entry> losEntries;
+	private final AtomicReferenceArray<Entry> moveEntries;
+	private final int mask;
+	private final long ttl;
+	private volatile int generation;
+
+	private final LongAdder losHits = new LongAdder();
+	private final LongAdder losMisses = new LongAdder();
+	private final LongAdder moveHits = new LongAdder();
+	private final LongAdder moveMisses = new LongAdder();
+
+	/**
+	 * @param size number of entries of each table, rounded up to a power of two, 0 to disable the cache
+	 * @param ttl  time in milliseconds a result is kept
+	 */
+	GeoCache(int size, long ttl) {
+		int capacity = size > 0 ? Integer.highestOneBit(Math.max(size - 1, 1)) << 1 : 0;
+		losEntries = new AtomicReferenceArray<>(capacity);
+		moveEntries = new AtomicReferenceArray<>(capacity);
+		mask = capacity - 1;
+		this.ttl = ttl;
+	}
+
+	boolean isEnabled() {
+		return mask >= 0 && ttl > 0;
+	}
+
+	/**
+	 * Packs a geo cell and z in a key half, or returns -1 if the point can't be cached (off the map).
+	 */
+	static long pack(int geoX, int geoY, int z) {
+		if ((geoX | geoY) >>> 16 != 0 || z < Short.MIN_VALUE || z > Short.MAX_VALUE) {
+			return -1;
+		}
+		return (long) geoX << 32 | (long) geoY << 16 | z & 0xFFFF;
+	}
+
+	private int index(long from, long to) {
+		long h = from * 0x9E3779B97F4A7C15L ^ to * 0xC2B2AE3D27D4EB4FL;
+		return (int) (h ^ h >>> 32) & mask;
+	}
+
+	private Entry get(AtomicReferenceArray<Entry> entries, long from, long to) {
+		final Entry entry = entries.get(index(from, to));
+		if (entry == null || entry.from != from || entry.to != to || entry.generation != generation ||
+				entry.expireTime < System.currentTimeMillis()) {
+			return null;
+		}
+		return entry;
+	}
+
+	private void put(AtomicReferenceArray<Entry> entries, long from, long to, byte result, int x, int y, int z) {
+		entries.lazySet(index(from, to), new Entry(from, to, generation, System.currentTimeMillis() + ttl, result, x, y, z));
+	}
+
+	/**
+	 * @return 1 if the target was visible, 0 if it wasn't and -1 if the result isn't cached
+	 */
+	int getLos(long from, long to) {
+		final Entry entry = get(losEntries, from, to);
+		if (entry == null) {
+			losMisses.increment();
+			return -1;
+		}
+		losHits.increment();
+		return entry.getResult();
+	}
+
+	void putLos(long from, long to, boolean canSee) {
+		put(losEntries, from, to, (byte) (canSee ? 1 : 0), 0, 0, 0);
+	}
+
+	Entry getMove(long from, long to) {
+		final Entry entry = get(moveEntries, from, to);
+		if (entry == null) {
+			moveMisses.increment();
+		} else {
+			moveHits.increment();
+		}
+		return entry;
+	}
+
+	void putMove(long from, long to, byte outcome, int x, int y, int z) {
+		put(moveEntries, from, to, outcome, x, y, z);
+	}
+
+	/**
+	 * Drops every cached result, called when the geodata changes.
+	 */
+	synchronized void invalidate() {
+		generation++;
+	}
+
+	String[] getStats() {
+		if (!isEnabled()) {
+			return new String[]{"Geo cache: disabled"};
+		}
+		return new String[]{
+				"Geo cache size/ttl(ms): " + (mask + 1) + "/" + ttl,
+				formatStats("LOS", losHits.sum(), losMisses.sum()),
+				formatStats("Move", moveHits.sum(), moveMisses.sum())};
+	}
+
+	private static String formatStats(String name, long hits, long misses) {
+		final long total = hits + misses;
+		return name + " cache hits/misses: " + hits + "/" + misses +
+				(total > 0 ? " (" + String.format("%1.1f", 100. * hits / total) + "% hits)" : "");
+	}
+}
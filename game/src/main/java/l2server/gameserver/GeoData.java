@@ -106,6 +106,13 @@ public class GeoData {
 		return (short) (z << 1 | 15);
 	}
 
+	/**
+	 * @return every layer of the given geo cell, each one as returned by getHeightAndNSWE
+	 */
+	public short[] getLayers(int x, int y) {
+		return new short[]{getHeightAndNSWE(x, y, 0)};
+	}
+
 	/**
 	 * @return Last Location (x,y,z) where player can walk - just before wall
 	 */
@@ -133,6 +140,13 @@ public class GeoData {
 		return false;
 	}
 
+	/**
+	 * @return line of sight and move check cache statistics, or null if there is no cache
+	 */
+	public String[] getCacheStats() {
+		return null;
+	}
+
 	@SuppressWarnings("synthetic-access")
 	private static class SingletonHolder {
 		protected static final GeoData instance = Config.GEODATA > 0 ? GeoEngine.getInstance() : new GeoData(true);
@@ -26,6 +26,7 @@ import l2server.gameserver.model.actor.instance.ChestInstance;
 import l2server.gameserver.model.actor.instance.DefenderInstance;
 import l2server.gameserver.model.actor.instance.DoorInstance;
 import l2server.gameserver.model.actor.instance.Player;
+import l2server.gameserver.pathfinding.clusters.HierarchicalPathFinding;
 import l2server.util.Point3D;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +53,7 @@ public class GeoEngine extends GeoData {
 	private static TShortObjectHashMap<MappedByteBuffer> geodata = new TShortObjectHashMap<>();
 	private static TShortObjectHashMap<IntBuffer> geodataIndex = new TShortObjectHashMap<>();
 	private static BufferedOutputStream geoBugsOut;
+	private static final GeoCache cache = new GeoCache(Config.GEODATA_CACHE_SIZE, Config.GEODATA_CACHE_TTL);
 	
 	public static GeoEngine getInstance() {
 		return SingletonHolder.instance;
@@ -212,14 +214,46 @@ public class GeoEngine extends GeoData {
 		}
 		
 		Location destiny = new Location(tx, ty, tz);
-		return moveCheck(startpoint,
-				destiny,
-				x - World.MAP_MIN_X >> 4,
-				y - World.MAP_MIN_Y >> 4,
-				z,
-				tx - World.MAP_MIN_X >> 4,
-				ty - World.MAP_MIN_Y >> 4,
-				tz);
+		final int gx = x - World.MAP_MIN_X >> 4;
+		final int gy = y - World.MAP_MIN_Y >> 4;
+		final int gtx = tx - World.MAP_MIN_X >> 4;
+		final int gty = ty - World.MAP_MIN_Y >> 4;
+		if (!cache.isEnabled()) {
+			return moveCheck(startpoint, destiny, gx, gy, z, gtx, gty, tz);
+		}
+		
+		final long from = GeoCache.pack(gx, gy, z);
+		final long to = GeoCache.pack(gtx, gty, tz);
+		if (from < 0 || to < 0) {
+			return moveCheck(startpoint, destiny, gx, gy, z, gtx, gty, tz);
+		}
+		
+		final GeoCache.Entry cached = cache.getMove(from, to);
+		if (cached != null) {
+			switch (cached.getResult()) {
+				case GeoCache.MOVE_START:
+					return startpoint;
+				case GeoCache.MOVE_DESTINY:
+					return destiny;
+				case GeoCache.MOVE_DESTINY_Z:
+					return new Location(tx, ty, cached.getZ());
+				default:
+					return new Location(cached.getX(), cached.getY(), cached.getZ());
+			}
+		}
+		
+		final Location result = moveCheck(startpoint, destiny, gx, gy, z, gtx, gty, tz);
+		if (result == startpoint) {
+			cache.putMove(from, to, GeoCache.MOVE_START, 0, 0, 0);
+		} else if (result == destiny) {
+			cache.putMove(from, to, GeoCache.MOVE_DESTINY, 0, 0, 0);
+		} else if (result.getX() - World.MAP_MIN_X >> 4 == gtx && result.getY() - World.MAP_MIN_Y >> 4 == gty) {
+			// reached the target cell with a z corrected by the geodata, blocked moves always stop before it
+			cache.putMove(from, to, GeoCache.MOVE_DESTINY_Z, 0, 0, result.getZ());
+		} else {
+			cache.putMove(from, to, GeoCache.MOVE_BLOCKED, result.getX(), result.getY(), result.getZ());
+		}
+		return result;
 	}
 	
 	/**
@@ -248,7 +282,36 @@ public class GeoEngine extends GeoData {
 	
 	@Override
 	public boolean canSeeTarget(int x, int y, int z, int tx, int ty, int tz) {
-		return canSee(x - World.MAP_MIN_X >> 4, y - World.MAP_MIN_Y >> 4, z, tx - World.MAP_MIN_X >> 4, ty - World.MAP_MIN_Y >> 4, tz);
+		final int gx = x - World.MAP_MIN_X >> 4;
+		final int gy = y - World.MAP_MIN_Y >> 4;
+		final int gtx = tx - World.MAP_MIN_X >> 4;
+		final int gty = ty - World.MAP_MIN_Y >> 4;
+		if (!cache.isEnabled()) {
+			return canSee(gx, gy, z, gtx, gty, tz);
+		}
+		
+		final long from = GeoCache.pack(gx, gy, z);
+		final long to = GeoCache.pack(gtx, gty, tz);
+		if (from < 0 || to < 0) {
+			return canSee(gx, gy, z, gtx, gty, tz);
+		}
+		
+		final int cached = cache.getLos(from, to);
+		if (cached >= 0) {
+			return cached == 1;
+		}
+		
+		final boolean canSee = canSee(gx, gy, z, gtx, gty, tz);
+		cache.putLos(from, to, canSee);
+		return canSee;
+	}
+	
+	/**
+	 * @see GeoData#getCacheStats()
+	 */
+	@Override
+	public String[] getCacheStats() {
+		return cache.getStats();
 	}
 	
 	@Override
@@ -675,6 +738,8 @@ public class GeoEngine extends GeoData {
 		short regionoffset = (short) ((rx << 5) + ry);
 		geodataIndex.remove(regionoffset);
 		geodata.remove(regionoffset);
+		cache.invalidate();
+		HierarchicalPathFinding.onGeodataChanged(rx, ry);
 	}
 	
 	public static boolean loadGeodataFile(byte rx, byte ry) {
@@ -730,6 +795,8 @@ public class GeoEngine extends GeoData {
 				geodataIndex.put(regionoffset, indexs);
 			}
 			geodata.put(regionoffset, geo);
+			cache.invalidate();
+			HierarchicalPathFinding.onGeodataChanged(rx, ry);
 			
 			file.close();
 			
@@ -1424,6 +1491,57 @@ public class GeoEngine extends GeoData {
 		}
 	}
 	
+	/**
+	 * @see GeoData#getLayers(int, int)
+	 */
+	@Override
+	public short[] getLayers(int x, int y) {
+		short region = getRegionOffset(x, y);
+		int blockX = getBlock(x);
+		int blockY = getBlock(y);
+		
+		int index = 0;
+		final IntBuffer idx = geodataIndex.get(region);
+		if (idx == null) {
+			index = ((blockX << 8) + blockY) * 3;
+		} else {
+			index = idx.get((blockX << 8) + blockY);
+		}
+		ByteBuffer geo = geodata.get(region);
+		if (geo == null) {
+			return new short[]{NSWE_ALL};
+		}
+		byte type = geo.get(index);
+		index++;
+		if (type == 0)//flat
+		{
+			return new short[]{(short) (geo.getShort(index) << 1 | NSWE_ALL)};
+		} else if (type == 1)//complex
+		{
+			index += (getCell(x) << 3) + getCell(y) << 1;
+			return new short[]{geo.getShort(index)};
+		}
+		//multilevel
+		int offset = (getCell(x) << 3) + getCell(y);
+		while (offset > 0) {
+			byte lc = geo.get(index);
+			index += (lc << 1) + 1;
+			offset--;
+		}
+		byte layers = geo.get(index);
+		index++;
+		if (layers <= 0 || layers > 125) {
+			log.warn("Broken geofile (case6), region: " + region + " - invalid layer count: " + layers + " at: " + x + " " + y);
+			return new short[]{NSWE_ALL};
+		}
+		short[] result = new short[layers];
+		for (int i = 0; i < layers; i++) {
+			result[i] = geo.getShort(index);
+			index += 2;
+		}
+		return result;
+	}
+	
 	/**
 	 * @return True if NSWE dont block given direction
 	 */
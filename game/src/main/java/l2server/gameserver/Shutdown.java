@@ -223,6 +223,14 @@ public class Shutdown extends Thread {
 			t.printStackTrace();
 		}
 
+		// write the rows left to the database writer
+		try {
+			DatabaseWriter.getInstance().shutdown();
+		} catch (Throwable t) {
+			log.warn("Something went wrong while flushing the database writer: " + t.getMessage());
+			t.printStackTrace();
+		}
+
 		// commit data, last chance
 		try {
 			DatabasePool.getInstance().shutdown();
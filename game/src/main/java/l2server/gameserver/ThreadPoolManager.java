@@ -17,6 +17,7 @@ package l2server.gameserver;
 
 import l2server.Config;
 import l2server.util.StringUtil;
+import l2server.util.TimerWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,10 +27,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>This class is made to handle all the ThreadPools used in L2j.</p>
- * <p>Scheduled Tasks can either be sent to a {@link #generalScheduledThreadPool "general"} or {@link #effectsScheduledThreadPool "effects"} {@link ScheduledThreadPoolExecutor ScheduledThreadPool}:
- * The "effects" one is used for every effects (skills, hp/mp regen ...) while the "general" one is used for
- * everything else that needs to be scheduled.<br>
- * There also is an {@link #aiScheduledThreadPool "ai"} {@link ScheduledThreadPoolExecutor ScheduledThreadPool} used for AI Tasks.</p>
+ * <p>Scheduled Tasks can either be sent to the {@link #generalScheduledThreadPool "general"} {@link ScheduledThreadPoolExecutor ScheduledThreadPool}
+ * or to the {@link #timerWheel timer wheel}, whose "effects" timers are used for every effects (skills, hp/mp regen ...) and "ai" timers
+ * for AI Tasks. The general one is used for everything else that needs to be scheduled.<br>
+ * The effects and AI timers are the most numerous and most often cancelled ones, the wheel schedules and cancels them in O(1)
+ * and runs them on the {@link #effectsThreadPool "effects"} and {@link #aiThreadPool "ai"} {@link ThreadPoolExecutor ThreadPools}.</p>
  * <p>Tasks can be sent to {@link ScheduledThreadPoolExecutor ScheduledThreadPool} either with:
  * <ul>
  * <li>{@link #scheduleEffect(Runnable, long)} : for effects Tasks that needs to be executed only once.</li>
@@ -79,9 +81,17 @@ public class ThreadPoolManager {
 		}
 	}
 	
-	private ScheduledThreadPoolExecutor effectsScheduledThreadPool;
+	/**
+	 * Precision of the effects and AI timers
+	 */
+	private static final long TIMER_WHEEL_TICK = 10;
+	
+	private ThreadPoolExecutor effectsThreadPool;
 	private ScheduledThreadPoolExecutor generalScheduledThreadPool;
-	private ScheduledThreadPoolExecutor aiScheduledThreadPool;
+	private ThreadPoolExecutor aiThreadPool;
+	private TimerWheel timerWheel;
+	private TimerWheel.Category effectTimers;
+	private TimerWheel.Category aiTimers;
 	private ThreadPoolExecutor generalPacketsThreadPool;
 	private ThreadPoolExecutor ioPacketsThreadPool;
 	private ThreadPoolExecutor generalThreadPool;
@@ -98,8 +108,11 @@ public class ThreadPoolManager {
 	}
 	
 	private ThreadPoolManager() {
-		effectsScheduledThreadPool =
-				new ScheduledThreadPoolExecutor(Config.THREAD_P_EFFECTS, new PriorityThreadFactory("EffectsSTPool", Thread.NORM_PRIORITY));
+		effectsThreadPool = new ThreadPoolExecutor(Config.THREAD_P_EFFECTS,
+				Config.THREAD_P_EFFECTS,
+				0L,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), new PriorityThreadFactory("EffectsSTPool", Thread.NORM_PRIORITY));
 		generalScheduledThreadPool = new ScheduledThreadPoolExecutor(Config.THREAD_P_GENERAL, new PriorityThreadFactory("gn", Thread.NORM_PRIORITY));
 		ioPacketsThreadPool = new ThreadPoolExecutor(Config.IO_PACKET_THREAD_CORE_SIZE,
 				Integer.MAX_VALUE,
@@ -116,7 +129,16 @@ public class ThreadPoolManager {
 				5L,
 				TimeUnit.SECONDS,
 				new LinkedBlockingQueue<>(), new PriorityThreadFactory("gp", Thread.NORM_PRIORITY));
-		aiScheduledThreadPool = new ScheduledThreadPoolExecutor(Config.AI_MAX_THREAD, new PriorityThreadFactory("ai", Thread.NORM_PRIORITY));
+		aiThreadPool = new ThreadPoolExecutor(Config.AI_MAX_THREAD,
+				Config.AI_MAX_THREAD,
+				0L,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), new PriorityThreadFactory("ai", Thread.NORM_PRIORITY));
+		
+		timerWheel = new TimerWheel("TimerWheel", TIMER_WHEEL_TICK);
+		effectTimers = timerWheel.createCategory("Effects", effectsThreadPool);
+		aiTimers = timerWheel.createCategory("AI", aiThreadPool);
+		timerWheel.start();
 		
 		scheduleGeneralAtFixedRate(new PurgeTask(), 10 * 60 * 1000L, 5 * 60 * 1000L);
 	}
@@ -133,7 +155,7 @@ public class ThreadPoolManager {
 	public ScheduledFuture<?> scheduleEffect(Runnable r, long delay) {
 		try {
 			delay = ThreadPoolManager.validateDelay(delay);
-			return effectsScheduledThreadPool.schedule(new RunnableWrapper(r), delay, TimeUnit.MILLISECONDS);
+			return effectTimers.schedule(new RunnableWrapper(r), delay);
 		} catch (RejectedExecutionException e) {
 			return null;
 		}
@@ -143,15 +165,18 @@ public class ThreadPoolManager {
 		try {
 			delay = ThreadPoolManager.validateDelay(delay);
 			initial = ThreadPoolManager.validateDelay(initial);
-			return effectsScheduledThreadPool.scheduleAtFixedRate(new RunnableWrapper(r), initial, delay, TimeUnit.MILLISECONDS);
+			return effectTimers.scheduleAtFixedRate(new RunnableWrapper(r), initial, delay);
 		} catch (RejectedExecutionException e) {
 			return null; /* shutdown, ignore */
 		}
 	}
 	
+	/**
+	 * The effects are on the timer wheel, which drops a cancelled timer from its slot: this just cancels the task.
+	 */
 	@Deprecated
 	public boolean removeEffect(RunnableScheduledFuture<?> r) {
-		return effectsScheduledThreadPool.remove(r);
+		return r.cancel(false);
 	}
 	
 	public ScheduledFuture<?> scheduleGeneral(Runnable r, long delay) {
@@ -181,7 +206,7 @@ public class ThreadPoolManager {
 	public ScheduledFuture<?> scheduleAi(Runnable r, long delay) {
 		try {
 			delay = ThreadPoolManager.validateDelay(delay);
-			return aiScheduledThreadPool.schedule(new RunnableWrapper(r), delay, TimeUnit.MILLISECONDS);
+			return aiTimers.schedule(new RunnableWrapper(r), delay);
 		} catch (RejectedExecutionException e) {
 			return null; /* shutdown, ignore */
 		}
@@ -191,7 +216,7 @@ public class ThreadPoolManager {
 		try {
 			delay = ThreadPoolManager.validateDelay(delay);
 			initial = ThreadPoolManager.validateDelay(initial);
-			return aiScheduledThreadPool.scheduleAtFixedRate(new RunnableWrapper(r), initial, delay, TimeUnit.MILLISECONDS);
+			return aiTimers.scheduleAtFixedRate(new RunnableWrapper(r), initial, delay);
 		} catch (RejectedExecutionException e) {
 			return null; /* shutdown, ignore */
 		}
@@ -214,28 +239,29 @@ public class ThreadPoolManager {
 	}
 	
 	public void executeAi(Runnable r) {
-		aiScheduledThreadPool.execute(new RunnableWrapper(r));
+		aiTimers.execute(new RunnableWrapper(r));
 	}
 	
 	public String[] getStats() {
-		return new String[]{"STP:", " + Effects:", " |- ActiveThreads:   " + effectsScheduledThreadPool.getActiveCount(),
-				" |- getCorePoolSize: " + effectsScheduledThreadPool.getCorePoolSize(),
-				" |- PoolSize:		" + effectsScheduledThreadPool.getPoolSize(),
-				" |- MaximumPoolSize: " + effectsScheduledThreadPool.getMaximumPoolSize(),
-				" |- CompletedTasks:  " + effectsScheduledThreadPool.getCompletedTaskCount(),
-				" |- ScheduledTasks:  " + (effectsScheduledThreadPool.getTaskCount() - effectsScheduledThreadPool.getCompletedTaskCount()),
-				" | -------", " + General:", " |- ActiveThreads:   " + generalScheduledThreadPool.getActiveCount(),
+		final String[] timerStats = timerWheel.getStats();
+		final String[] poolStats = new String[]{"STP:", " + General:", " |- ActiveThreads:   " + generalScheduledThreadPool.getActiveCount(),
 				" |- getCorePoolSize: " + generalScheduledThreadPool.getCorePoolSize(),
 				" |- PoolSize:		" + generalScheduledThreadPool.getPoolSize(),
 				" |- MaximumPoolSize: " + generalScheduledThreadPool.getMaximumPoolSize(),
 				" |- CompletedTasks:  " + generalScheduledThreadPool.getCompletedTaskCount(),
 				" |- ScheduledTasks:  " + (generalScheduledThreadPool.getTaskCount() - generalScheduledThreadPool.getCompletedTaskCount()),
-				" | -------", " + AI:", " |- ActiveThreads:   " + aiScheduledThreadPool.getActiveCount(),
-				" |- getCorePoolSize: " + aiScheduledThreadPool.getCorePoolSize(), " |- PoolSize:		" + aiScheduledThreadPool.getPoolSize(),
-				" |- MaximumPoolSize: " + aiScheduledThreadPool.getMaximumPoolSize(),
-				" |- CompletedTasks:  " + aiScheduledThreadPool.getCompletedTaskCount(),
-				" |- ScheduledTasks:  " + (aiScheduledThreadPool.getTaskCount() - aiScheduledThreadPool.getCompletedTaskCount()), "TP:",
-				" + Packets:", " |- ActiveThreads:   " + generalPacketsThreadPool.getActiveCount(),
+				" | -------", "TP:", " + Effects:", " |- ActiveThreads:   " + effectsThreadPool.getActiveCount(),
+				" |- getCorePoolSize: " + effectsThreadPool.getCorePoolSize(),
+				" |- PoolSize:		" + effectsThreadPool.getPoolSize(),
+				" |- CompletedTasks:  " + effectsThreadPool.getCompletedTaskCount(),
+				" |- QueuedTasks:	 " + effectsThreadPool.getQueue().size(),
+				" |- PendingTimers:   " + effectTimers.getPending(),
+				" | -------", " + AI:", " |- ActiveThreads:   " + aiThreadPool.getActiveCount(),
+				" |- getCorePoolSize: " + aiThreadPool.getCorePoolSize(), " |- PoolSize:		" + aiThreadPool.getPoolSize(),
+				" |- CompletedTasks:  " + aiThreadPool.getCompletedTaskCount(),
+				" |- QueuedTasks:	 " + aiThreadPool.getQueue().size(),
+				" |- PendingTimers:   " + aiTimers.getPending(),
+				" | -------", " + Packets:", " |- ActiveThreads:   " + generalPacketsThreadPool.getActiveCount(),
 				" |- getCorePoolSize: " + generalPacketsThreadPool.getCorePoolSize(),
 				" |- MaximumPoolSize: " + generalPacketsThreadPool.getMaximumPoolSize(),
 				" |- LargestPoolSize: " + generalPacketsThreadPool.getLargestPoolSize(),
@@ -250,7 +276,12 @@ public class ThreadPoolManager {
 				" |- ActiveThreads:   " + generalThreadPool.getActiveCount(), " |- getCorePoolSize: " + generalThreadPool.getCorePoolSize(),
 				" |- MaximumPoolSize: " + generalThreadPool.getMaximumPoolSize(), " |- LargestPoolSize: " + generalThreadPool.getLargestPoolSize(),
 				" |- PoolSize:		" + generalThreadPool.getPoolSize(), " |- CompletedTasks:  " + generalThreadPool.getCompletedTaskCount(),
-				" |- QueuedTasks:	 " + generalThreadPool.getQueue().size(), " | -------"};
+				" |- QueuedTasks:	 " + generalThreadPool.getQueue().size(), " | -------", "Timers:"};
+		
+		final String[] stats = new String[poolStats.length + timerStats.length];
+		System.arraycopy(poolStats, 0, stats, 0, poolStats.length);
+		System.arraycopy(timerStats, 0, stats, poolStats.length, timerStats.length);
+		return stats;
 	}
 	
 	private static class PriorityThreadFactory implements ThreadFactory {
@@ -280,18 +311,19 @@ public class ThreadPoolManager {
 	
 	public void shutdown() {
 		shutdown = true;
+		timerWheel.stop();
 		try {
 			generalPacketsThreadPool.awaitTermination(1, TimeUnit.SECONDS);
 			ioPacketsThreadPool.awaitTermination(1, TimeUnit.SECONDS);
-			effectsScheduledThreadPool.awaitTermination(1, TimeUnit.SECONDS);
+			effectsThreadPool.awaitTermination(1, TimeUnit.SECONDS);
 			generalScheduledThreadPool.awaitTermination(1, TimeUnit.SECONDS);
-			aiScheduledThreadPool.awaitTermination(1, TimeUnit.SECONDS);
+			aiThreadPool.awaitTermination(1, TimeUnit.SECONDS);
 			generalThreadPool.awaitTermination(1, TimeUnit.SECONDS);
 			generalPacketsThreadPool.shutdown();
 			ioPacketsThreadPool.shutdown();
-			effectsScheduledThreadPool.shutdown();
+			effectsThreadPool.shutdown();
 			generalScheduledThreadPool.shutdown();
-			aiScheduledThreadPool.shutdown();
+			aiThreadPool.shutdown();
 			generalThreadPool.shutdown();
 			log.info("All ThreadPools are now stopped");
 		} catch (InterruptedException e) {
@@ -304,9 +336,7 @@ public class ThreadPoolManager {
 	}
 	
 	public void purge() {
-		effectsScheduledThreadPool.purge();
 		generalScheduledThreadPool.purge();
-		aiScheduledThreadPool.purge();
 		ioPacketsThreadPool.purge();
 		generalPacketsThreadPool.purge();
 		generalThreadPool.purge();
@@ -417,9 +447,7 @@ public class ThreadPoolManager {
 		 */
 		@Override
 		public void run() {
-			effectsScheduledThreadPool.purge();
 			generalScheduledThreadPool.purge();
-			aiScheduledThreadPool.purge();
 		}
 	}
 	
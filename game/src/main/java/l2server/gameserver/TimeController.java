@@ -18,14 +18,23 @@ package l2server.gameserver;
 import l2server.Config;
 import l2server.gameserver.ai.CtrlEvent;
 import l2server.gameserver.instancemanager.DayNightSpawnManager;
+import l2server.gameserver.model.WorldRegion;
 import l2server.gameserver.model.actor.Creature;
+import l2server.gameserver.model.actor.position.ObjectPosition;
 import l2server.util.loader.annotations.Load;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Removed TimerThread watcher [DrHouse]
@@ -51,8 +60,26 @@ public class TimeController {
 	
 	private static final ConcurrentHashMap<Integer, Creature> movingObjects = new ConcurrentHashMap<>();
 	
+	// Below this many moving characters the tick is done by the timer thread alone
+	private static final int PARALLEL_THRESHOLD = 512;
+	// Partitions per movement thread, so a slow one can be compensated by the others
+	private static final int PARTITIONS_PER_THREAD = 4;
+	// Upper bounds (ms) of the tick time histogram buckets, the last bucket has no bound
+	private static final int[] TICK_TIME_BOUNDS = {5, 10, 25, 50, 100, 250};
+	
 	protected static TimerThread timer;
 	
+	// Null when the characters are moved by the timer thread only
+	private ForkJoinPool movePool;
+	
+	private final LongAdder[] tickTimes = new LongAdder[TICK_TIME_BOUNDS.length + 1];
+	private final LongAdder tickOverruns = new LongAdder();
+	private final LongAdder skippedTicks = new LongAdder();
+	private volatile long maxTickTime;
+	private volatile int lastMovingCount;
+	private volatile int lastPartitionCount;
+	private volatile int lastDeferredCount;
+	
 	/**
 	 * one ingame day is 240 real minutes
 	 */
@@ -61,6 +88,9 @@ public class TimeController {
 	}
 	
 	private TimeController() {
+		for (int i = 0; i < tickTimes.length; i++) {
+			tickTimes[i] = new LongAdder();
+		}
 	}
 	
 	@Load
@@ -68,6 +98,16 @@ public class TimeController {
 		gameStartTime = System.currentTimeMillis() - 3600000; // offset so that the server starts a day begin
 		gameTicks = 3600000 / MILLIS_IN_TICK; // offset so that the server starts a day begin
 		
+		if (Config.MOVEMENT_THREADS > 1) {
+			movePool = new ForkJoinPool(Config.MOVEMENT_THREADS, pool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("GameTimeController-" + thread.getPoolIndex());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MAX_PRIORITY);
+				return thread;
+			}, (thread, e) -> log.warn("", e), false);
+		}
+		
 		timer = new TimerThread();
 		timer.start();
 		
@@ -109,27 +149,159 @@ public class TimeController {
 	 * All Creature in movement are identified in <B>movingObjects</B> of GameTimeController.<BR><BR>
 	 * <p>
 	 * <B><U> Actions</U> :</B><BR><BR>
+	 * <li>Split the Creature in movement by world region between the movement threads, and wait for all of them</li>
 	 * <li>Update the position of each Creature </li>
+	 * <li>Update the known lists and zones of the Creature, on the timer thread once all of them moved</li>
 	 * <li>If movement is finished, the Creature is removed from movingObjects </li>
-	 * <li>Create a task to update the knownObject and knowPlayers of each Creature that finished its movement and of their already known WorldObject then notify AI with EVT_ARRIVED </li><BR><BR>
+	 * <li>Create a task per partition to update the knownObject and knowPlayers of each Creature that finished its movement and of their already known WorldObject then notify AI with EVT_ARRIVED </li><BR><BR>
 	 */
 	protected void moveObjects() {
-		// Go throw the table containing Creature in movement
-		Iterator<Map.Entry<Integer, Creature>> it = movingObjects.entrySet().iterator();
-		while (it.hasNext()) {
-			// If movement is finished, the Creature is removed from
-			// movingObjects and added to the ArrayList ended
-			Creature ch = it.next().getValue();
-			if (ch.updatePosition(gameTicks)) {
-				it.remove();
-				ThreadPoolManager.getInstance().executeTask(new MovingObjectArrived(ch));
+		final long start = System.nanoTime();
+		final int ticks = gameTicks;
+		final int moving = movingObjects.size();
+		
+		if (movePool == null || moving < PARALLEL_THRESHOLD) {
+			moveObjects(movingObjects.values(), ticks);
+			lastPartitionCount = 1;
+		} else {
+			final List<ForkJoinTask<List<Runnable>>> tasks = new ArrayList<>();
+			for (List<Creature> partition : partitionByRegion(moving)) {
+				tasks.add(movePool.submit(() -> moveDeferringUpdates(partition, ticks)));
+			}
+			
+			// No character may be moved again before the whole tick is done
+			final List<Runnable> deferred = new ArrayList<>();
+			for (ForkJoinTask<List<Runnable>> task : tasks) {
+				deferred.addAll(task.join());
+			}
+			
+			// A known list update writes the known lists of both sides, so two neighbours updated at the same time on two
+			// threads could each decide about their pair from the other's old position. Zone enters and exits run the zone
+			// scripts, which aren't thread safe either. Done here one after the other, as the sequential tick did, and with
+			// the positions of the end of the tick.
+			for (Runnable update : deferred) {
+				try {
+					update.run();
+				} catch (Exception e) {
+					log.warn("Failed to run a deferred movement update:", e);
+				}
+			}
+			lastPartitionCount = tasks.size();
+			lastDeferredCount = deferred.size();
+		}
+		
+		lastMovingCount = moving;
+		onTickDone((System.nanoTime() - start) / 1000000);
+	}
+	
+	/**
+	 * Move the Creature of a partition on a movement thread. The movement threads only touch the positions, cells and
+	 * regions, all safe to update concurrently, and each Creature is in a single partition.
+	 *
+	 * @return the known list and zone updates of the moves, to run once all the partitions are done
+	 */
+	private List<Runnable> moveDeferringUpdates(List<Creature> partition, int ticks) {
+		final List<Runnable> deferred = new ArrayList<>();
+		ObjectPosition.deferUpdates(deferred);
+		try {
+			moveObjects(partition, ticks);
+		} finally {
+			ObjectPosition.deferUpdates(null);
+		}
+		return deferred;
+	}
+	
+	private void moveObjects(Collection<Creature> creatures, int ticks) {
+		List<Creature> arrived = null;
+		for (Creature ch : creatures) {
+			try {
+				// If movement is finished, the Creature is removed from movingObjects
+				if (ch.updatePosition(ticks)) {
+					movingObjects.remove(ch.getObjectId(), ch);
+					if (arrived == null) {
+						arrived = new ArrayList<>();
+					}
+					arrived.add(ch);
+				}
+			} catch (Exception e) {
+				log.warn("Failed to move " + ch + ":", e);
 			}
 		}
+		
+		if (arrived != null) {
+			ThreadPoolManager.getInstance().executeTask(new MovingObjectsArrived(arrived));
+		}
+	}
+	
+	/**
+	 * Group the Creature in movement by world region, then pack the regions in partitions of about the same size.
+	 * A region with more Creature than a partition is split.
+	 */
+	private List<List<Creature>> partitionByRegion(int moving) {
+		final Map<WorldRegion, List<Creature>> byRegion = new HashMap<>();
+		for (Creature ch : movingObjects.values()) {
+			byRegion.computeIfAbsent(ch.getWorldRegion(), r -> new ArrayList<>()).add(ch);
+		}
+		
+		final int partitionSize = moving / (movePool.getParallelism() * PARTITIONS_PER_THREAD) + 1;
+		final List<List<Creature>> partitions = new ArrayList<>();
+		List<Creature> current = new ArrayList<>(partitionSize);
+		for (List<Creature> region : byRegion.values()) {
+			if (region.size() >= partitionSize) {
+				for (int i = 0; i < region.size(); i += partitionSize) {
+					partitions.add(region.subList(i, Math.min(i + partitionSize, region.size())));
+				}
+				continue;
+			}
+			
+			current.addAll(region);
+			if (current.size() >= partitionSize) {
+				partitions.add(current);
+				current = new ArrayList<>(partitionSize);
+			}
+		}
+		if (!current.isEmpty()) {
+			partitions.add(current);
+		}
+		return partitions;
+	}
+	
+	private void onTickDone(long time) {
+		int bucket = 0;
+		while (bucket < TICK_TIME_BOUNDS.length && time >= TICK_TIME_BOUNDS[bucket]) {
+			bucket++;
+		}
+		tickTimes[bucket].increment();
+		
+		if (time > MILLIS_IN_TICK) {
+			tickOverruns.increment();
+		}
+		if (time > maxTickTime) {
+			maxTickTime = time;
+		}
+	}
+	
+	public String[] getStats() {
+		final StringBuilder histogram = new StringBuilder("Movement tick times(ms):");
+		for (int i = 0; i < tickTimes.length; i++) {
+			histogram.append(i < TICK_TIME_BOUNDS.length ? " <" + TICK_TIME_BOUNDS[i] : " >=" + TICK_TIME_BOUNDS[i - 1]);
+			histogram.append(": ").append(tickTimes[i].sum());
+		}
+		
+		return new String[]{
+				"Movement: moving " + lastMovingCount + " in " + lastPartitionCount + " partitions, threads: " +
+						(movePool == null ? 1 : movePool.getParallelism()) + ", updates deferred to the end of the last parallel tick: " +
+						lastDeferredCount,
+				histogram.toString(),
+				"Movement tick overruns: " + tickOverruns.sum() + ", skipped ticks: " + skippedTicks.sum() + ", max(ms): " + maxTickTime};
 	}
 	
 	public void stopTimer() {
 		interruptRequest = true;
 		timer.interrupt();
+		if (movePool != null) {
+			movePool.shutdown();
+		}
 	}
 	
 	class TimerThread extends Thread {
@@ -153,6 +325,9 @@ public class TimeController {
 					gameTicks = (int) (runtime / MILLIS_IN_TICK); // new ticks value (ticks now)
 					
 					if (oldTicks != gameTicks) {
+						if (gameTicks - oldTicks > 1) {
+							skippedTicks.add(gameTicks - oldTicks - 1);
+						}
 						moveObjects(); // Runs possibly too often
 					}
 					
@@ -182,25 +357,27 @@ public class TimeController {
 	/**
 	 * Update the knownObject and knowPlayers of each Creature that finished its movement and of their already known WorldObject then notify AI with EVT_ARRIVED.<BR><BR>
 	 */
-	private static class MovingObjectArrived implements Runnable {
-		private final Creature ended;
+	private static class MovingObjectsArrived implements Runnable {
+		private final List<Creature> ended;
 		
-		MovingObjectArrived(Creature ended) {
+		MovingObjectsArrived(List<Creature> ended) {
 			this.ended = ended;
 		}
 		
 		@Override
 		public void run() {
-			try {
-				if (ended.hasAI()) // AI could be just disabled due to region turn off
-				{
-					if (Config.MOVE_BASED_KNOWNLIST) {
-						ended.getKnownList().findObjects();
+			for (Creature ch : ended) {
+				try {
+					if (ch.hasAI()) // AI could be just disabled due to region turn off
+					{
+						if (Config.MOVE_BASED_KNOWNLIST) {
+							ch.getKnownList().findObjects();
+						}
+						ch.getAI().notifyEvent(CtrlEvent.EVT_ARRIVED);
 					}
-					ended.getAI().notifyEvent(CtrlEvent.EVT_ARRIVED);
+				} catch (NullPointerException e) {
+					log.warn("", e);
 				}
-			} catch (NullPointerException e) {
-				log.warn("", e);
 			}
 		}
 	}
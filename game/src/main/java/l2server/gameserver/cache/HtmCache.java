@@ -22,34 +22,81 @@ import l2server.util.loader.annotations.Reload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileInputStream;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Keeps the html pages as templates, split into literals and parameter slots when loaded (see {@link HtmTemplate}).<br>
+ * <br>
+ * The pages are keyed by their path from the datapack root. In compact mode the cache keeps every page as its
+ * ISO-8859-1 bytes, the charset the files are read with, and only the most recently used pages as templates.
+ * The datapack can be watched, so a changed file is read again the next time it's asked for.
+ *
  * @author Layane
  */
 public class HtmCache {
 	private static Logger log = LoggerFactory.getLogger(HtmCache.class.getName());
 
-	private final Map<Integer, String> cache;
+	// Pages as templates, or only the most recently used ones in compact mode
+	private final Map<String, HtmTemplate> cache;
+	// Pages as bytes, only in compact mode
+	private final Map<String, byte[]> pages = new ConcurrentHashMap<>();
+	// Paths without a file, remembered with the lazy cache until they are created (when watched) or the cache is reloaded
+	private final Set<String> missingPaths = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger loadedFiles = new AtomicInteger();
+	private final AtomicLong bytesBuffLen = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
 
-	private int loadedFiles;
-	private long bytesBuffLen;
+	private WatchService watchService;
 
 	public static HtmCache getInstance() {
 		return SingletonHolder.instance;
 	}
 
 	private HtmCache() {
-		if (Config.LAZY_CACHE) {
-			cache = new ConcurrentHashMap<>();
+		if (Config.HTM_CACHE_COMPACT) {
+			cache = Collections.synchronizedMap(new LinkedHashMap<String, HtmTemplate>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, HtmTemplate> eldest) {
+					if (size() > Config.HTM_CACHE_TEMPLATES) {
+						evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			});
 		} else {
-			cache = new HashMap<>();
+			cache = new ConcurrentHashMap<>();
+		}
+
+		if (Config.HTM_CACHE_WATCH) {
+			startWatching();
 		}
 	}
 
@@ -61,15 +108,17 @@ public class HtmCache {
 	}
 
 	public void reload(File f) {
+		missingPaths.clear();
 		if (!Config.LAZY_CACHE) {
 			log.info("Html cache start...");
 			parseDir(f);
 			log.info("Cache[HTML]: " + String.format("%.3f", getMemoryUsage()) + " megabytes on " + getLoadedFiles() + " files loaded");
 		} else {
 			cache.clear();
-			loadedFiles = 0;
-			bytesBuffLen = 0;
-			log.info("Cache[HTML]: Running lazy cache");
+			pages.clear();
+			loadedFiles.set(0);
+			bytesBuffLen.set(0);
+			log.info("Cache[HTML]: Running lazy cache" + (Config.HTM_CACHE_COMPACT ? ", compact" : ""));
 		}
 	}
 
@@ -79,23 +128,32 @@ public class HtmCache {
 	}
 
 	public double getMemoryUsage() {
-		return (float) bytesBuffLen / 1048576;
+		return (float) bytesBuffLen.get() / 1048576;
 	}
 
 	public int getLoadedFiles() {
-		return loadedFiles;
+		return loadedFiles.get();
+	}
+
+	public String getStats() {
+		return "Cache[HTML]: " + hits.sum() + " hits, " + misses.sum() + " misses, " + evictions.sum() + " evictions, " +
+				invalidations.sum() + " invalidations" + (Config.HTM_CACHE_COMPACT ? ", " + cache.size() + " pages decoded" : "");
 	}
 
 	private static class HtmFilter implements FileFilter {
 		@Override
 		public boolean accept(File file) {
 			if (!file.isDirectory()) {
-				return file.getName().endsWith(".htm") || file.getName().endsWith(".html");
+				return isHtm(file.getName());
 			}
 			return true;
 		}
 	}
 
+	private static boolean isHtm(String name) {
+		return name.endsWith(".htm") || name.endsWith(".html");
+	}
+
 	private void parseDir(File dir) {
 		FileFilter filter = new HtmFilter();
 		File[] files = dir.listFiles(filter);
@@ -110,50 +168,56 @@ public class HtmCache {
 	}
 
 	public String loadFile(File file) {
-		final String relpath = Util.getRelativePath(Config.DATAPACK_ROOT, file);
-		final int hashcode = relpath.hashCode();
+		final HtmTemplate template = loadTemplate(file);
+		return template != null ? template.getText() : null;
+	}
+
+	private HtmTemplate loadTemplate(File file) {
+		final String relpath = Util.getRelativePath(Config.DATAPACK_ROOT, file).intern();
 
 		final HtmFilter filter = new HtmFilter();
 
 		if (file.exists() && filter.accept(file) && !file.isDirectory()) {
-			String content;
-			FileInputStream fis = null;
-
 			try {
-				fis = new FileInputStream(file);
-				BufferedInputStream bis = new BufferedInputStream(fis);
-				int bytes = bis.available();
-				byte[] raw = new byte[bytes];
-
-				bis.read(raw);
-				content = new String(raw, "ISO-8859-1");
-				content = content.replaceAll("\r\n", "\n");
-
-				String oldContent = cache.get(hashcode);
+				final byte[] raw = removeCarriageReturns(Files.readAllBytes(file.toPath()));
+				final HtmTemplate template = new HtmTemplate(new String(raw, StandardCharsets.ISO_8859_1));
 
+				final Object oldContent = Config.HTM_CACHE_COMPACT ? pages.put(relpath, raw) : cache.get(relpath);
 				if (oldContent == null) {
-					bytesBuffLen += bytes;
-					loadedFiles++;
+					bytesBuffLen.addAndGet(raw.length);
+					loadedFiles.incrementAndGet();
 				} else {
-					bytesBuffLen = bytesBuffLen - oldContent.length() + bytes;
+					final int oldLength = oldContent instanceof byte[] ? ((byte[]) oldContent).length : ((HtmTemplate) oldContent).getLength();
+					bytesBuffLen.addAndGet(raw.length - oldLength);
 				}
 
-				cache.put(hashcode, content);
+				if (Config.HTM_CACHE_COMPACT && !Config.LAZY_CACHE) {
+					// decoded on its first request
+					cache.remove(relpath);
+				} else {
+					cache.put(relpath, template);
+				}
+				missingPaths.remove(relpath);
 
-				return content;
+				return template;
 			} catch (Exception e) {
 				log.warn("Problem with htm file " + e.getMessage(), e);
-			} finally {
-				try {
-					fis.close();
-				} catch (Exception ignored) {
-				}
 			}
 		}
 
 		return null;
 	}
 
+	private static byte[] removeCarriageReturns(byte[] raw) {
+		int length = 0;
+		for (int i = 0; i < raw.length; i++) {
+			if (raw[i] != '\r' || i + 1 == raw.length || raw[i + 1] != '\n') {
+				raw[length++] = raw[i];
+			}
+		}
+		return length == raw.length ? raw : Arrays.copyOf(raw, length);
+	}
+
 	public String getHtmForce(String prefix, String path) {
 		String content = getHtm(prefix, path);
 
@@ -166,32 +230,39 @@ public class HtmCache {
 	}
 
 	public String getHtm(String prefix, String path) {
+		final HtmTemplate template = getTemplate(prefix, path);
+		return template != null ? template.getText() : null;
+	}
+
+	public HtmTemplate getTemplate(String prefix, String path) {
 		String newPath = null;
-		String content;
+		HtmTemplate content;
 		if (prefix != null && !prefix.isEmpty()) {
 			newPath = prefix + path;
-			content = getHtm(newPath);
+			content = getTemplate(newPath);
 			if (content != null) {
 				return content;
 			}
 		}
 
 		String customPath = "data_" + Config.SERVER_NAME + "/html/" + path;
-		content = getHtm(customPath);
+		content = getTemplate(customPath);
 		if (content != null) {
 			return content;
 		}
 
 		if (path.contains(Config.DATA_FOLDER + "")) {
-			content = getHtm(path);
+			content = getTemplate(path);
 		} else {
-			content = getHtm(Config.DATA_FOLDER + "html/" + path);
+			content = getTemplate(Config.DATA_FOLDER + "html/" + path);
 		}
 
-		if (content != null) {
-			cache.put(customPath.hashCode(), content);
+		// shortcuts to the default page, left out of the compact templates and while watching, where they would hide a
+		// custom page created later: the missing custom path is remembered instead
+		if (content != null && !Config.HTM_CACHE_COMPACT && !Config.HTM_CACHE_WATCH) {
+			cache.put(customPath, content);
 			if (newPath != null) {
-				cache.put(newPath.hashCode(), content);
+				cache.put(newPath, content);
 			}
 		}
 
@@ -203,18 +274,46 @@ public class HtmCache {
 			return ""; // avoid possible NPE
 		}
 
-		final int hashCode = path.hashCode();
-		String content = cache.get(hashCode);
+		final HtmTemplate template = getTemplate(path);
+		return template != null ? template.getText() : null;
+	}
+
+	private HtmTemplate getTemplate(String path) {
+		if (path == null || path.isEmpty()) {
+			return null;
+		}
+
+		HtmTemplate content = cache.get(path);
+		if (content != null) {
+			hits.increment();
+			return content;
+		}
 
-		if (Config.LAZY_CACHE && content == null) {
-			content = loadFile(new File(Config.DATAPACK_ROOT, path));
+		// a miss is a page read again, from its bytes or its file
+		if (Config.HTM_CACHE_COMPACT) {
+			final byte[] raw = pages.get(path);
+			if (raw != null) {
+				misses.increment();
+				content = new HtmTemplate(new String(raw, StandardCharsets.ISO_8859_1));
+				cache.put(path, content);
+				return content;
+			}
+		}
+
+		if (Config.LAZY_CACHE && !missingPaths.contains(path)) {
+			content = loadTemplate(new File(Config.DATAPACK_ROOT, path));
+			if (content != null) {
+				misses.increment();
+			} else {
+				missingPaths.add(path);
+			}
 		}
 
 		return content;
 	}
 
 	public boolean contains(String path) {
-		return cache.containsKey(path.hashCode());
+		return cache.containsKey(path) || pages.containsKey(path);
 	}
 
 	/**
@@ -236,6 +335,90 @@ public class HtmCache {
 		return file.exists() && filter.accept(file) && !file.isDirectory();
 	}
 
+	/**
+	 * Drops a changed page, read again the next time it's asked for. Without the lazy cache it's read right away.
+	 */
+	private void invalidate(File file) {
+		final String path = Util.getRelativePath(Config.DATAPACK_ROOT, file);
+		missingPaths.remove(path);
+
+		final byte[] raw = pages.remove(path);
+		final HtmTemplate template = cache.remove(path);
+		if (raw != null || template != null) {
+			invalidations.increment();
+			loadedFiles.decrementAndGet();
+			bytesBuffLen.addAndGet(-(raw != null ? raw.length : template.getLength()));
+		}
+
+		if (!Config.LAZY_CACHE && file.exists()) {
+			loadTemplate(file);
+		}
+	}
+
+	private void startWatching() {
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			watchTree(new File(Config.DATAPACK_ROOT, Config.DATA_FOLDER).toPath());
+			final File customFolder = new File(Config.DATAPACK_ROOT, "data_" + Config.SERVER_NAME + "/html");
+			if (customFolder.isDirectory()) {
+				watchTree(customFolder.toPath());
+			}
+		} catch (IOException e) {
+			log.warn("Cache[HTML]: Could not watch the datapack for changes", e);
+			return;
+		}
+
+		final Thread thread = new Thread(this::watch, "HtmCacheWatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void watchTree(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				dir.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY,
+						StandardWatchEventKinds.ENTRY_DELETE);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void watch() {
+		while (true) {
+			final WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			final Path dir = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents()) {
+				try {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						// changes were lost, nothing cached can be trusted
+						log.info("Cache[HTML]: Too many datapack changes at once, clearing the cache");
+						reload();
+						continue;
+					}
+
+					final Path path = dir.resolve((Path) event.context());
+					if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+						watchTree(path);
+					} else if (isHtm(path.getFileName().toString())) {
+						invalidate(path.toFile());
+					}
+				} catch (Exception e) {
+					log.warn("Cache[HTML]: Could not handle a datapack change", e);
+				}
+			}
+			key.reset();
+		}
+	}
+
 	@SuppressWarnings("synthetic-access")
 	private static class SingletonHolder {
 		protected static final HtmCache instance = new HtmCache();
@@ -0,0 +1,221 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver.cache;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An html page split once, when loaded, into its literal text and its %name% parameter slots.<br>
+ * <br>
+ * The bypasses of the page are located at the same time, so a page rendered with plain values knows where its
+ * bypasses are without reading it again. Literals are kept as bounds in the page text, not as copies.
+ */
+public final class HtmTemplate {
+	private static final String BYPASS = "\"bypass ";
+
+	private static final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+	private final String text;
+	private final boolean fullPage;
+	// Literal i goes from literalStarts[i] to literalEnds[i], slot i lies between literal i and literal i + 1
+	private final int[] literalStarts;
+	private final int[] literalEnds;
+	private final String[] slots;
+	// Opening and closing quote of every bypass, in page order
+	private final int[] bypassStarts;
+	private final int[] bypassEnds;
+
+	public HtmTemplate(String text) {
+		this.text = text;
+		fullPage = text.contains("<html>");
+
+		int[] starts = new int[16];
+		int[] ends = new int[16];
+		String[] names = new String[16];
+		int count = 0;
+		int literalStart = 0;
+		for (int i = text.indexOf('%'); i >= 0; i = text.indexOf('%', i + 1)) {
+			final int end = getSlotEnd(text, i);
+			if (end < 0) {
+				continue;
+			}
+
+			if (count == names.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+				names = Arrays.copyOf(names, count * 2);
+			}
+			starts[count] = literalStart;
+			ends[count] = i;
+			names[count] = text.substring(i, end + 1).intern();
+			count++;
+			literalStart = end + 1;
+			i = end;
+		}
+		literalStarts = Arrays.copyOf(starts, count + 1);
+		literalEnds = Arrays.copyOf(ends, count + 1);
+		literalStarts[count] = literalStart;
+		literalEnds[count] = text.length();
+		slots = Arrays.copyOf(names, count);
+
+		// the same lookup NpcHtmlMessage did on every page sent
+		int[] bypasses = new int[16];
+		int bypassCount = 0;
+		for (int start = text.indexOf(BYPASS); start >= 0; start = text.indexOf(BYPASS, start + 1)) {
+			final int finish = text.indexOf('"', start + 1);
+			if (finish < 0) {
+				break;
+			}
+
+			if (bypassCount + 2 > bypasses.length) {
+				bypasses = Arrays.copyOf(bypasses, bypasses.length * 2);
+			}
+			bypasses[bypassCount++] = start;
+			bypasses[bypassCount++] = finish;
+			start = finish;
+		}
+		bypassStarts = new int[bypassCount / 2];
+		bypassEnds = new int[bypassCount / 2];
+		for (int i = 0; i < bypassStarts.length; i++) {
+			bypassStarts[i] = bypasses[2 * i];
+			bypassEnds[i] = bypasses[2 * i + 1];
+		}
+	}
+
+	/**
+	 * @return the index of the % closing the slot opened at the given index, or -1 if there is no slot there
+	 */
+	private static int getSlotEnd(String text, int start) {
+		int i = start + 1;
+		while (i < text.length() && isSlotChar(text.charAt(i))) {
+			i++;
+		}
+		return i > start + 1 && i < text.length() && text.charAt(i) == '%' ? i : -1;
+	}
+
+	private static boolean isSlotChar(char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+	}
+
+	/**
+	 * @return whether the pattern is a whole parameter slot, such as %name%
+	 */
+	public static boolean isSlot(String pattern) {
+		return pattern.length() > 2 && pattern.charAt(0) == '%' && getSlotEnd(pattern, 0) == pattern.length() - 1;
+	}
+
+	public boolean hasSlot(String slot) {
+		for (String name : slots) {
+			if (name.equals(slot)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return whether the text has its html tag, or is only the body of a page
+	 */
+	public boolean isFullPage() {
+		return fullPage;
+	}
+
+	public int getLength() {
+		return text.length();
+	}
+
+	/**
+	 * Writes the page with the given slot values, in a single pass. Slots without a value are left as they are.
+	 */
+	public Page render(Map<String, String> values) {
+		if (values == null || values.isEmpty()) {
+			return new Page(text, getBypasses(null));
+		}
+
+		final StringBuilder sb = builders.get();
+		sb.setLength(0);
+		// shift of the literal being written, from the page text to the rendered page
+		final int[] shifts = new int[literalStarts.length];
+		boolean bypassesMoved = false;
+		for (int i = 0; i < literalStarts.length; i++) {
+			shifts[i] = sb.length() - literalStarts[i];
+			sb.append(text, literalStarts[i], literalEnds[i]);
+			if (i < slots.length) {
+				final String value = values.get(slots[i]);
+				if (value == null) {
+					sb.append(slots[i]);
+				} else {
+					sb.append(value);
+					// a value bringing its own quotes or bypasses changes the bypasses of the page
+					bypassesMoved |= value.indexOf('"') >= 0 || value.contains("bypass");
+				}
+			}
+		}
+		return new Page(sb.toString(), bypassesMoved ? null : getBypasses(shifts));
+	}
+
+	private int[] getBypasses(int[] shifts) {
+		final int[] result = new int[bypassStarts.length * 2];
+		int literal = 0;
+		for (int i = 0; i < bypassStarts.length; i++) {
+			if (shifts == null) {
+				result[2 * i] = bypassStarts[i];
+				result[2 * i + 1] = bypassEnds[i];
+				continue;
+			}
+
+			while (literalEnds[literal] <= bypassStarts[i]) {
+				literal++;
+			}
+			result[2 * i] = bypassStarts[i] + shifts[literal];
+			while (literalEnds[literal] <= bypassEnds[i]) {
+				literal++;
+			}
+			result[2 * i + 1] = bypassEnds[i] + shifts[literal];
+		}
+		return result;
+	}
+
+	/**
+	 * A rendered page.
+	 */
+	public static final class Page {
+		private final String html;
+		private final int[] bypasses;
+
+		private Page(String html, int[] bypasses) {
+			this.html = html;
+			this.bypasses = bypasses;
+		}
+
+		public String getHtml() {
+			return html;
+		}
+
+		/**
+		 * @return the opening and closing quote of every bypass of the page, or null if the page has to be read to
+		 * find them
+		 */
+		public int[] getBypasses() {
+			return bypasses;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver.datatables;
+
+import gnu.trove.TLongObjectHashMap;
+import l2server.gameserver.model.actor.instance.DoorInstance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Grid of the doors of the world or of an instance, for the segment queries of line of sight and movement checks.
+ * Each door is registered in the cells covered by the bounding box of its collision nodes, a query only tests the doors
+ * of the cells crossed by the segment. The geometry of a door never changes, so the index is built once and never
+ * modified, the open/closed/dead state is checked at query time.
+ */
+public final class DoorIndex {
+	private static final int CELL_SHIFT = 9;
+
+	private static final class Entry {
+		final DoorInstance door;
+		final int minX, maxX, minY, maxY;
+
+		Entry(DoorInstance door) {
+			this.door = door;
+			int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+			for (int i = 0; i < 4; i++) {
+				minX = Math.min(minX, door.getX(i));
+				maxX = Math.max(maxX, door.getX(i));
+				minY = Math.min(minY, door.getY(i));
+				maxY = Math.max(maxY, door.getY(i));
+			}
+			this.minX = minX;
+			this.maxX = maxX;
+			this.minY = minY;
+			this.maxY = maxY;
+		}
+	}
+
+	private final TLongObjectHashMap<Entry[]> cells = new TLongObjectHashMap<>();
+
+	public DoorIndex(Collection<DoorInstance> doors) {
+		TLongObjectHashMap<List<Entry>> lists = new TLongObjectHashMap<>();
+		for (DoorInstance door : doors) {
+			// doors without collision nodes are never checked
+			if (door.getX(0) == 0) {
+				continue;
+			}
+
+			Entry entry = new Entry(door);
+			for (int cx = entry.minX >> CELL_SHIFT; cx <= entry.maxX >> CELL_SHIFT; cx++) {
+				for (int cy = entry.minY >> CELL_SHIFT; cy <= entry.maxY >> CELL_SHIFT; cy++) {
+					List<Entry> list = lists.get(key(cx, cy));
+					if (list == null) {
+						list = new ArrayList<>(2);
+						lists.put(key(cx, cy), list);
+					}
+					list.add(entry);
+				}
+			}
+		}
+
+		for (long key : lists.keys()) {
+			List<Entry> list = lists.get(key);
+			cells.put(key, list.toArray(new Entry[list.size()]));
+		}
+	}
+
+	private static long key(int cx, int cy) {
+		return (long) cx << 32 | cy & 0xFFFFFFFFL;
+	}
+
+	public int getCellCount() {
+		return cells.size();
+	}
+
+	/**
+	 * @return true if a closed door stands between the two points
+	 */
+	public boolean checkIfDoorsBetween(int x, int y, int z, int tx, int ty, int tz, boolean doubleFaceCheck) {
+		final int minX = Math.min(x, tx);
+		final int maxX = Math.max(x, tx);
+		final int minY = Math.min(y, ty);
+		final int maxY = Math.max(y, ty);
+
+		// Walk the columns of cells crossed by the segment, and in each one the rows between the segment ends in that column
+		final int x0 = x <= tx ? x : tx;
+		final int y0 = x <= tx ? y : ty;
+		final int x1 = x <= tx ? tx : x;
+		final int y1 = x <= tx ? ty : y;
+		for (int cx = x0 >> CELL_SHIFT; cx <= x1 >> CELL_SHIFT; cx++) {
+			int ya = y0;
+			int yb = y1;
+			if (x1 != x0) {
+				final int colMinX = Math.max(x0, cx << CELL_SHIFT);
+				final int colMaxX = Math.min(x1, cx + 1 << CELL_SHIFT);
+				ya = y0 + (int) ((long) (y1 - y0) * (colMinX - x0) / (x1 - x0));
+				yb = y0 + (int) ((long) (y1 - y0) * (colMaxX - x0) / (x1 - x0));
+			}
+
+			// one unit of margin for the rounding of the division
+			final int cyMin = Math.max(minY, Math.min(ya, yb) - 1) >> CELL_SHIFT;
+			final int cyMax = Math.min(maxY, Math.max(ya, yb) + 1) >> CELL_SHIFT;
+			for (int cy = cyMin; cy <= cyMax; cy++) {
+				final Entry[] entries = cells.get(key(cx, cy));
+				if (entries == null) {
+					continue;
+				}
+
+				for (Entry entry : entries) {
+					if (entry.maxX < minX || entry.minX > maxX || entry.maxY < minY || entry.minY > maxY) {
+						continue;
+					}
+
+					final DoorInstance door = entry.door;
+					//check dead and open
+					if (door.isDead() || door.getOpen() || !door.checkCollision()) {
+						continue;
+					}
+
+					if (intersects(door, x, y, z, tx, ty, tz, doubleFaceCheck)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean intersects(DoorInstance doorInst, int x, int y, int z, int tx, int ty, int tz, boolean doubleFaceCheck) {
+		boolean intersectFace = false;
+		for (int i = 0; i < 4; i++) {
+			int j = i + 1 < 4 ? i + 1 : 0;
+			// lower part of the multiplier fraction, if it is 0 we avoid an error and also know that the lines are parallel
+			int denominator = (ty - y) * (doorInst.getX(i) - doorInst.getX(j)) - (tx - x) * (doorInst.getY(i) - doorInst.getY(j));
+			if (denominator == 0) {
+				continue;
+			}
+
+			// multipliers to the equations of the lines. If they are lower than 0 or bigger than 1, we know that segments don't intersect
+			float multiplier1 = (float) ((doorInst.getX(j) - doorInst.getX(i)) * (y - doorInst.getY(i)) -
+					(doorInst.getY(j) - doorInst.getY(i)) * (x - doorInst.getX(i))) / denominator;
+			float multiplier2 = (float) ((tx - x) * (y - doorInst.getY(i)) - (ty - y) * (x - doorInst.getX(i))) / denominator;
+			if (multiplier1 >= 0 && multiplier1 <= 1 && multiplier2 >= 0 && multiplier2 <= 1) {
+				int intersectZ = Math.round(z + multiplier1 * (tz - z));
+				// now checking if the resulting point is between door's min and max z
+				if (intersectZ > doorInst.getZMin() && intersectZ < doorInst.getZMax()) {
+					if (!doubleFaceCheck || intersectFace) {
+						return true;
+					}
+					intersectFace = true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -42,6 +42,7 @@ public class DoorTable {
 
 	private final Map<Integer, DoorInstance> doors = new HashMap<>();
 	private final Map<Integer, ArrayList<DoorInstance>> regions = new HashMap<>();
+	private volatile DoorIndex doorIndex = new DoorIndex(Collections.emptyList());
 
 	public static DoorTable getInstance() {
 		return SingletonHolder.instance;
@@ -74,7 +75,9 @@ public class DoorTable {
 				makeDoor(id, set);
 			}
 		}
-		log.info("DoorTable: Loaded " + doors.size() + " Door Templates for " + regions.size() + " regions.");
+		doorIndex = new DoorIndex(doors.values());
+		log.info("DoorTable: Loaded " + doors.size() + " Door Templates for " + regions.size() + " regions, indexed in " + doorIndex.getCellCount() +
+				" cells.");
 	}
 
 	public void insertCollisionData(StatsSet set) {
@@ -184,49 +187,14 @@ public class DoorTable {
 	}
 
 	public boolean checkIfDoorsBetween(int x, int y, int z, int tx, int ty, int tz, int instanceId, boolean doubleFaceCheck) {
-		ArrayList<DoorInstance> allDoors;
+		DoorIndex index;
 		if (instanceId > 0 && InstanceManager.getInstance().getInstance(instanceId) != null) {
-			allDoors = InstanceManager.getInstance().getInstance(instanceId).getDoors();
+			index = InstanceManager.getInstance().getInstance(instanceId).getDoorIndex();
 		} else {
-			allDoors = regions.get(MapRegionTable.getInstance().getMapRegion(x, y));
+			index = doorIndex;
 		}
 
-		if (allDoors == null) {
-			return false;
-		}
-
-		for (DoorInstance doorInst : allDoors) {
-			//check dead and open
-			if (doorInst.isDead() || doorInst.getOpen() || !doorInst.checkCollision() || doorInst.getX(0) == 0) {
-				continue;
-			}
-
-			boolean intersectFace = false;
-			for (int i = 0; i < 4; i++) {
-				int j = i + 1 < 4 ? i + 1 : 0;
-				// lower part of the multiplier fraction, if it is 0 we avoid an error and also know that the lines are parallel
-				int denominator = (ty - y) * (doorInst.getX(i) - doorInst.getX(j)) - (tx - x) * (doorInst.getY(i) - doorInst.getY(j));
-				if (denominator == 0) {
-					continue;
-				}
-
-				// multipliers to the equations of the lines. If they are lower than 0 or bigger than 1, we know that segments don't intersect
-				float multiplier1 = (float) ((doorInst.getX(j) - doorInst.getX(i)) * (y - doorInst.getY(i)) -
-						(doorInst.getY(j) - doorInst.getY(i)) * (x - doorInst.getX(i))) / denominator;
-				float multiplier2 = (float) ((tx - x) * (y - doorInst.getY(i)) - (ty - y) * (x - doorInst.getX(i))) / denominator;
-				if (multiplier1 >= 0 && multiplier1 <= 1 && multiplier2 >= 0 && multiplier2 <= 1) {
-					int intersectZ = Math.round(z + multiplier1 * (tz - z));
-					// now checking if the resulting point is between door's min and max z
-					if (intersectZ > doorInst.getZMin() && intersectZ < doorInst.getZMax()) {
-						if (!doubleFaceCheck || intersectFace) {
-							return true;
-						}
-						intersectFace = true;
-					}
-				}
-			}
-		}
-		return false;
+		return index != null && index.checkIfDoorsBetween(x, y, z, tx, ty, tz, doubleFaceCheck);
 	}
 
 	@SuppressWarnings("synthetic-access")
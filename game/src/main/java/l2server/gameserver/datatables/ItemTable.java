@@ -29,6 +29,7 @@ import l2server.gameserver.model.actor.instance.Player;
 import l2server.gameserver.stats.ItemParser;
 import l2server.gameserver.templates.item.*;
 import l2server.gameserver.util.GMAudit;
+import l2server.util.loader.Loader;
 import l2server.util.loader.annotations.Load;
 import l2server.util.loader.annotations.Reload;
 import l2server.util.xml.XmlDocument;
@@ -167,8 +168,8 @@ public class ItemTable {
 		}
 		
 		Map<Integer, ItemParser> items = new HashMap<>();
-		for (File f : validFiles) {
-			XmlDocument doc = new XmlDocument(f);
+		// The files are read concurrently, the items are parsed in the order the files are listed
+		for (XmlDocument doc : Loader.parseFiles(validFiles, XmlDocument::new)) {
 			for (XmlNode d : doc.getChildren()) {
 				if (d.getName().equalsIgnoreCase("item")) {
 					ItemParser item = new ItemParser(d);
@@ -116,8 +116,7 @@ public class NpcTable {
 					continue;
 				}
 				
-				XmlDocument doc = new XmlDocument(f);
-				for (XmlNode npcNode : doc.getChildren()) {
+				for (XmlNode npcNode : XmlDocument.streamChildren(f)) {
 					if (npcNode.getName().equalsIgnoreCase("npc")) {
 						final int npcId = npcNode.getInt("id");
 						
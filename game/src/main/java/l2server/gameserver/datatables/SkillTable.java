@@ -18,6 +18,8 @@ import gnu.trove.TLongObjectHashMap;
 import l2server.Config;
 import l2server.gameserver.model.Skill;
 import l2server.gameserver.stats.SkillParser;
+import l2server.util.ConcurrentIntObjectHashMap;
+import l2server.util.loader.Loader;
 import l2server.util.loader.annotations.Load;
 import l2server.util.loader.annotations.Reload;
 import l2server.util.xml.XmlDocument;
@@ -29,7 +31,9 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  *
@@ -41,6 +45,50 @@ public class SkillTable {
 	private final TIntIntHashMap skillMaxLevel = new TIntIntHashMap();
 	private final Set<Integer> enchantable = new HashSet<>();
 	
+	// Lazy mode: skills indexed at load, their levels are built on the first request
+	private final ConcurrentIntObjectHashMap<LazySkill> lazySkills = new ConcurrentIntObjectHashMap<>();
+	private boolean lazy;
+	private int lazyLevelCount;
+	private final LongAdder lazyBuiltCount = new LongAdder();
+	
+	/**
+	 * A parsed skill which builds and keeps its levels as they are requested.
+	 * All the levels of the skill share the same parser, so the tables are parsed once per skill.
+	 */
+	private final class LazySkill {
+		private final SkillParser parser;
+		private final ConcurrentIntObjectHashMap<Skill> built = new ConcurrentIntObjectHashMap<>();
+		
+		private LazySkill(SkillParser parser) {
+			this.parser = parser;
+		}
+		
+		private Skill get(int level, int enchantRouteId, int enchantRouteLevel) {
+			final int hash = level * 1000000 + enchantRouteId * 1000 + enchantRouteLevel;
+			Skill skill = built.get(hash);
+			if (skill != null || !parser.exists(level, enchantRouteId, enchantRouteLevel)) {
+				return skill;
+			}
+			
+			synchronized (this) {
+				skill = built.get(hash);
+				if (skill == null) {
+					try {
+						skill = parser.build(level, enchantRouteId, enchantRouteLevel);
+					} catch (Exception e) {
+						// same as a skill failing on an eager load: it isn't available at all
+						log.warn("Cannot create skill id " + parser.getId(), e);
+						lazySkills.remove(parser.getId(), this);
+						return null;
+					}
+					built.put(hash, skill);
+					lazyBuiltCount.increment();
+				}
+			}
+			return skill;
+		}
+	}
+	
 	public static SkillTable getInstance() {
 		return SingletonHolder.instance;
 	}
@@ -54,6 +102,11 @@ public class SkillTable {
 		skills.clear();
 		skillMaxLevel.clear();
 		enchantable.clear();
+		lazySkills.clear();
+		lazyLevelCount = 0;
+		lazyBuiltCount.reset();
+		lazy = Config.LAZY_SKILLS;
+		final long start = System.currentTimeMillis();
 		
 		File dir = new File(Config.DATAPACK_ROOT, Config.DATA_FOLDER + "skills");
 		if (!dir.exists()) {
@@ -73,28 +126,30 @@ public class SkillTable {
 			validFiles.add(customfile);
 		}
 		
-		for (File f : validFiles) {
-			XmlDocument doc = new XmlDocument(f);
-			for (XmlNode d : doc.getChildren()) {
-				if (d.getName().equalsIgnoreCase("skill")) {
-					SkillParser skill = new SkillParser(d);
-					try {
-						skill.parse();
-						for (Skill s : skill.getSkills().values()) {
-							skills.put(getSkillHashCode(s.getId(), s.getLevel(), s.getEnchantRouteId(), s.getEnchantLevel()), s);
-							if (s.getEnchantRouteId() > 0) {
-								enchantable.add(s.getId());
-								continue;
-							}
-							
-							// only non-enchanted skills
-							final int maxLvl = skillMaxLevel.get(s.getId());
-							if (s.getLevelHash() > maxLvl) {
-								skillMaxLevel.put(s.getId(), s.getLevelHash());
-							}
+		// The files are parsed concurrently, and added in the same order as they are listed
+		if (lazy) {
+			for (List<SkillParser> fileSkills : Loader.parseFiles(validFiles, this::indexFile)) {
+				for (SkillParser skill : fileSkills) {
+					skill.registerEnchantRoutes();
+					addLazySkill(skill);
+				}
+			}
+		} else {
+			for (List<SkillParser> fileSkills : Loader.parseFiles(validFiles, this::parseFile)) {
+				for (SkillParser skill : fileSkills) {
+					skill.registerEnchantRoutes();
+					for (Skill s : skill.getSkills().values()) {
+						skills.put(getSkillHashCode(s.getId(), s.getLevel(), s.getEnchantRouteId(), s.getEnchantLevel()), s);
+						if (s.getEnchantRouteId() > 0) {
+							enchantable.add(s.getId());
+							continue;
+						}
+						
+						// only non-enchanted skills
+						final int maxLvl = skillMaxLevel.get(s.getId());
+						if (s.getLevelHash() > maxLvl) {
+							skillMaxLevel.put(s.getId(), s.getLevelHash());
 						}
-					} catch (Exception e) {
-						log.warn("Cannot create skill id " + skill.getId(), e);
 					}
 				}
 			}
@@ -105,7 +160,68 @@ public class SkillTable {
 			sk.skill = getInfo(sk.id, sk.level);
 		}
 		
-		log.info("Loaded " + skills.size() + " skills.");
+		if (lazy) {
+			log.info("Indexed " + lazySkills.size() + " skills with " + lazyLevelCount + " levels in " +
+					(System.currentTimeMillis() - start) + " ms.");
+		} else {
+			log.info("Loaded " + skills.size() + " skills in " + (System.currentTimeMillis() - start) + " ms.");
+		}
+	}
+	
+	private List<SkillParser> parseFile(File file) {
+		List<SkillParser> fileSkills = new ArrayList<>();
+		for (XmlNode d : XmlDocument.streamChildren(file)) {
+			if (d.getName().equalsIgnoreCase("skill")) {
+				SkillParser skill = new SkillParser(d);
+				try {
+					skill.parse();
+					fileSkills.add(skill);
+				} catch (Exception e) {
+					log.warn("Cannot create skill id " + skill.getId(), e);
+				}
+			}
+		}
+		return fileSkills;
+	}
+	
+	private List<SkillParser> indexFile(File file) {
+		List<SkillParser> fileSkills = new ArrayList<>();
+		for (XmlNode d : XmlDocument.streamChildren(file)) {
+			if (d.getName().equalsIgnoreCase("skill")) {
+				SkillParser skill = new SkillParser(d);
+				try {
+					skill.index();
+					fileSkills.add(skill);
+				} catch (Exception e) {
+					log.warn("Cannot create skill id " + skill.getId(), e);
+				}
+			}
+		}
+		return fileSkills;
+	}
+	
+	private void addLazySkill(SkillParser skill) {
+		lazySkills.put(skill.getId(), new LazySkill(skill));
+		skillMaxLevel.put(skill.getId(), skill.getLevels());
+		lazyLevelCount += skill.getLevels();
+		for (int level = 1; level <= skill.getLevels(); level++) {
+			Map<Integer, Integer> routes = skill.getEnchantRoutes(level);
+			if (!routes.isEmpty()) {
+				enchantable.add(skill.getId());
+			}
+			for (int enchantLevels : routes.values()) {
+				lazyLevelCount += enchantLevels;
+			}
+		}
+	}
+	
+	private Skill getSkill(int skillId, int level, int enchantRouteId, int enchantRouteLevel) {
+		if (!lazy) {
+			return skills.get(getSkillHashCode(skillId, level, enchantRouteId, enchantRouteLevel));
+		}
+		
+		final LazySkill skill = lazySkills.get(skillId);
+		return skill != null ? skill.get(level, enchantRouteId, enchantRouteLevel) : null;
 	}
 	
 	/**
@@ -147,8 +263,7 @@ public class SkillTable {
 	}
 	
 	public final Skill getInfo(final int skillId, final int level, int enchantRouteId, int enchantRouteLevel) {
-		long hashCode = getSkillHashCode(skillId, level, enchantRouteId, enchantRouteLevel);
-		final Skill result = skills.get(hashCode);
+		final Skill result = getSkill(skillId, level, enchantRouteId, enchantRouteLevel);
 		if (result != null) {
 			return result;
 		}
@@ -157,7 +272,7 @@ public class SkillTable {
 		final int maxLvl = skillMaxLevel.get(skillId);
 		// requested level too high
 		if (maxLvl > 0 && level > maxLvl) {
-			return skills.get(getSkillHashCode(skillId, maxLvl));
+			return getSkill(skillId, maxLvl, 0, 0);
 		}
 		
 		String error = "No skill info found for skill id " + skillId;
@@ -185,20 +300,27 @@ public class SkillTable {
 	public Skill[] getSiegeSkills(boolean addNoble, boolean hasCastle) {
 		Skill[] temp = new Skill[3 + (addNoble ? 1 : 0) + (hasCastle ? 2 : 0)];
 		int i = 0;
-		temp[i++] = skills.get(SkillTable.getSkillHashCode(19034, 1));
-		temp[i++] = skills.get(SkillTable.getSkillHashCode(19035, 1));
-		temp[i++] = skills.get(SkillTable.getSkillHashCode(1903, 1));
+		temp[i++] = getSkill(19034, 1, 0, 0);
+		temp[i++] = getSkill(19035, 1, 0, 0);
+		temp[i++] = getSkill(1903, 1, 0, 0);
 		
 		if (addNoble) {
-			temp[i++] = skills.get(SkillTable.getSkillHashCode(326, 1));
+			temp[i++] = getSkill(326, 1, 0, 0);
 		}
 		if (hasCastle) {
-			temp[i++] = skills.get(SkillTable.getSkillHashCode(844, 1));
-			temp[i++] = skills.get(SkillTable.getSkillHashCode(845, 1));
+			temp[i++] = getSkill(844, 1, 0, 0);
+			temp[i++] = getSkill(845, 1, 0, 0);
 		}
 		return temp;
 	}
 	
+	public String[] getStats() {
+		if (!lazy) {
+			return new String[]{"Skills: " + skills.size() + " built on load"};
+		}
+		return new String[]{"Skills: " + lazyBuiltCount.sum() + "/" + lazyLevelCount + " levels built on demand (" + lazySkills.size() + " ids)"};
+	}
+	
 	@SuppressWarnings("synthetic-access")
 	private static class SingletonHolder {
 		protected static final SkillTable instance = new SkillTable();
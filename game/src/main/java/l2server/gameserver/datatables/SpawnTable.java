@@ -178,8 +178,7 @@ public class SpawnTable {
 			}
 			
 			try {
-				XmlDocument doc = new XmlDocument(f);
-				List<L2Spawn> spawns = loadSpawns(doc.getRoot(), true);
+				List<L2Spawn> spawns = loadSpawns(XmlDocument.streamChildren(f), true);
 				//for (L2Spawn spawn : spawns)
 				//	spawn.doSpawn();
 				spawnTable.addAll(spawns);
@@ -193,12 +192,12 @@ public class SpawnTable {
 		log.info("Loaded " + specificSpawnTable.size() + " specific spawn tables!");
 	}
 	
-	private List<L2Spawn> loadSpawns(XmlNode node, boolean isRoot) {
+	private List<L2Spawn> loadSpawns(Iterable<XmlNode> nodes, boolean isRoot) {
 		List<L2Spawn> spawns = new ArrayList<>();
-		for (XmlNode npcNode : node.getChildren()) {
+		for (XmlNode npcNode : nodes) {
 			if (npcNode.getName().equalsIgnoreCase("specificSpawnList") && isRoot) {
 				String name = npcNode.getString("name");
-				specificSpawnTable.put(name, loadSpawns(npcNode, false));
+				specificSpawnTable.put(name, loadSpawns(npcNode.getChildren(), false));
 			} else if (npcNode.getName().equalsIgnoreCase("group") && isRoot) {
 				SpawnGroup spawnGroup = new SpawnGroup(npcNode);
 				
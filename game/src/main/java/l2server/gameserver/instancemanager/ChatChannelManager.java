@@ -0,0 +1,217 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver.instancemanager;
+
+import l2server.gameserver.datatables.MapRegionTable;
+import l2server.gameserver.model.BlockList;
+import l2server.gameserver.model.World;
+import l2server.gameserver.model.actor.instance.Player;
+import l2server.gameserver.network.serverpackets.CreatureSay;
+import l2server.gameserver.util.FloodProtectorAction;
+import l2server.gameserver.util.FloodProtectors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Delivers the shout, trade and global chat.<br>
+ * <br>
+ * The online players are indexed by map region, and move to another region's set when their world region changes,
+ * so a regional message only visits the players of its region and the online GMs. Every message is serialized once
+ * and the same bytes are written to all its receivers.
+ */
+public class ChatChannelManager {
+	public enum Channel {
+		SHOUT("shout chat", FloodProtectors::getShoutChat),
+		TRADE("trade chat", FloodProtectors::getTradeChat),
+		GLOBAL("global chat", FloodProtectors::getGlobalChat);
+
+		private final String description;
+		private final Function<FloodProtectors, FloodProtectorAction> floodProtector;
+
+		private final LongAdder messages = new LongAdder();
+		private final LongAdder deliveries = new LongAdder();
+		private final LongAdder floodBlocked = new LongAdder();
+		private final LongAdder fanOutTime = new LongAdder();
+
+		Channel(String description, Function<FloodProtectors, FloodProtectorAction> floodProtector) {
+			this.description = description;
+			this.floodProtector = floodProtector;
+		}
+	}
+
+	private final long startTime = System.currentTimeMillis();
+
+	// Map region of every online player
+	private final Map<Integer, Integer> playerRegions = new ConcurrentHashMap<>();
+	private final Map<Integer, Set<Player>> regionPlayers = new ConcurrentHashMap<>();
+	private final Set<Player> gms = ConcurrentHashMap.newKeySet();
+
+	public static ChatChannelManager getInstance() {
+		return SingletonHolder.instance;
+	}
+
+	public void addPlayer(Player player) {
+		final int region = MapRegionTable.getInstance().getMapRegion(player.getX(), player.getY());
+		playerRegions.put(player.getObjectId(), region);
+		getRegionPlayers(region).add(player);
+		if (player.isGM()) {
+			gms.add(player);
+		}
+	}
+
+	public void removePlayer(Player player) {
+		final Integer region = playerRegions.remove(player.getObjectId());
+		if (region != null) {
+			getRegionPlayers(region).remove(player);
+		}
+		gms.remove(player);
+	}
+
+	/**
+	 * Called when the access level of the player changes, which can make them a GM or take it away while online.
+	 */
+	public void updateGm(Player player) {
+		if (player.isGM() && playerRegions.containsKey(player.getObjectId())) {
+			gms.add(player);
+			// logged out meanwhile
+			if (!playerRegions.containsKey(player.getObjectId())) {
+				gms.remove(player);
+			}
+		} else {
+			gms.remove(player);
+		}
+	}
+
+	/**
+	 * Called when the player enters another world region, the map regions are made of whole world regions.
+	 */
+	public void updateRegion(Player player) {
+		final Integer oldRegion = playerRegions.get(player.getObjectId());
+		if (oldRegion == null) {
+			// not online yet
+			return;
+		}
+
+		final int region = MapRegionTable.getInstance().getMapRegion(player.getX(), player.getY());
+		if (region != oldRegion && playerRegions.replace(player.getObjectId(), oldRegion, region)) {
+			getRegionPlayers(oldRegion).remove(player);
+			getRegionPlayers(region).add(player);
+		}
+	}
+
+	private Set<Player> getRegionPlayers(int region) {
+		return regionPlayers.computeIfAbsent(region, r -> ConcurrentHashMap.newKeySet());
+	}
+
+	/**
+	 * @return false if the player is talking too fast on the channel
+	 */
+	public boolean tryChat(Channel channel, Player player) {
+		if (channel.floodProtector.apply(player.getFloodProtectors()).tryPerformAction(channel.description)) {
+			return true;
+		}
+
+		channel.floodBlocked.increment();
+		return false;
+	}
+
+	/**
+	 * Sends the message to every online player.
+	 *
+	 * @param checkBlocks whether the players blocking the sender are left out
+	 */
+	public void sendToAll(Channel channel, Player sender, CreatureSay message, boolean checkBlocks) {
+		final long start = System.nanoTime();
+		message.setShared();
+
+		int deliveries = 0;
+		for (Player player : World.getInstance().getAllPlayers().values()) {
+			if (!checkBlocks || !BlockList.isBlocked(player, sender)) {
+				deliver(player, message);
+				deliveries++;
+			}
+		}
+		onSent(channel, deliveries, start);
+	}
+
+	/**
+	 * Sends the message to the players in the map region and instance of the sender, unless they block the sender.
+	 * The GMs left out get the GM version of the message, tagged with the town of the sender.
+	 */
+	public void sendToRegion(Channel channel, Player sender, CreatureSay message, CreatureSay gmMessage) {
+		final long start = System.nanoTime();
+		message.setShared();
+		gmMessage.setShared();
+
+		final int region = MapRegionTable.getInstance().getMapRegion(sender.getX(), sender.getY());
+		int deliveries = 0;
+		if (sender.getEvent() == null) {
+			for (Player player : getRegionPlayers(region)) {
+				if (player.getInstanceId() == sender.getInstanceId() && !BlockList.isBlocked(player, sender)) {
+					deliver(player, message);
+					deliveries++;
+				}
+			}
+		}
+
+		for (Player gm : gms) {
+			final Integer gmRegion = playerRegions.get(gm.getObjectId());
+			final boolean reached = sender.getEvent() == null && gmRegion != null && gmRegion == region &&
+					gm.getInstanceId() == sender.getInstanceId() && !BlockList.isBlocked(gm, sender);
+			if (!reached && gm.isGM()) {
+				deliver(gm, gmMessage);
+				deliveries++;
+			}
+		}
+		onSent(channel, deliveries, start);
+	}
+
+	private static void deliver(Player player, CreatureSay message) {
+		player.sendPacket(message);
+		message.snoop(player);
+	}
+
+	private static void onSent(Channel channel, int deliveries, long start) {
+		channel.messages.increment();
+		channel.deliveries.add(deliveries);
+		channel.fanOutTime.add(System.nanoTime() - start);
+	}
+
+	public String[] getStats() {
+		final long minutes = Math.max((System.currentTimeMillis() - startTime) / 60000, 1);
+		final List<String> stats = new ArrayList<>();
+		stats.add("Chat channels: " + playerRegions.size() + " players in " + regionPlayers.size() + " map regions, " + gms.size() + " GMs");
+		for (Channel channel : Channel.values()) {
+			final long messages = channel.messages.sum();
+			stats.add("Chat " + channel.description + ": " + messages + " messages (" + messages / minutes + "/min), " +
+					channel.deliveries.sum() + " deliveries, " + channel.floodBlocked.sum() + " blocked by flood protection" +
+					(messages > 0 ? ", avg fan-out(us): " + TimeUnit.NANOSECONDS.toMicros(channel.fanOutTime.sum() / messages) : ""));
+		}
+		return stats.toArray(new String[stats.size()]);
+	}
+
+	@SuppressWarnings("synthetic-access")
+	private static class SingletonHolder {
+		protected static final ChatChannelManager instance = new ChatChannelManager();
+	}
+}
@@ -17,6 +17,7 @@ package l2server.gameserver.model;
 
 import l2server.Config;
 import l2server.DatabasePool;
+import l2server.gameserver.DatabaseWriter;
 import l2server.gameserver.GeoData;
 import l2server.gameserver.ThreadPoolManager;
 import l2server.gameserver.datatables.EnsoulDataTable;
@@ -861,6 +862,14 @@ public final class Item extends WorldObject implements ItemInstanceInfo {
 		}
 		this.enchantLevel = enchantLevel;
 		storedInDb = false;
+		
+		// the enchant Funcs of an equipped item read the level on each calculation
+		if (loc == ItemLocation.EQUIPPED) {
+			final Player player = World.getInstance().getPlayer(getOwnerId());
+			if (player != null) {
+				player.getStat().invalidateStatCache();
+			}
+		}
 	}
 	
 	/**
@@ -1768,35 +1777,25 @@ public final class Item extends WorldObject implements ItemInstanceInfo {
 			return;
 		}
 		
-		Connection con = null;
-		PreparedStatement statement = null;
-		try {
-			con = DatabasePool.getInstance().getConnection();
-			
-			statement = con.prepareStatement(
-					"UPDATE items SET owner_id=?,count=?,loc=?,loc_data=?,enchant_level=?,custom_type1=?,custom_type2=?,mana_left=?,time=?,appearance=?,mob_id=? " +
-							"WHERE object_id = ?");
-			statement.setInt(1, ownerId);
-			statement.setLong(2, getCount());
-			statement.setString(3, loc.name());
-			statement.setInt(4, locData);
-			statement.setInt(5, getEnchantLevel());
-			statement.setInt(6, getCustomType1());
-			statement.setInt(7, getCustomType2());
-			statement.setInt(8, getMana());
-			statement.setLong(9, getTime());
-			statement.setInt(10, getAppearance());
-			statement.setInt(11, getMobId());
-			statement.setInt(12, getObjectId());
-			statement.executeUpdate();
-			existsInDb = true;
-			storedInDb = true;
-			statement.close();
-		} catch (Exception e) {
-			log.error("Could not update item " + this + " (owner id " + ownerId + ") in DB: Reason: " + e.getMessage(), e);
-		} finally {
-			DatabasePool.close(con);
-		}
+		// Written by the DatabaseWriter, along with the other updates of the owner
+		DatabaseWriter.Rows rows = new DatabaseWriter.Rows();
+		rows.add("UPDATE items SET owner_id=?,count=?,loc=?,loc_data=?,enchant_level=?,custom_type1=?,custom_type2=?,mana_left=?,time=?,appearance=?,mob_id=? " +
+						"WHERE object_id = ?",
+				ownerId,
+				getCount(),
+				loc.name(),
+				locData,
+				getEnchantLevel(),
+				getCustomType1(),
+				getCustomType2(),
+				getMana(),
+				getTime(),
+				getAppearance(),
+				getMobId(),
+				getObjectId());
+		DatabaseWriter.getInstance().write(ownerId, "items:" + getObjectId(), rows);
+		existsInDb = true;
+		storedInDb = true;
 	}
 	
 	/**
@@ -1809,6 +1808,9 @@ public final class Item extends WorldObject implements ItemInstanceInfo {
 			return;
 		}
 		
+		// A pending update of the row must not land after the insert
+		DatabaseWriter.getInstance().cancel("items:" + getObjectId());
+		
 		Connection con = null;
 		PreparedStatement statement = null;
 		try {
@@ -1862,6 +1864,8 @@ public final class Item extends WorldObject implements ItemInstanceInfo {
 			return;
 		}
 		
+		DatabaseWriter.getInstance().cancel("items:" + getObjectId());
+		
 		Connection con = null;
 		PreparedStatement statement = null;
 		try {
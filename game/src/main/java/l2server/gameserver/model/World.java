@@ -18,6 +18,7 @@ package l2server.gameserver.model;
 import l2server.Config;
 import l2server.gameserver.GmListTable;
 import l2server.gameserver.datatables.CharNameTable;
+import l2server.gameserver.instancemanager.ChatChannelManager;
 import l2server.gameserver.instancemanager.GrandBossManager;
 import l2server.gameserver.model.actor.CreatureZone;
 import l2server.gameserver.model.actor.Playable;
@@ -61,6 +62,14 @@ public final class World {
 	 */
 	public static final int SHIFT_BY = 12;
 	
+	/*
+	 * bitshift of the cells each region is split into for range queries,
+	 * shifting by 9 divides one region to 8x8 cells of 512 units
+	 */
+	public static final int CELL_SHIFT = 9;
+	public static final int CELLS_PER_REGION = 1 << SHIFT_BY - CELL_SHIFT;
+	public static final int CELL_MASK = CELLS_PER_REGION - 1;
+	
 	private static final int TILE_SIZE = 32768;
 	
 	/**
@@ -348,7 +357,7 @@ public final class World {
 					tmp.logout();
 					return;
 				}
-				allPlayers.put(player.getObjectId(), player);
+				addToAllPlayers(player);
 			}
 		}
 		
@@ -356,20 +365,9 @@ public final class World {
 			return;
 		}
 		
-		// Get all visible objects contained in the visibleObjects of L2WorldRegions
-		// in a circular area of 2000 units
-		List<WorldObject> visibles = getVisibleObjects(object, 2000);
-		if (Config.DEBUG) {
-			log.trace("objects in range:" + visibles.size());
-		}
-		
 		// tell the player about the surroundings
-		// Go through the visible objects contained in the circular area
-		for (WorldObject visible : visibles) {
-			if (visible == null) {
-				continue;
-			}
-			
+		// Go through the visible objects contained in the circular area of 2000 units
+		forEachVisibleObject(object, WorldObject.class, 2000, visible -> {
 			// Add the object in L2ObjectHashSet(WorldObject) knownObjects of the visible Creature according to conditions :
 			//   - Creature is visible
 			//   - object is not already known
@@ -380,7 +378,8 @@ public final class World {
 			// Add the visible WorldObject in L2ObjectHashSet(WorldObject) knownObjects of the object according to conditions
 			// If visible WorldObject is a Player, add visible WorldObject in L2ObjectHashSet(Player) knownPlayer of the object
 			object.getKnownList().addKnownObject(visible);
-		}
+			return true;
+		});
 	}
 	
 	/**
@@ -388,6 +387,7 @@ public final class World {
 	 */
 	public void addToAllPlayers(Player cha) {
 		allPlayers.put(cha.getObjectId(), cha);
+		ChatChannelManager.getInstance().addPlayer(cha);
 	}
 	
 	/**
@@ -398,6 +398,7 @@ public final class World {
 	 */
 	public void removeFromAllPlayers(Player cha) {
 		allPlayers.remove(cha.getObjectId());
+		ChatChannelManager.getInstance().removePlayer(cha);
 	}
 	
 	/**
@@ -532,47 +533,8 @@ public final class World {
 	 * @param radius Radius of the circular area
 	 */
 	public List<WorldObject> getVisibleObjects(WorldObject object, int radius) {
-		if (object == null || !object.isVisible()) {
-			return new ArrayList<>();
-		}
-		
-		int x = object.getX();
-		int y = object.getY();
-		int sqRadius = radius * radius;
-		
-		// Create an ArrayList in order to contain all visible WorldObject
 		List<WorldObject> result = new ArrayList<>();
-		
-		// Go through the ArrayList of region
-		for (WorldRegion regi : object.getWorldRegion().getSurroundingRegions()) {
-			// Go through visible objects of the selected region
-			Collection<WorldObject> vObj = regi.getVisibleObjects().values();
-			//synchronized (regi.getVisibleObjects())
-			{
-				for (WorldObject obj : vObj) {
-					if (obj == null || obj.equals(object)) {
-						continue; // skip our own character
-					}
-					
-					// Fix for magically stuck objects
-					if (obj.getWorldRegion() == null) {
-						regi.removeVisibleObject(obj);
-						continue;
-					}
-					
-					int x1 = obj.getX();
-					int y1 = obj.getY();
-					
-					double dx = x1 - x;
-					double dy = y1 - y;
-					
-					if (dx * dx + dy * dy < sqRadius) {
-						result.add(obj);
-					}
-				}
-			}
-		}
-		
+		forEachVisibleObject(object, WorldObject.class, radius, result::add);
 		return result;
 	}
 	
@@ -591,44 +553,102 @@ public final class World {
 	 * @param radius Radius of the spheric area
 	 */
 	public List<WorldObject> getVisibleObjects3D(WorldObject object, int radius) {
-		if (object == null || !object.isVisible()) {
-			return new ArrayList<>();
+		List<WorldObject> result = new ArrayList<>();
+		forEachVisibleObject3D(object, WorldObject.class, radius, result::add);
+		return result;
+	}
+	
+	/**
+	 * Call the visitor for each visible object of the given type in the circular area (radius) centered on the object.<BR><BR>
+	 * <p>
+	 * <B><U> Concept</U> :</B><BR><BR>
+	 * Only the WorldCell of the object's and of its surrounding WorldRegion that intersect the area are scanned,
+	 * and nothing is allocated, so this should be preferred to {@link #getVisibleObjects(WorldObject, int)} in hot paths.
+	 * Looking for Playable (or a subclass) only goes through the playables of each cell.<BR><BR>
+	 *
+	 * @param object  L2object that determine the center of the circular area
+	 * @param type    class of the objects to visit
+	 * @param radius  Radius of the circular area
+	 * @param visitor called for each object found, returning false stops the query
+	 */
+	public <T extends WorldObject> void forEachVisibleObject(WorldObject object, Class<T> type, int radius, WorldObjectVisitor<? super T> visitor) {
+		forEachVisibleObject(object, type, radius, false, visitor);
+	}
+	
+	/**
+	 * Same as {@link #forEachVisibleObject(WorldObject, Class, int, WorldObjectVisitor)} on a spheric area.
+	 */
+	public <T extends WorldObject> void forEachVisibleObject3D(WorldObject object, Class<T> type, int radius, WorldObjectVisitor<? super T> visitor) {
+		forEachVisibleObject(object, type, radius, true, visitor);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T extends WorldObject> void forEachVisibleObject(WorldObject object, Class<T> type, int radius, boolean use3D, WorldObjectVisitor<? super T> visitor) {
+		if (object == null || !object.isVisible() || object.getWorldRegion() == null) {
+			return;
 		}
 		
-		int x = object.getX();
-		int y = object.getY();
-		int z = object.getZ();
-		int sqRadius = radius * radius;
+		final int x = object.getX();
+		final int y = object.getY();
+		final int z = object.getZ();
+		final long sqRadius = (long) radius * radius;
+		final boolean playablesOnly = Playable.class.isAssignableFrom(type);
 		
-		// Create an ArrayList in order to contain all visible WorldObject
-		List<WorldObject> result = new ArrayList<>();
+		// Stay inside the surrounding regions, as the region scan did
+		final int regionX = x >> SHIFT_BY;
+		final int regionY = y >> SHIFT_BY;
+		final int minCellX = Math.max(x - radius, regionX - 1 << SHIFT_BY) >> CELL_SHIFT;
+		final int maxCellX = Math.min(x + radius, (regionX + 2 << SHIFT_BY) - 1) >> CELL_SHIFT;
+		final int minCellY = Math.max(y - radius, regionY - 1 << SHIFT_BY) >> CELL_SHIFT;
+		final int maxCellY = Math.min(y + radius, (regionY + 2 << SHIFT_BY) - 1) >> CELL_SHIFT;
 		
-		// Go through visible object of the selected region
-		for (WorldRegion regi : object.getWorldRegion().getSurroundingRegions()) {
-			Collection<WorldObject> vObj = regi.getVisibleObjects().values();
-			//synchronized (regi.getVisibleObjects())
-			{
-				for (WorldObject _object : vObj) {
-					if (_object == null || _object.equals(object)) {
+		for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+			final int rx = (cellX >> SHIFT_BY - CELL_SHIFT) + OFFSET_X;
+			if (rx < 0 || rx > REGIONS_X) {
+				continue;
+			}
+			
+			// Distance from the center to the closest edge of the cell column
+			final long cdx = Math.max(0, Math.max((cellX << CELL_SHIFT) - x, x - ((cellX + 1 << CELL_SHIFT) - 1)));
+			
+			for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+				final int ry = (cellY >> SHIFT_BY - CELL_SHIFT) + OFFSET_Y;
+				if (ry < 0 || ry > REGIONS_Y) {
+					continue;
+				}
+				
+				final long cdy = Math.max(0, Math.max((cellY << CELL_SHIFT) - y, y - ((cellY + 1 << CELL_SHIFT) - 1)));
+				if (cdx * cdx + cdy * cdy >= sqRadius) {
+					continue;
+				}
+				
+				final WorldRegion region = worldRegions[rx][ry];
+				final WorldCell cell = region.getCell(cellX & CELL_MASK, cellY & CELL_MASK);
+				if (cell == null) {
+					continue;
+				}
+				
+				final Collection<? extends WorldObject> objects = playablesOnly ? cell.getPlayables().values() : cell.getObjects().values();
+				for (WorldObject obj : objects) {
+					if (obj == object || !type.isInstance(obj)) {
 						continue; // skip our own character
 					}
 					
-					int x1 = _object.getX();
-					int y1 = _object.getY();
-					int z1 = _object.getZ();
-					
-					long dx = x1 - x;
-					long dy = y1 - y;
-					long dz = z1 - z;
+					// Fix for magically stuck objects
+					if (obj.getWorldRegion() == null) {
+						region.removeVisibleObject(obj);
+						continue;
+					}
 					
-					if (dx * dx + dy * dy + dz * dz < sqRadius) {
-						result.add(_object);
+					final long dx = obj.getX() - x;
+					final long dy = obj.getY() - y;
+					final long dz = use3D ? obj.getZ() - z : 0;
+					if (dx * dx + dy * dy + dz * dz < sqRadius && !visitor.visit((T) obj)) {
+						return;
 					}
 				}
 			}
 		}
-		
-		return result;
 	}
 	
 	/**
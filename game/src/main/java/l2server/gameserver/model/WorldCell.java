@@ -0,0 +1,73 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver.model;
+
+import l2server.gameserver.model.actor.Playable;
+import l2server.util.ConcurrentIntObjectHashMap;
+
+
+/**
+ * A square sub-area of a WorldRegion, (1 << World.CELL_SHIFT) units on each side.
+ * The cells are kept up to date when objects enter, leave or move inside their region,
+ * so range queries only look at the objects of the cells touched by the searched area.
+ */
+public final class WorldCell {
+	private final WorldRegion region;
+	private final int cellX;
+	private final int cellY;
+	
+	private final ConcurrentIntObjectHashMap<WorldObject> objects = new ConcurrentIntObjectHashMap<>();
+	private final ConcurrentIntObjectHashMap<Playable> playables = new ConcurrentIntObjectHashMap<>();
+	
+	WorldCell(WorldRegion region, int cellX, int cellY) {
+		this.region = region;
+		this.cellX = cellX;
+		this.cellY = cellY;
+	}
+	
+	void add(WorldObject object) {
+		objects.put(object.getObjectId(), object);
+		if (object instanceof Playable) {
+			playables.put(object.getObjectId(), (Playable) object);
+		}
+	}
+	
+	void remove(WorldObject object) {
+		objects.remove(object.getObjectId());
+		if (object instanceof Playable) {
+			playables.remove(object.getObjectId());
+		}
+	}
+	
+	/**
+	 * @return true if the given world coordinates fall in this cell (assuming they are inside its region)
+	 */
+	boolean contains(int x, int y) {
+		return (x >> World.CELL_SHIFT & World.CELL_MASK) == cellX && (y >> World.CELL_SHIFT & World.CELL_MASK) == cellY;
+	}
+	
+	public WorldRegion getRegion() {
+		return region;
+	}
+	
+	public ConcurrentIntObjectHashMap<WorldObject> getObjects() {
+		return objects;
+	}
+	
+	public ConcurrentIntObjectHashMap<Playable> getPlayables() {
+		return playables;
+	}
+}
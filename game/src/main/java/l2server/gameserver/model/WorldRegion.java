@@ -19,19 +19,20 @@ import l2server.Config;
 import l2server.gameserver.ThreadPoolManager;
 import l2server.gameserver.datatables.SpawnTable;
 import l2server.gameserver.model.actor.*;
+import l2server.gameserver.model.actor.position.ObjectPosition;
 import l2server.gameserver.model.zone.ZoneType;
 import l2server.gameserver.model.zone.type.DerbyTrackZone;
 import l2server.gameserver.model.zone.type.PeaceZone;
 import l2server.gameserver.model.zone.type.TownZone;
+import l2server.util.ConcurrentIntObjectHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class ...
@@ -44,12 +45,17 @@ public final class WorldRegion {
 	/**
 	 * L2ObjectHashSet(L2PlayableInstance) containing L2PlayableInstance of all player & summon in game in this WorldRegion
 	 */
-	private Map<Integer, Playable> allPlayable;
+	private ConcurrentIntObjectHashMap<Playable> allPlayable;
 	
 	/**
 	 * L2ObjectHashSet(WorldObject) containing WorldObject visible in this WorldRegion
 	 */
-	private Map<Integer, WorldObject> visibleObjects;
+	private ConcurrentIntObjectHashMap<WorldObject> visibleObjects;
+	
+	/**
+	 * Sub-grid of this region, cells are created the first time an object enters them
+	 */
+	private final AtomicReferenceArray<WorldCell> cells = new AtomicReferenceArray<>(World.CELLS_PER_REGION * World.CELLS_PER_REGION);
 	
 	private List<WorldRegion> surroundingRegions;
 	private int tileX, tileY;
@@ -58,8 +64,8 @@ public final class WorldRegion {
 	private final ArrayList<ZoneType> zones;
 	
 	public WorldRegion(int pTileX, int pTileY) {
-		allPlayable = new ConcurrentHashMap<>();
-		visibleObjects = new ConcurrentHashMap<>();
+		allPlayable = new ConcurrentIntObjectHashMap<>();
+		visibleObjects = new ConcurrentIntObjectHashMap<>();
 		surroundingRegions = new ArrayList<>();
 		
 		tileX = pTileX;
@@ -353,6 +359,17 @@ public final class WorldRegion {
 		
 		visibleObjects.put(object.getObjectId(), object);
 		
+		ObjectPosition position = object.getPosition();
+		WorldCell oldCell = position.getWorldCell();
+		WorldCell cell = getOrCreateCell(object.getX(), object.getY());
+		if (oldCell != cell) {
+			if (oldCell != null) {
+				oldCell.remove(object);
+			}
+			cell.add(object);
+			position.setWorldCell(cell);
+		}
+		
 		if (object instanceof Playable) {
 			allPlayable.put(object.getObjectId(), (Playable) object);
 			
@@ -378,6 +395,13 @@ public final class WorldRegion {
 		
 		visibleObjects.remove(object.getObjectId());
 		
+		ObjectPosition position = object.getPosition();
+		WorldCell cell = position.getWorldCell();
+		if (cell != null && cell.getRegion() == this) {
+			cell.remove(object);
+			position.setWorldCell(null);
+		}
+		
 		if (object instanceof Playable) {
 			allPlayable.remove(object.getObjectId());
 			
@@ -387,6 +411,51 @@ public final class WorldRegion {
 		}
 	}
 	
+	/**
+	 * Move the WorldObject to the cell matching its current position, if it changed of cell without leaving this region.
+	 *
+	 * @return true if the object entered a new cell
+	 */
+	public boolean updateCell(WorldObject object) {
+		ObjectPosition position = object.getPosition();
+		WorldCell cell = position.getWorldCell();
+		if (cell == null || cell.getRegion() != this) {
+			return false;
+		}
+		
+		int x = object.getX();
+		int y = object.getY();
+		if (cell.contains(x, y)) {
+			return false;
+		}
+		
+		WorldCell newCell = getOrCreateCell(x, y);
+		cell.remove(object);
+		newCell.add(object);
+		position.setWorldCell(newCell);
+		return true;
+	}
+	
+	/**
+	 * Return the cell at the given local cell coordinates, or null if no object ever entered it.
+	 */
+	public WorldCell getCell(int cellX, int cellY) {
+		return cells.get(cellX * World.CELLS_PER_REGION + cellY);
+	}
+	
+	private WorldCell getOrCreateCell(int x, int y) {
+		int cellX = x >> World.CELL_SHIFT & World.CELL_MASK;
+		int cellY = y >> World.CELL_SHIFT & World.CELL_MASK;
+		int index = cellX * World.CELLS_PER_REGION + cellY;
+		
+		WorldCell cell = cells.get(index);
+		if (cell == null) {
+			cells.compareAndSet(index, null, new WorldCell(this, cellX, cellY));
+			cell = cells.get(index);
+		}
+		return cell;
+	}
+	
 	public void addSurroundingRegion(WorldRegion region) {
 		surroundingRegions.add(region);
 	}
@@ -398,11 +467,11 @@ public final class WorldRegion {
 		return surroundingRegions;
 	}
 	
-	public Map<Integer, Playable> getVisiblePlayable() {
+	public ConcurrentIntObjectHashMap<Playable> getVisiblePlayable() {
 		return allPlayable;
 	}
 	
-	public Map<Integer, WorldObject> getVisibleObjects() {
+	public ConcurrentIntObjectHashMap<WorldObject> getVisibleObjects() {
 		return visibleObjects;
 	}
 	
@@ -37,6 +37,7 @@ import l2server.gameserver.model.*
 import l2server.gameserver.model.actor.instance.*
 import l2server.gameserver.model.actor.knownlist.CharKnownList
 import l2server.gameserver.model.actor.position.CharPosition
+import l2server.gameserver.model.actor.position.ObjectPosition
 import l2server.gameserver.model.actor.stat.CharStat
 import l2server.gameserver.model.actor.status.CharStatus
 import l2server.gameserver.model.itemcontainer.Inventory
@@ -47,6 +48,7 @@ import l2server.gameserver.network.serverpackets.FlyToLocation.FlyType
 import l2server.gameserver.network.serverpackets.StatusUpdate.StatusUpdateDisplay
 import l2server.gameserver.pathfinding.AbstractNodeLoc
 import l2server.gameserver.pathfinding.PathFinding
+import l2server.gameserver.pathfinding.PathFindingService
 import l2server.gameserver.stats.Calculator
 import l2server.gameserver.stats.Formulas
 import l2server.gameserver.stats.Stats
@@ -69,6 +71,7 @@ import l2server.util.Point3D
 import l2server.util.Rnd
 import org.slf4j.LoggerFactory
 import java.util.*
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArraySet
 import java.util.concurrent.Future
@@ -411,6 +414,12 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 	 */
 	protected var move: MoveData? = null
 
+	/**
+	 * Path asked to the pathfinding service and not followed yet
+	 */
+	@Volatile
+	private var pendingPath: PendingPath? = null
+
 	/**
 	 * Orientation of the Creature
 	 */
@@ -3807,6 +3816,8 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 		var geoPathGty: Int = 0
 	}
 
+	private class PendingPath(val gtx: Int, val gty: Int, val result: CompletableFuture<PathFindingService.PathResult>)
+
 	/**
 	 * Add a Func to the Calculator set of the Creature.<BR></BR><BR></BR>
 	 *
@@ -3857,6 +3868,7 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 			// Add the Func to the calculator corresponding to the state
 			calculators[stat]?.addFunc(f)
 			this.calculators = calculators
+			this.stat?.invalidateStatCache()
 		}
 	}
 
@@ -3949,6 +3961,7 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 				}
 			}
 			this.calculators = calculators
+			this.stat?.invalidateStatCache()
 		}
 	}
 
@@ -4049,6 +4062,11 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 				}
 			}
 
+			this.calculators = calculators
+			if (modifiedStats != null && !modifiedStats!!.isEmpty()) {
+				stat?.invalidateStatCache()
+			}
+
 			if (owner is Abnormal) {
 				if (!owner.preventExitUpdate) {
 					broadcastModifiedStats(modifiedStats)
@@ -4056,8 +4074,6 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 			} else {
 				broadcastModifiedStats(modifiedStats)
 			}
-
-			this.calculators = calculators
 		}
 	}
 
@@ -4366,7 +4382,8 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 			// Set the position of the Creature to estimated after parcial move
 			super.position.setXYZ(m.xAccurate.toInt(), m.yAccurate.toInt(), zPrev + (dz * distFraction + 0.5).toInt())
 		}
-		revalidateZone(false)
+		// On the timer thread with the known list updates when moved by the parallel tick
+		ObjectPosition.runOrDefer { revalidateZone(false) }
 
 		// Set the timer of last position update to now
 		m.moveTimestamp = gameTicks
@@ -4414,6 +4431,8 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 	open fun stopMove(pos: L2CharPosition?, updateKnownObjects: Boolean) {
 		// Delete movement data of the Creature
 		move = null
+		pendingPath?.result?.cancel(false)
+		pendingPath = null
 
 		//if (getAI() != null)
 		//  getAI().setIntention(CtrlIntention.AI_INTENTION_IDLE);
@@ -4465,6 +4484,21 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 	 * @param offset The size of the interaction area of the Creature targeted
 	 */
 	fun moveToLocation(x: Int, y: Int, z: Int, offset: Int) {
+		// Any new move replaces the path still being searched, unless it's the same destination
+		val pending = pendingPath
+		pendingPath = null
+		moveToLocation(x, y, z, offset, pending)
+		// Gives up on the search if the move didn't keep waiting for it
+		if (pending != null && pendingPath !== pending) {
+			pending.result.cancel(false)
+		}
+	}
+
+	private fun moveToLocation(x: Int, y: Int, z: Int, offset: Int, pending: PendingPath?) {
+		val requestedX = x
+		val requestedY = y
+		val requestedZ = z
+		val requestedOffset = offset
 		var x = x
 		var y = y
 		var z = z
@@ -4658,9 +4692,27 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 						this is GuardInstance && instanceId != 0)
 				//TODO LasTravel
 				{
-					m.geoPath = PathFinding.getInstance()
-							.findPath(curX, curY, curZ, originalX, originalY, originalZ, instanceId, this is Playable)
-					if (m.geoPath == null || m.geoPath!!.size < 2)
+					var timedOut = false
+					if (this !is Playable && Config.PATHFIND_ASYNC) {
+						// The AI doesn't wait for the search, the move is done again once the path is found
+						if (pending == null || pending.gtx != gtx || pending.gty != gty) {
+							requestPath(curX, curY, curZ, originalX, originalY, originalZ, gtx, gty, requestedX, requestedY, requestedZ, requestedOffset)
+							return
+						}
+						if (!pending.result.isDone) {
+							pendingPath = pending
+							return
+						}
+						val result = pending.result.join()
+						timedOut = result.isTimedOut
+						m.geoPath = result.path
+					} else {
+						m.geoPath = PathFinding.getInstance()
+								.findPath(curX, curY, curZ, originalX, originalY, originalZ, instanceId, this is Playable)
+					}
+					if (timedOut) {
+						// The search took too long, walks straight until the geodata blocks
+					} else if (m.geoPath == null || m.geoPath!!.size < 2)
 					// No path found
 					{
 						// * Even though there's no path found (remember geonodes aren't perfect),
@@ -4772,6 +4824,34 @@ abstract class Creature(objectId: Int, template: CreatureTemplate?): WorldObject
 		// to destination by GameTimeController
 	}
 
+	private fun requestPath(curX: Int,
+	                        curY: Int,
+	                        curZ: Int,
+	                        tx: Int,
+	                        ty: Int,
+	                        tz: Int,
+	                        gtx: Int,
+	                        gty: Int,
+	                        x: Int,
+	                        y: Int,
+	                        z: Int,
+	                        offset: Int) {
+		val result = PathFindingService.getInstance().findPath(curX, curY, curZ, tx, ty, tz, instanceId)
+		val pending = PendingPath(gtx, gty, result)
+		pendingPath = pending
+		result.thenRun {
+			ThreadPoolManager.getInstance().executeAi {
+				// Unless the creature stopped or went elsewhere meanwhile
+				if (pendingPath === pending && !isMovementDisabled) {
+					moveToLocation(x, y, z, offset)
+					if (isMoving) {
+						broadcastPacket(MoveToLocation(this))
+					}
+				}
+			}
+		}
+	}
+
 	open fun moveToNextRoutePoint(): Boolean {
 		if (!isOnGeodataPath) {
 			// Cancel the move action
@@ -36,6 +36,7 @@ import l2server.gameserver.model.entity.Castle;
 import l2server.gameserver.model.entity.ClanHall;
 import l2server.gameserver.model.entity.Fort;
 import l2server.gameserver.model.entity.Instance;
+import l2server.gameserver.pathfinding.clusters.HierarchicalPathFinding;
 import l2server.gameserver.network.SystemMessageId;
 import l2server.gameserver.network.serverpackets.DoorStatusUpdate;
 import l2server.gameserver.network.serverpackets.EventTrigger;
@@ -199,6 +200,9 @@ public class DoorInstance extends Creature {
 	 */
 	private void setOpen(boolean open) {
 		this.open = open;
+		if (open) {
+			HierarchicalPathFinding.onDoorOpened();
+		}
 		if (getChildId() > 0) {
 			getSiblingDoor(getChildId()).notifyChildEvent(open);
 		}
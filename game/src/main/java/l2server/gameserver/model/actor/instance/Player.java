@@ -116,6 +116,7 @@ import java.util.*;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -146,7 +147,8 @@ public class Player extends Playable {
 	private static final String INSERT_CHARACTER =
 			"INSERT INTO characters (account_name,charId,char_name,level,maxHp,curHp,maxCp,curCp,maxMp,curMp,face,hairStyle,hairColor,sex,exp,sp,reputation,fame,pvpkills,pkkills,clanid,templateId,classid,deletetime,cancraft,title,title_color,accesslevel,online,clan_privs,wantspeace,base_class,newbie,nobless,power_grade,createTime) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 	private static final String UPDATE_CHARACTER =
-			"UPDATE characters SET level=?,temporaryLevel=?,maxHp=?,curHp=?,maxCp=?,curCp=?,maxMp=?,curMp=?,face=?,hairStyle=?,hairColor=?,sex=?,heading=?,x=?,y=?,z=?,exp=?,expBeforeDeath=?,sp=?,reputation=?,fame=?,pvpkills=?,pkkills=?,clanid=?,templateId=?,classid=?,deletetime=?,title=?,title_color=?,accesslevel=?,online=?,clan_privs=?,wantspeace=?,base_class=?,onlinetime=?,punish_level=?,punish_timer=?,newbie=?,nobless=?,power_grade=?,subpledge=?,lvl_joined_academy=?,apprentice=?,sponsor=?,varka_ketra_ally=?,clan_join_expiry_time=?,clan_create_expiry_time=?,char_name=?,bookmarkslot=?,show_hat=?,race_app=? WHERE charId=?";
+			"UPDATE characters SET level=?,temporaryLevel=?,maxHp=?,curHp=?,maxCp=?,curCp=?,maxMp=?,curMp=?,face=?,hairStyle=?,hairColor=?,sex=?,heading=?,x=?,y=?,z=?,exp=?,expBeforeDeath=?,sp=?,reputation=?,fame=?,pvpkills=?,pkkills=?,clanid=?,templateId=?,classid=?,deletetime=?,title=?,title_color=?,accesslevel=?,online=?,clan_privs=?,wantspeace=?,base_class=?,punish_level=?,punish_timer=?,newbie=?,nobless=?,power_grade=?,subpledge=?,lvl_joined_academy=?,apprentice=?,sponsor=?,varka_ketra_ally=?,clan_join_expiry_time=?,clan_create_expiry_time=?,char_name=?,bookmarkslot=?,show_hat=?,race_app=? WHERE charId=?";
+	private static final String UPDATE_CHARACTER_ONLINE_TIME = "UPDATE characters SET onlinetime=? WHERE charId=?";
 	private static final String RESTORE_CHARACTER =
 			"SELECT account_name, charId, char_name, level, temporaryLevel, curHp, curCp, curMp, face, hairStyle, hairColor, sex, heading, x, y, z, exp, expBeforeDeath, sp, reputation, fame, pvpkills, pkkills, clanid, templateId, classid, deletetime, cancraft, title, title_color, accesslevel, online, char_slot, lastAccess, clan_privs, wantspeace, base_class, onlinetime, punish_level, punish_timer, newbie, nobless, power_grade, subpledge, lvl_joined_academy, apprentice, sponsor, varka_ketra_ally,clan_join_expiry_time,clan_create_expiry_time,bookmarkslot,createTime,show_hat,race_app FROM characters WHERE charId=?";
 	
@@ -7155,6 +7157,7 @@ public class Player extends Playable {
 		broadcastUserInfo();
 		
 		CharNameTable.getInstance().addName(this);
+		ChatChannelManager.getInstance().updateGm(this);
 	}
 	
 	public void setAccountAccesslevel(int level) {
@@ -7348,6 +7351,9 @@ public class Player extends Playable {
 		Player player = null;
 		Connection con = null;
 		
+		// The last autosave of the character may not be written yet
+		DatabaseWriter.getInstance().flush(objectId);
+		
 		try {
 			// Retrieve the Player from the characters table of the database
 			con = DatabasePool.getInstance().getConnection();
@@ -7878,14 +7884,37 @@ public class Player extends Playable {
 		}
 	}
 	
+	// Rows last handed to the DatabaseWriter by the store methods, to skip the ones that didn't change, guarded by this
+	private final Map<String, DatabaseWriter.Rows> storedRows = new HashMap<>();
+	private int storeExecuted;
+	private int storeSkipped;
+	
+	private static final LongAdder storeCount = new LongAdder();
+	private static final LongAdder idleStoreCount = new LongAdder();
+	private static final LongAdder storeExecutedStatements = new LongAdder();
+	private static final LongAdder storeSkippedStatements = new LongAdder();
+	
 	/**
 	 * Update Player stats in the characters table of the database.<BR><BR>
 	 */
 	public synchronized void store(boolean storeActiveEffects) {
+		store(storeActiveEffects, true);
+	}
+	
+	/**
+	 * Update Player stats in the characters table of the database.<BR><BR>
+	 *
+	 * @param flush false to leave the rows to the DatabaseWriter (autosave), true to have them written
+	 *              before returning, along with the pending rows of the items and quests of the player
+	 */
+	public synchronized void store(boolean storeActiveEffects, boolean flush) {
 		//update client coords, if these look like true
 		// if (isInsideRadius(getClientX(), getClientY(), 1000, true))
 		//	setXYZ(getClientX(), getClientY(), getClientZ());
 		
+		storeExecuted = 0;
+		storeSkipped = 0;
+		
 		storeCharBase();
 		storeCharSub();
 		storeEffect(storeActiveEffects);
@@ -7898,6 +7927,47 @@ public class Player extends Playable {
 		}
 		storeLastSummons();
 		storeCharFriendMemos();
+		if (flush) {
+			DatabaseWriter.getInstance().flush(getObjectId());
+		}
+		
+		storeCount.increment();
+		if (storeExecuted == 0) {
+			idleStoreCount.increment();
+		}
+		storeExecutedStatements.add(storeExecuted);
+		storeSkippedStatements.add(storeSkipped);
+	}
+	
+	/**
+	 * Hands the rows to the DatabaseWriter, unless they are the same as the last ones of the key
+	 * and these were written successfully.
+	 */
+	private void storeRows(String key, DatabaseWriter.Rows rows) {
+		DatabaseWriter.Rows stored = storedRows.get(key);
+		if (stored != null && !stored.isFailed() && stored.isSame(rows)) {
+			storeSkipped += rows.size();
+			return;
+		}
+		
+		storedRows.put(key, rows);
+		storeExecuted += rows.size();
+		DatabaseWriter.getInstance().write(getObjectId(), key, rows);
+	}
+	
+	/**
+	 * To call when the rows of the key are changed in the database without storeRows, so that they are written again.
+	 */
+	private synchronized void forgetStoredRows(String key) {
+		storedRows.remove(key);
+	}
+	
+	public static String[] getStoreStats() {
+		final long executed = storeExecutedStatements.sum();
+		final long skipped = storeSkippedStatements.sum();
+		return new String[]{"Player store: saves " + storeCount.sum() + ", without changes " + idleStoreCount.sum(),
+				" |- statements executed/skipped: " + executed + "/" + skipped +
+						(executed + skipped > 0 ? " (" + String.format("%1.1f", 100. * skipped / (executed + skipped)) + "% skipped)" : "")};
 	}
 	
 	public void store() {
@@ -7905,8 +7975,6 @@ public class Player extends Playable {
 	}
 	
 	private void storeCharBase() {
-		Connection con = null;
-		
 		try {
 			// Get the exp, level, and sp of base class to store in base table
 			long exp = getStat().getBaseClassExp();
@@ -7925,119 +7993,102 @@ public class Player extends Playable {
 				}
 			}
 			
-			con = DatabasePool.getInstance().getConnection();
-			
-			// Update base class
-			PreparedStatement statement = con.prepareStatement(UPDATE_CHARACTER);
-			
-			statement.setInt(1, level);
-			statement.setInt(2, temporaryLevel);
-			statement.setDouble(3, getMaxHp());
-			statement.setDouble(4, getCurrentHp());
-			statement.setDouble(5, getMaxCp());
-			statement.setDouble(6, getCurrentCp());
-			statement.setDouble(7, getMaxMp());
-			statement.setDouble(8, getCurrentMp());
-			statement.setInt(9, getAppearance().getFace());
-			statement.setInt(10, getAppearance().getHairStyle());
-			statement.setInt(11, getAppearance().getHairColor());
-			statement.setInt(12, getAppearance().getSex() ? 1 : 0);
-			statement.setInt(13, getHeading());
-			statement.setInt(14, x);
-			statement.setInt(15, y);
-			statement.setInt(16, z);
-			statement.setLong(17, exp);
-			statement.setLong(18, getExpBeforeDeath());
-			statement.setLong(19, sp);
-			statement.setInt(20, getReputation());
-			statement.setInt(21, getFame());
-			statement.setInt(22, getPvpKills());
-			statement.setInt(23, getPkKills());
-			statement.setInt(24, getClanId());
-			statement.setInt(25, templateId);
-			statement.setInt(26, currentClass.getId());
-			statement.setLong(27, getDeleteTimer());
-			statement.setString(28, getTitle());
-			statement.setInt(29, getTitleColor());
-			statement.setInt(30, getAccessLevel().getLevel());
-			statement.setInt(31, isOnlineInt());
-			statement.setInt(32, getClanPrivileges());
-			statement.setInt(33, getWantsPeace());
-			statement.setInt(34, getBaseClass());
-			
 			long totalOnlineTime = onlineTime;
 			
 			if (onlineBeginTime > 0) {
 				totalOnlineTime += (System.currentTimeMillis() - onlineBeginTime) / 1000;
 			}
 			
-			statement.setLong(35, totalOnlineTime);
-			statement.setInt(36, getPunishLevel().value());
-			statement.setLong(37, getPunishTimer());
-			statement.setInt(38, getNewbie());
-			statement.setInt(39, isNoble() ? 1 : 0);
-			statement.setLong(40, getPowerGrade());
-			statement.setInt(41, getPledgeType());
-			statement.setInt(42, getLvlJoinedAcademy());
-			statement.setLong(43, getApprentice());
-			statement.setLong(44, getSponsor());
-			statement.setInt(45, getAllianceWithVarkaKetra());
-			statement.setLong(46, getClanJoinExpiryTime());
-			statement.setLong(47, getClanCreateExpiryTime());
-			statement.setString(48, getName());
-			statement.setInt(49, getBookMarkSlot());
-			statement.setInt(50, isShowingHat() ? 1 : 0);
-			statement.setInt(51, getRaceAppearance());
-			statement.setInt(52, getObjectId());
-			
-			statement.execute();
-			statement.close();
-			
+			// Update base class
+			DatabaseWriter.Rows rows = new DatabaseWriter.Rows();
+			rows.add(UPDATE_CHARACTER,
+					level,
+					temporaryLevel,
+					getMaxHp(),
+					getCurrentHp(),
+					getMaxCp(),
+					getCurrentCp(),
+					getMaxMp(),
+					getCurrentMp(),
+					getAppearance().getFace(),
+					getAppearance().getHairStyle(),
+					getAppearance().getHairColor(),
+					getAppearance().getSex() ? 1 : 0,
+					getHeading(),
+					x,
+					y,
+					z,
+					exp,
+					getExpBeforeDeath(),
+					sp,
+					getReputation(),
+					getFame(),
+					getPvpKills(),
+					getPkKills(),
+					getClanId(),
+					templateId,
+					currentClass.getId(),
+					getDeleteTimer(),
+					getTitle(),
+					getTitleColor(),
+					getAccessLevel().getLevel(),
+					isOnlineInt(),
+					getClanPrivileges(),
+					getWantsPeace(),
+					getBaseClass(),
+					getPunishLevel().value(),
+					getPunishTimer(),
+					getNewbie(),
+					isNoble() ? 1 : 0,
+					getPowerGrade(),
+					getPledgeType(),
+					getLvlJoinedAcademy(),
+					getApprentice(),
+					getSponsor(),
+					getAllianceWithVarkaKetra(),
+					getClanJoinExpiryTime(),
+					getClanCreateExpiryTime(),
+					getName(),
+					getBookMarkSlot(),
+					isShowingHat() ? 1 : 0,
+					getRaceAppearance(),
+					getObjectId());
+			
+			// Counted all the time, only written with the other changes
+			rows.addUntracked(UPDATE_CHARACTER_ONLINE_TIME, totalOnlineTime, getObjectId());
+			
+			storeRows("characters:" + getObjectId(), rows);
+			
+			// The row of the account, shared by all its characters
 			if (getLevel() > 1) {
-				statement = con.prepareStatement(UPDATE_ACCOUNT_GSDATA);
-				statement.setString(1, String.valueOf(getVitalityPoints()));
-				statement.setString(2, getAccountName());
-				statement.setString(3, "vitality");
-				statement.execute();
-				statement.close();
+				storeRows("account_gsdata:" + getAccountName(),
+						new DatabaseWriter.Rows().add(UPDATE_ACCOUNT_GSDATA, String.valueOf(getVitalityPoints()), getAccountName(), "vitality"));
 			}
 		} catch (Exception e)
 		
 		{
 			log.warn("Could not store char base data: " + this + " - " + e.getMessage(), e);
-		} finally {
-			DatabasePool.close(con);
 		}
 	}
 	
 	private void storeCharSub() {
-		Connection con = null;
+		if (getTotalSubClasses() == 0) {
+			return;
+		}
 		
-		try {
-			con = DatabasePool.getInstance().getConnection();
-			
-			PreparedStatement statement = con.prepareStatement(UPDATE_CHAR_SUBCLASS);
-			
-			if (getTotalSubClasses() > 0) {
-				for (SubClass subClass : getSubClasses().values()) {
-					statement.setLong(1, subClass.getExp());
-					statement.setLong(2, subClass.getSp());
-					statement.setInt(3, subClass.getLevel());
-					statement.setInt(4, subClass.getClassId());
-					statement.setBoolean(5, subClass.isDual());
-					statement.setInt(6, subClass.getCertificates());
-					statement.setInt(7, getObjectId());
-					statement.setInt(8, subClass.getClassIndex());
-					
-					statement.execute();
-				}
-			}
-			statement.close();
-		} catch (Exception e) {
-			log.warn("Could not store sub class data for " + getName() + ": " + e.getMessage(), e);
-		} finally {
-			DatabasePool.close(con);
+		DatabaseWriter.Rows rows = new DatabaseWriter.Rows();
+		for (SubClass subClass : getSubClasses().values()) {
+			rows.add(UPDATE_CHAR_SUBCLASS,
+					subClass.getExp(),
+					subClass.getSp(),
+					subClass.getLevel(),
+					subClass.getClassId(),
+					subClass.isDual(),
+					subClass.getCertificates(),
+					getObjectId(),
+					subClass.getClassIndex());
 		}
+		storeRows("character_subclasses:" + getObjectId(), rows);
 	}
 	
 	private void storeEffect(boolean storeEffects) {
@@ -8045,17 +8096,10 @@ public class Player extends Playable {
 			return;
 		}
 		
-		Connection con = null;
 		try {
-			con = DatabasePool.getInstance().getConnection();
-			
 			// Delete all current stored effects for char to avoid dupe
-			PreparedStatement statement = con.prepareStatement(DELETE_SKILL_SAVE);
-			
-			statement.setInt(1, getObjectId());
-			statement.setInt(2, getClassIndex());
-			statement.execute();
-			statement.close();
+			DatabaseWriter.Rows rows = new DatabaseWriter.Rows();
+			rows.add(DELETE_SKILL_SAVE, getObjectId(), getClassIndex());
 			
 			int buff_index = 0;
 			
@@ -8063,8 +8107,6 @@ public class Player extends Playable {
 			
 			// Store all effect data along with calulated remaining
 			// reuse delays for matching skills. 'restore_type'= 0.
-			statement = con.prepareStatement(ADD_SKILL_SAVE);
-			
 			if (storeEffects) {
 				for (Abnormal effect : getAllEffects()) {
 					if (effect == null) {
@@ -8092,25 +8134,25 @@ public class Player extends Playable {
 					storedSkills.add(skill.getReuseHashCode());
 					
 					if (!effect.isHerbEffect() && effect.getInUse() && (!skill.isToggle() || skill.getId() >= 11007 && skill.getId() <= 11010)) {
-						statement.setInt(1, getObjectId());
-						statement.setInt(2, skill.getId());
-						statement.setInt(3, skill.getLevelHash());
-						statement.setInt(4, effect.getCount());
-						statement.setInt(5, effect.getTime());
-						
+						long reuse = 0;
+						double stamp = 0;
 						if (reuseTimeStamps.containsKey(skill.getReuseHashCode())) {
 							TimeStamp t = reuseTimeStamps.get(skill.getReuseHashCode());
-							statement.setLong(6, t.hasNotPassed() ? t.getReuse() : 0);
-							statement.setDouble(7, t.hasNotPassed() ? t.getStamp() : 0);
-						} else {
-							statement.setLong(6, 0);
-							statement.setDouble(7, 0);
+							reuse = t.hasNotPassed() ? t.getReuse() : 0;
+							stamp = t.hasNotPassed() ? t.getStamp() : 0;
 						}
 						
-						statement.setInt(8, 0);
-						statement.setInt(9, getClassIndex());
-						statement.setInt(10, ++buff_index);
-						statement.execute();
+						rows.add(ADD_SKILL_SAVE,
+								getObjectId(),
+								skill.getId(),
+								skill.getLevelHash(),
+								effect.getCount(),
+								effect.getTime(),
+								reuse,
+								stamp,
+								0,
+								getClassIndex(),
+								++buff_index);
 					}
 				}
 			}
@@ -8126,24 +8168,23 @@ public class Player extends Playable {
 				if (t != null && t.hasNotPassed()) {
 					storedSkills.add(hash);
 					
-					statement.setInt(1, getObjectId());
-					statement.setInt(2, t.getSkillId());
-					statement.setInt(3, t.getSkillLvl());
-					statement.setInt(4, -1);
-					statement.setInt(5, -1);
-					statement.setLong(6, t.getReuse());
-					statement.setDouble(7, t.getStamp());
-					statement.setInt(8, 1);
-					statement.setInt(9, getClassIndex());
-					statement.setInt(10, ++buff_index);
-					statement.execute();
+					rows.add(ADD_SKILL_SAVE,
+							getObjectId(),
+							t.getSkillId(),
+							t.getSkillLvl(),
+							-1,
+							-1,
+							t.getReuse(),
+							t.getStamp(),
+							1,
+							getClassIndex(),
+							++buff_index);
 				}
 			}
-			statement.close();
+			
+			storeRows("character_skills_save:" + getObjectId() + ":" + getClassIndex(), rows);
 		} catch (Exception e) {
 			log.warn("Could not store char effect data: ", e);
-		} finally {
-			DatabasePool.close(con);
 		}
 	}
 	
@@ -8518,6 +8559,7 @@ public class Player extends Playable {
 			statement.setInt(2, getClassIndex());
 			statement.executeUpdate();
 			statement.close();
+			forgetStoredRows("character_skills_save:" + getObjectId() + ":" + getClassIndex());
 		} catch (Exception e) {
 			log.warn("Could not restore " + this + " active effect data: " + e.getMessage(), e);
 		} finally {
@@ -8781,6 +8823,8 @@ public class Player extends Playable {
 			
 			hennaElem[this.henna[i].getStatElemId()] = henna[i].getStatElemVal();
 		}
+		
+		getStat().invalidateStatCache();
 	}
 	
 	/**
@@ -10612,6 +10656,8 @@ public class Player extends Playable {
 	
 	public void setIsInOlympiadMode(boolean b) {
 		inOlympiadMode = b;
+		// enchant bonuses are limited during the matches
+		getStat().invalidateStatCache();
 	}
 	
 	public void setIsOlympiadStart(boolean b) {
@@ -11043,6 +11089,7 @@ public class Player extends Playable {
 				statement.setInt(2, classIndex);
 				statement.execute();
 				statement.close();
+				forgetStoredRows("character_skills_save:" + getObjectId() + ":" + classIndex);
 				
 				// Remove all skill info stored for this sub-class.
 				statement = con.prepareStatement(DELETE_CHAR_SKILLS);
@@ -11193,6 +11240,8 @@ public class Player extends Playable {
 			}
 			
 			this.classIndex = classIndex;
+			// the level now comes from another class
+			getStat().invalidateStatCache();
 			if (classIndex == 0) {
 				setClassTemplate(getBaseClass());
 			} else {
@@ -14728,38 +14777,21 @@ public class Player extends Playable {
 	}
 	
 	private void storeRecipeShopList() {
-		Connection con = null;
+		L2ManufactureList list = getCreateList();
 		
-		try {
-			con = DatabasePool.getInstance().getConnection();
-			
-			PreparedStatement statement;
-			L2ManufactureList list = getCreateList();
-			
-			if (list != null && list.size() > 0) {
-				int position = 1;
-				statement = con.prepareStatement("DELETE FROM character_recipeshoplist WHERE charId=? ");
-				statement.setInt(1, getObjectId());
-				statement.execute();
-				statement.close();
-				
-				PreparedStatement statement2 =
-						con.prepareStatement("INSERT INTO character_recipeshoplist (charId, Recipeid, Price, Pos) VALUES (?, ?, ?, ?)");
-				for (L2ManufactureItem item : list.getList()) {
-					statement2.setInt(1, getObjectId());
-					statement2.setInt(2, item.getRecipeId());
-					statement2.setLong(3, item.getCost());
-					statement2.setInt(4, position);
-					statement2.execute();
-					statement2.clearParameters();
-					position++;
-				}
-				statement2.close();
+		if (list != null && list.size() > 0) {
+			int position = 1;
+			DatabaseWriter.Rows rows = new DatabaseWriter.Rows();
+			rows.add("DELETE FROM character_recipeshoplist WHERE charId=? ", getObjectId());
+			for (L2ManufactureItem item : list.getList()) {
+				rows.add("INSERT INTO character_recipeshoplist (charId, Recipeid, Price, Pos) VALUES (?, ?, ?, ?)",
+						getObjectId(),
+						item.getRecipeId(),
+						item.getCost(),
+						position);
+				position++;
 			}
-		} catch (Exception e) {
-			log.error("Could not store recipe shop for playerID " + getObjectId() + ": ", e);
-		} finally {
-			DatabasePool.close(con);
+			storeRows("character_recipeshoplist:" + getObjectId(), rows);
 		}
 	}
 	
@@ -15281,35 +15313,16 @@ public class Player extends Playable {
 	private List<Integer> lastSummons = new ArrayList<>();
 	
 	private void storeLastSummons() {
-		Connection con = null;
-		try {
-			con = DatabasePool.getInstance().getConnection();
-			
-			// Delete all current stored effects for char to avoid dupe
-			PreparedStatement statement = con.prepareStatement("DELETE FROM character_last_summons WHERE charId = ?");
-			
-			statement.setInt(1, getObjectId());
-			statement.execute();
-			statement.close();
-			
-			// Store all effect data along with calulated remaining
-			// reuse delays for matching skills. 'restore_type'= 0.
-			statement = con.prepareStatement("INSERT INTO character_last_summons (charId, summonIndex, npcId) VALUES (?, ?, ?)");
-			
-			int i = 0;
-			for (int summonId : lastSummons) {
-				statement.setInt(1, getObjectId());
-				statement.setInt(2, i);
-				statement.setInt(3, summonId);
-				statement.execute();
-				i++;
-			}
-			statement.close();
-		} catch (Exception e) {
-			log.warn("Could not store last summons data: ", e);
-		} finally {
-			DatabasePool.close(con);
+		// Delete all current stored summons for char to avoid dupe
+		DatabaseWriter.Rows rows = new DatabaseWriter.Rows();
+		rows.add("DELETE FROM character_last_summons WHERE charId = ?", getObjectId());
+		
+		int i = 0;
+		for (int summonId : lastSummons) {
+			rows.add("INSERT INTO character_last_summons (charId, summonIndex, npcId) VALUES (?, ?, ?)", getObjectId(), i, summonId);
+			i++;
 		}
+		storeRows("character_last_summons:" + getObjectId(), rows);
 	}
 	
 	public void restoreLastSummons() {
@@ -16987,41 +17000,22 @@ public class Player extends Playable {
 		return onlineTime;
 	}
 	
-	public void storeCharFriendMemos() {
-		Connection con = null;
+	public synchronized void storeCharFriendMemos() {
+		DatabaseWriter.Rows rows = new DatabaseWriter.Rows();
 		for (Map.Entry<Integer, String> friendMemo : friendMemo.entrySet()) {
-			try {
-				con = DatabasePool.getInstance().getConnection();
-				PreparedStatement statement =
-						con.prepareStatement("UPDATE character_friends SET memo=? WHERE charId=? AND friendId=? AND relation=0");
-				statement.setString(1, friendMemo.getValue());
-				statement.setInt(2, getObjectId());
-				statement.setInt(3, friendMemo.getKey());
-				statement.execute();
-				
-				statement.close();
-			} catch (Exception e) {
-				log.warn("Could not update character(" + getObjectId() + ") friend(" + friendMemo.getKey() + ") memo: " + e.getMessage(), e);
-			} finally {
-				DatabasePool.close(con);
-			}
+			rows.add("UPDATE character_friends SET memo=? WHERE charId=? AND friendId=? AND relation=0",
+					friendMemo.getValue(),
+					getObjectId(),
+					friendMemo.getKey());
 		}
 		for (Map.Entry<Integer, String> blockMemo : blockMemo.entrySet()) {
-			try {
-				con = DatabasePool.getInstance().getConnection();
-				PreparedStatement statement =
-						con.prepareStatement("UPDATE character_friends SET memo=? WHERE charId=? AND friendId=? AND relation=1");
-				statement.setString(1, blockMemo.getValue());
-				statement.setInt(2, getObjectId());
-				statement.setInt(3, blockMemo.getKey());
-				statement.execute();
-				
-				statement.close();
-			} catch (Exception e) {
-				log.warn("Could not update character(" + getObjectId() + ") block(" + blockMemo.getKey() + ") memo: " + e.getMessage(), e);
-			} finally {
-				DatabasePool.close(con);
-			}
+			rows.add("UPDATE character_friends SET memo=? WHERE charId=? AND friendId=? AND relation=1",
+					blockMemo.getValue(),
+					getObjectId(),
+					blockMemo.getKey());
+		}
+		if (!rows.isEmpty()) {
+			storeRows("character_friends:" + getObjectId(), rows);
 		}
 	}
 	
@@ -20,18 +20,20 @@ import l2server.gameserver.model.actor.Creature;
 import l2server.gameserver.model.actor.Summon;
 import l2server.gameserver.model.actor.instance.Player;
 import l2server.gameserver.util.Util;
+import l2server.util.ConcurrentIntObjectHashMap;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class CharKnownList extends ObjectKnownList {
-	private Map<Integer, Player> knownPlayers;
-	private Map<Integer, Summon> knownSummons;
-	private Map<Integer, Integer> knownRelations;
+	// Relation of a known player not sent yet, a cached Integer so the relations map doesn't box
+	private static final Integer UNKNOWN_RELATION = -1;
+
+	private ConcurrentIntObjectHashMap<Player> knownPlayers;
+	private ConcurrentIntObjectHashMap<Summon> knownSummons;
+	private ConcurrentIntObjectHashMap<Integer> knownRelations;
 
 	public CharKnownList(Creature activeChar) {
 		super(activeChar);
@@ -44,7 +46,7 @@ public class CharKnownList extends ObjectKnownList {
 		}
 		if (object instanceof Player) {
 			getKnownPlayers().put(object.getObjectId(), (Player) object);
-			getKnownRelations().put(object.getObjectId(), -1);
+			getKnownRelations().put(object.getObjectId(), UNKNOWN_RELATION);
 		} else if (object instanceof Summon) {
 			getKnownSummons().put(object.getObjectId(), (Summon) object);
 		}
@@ -201,23 +203,23 @@ public class CharKnownList extends ObjectKnownList {
 		return result;
 	}
 
-	public final Map<Integer, Player> getKnownPlayers() {
+	public final ConcurrentIntObjectHashMap<Player> getKnownPlayers() {
 		if (knownPlayers == null) {
-			knownPlayers = new ConcurrentHashMap<>();
+			knownPlayers = new ConcurrentIntObjectHashMap<>();
 		}
 		return knownPlayers;
 	}
 
-	public final Map<Integer, Integer> getKnownRelations() {
+	public final ConcurrentIntObjectHashMap<Integer> getKnownRelations() {
 		if (knownRelations == null) {
-			knownRelations = new ConcurrentHashMap<>();
+			knownRelations = new ConcurrentIntObjectHashMap<>();
 		}
 		return knownRelations;
 	}
 
-	public final Map<Integer, Summon> getKnownSummons() {
+	public final ConcurrentIntObjectHashMap<Summon> getKnownSummons() {
 		if (knownSummons == null) {
-			knownSummons = new ConcurrentHashMap<>();
+			knownSummons = new ConcurrentIntObjectHashMap<>();
 		}
 		return knownSummons;
 	}
@@ -15,20 +15,21 @@
 
 package l2server.gameserver.model.actor.knownlist;
 
+import l2server.gameserver.model.World;
 import l2server.gameserver.model.WorldObject;
 import l2server.gameserver.model.WorldRegion;
 import l2server.gameserver.model.actor.Creature;
 import l2server.gameserver.model.actor.Playable;
+import l2server.gameserver.taskmanager.KnownListUpdateTaskManager;
 import l2server.gameserver.util.Util;
+import l2server.util.ConcurrentIntObjectHashMap;
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class ObjectKnownList {
 	private WorldObject activeObject;
-	private Map<Integer, WorldObject> knownObjects;
+	private ConcurrentIntObjectHashMap<WorldObject> knownObjects;
 
 	public ObjectKnownList(WorldObject activeObject) {
 		this.activeObject = activeObject;
@@ -138,6 +139,46 @@ public class ObjectKnownList {
 		}
 	}
 
+	/**
+	 * Update the known objects of the active object and of the objects around it after it entered a new WorldCell.
+	 * Objects left behind are forgotten on both sides, objects inside the find distance are offered on both sides.
+	 * Used by Config.EVENT_BASED_KNOWNLIST
+	 */
+	public final void updateKnownObjects() {
+		final WorldObject activeObject = getActiveObject();
+		if (!activeObject.isVisible()) {
+			return;
+		}
+
+		int removed = 0;
+		for (WorldObject object : getKnownObjects().values()) {
+			final ObjectKnownList knownList = object.getKnownList();
+			if (knownList.knowsObject(activeObject) &&
+					!Util.checkIfInShortRadius(knownList.getDistanceToForgetObject(activeObject), object, activeObject, true) &&
+					knownList.removeKnownObject(activeObject)) {
+				removed++;
+			}
+
+			if ((!object.isVisible() || !Util.checkIfInShortRadius(getDistanceToForgetObject(object), activeObject, object, true)) &&
+					removeKnownObject(object)) {
+				removed++;
+			}
+		}
+
+		final int[] added = new int[1];
+		World.getInstance().forEachVisibleObject(activeObject, WorldObject.class, getDistanceToFindObjects(), object -> {
+			if (addKnownObject(object)) {
+				added[0]++;
+			}
+			if (object.getKnownList().addKnownObject(activeObject)) {
+				added[0]++;
+			}
+			return true;
+		});
+
+		KnownListUpdateTaskManager.getInstance().onKnownListUpdate(added[0], removed);
+	}
+
 	// Remove invisible and too far WorldObject from knowObject and if necessary from knownPlayers of the Creature
 	public void forgetObjects(boolean fullCheck) {
 		//synchronized (KnownListUpdateTaskManager.getInstance().getSync())
@@ -181,12 +222,19 @@ public class ObjectKnownList {
 		return 0;
 	}
 
+	/**
+	 * Return the radius searched by updateKnownObjects(), it should cover the largest watch distance of this object and of the objects it meets.
+	 */
+	public int getDistanceToFindObjects() {
+		return 4000;
+	}
+
 	/**
 	 * Return the knownObjects containing all WorldObject known by the Creature.
 	 */
-	public final Map<Integer, WorldObject> getKnownObjects() {
+	public final ConcurrentIntObjectHashMap<WorldObject> getKnownObjects() {
 		if (knownObjects == null) {
-			knownObjects = new ConcurrentHashMap<>();
+			knownObjects = new ConcurrentIntObjectHashMap<>();
 		}
 		return knownObjects;
 	}
@@ -41,4 +41,9 @@ public class VehicleKnownList extends CharKnownList {
 
 		return object.getKnownList().getDistanceToWatchObject(getActiveObject());
 	}
+
+	@Override
+	public int getDistanceToFindObjects() {
+		return 8000;
+	}
 }
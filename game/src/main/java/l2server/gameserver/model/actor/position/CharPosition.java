@@ -18,8 +18,10 @@
 
 package l2server.gameserver.model.actor.position;
 
+import l2server.gameserver.instancemanager.ChatChannelManager;
 import l2server.gameserver.model.WorldRegion;
 import l2server.gameserver.model.actor.Creature;
+import l2server.gameserver.model.actor.instance.Player;
 
 /**
  * @author Erb
@@ -41,12 +43,19 @@ public class CharPosition extends ObjectPosition {
 		if (getWorldRegion() != null && getActiveObject() instanceof Creature) // confirm revalidation of old region's zones
 		{
 			if (value != null) {
-				getWorldRegion().revalidateZones((Creature) getActiveObject()); // at world region change
+				final WorldRegion oldRegion = getWorldRegion();
+				final Creature character = (Creature) getActiveObject();
+				runOrDefer(() -> oldRegion.revalidateZones(character)); // at world region change
 			} else {
 				getWorldRegion().removeFromZones((Creature) getActiveObject()); // at world region change
 			}
 		}
 
 		super.setWorldRegion(value);
+
+		// map regions are made of whole world regions
+		if (value != null && getActiveObject() instanceof Player) {
+			ChatChannelManager.getInstance().updateRegion((Player) getActiveObject());
+		}
 	}
 }
@@ -15,7 +15,9 @@
 
 package l2server.gameserver.model.actor.position;
 
+import l2server.Config;
 import l2server.gameserver.model.World;
+import l2server.gameserver.model.WorldCell;
 import l2server.gameserver.model.WorldObject;
 import l2server.gameserver.model.WorldRegion;
 import l2server.gameserver.model.actor.Creature;
@@ -23,8 +25,13 @@ import l2server.util.Point3D;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 public class ObjectPosition {
 	private static Logger log = LoggerFactory.getLogger(ObjectPosition.class.getName());
+	
+	// Set on the movement threads, which leave the known list and zone updates of their moves to the timer thread
+	private static final ThreadLocal<List<Runnable>> deferredUpdates = new ThreadLocal<>();
 
 
 	// =========================================================
@@ -33,6 +40,7 @@ public class ObjectPosition {
 	private int heading = 0;
 	private Point3D worldPosition;
 	private WorldRegion worldRegion; // Object localization : Used for items/chars that are seen in the world
+	private WorldCell worldCell; // Cell of worldRegion the object is indexed in, managed by WorldRegion
 	
 	// =========================================================
 	// Constructor
@@ -58,14 +66,49 @@ public class ObjectPosition {
 		
 		setWorldPosition(x, y, z);
 		
+		boolean cellChanged = false;
 		try {
-			if (World.getInstance().getRegion(getWorldPosition()) != getWorldRegion()) {
+			WorldRegion region = World.getInstance().getRegion(getWorldPosition());
+			if (region != getWorldRegion()) {
 				updateWorldRegion();
+				cellChanged = true;
+			} else {
+				cellChanged = region.updateCell(getActiveObject());
 			}
 		} catch (Exception e) {
 			log.warn("Object at bad coords: (x: " + getX() + ", y: " + getY() + ", z: " + getZ() + ").");
 			badCoords();
 		}
+		
+		// Known lists follow the object from cell to cell
+		if (cellChanged && Config.EVENT_BASED_KNOWNLIST) {
+			final WorldObject object = getActiveObject();
+			runOrDefer(() -> object.getKnownList().updateKnownObjects());
+		}
+	}
+	
+	/**
+	 * Makes the known list and zone updates of the current thread go to the given list instead of running, until called
+	 * again with null. The caller then runs them.
+	 */
+	public static void deferUpdates(List<Runnable> updates) {
+		if (updates != null) {
+			deferredUpdates.set(updates);
+		} else {
+			deferredUpdates.remove();
+		}
+	}
+	
+	/**
+	 * Runs a known list or zone update now, or defers it if the current thread is a movement thread.
+	 */
+	public static void runOrDefer(Runnable update) {
+		final List<Runnable> deferred = deferredUpdates.get();
+		if (deferred != null) {
+			deferred.add(update);
+		} else {
+			update.run();
+		}
 	}
 	
 	/**
@@ -201,7 +244,9 @@ public class ObjectPosition {
 		if (worldRegion != null && getActiveObject() instanceof Creature) // confirm revalidation of old region's zones
 		{
 			if (value != null) {
-				worldRegion.revalidateZones((Creature) getActiveObject()); // at world region change
+				final WorldRegion oldRegion = worldRegion;
+				final Creature character = (Creature) getActiveObject();
+				runOrDefer(() -> oldRegion.revalidateZones(character)); // at world region change
 			} else {
 				worldRegion.removeFromZones((Creature) getActiveObject()); // at world region change
 			}
@@ -209,4 +254,12 @@ public class ObjectPosition {
 		
 		worldRegion = value;
 	}
+	
+	public final WorldCell getWorldCell() {
+		return worldCell;
+	}
+	
+	public final void setWorldCell(WorldCell value) {
+		worldCell = value;
+	}
 }
@@ -28,7 +28,78 @@ import l2server.gameserver.templates.item.WeaponTemplate;
 import l2server.gameserver.templates.item.WeaponType;
 import l2server.gameserver.templates.skills.SkillType;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
 public class CharStat {
+	/**
+	 * Stats whose results are kept between two calcStat calls, the ones read for every attack and every char info
+	 */
+	private static final EnumSet<Stats> CACHED_STATS = EnumSet.of(Stats.STAT_STR,
+			Stats.STAT_CON,
+			Stats.STAT_DEX,
+			Stats.STAT_INT,
+			Stats.STAT_WIT,
+			Stats.STAT_MEN,
+			Stats.STAT_LUC,
+			Stats.STAT_CHA,
+			Stats.MAX_HP,
+			Stats.MAX_MP,
+			Stats.MAX_CP,
+			Stats.PHYS_ATTACK,
+			Stats.MAGIC_ATTACK,
+			Stats.PHYS_DEFENSE,
+			Stats.MAGIC_DEFENSE,
+			Stats.POWER_ATTACK_SPEED,
+			Stats.MAGIC_ATTACK_SPEED,
+			Stats.CRITICAL_RATE,
+			Stats.MCRITICAL_RATE,
+			Stats.ACCURACY_COMBAT,
+			Stats.ACCURACY_MAGIC,
+			Stats.P_EVASION_RATE,
+			Stats.M_EVASION_RATE,
+			Stats.POWER_ATTACK_RANGE,
+			Stats.SHIELD_DEFENCE,
+			Stats.RUN_SPEED,
+			Stats.WALK_SPEED);
+	private static final int[] CACHE_SLOTS = new int[Stats.NUM_STATS];
+	
+	static {
+		Arrays.fill(CACHE_SLOTS, -1);
+		int slot = 0;
+		for (Stats stat : CACHED_STATS) {
+			CACHE_SLOTS[stat.ordinal()] = slot++;
+		}
+	}
+	
+	private static final LongAdder[] cacheHits = new LongAdder[Stats.NUM_STATS];
+	private static final LongAdder[] cacheMisses = new LongAdder[Stats.NUM_STATS];
+	private static final LongAdder[] cacheBypasses = new LongAdder[Stats.NUM_STATS];
+	
+	static {
+		for (Stats stat : CACHED_STATS) {
+			cacheHits[stat.ordinal()] = new LongAdder();
+			cacheMisses[stat.ordinal()] = new LongAdder();
+			cacheBypasses[stat.ordinal()] = new LongAdder();
+		}
+	}
+	
+	private static final class CachedStat {
+		final double init;
+		final double value;
+		final int version;
+		
+		CachedStat(double init, double value, int version) {
+			this.init = init;
+			this.value = value;
+			this.version = version;
+		}
+	}
+	
 	// =========================================================
 	// Data Field
 	private Creature activeChar;
@@ -36,6 +107,10 @@ public class CharStat {
 	private long sp = 0;
 	private byte level = 1;
 	
+	// Created on the first cached result, indexed by CACHE_SLOTS
+	private CachedStat[] statCache;
+	private final AtomicInteger statCacheVersion = new AtomicInteger();
+	
 	// =========================================================
 	// Constructor
 	public CharStat(Creature activeChar) {
@@ -82,6 +157,9 @@ public class CharStat {
 		
 		int id = stat.ordinal();
 		
+		// Read before the calculators, so a result computed while they change is stored as already outdated
+		final int version = statCacheVersion.get();
+		
 		Calculator c = activeChar.getCalculators()[id];
 		
 		// If no Func object found, no modifier is applied
@@ -89,6 +167,35 @@ public class CharStat {
 			return init;
 		}
 		
+		final int slot = CACHE_SLOTS[id];
+		if (slot < 0 || !Config.STAT_CALC_CACHE) {
+			return calcStat(stat, c, init, target, skill);
+		}
+		
+		// A conditional Func may depend on the target, the skill or the current state of the character
+		if (!c.isCacheable()) {
+			cacheBypasses[id].increment();
+			return calcStat(stat, c, init, target, skill);
+		}
+		
+		CachedStat[] cache = statCache;
+		if (cache != null) {
+			final CachedStat cached = cache[slot];
+			if (cached != null && cached.version == version && cached.init == init) {
+				cacheHits[id].increment();
+				return cached.value;
+			}
+		} else {
+			cache = statCache = new CachedStat[CACHED_STATS.size()];
+		}
+		
+		cacheMisses[id].increment();
+		final double value = calcStat(stat, c, init, target, skill);
+		cache[slot] = new CachedStat(init, value, version);
+		return value;
+	}
+	
+	private double calcStat(Stats stat, Calculator c, double init, Creature target, Skill skill) {
 		// Create and init an Env object to pass parameters to the Calculator
 		Env env = new Env();
 		env.player = activeChar;
@@ -320,6 +427,42 @@ public class CharStat {
 	
 	public void setLevel(byte value) {
 		level = value;
+		invalidateStatCache();
+	}
+	
+	/**
+	 * Drop the results kept by calcStat. Must be called whenever something the Funcs
+	 * read changes without going through the calculators: level, henna, enchant...
+	 */
+	public final void invalidateStatCache() {
+		statCacheVersion.incrementAndGet();
+	}
+	
+	/**
+	 * @return the calcStat cache hits, misses and bypasses (conditional calculators) of each cached stat
+	 */
+	public static String[] getCacheStats() {
+		final List<String> result = new ArrayList<>();
+		long totalHits = 0;
+		long totalCalls = 0;
+		for (Stats stat : CACHED_STATS) {
+			final long hits = cacheHits[stat.ordinal()].sum();
+			final long misses = cacheMisses[stat.ordinal()].sum();
+			final long bypasses = cacheBypasses[stat.ordinal()].sum();
+			final long calls = hits + misses + bypasses;
+			if (calls == 0) {
+				continue;
+			}
+			
+			result.add(stat + " hits/misses/bypasses: " + hits + "/" + misses + "/" + bypasses + " (" +
+					String.format("%1.1f", 100. * hits / calls) + "% hits)");
+			totalHits += hits;
+			totalCalls += calls;
+		}
+		result.add(0,
+				"Stat cache: " + (Config.STAT_CALC_CACHE ? "enabled" : "disabled") + ", hits: " + totalHits + "/" + totalCalls +
+						(totalCalls > 0 ? " (" + String.format("%1.1f", 100. * totalHits / totalCalls) + "%)" : ""));
+		return result.toArray(new String[result.size()]);
 	}
 	
 	/**
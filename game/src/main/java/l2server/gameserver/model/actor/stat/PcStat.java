@@ -392,6 +392,7 @@ public class PcStat extends PlayableStat {
 
 		if (getActiveChar().isSubClassActive()) {
 			getActiveChar().getSubClasses().get(getActiveChar().getClassIndex()).setLevel(value);
+			invalidateStatCache();
 		} else {
 			super.setLevel(value);
 		}
@@ -5,6 +5,7 @@ import gnu.trove.TIntProcedure;
 import l2server.Config;
 import l2server.gameserver.Announcements;
 import l2server.gameserver.ThreadPoolManager;
+import l2server.gameserver.datatables.DoorIndex;
 import l2server.gameserver.datatables.DoorTable;
 import l2server.gameserver.datatables.MapRegionTable;
 import l2server.gameserver.datatables.NpcTable;
@@ -50,6 +51,7 @@ public class Instance {
 
 	private CopyOnWriteArrayList<Npc> npcs = new CopyOnWriteArrayList<>();
 	private ArrayList<DoorInstance> doors = null;
+	private volatile DoorIndex doorIndex = null;
 	private int[] spawnLoc = new int[3];
 	private boolean allowSummon = true;
 	private long emptyDestroyTime = -1;
@@ -235,6 +237,7 @@ public class Instance {
 		newdoor.setCurrentHp(newdoor.getMaxHp());
 		newdoor.spawnMe(temp.posX, temp.posY, temp.posZ);
 		doors.add(newdoor);
+		doorIndex = new DoorIndex(doors);
 	}
 
 	public TIntHashSet getPlayers() {
@@ -249,6 +252,10 @@ public class Instance {
 		return doors;
 	}
 
+	public DoorIndex getDoorIndex() {
+		return doorIndex;
+	}
+
 	public DoorInstance getDoor(int id) {
 		for (DoorInstance temp : getDoors()) {
 			if (temp.getDoorId() == id) {
@@ -336,6 +343,7 @@ public class Instance {
 				World.getInstance().removeObject(door);
 			}
 		}
+		doorIndex = null;
 		doors.clear();
 		doors = null;
 	}
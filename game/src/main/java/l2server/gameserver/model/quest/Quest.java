@@ -17,6 +17,7 @@ package l2server.gameserver.model.quest;
 
 import l2server.Config;
 import l2server.DatabasePool;
+import l2server.gameserver.DatabaseWriter;
 import l2server.gameserver.ThreadPoolManager;
 import l2server.gameserver.ai.NpcWalkerAI;
 import l2server.gameserver.cache.HtmCache;
@@ -1088,23 +1089,7 @@ public class Quest extends ManagedScript {
 	 * @param value : String designating the value of the variable for the quest
 	 */
 	public static void createQuestVarInDb(QuestState qs, String var, String value) {
-		Connection con = null;
-		try {
-			con = DatabasePool.getInstance().getConnection();
-			PreparedStatement statement;
-			statement = con.prepareStatement("INSERT INTO character_quests (charId,name,var,value) VALUES (?,?,?,?) ON DUPLICATE KEY UPDATE value=?");
-			statement.setInt(1, qs.getPlayer().getObjectId());
-			statement.setString(2, qs.getQuestName());
-			statement.setString(3, var);
-			statement.setString(4, value);
-			statement.setString(5, value);
-			statement.executeUpdate();
-			statement.close();
-		} catch (Exception e) {
-			log.warn("could not insert char quest:", e);
-		} finally {
-			DatabasePool.close(con);
-		}
+		writeQuestVar(qs, var, value);
 	}
 	
 	/**
@@ -1123,22 +1108,27 @@ public class Quest extends ManagedScript {
 	 * @param value : String designating the value of the variable for quest
 	 */
 	public static void updateQuestVarInDb(QuestState qs, String var, String value) {
-		Connection con = null;
-		try {
-			con = DatabasePool.getInstance().getConnection();
-			PreparedStatement statement;
-			statement = con.prepareStatement("UPDATE character_quests SET value=? WHERE charId=? AND name=? AND var = ?");
-			statement.setString(1, value);
-			statement.setInt(2, qs.getPlayer().getObjectId());
-			statement.setString(3, qs.getQuestName());
-			statement.setString(4, var);
-			statement.executeUpdate();
-			statement.close();
-		} catch (Exception e) {
-			log.warn("could not update char quest:", e);
-		} finally {
-			DatabasePool.close(con);
-		}
+		writeQuestVar(qs, var, value);
+	}
+	
+	/**
+	 * Inserts or updates the variable through the DatabaseWriter: the insert and the updates of a variable
+	 * between two flushes are merged, so both are written as an insert or update of the row.
+	 */
+	private static void writeQuestVar(QuestState qs, String var, String value) {
+		final int charId = qs.getPlayer().getObjectId();
+		DatabaseWriter.Rows rows = new DatabaseWriter.Rows();
+		rows.add("INSERT INTO character_quests (charId,name,var,value) VALUES (?,?,?,?) ON DUPLICATE KEY UPDATE value=?",
+				charId,
+				qs.getQuestName(),
+				var,
+				value,
+				value);
+		DatabaseWriter.getInstance().write(charId, getQuestVarKey(charId, qs.getQuestName()) + var, rows);
+	}
+	
+	private static String getQuestVarKey(int charId, String questName) {
+		return "character_quests:" + charId + ":" + questName + ":";
 	}
 	
 	/**
@@ -1148,21 +1138,10 @@ public class Quest extends ManagedScript {
 	 * @param var : String designating the variable characterizing the quest
 	 */
 	public static void deleteQuestVarInDb(QuestState qs, String var) {
-		Connection con = null;
-		try {
-			con = DatabasePool.getInstance().getConnection();
-			PreparedStatement statement;
-			statement = con.prepareStatement("DELETE FROM character_quests WHERE charId=? AND name=? AND var=?");
-			statement.setInt(1, qs.getPlayer().getObjectId());
-			statement.setString(2, qs.getQuestName());
-			statement.setString(3, var);
-			statement.executeUpdate();
-			statement.close();
-		} catch (Exception e) {
-			log.warn("could not delete char quest:", e);
-		} finally {
-			DatabasePool.close(con);
-		}
+		final int charId = qs.getPlayer().getObjectId();
+		DatabaseWriter.Rows rows = new DatabaseWriter.Rows();
+		rows.add("DELETE FROM character_quests WHERE charId=? AND name=? AND var=?", charId, qs.getQuestName(), var);
+		DatabaseWriter.getInstance().write(charId, getQuestVarKey(charId, qs.getQuestName()) + var, rows);
 	}
 	
 	/**
@@ -1171,6 +1150,9 @@ public class Quest extends ManagedScript {
 	 * @param qs : QuestState pointing out the player's quest
 	 */
 	public static void deleteQuestInDb(QuestState qs) {
+		// The pending variables of the quest are deleted anyway
+		DatabaseWriter.getInstance().cancel(qs.getPlayer().getObjectId(), getQuestVarKey(qs.getPlayer().getObjectId(), qs.getQuestName()));
+		
 		Connection con = null;
 		try {
 			con = DatabasePool.getInstance().getConnection();
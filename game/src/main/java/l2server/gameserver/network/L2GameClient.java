@@ -342,7 +342,7 @@ public final class L2GameClient extends MMOClient<MMOConnection<L2GameClient>> i
 		try {
 			Player player = L2GameClient.this.getActiveChar();
 			if (player != null) {
-				player.store();
+				player.store(true, false);
 				player.storeRecommendations();
 				if (Config.UPDATE_ITEMS_ON_CHAR_STORE) {
 					player.getInventory().updateDatabase();
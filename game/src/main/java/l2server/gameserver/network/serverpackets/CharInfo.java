@@ -116,6 +116,11 @@ public class CharInfo extends L2GameServerPacket {
 		heading = decoy.getHeading();
 	}
 
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+
 	@Override
 	protected final void writeImpl() {
 		boolean gmSeeInvis = false;
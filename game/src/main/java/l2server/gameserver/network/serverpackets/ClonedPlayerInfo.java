@@ -82,6 +82,11 @@ public class ClonedPlayerInfo extends L2GameServerPacket {
 		walkSpd = (int) activeChar.getTemplate().getBaseWalkSpd();
 	}
 
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+
 	@Override
 	protected final void writeImpl() {
 		writeD(x);
@@ -32,6 +32,8 @@ public final class CreatureSay extends L2GameServerPacket {
 	private String text = null;
 	private int msgId = -1;
 	private byte level = 0;
+	// Written once for all its receivers, which are then snooped by the sender of the packet
+	private boolean shared = false;
 	
 	public CreatureSay(int objectId, int messageType, String charName, String text) {
 		this.objectId = objectId;
@@ -55,6 +57,19 @@ public final class CreatureSay extends L2GameServerPacket {
 		this.msgId = msgId;
 	}
 	
+	/**
+	 * Serializes the packet only once for all its receivers, who must be passed to {@link #snoop(Player)} when sent.
+	 */
+	public void setShared() {
+		shared = true;
+		setBroadcast();
+	}
+	
+	@Override
+	public boolean isReceiverDependent() {
+		return !shared;
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		writeD(objectId);
@@ -74,9 +89,18 @@ public final class CreatureSay extends L2GameServerPacket {
 	
 	@Override
 	public final void runImpl() {
+		// the client of a shared packet is the last one it was sent to
+		if (shared) {
+			return;
+		}
+		
 		Player pci = getClient().getActiveChar();
 		if (pci != null) {
-			pci.broadcastSnoop(textType, charName, text);
+			snoop(pci);
 		}
 	}
+	
+	public void snoop(Player receiver) {
+		receiver.broadcastSnoop(textType, charName, text);
+	}
 }
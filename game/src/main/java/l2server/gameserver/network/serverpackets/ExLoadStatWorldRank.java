@@ -31,6 +31,11 @@ public class ExLoadStatWorldRank extends L2GameServerPacket {
 	/* (non-Javadoc)
 	 * @see l2server.gameserver.network.serverpackets.L2GameServerPacket#writeImpl()
 	 */
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		if (getClient().getActiveChar() == null) {
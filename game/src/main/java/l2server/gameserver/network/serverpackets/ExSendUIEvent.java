@@ -70,6 +70,11 @@ public class ExSendUIEvent extends L2GameServerPacket {
 		npcString = npcStringId;
 	}
 	
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		if (getClient() == null || getClient().getActiveChar() == null) {
@@ -22,6 +22,11 @@ public class ExSendUIEventRemove extends L2GameServerPacket {
 		uiType = 1;
 	}
 	
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		if (getClient() == null || getClient().getActiveChar() == null) {
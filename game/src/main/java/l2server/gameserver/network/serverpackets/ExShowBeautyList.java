@@ -36,6 +36,11 @@ public final class ExShowBeautyList extends L2GameServerPacket {
 		this.isFace = isFace;
 	}
 
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+
 	@Override
 	protected final void writeImpl() {
 		Player activeChar = getClient().getActiveChar();
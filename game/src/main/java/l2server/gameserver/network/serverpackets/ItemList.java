@@ -102,6 +102,11 @@ public final class ItemList extends L2ItemListPacket {
 		}
 	}
 
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+
 	@Override
 	protected final void writeImpl() {
 		writeH(showWindow ? 0x01 : 0x00);
@@ -27,6 +27,11 @@ import org.slf4j.LoggerFactory;
 public abstract class L2GameServerPacket extends SendablePacket<L2GameClient> {
 	protected static Logger log = LoggerFactory.getLogger(L2GameServerPacket.class.getName());
 	
+	// Supersede groups: when a client falls behind, a queued packet is replaced by a newer one of the same group about the same object
+	protected static final int SUPERSEDE_POSITION = 1;
+	protected static final int SUPERSEDE_STATUS = 2;
+	protected static final int SUPERSEDE_INFO = 3;
+	
 	protected int invisibleCharacter = 0;
 	
 	/**
@@ -63,6 +68,35 @@ public abstract class L2GameServerPacket extends SendablePacket<L2GameClient> {
 		}
 	}
 	
+	/**
+	 * @param variant distinguishes packets of the same group that can't replace each other (29 bits)
+	 * @return a supersede key for {@link #getSupersedeKey()}
+	 */
+	protected static long supersedeKey(int group, int variant, int objectId) {
+		return (long) (group << 29 | variant & 0x1fffffff) << 32 | objectId & 0xffffffffL;
+	}
+	
+	@Override
+	public long getSupersedeGroup() {
+		final long key = getSupersedeKey();
+		// the group and the object, without the variant
+		return key < 0 ? key : key & ~(0x1fffffffL << 32);
+	}
+	
+	/**
+	 * @return the opcode of this packet as a supersede variant, for packets that can only replace packets of the same kind
+	 */
+	protected final int getOpcodeVariant() {
+		int variant = 0;
+		final byte[] opcode = PacketOpcodes.INSTANCE.getServerPacketOpcode(getOpCodeClass());
+		if (opcode != null) {
+			for (byte b : opcode) {
+				variant = variant << 8 | b & 0xff;
+			}
+		}
+		return variant;
+	}
+	
 	public void runImpl() {
 	
 	}
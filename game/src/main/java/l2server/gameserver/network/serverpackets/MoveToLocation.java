@@ -39,6 +39,11 @@ public final class MoveToLocation extends L2GameServerPacket {
 		zDst = cha.getZdestination();
 	}
 	
+	@Override
+	public long getSupersedeKey() {
+		return supersedeKey(SUPERSEDE_POSITION, getOpcodeVariant(), charObjId);
+	}
+
 	@Override
 	protected final void writeImpl() {
 		writeD(charObjId);
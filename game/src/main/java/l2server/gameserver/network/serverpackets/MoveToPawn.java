@@ -44,6 +44,11 @@ public class MoveToPawn extends L2GameServerPacket {
 		tz = target.getZ();
 	}
 
+	@Override
+	public long getSupersedeKey() {
+		return supersedeKey(SUPERSEDE_POSITION, getOpcodeVariant(), charObjId);
+	}
+
 	@Override
 	protected final void writeImpl() {
 		writeD(charObjId);
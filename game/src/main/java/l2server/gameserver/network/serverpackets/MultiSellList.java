@@ -56,6 +56,11 @@ public final class MultiSellList extends L2GameServerPacket {
 		}
 	}
 	
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		writeC(0x00);
@@ -17,8 +17,12 @@ package l2server.gameserver.network.serverpackets;
 
 import l2server.Config;
 import l2server.gameserver.cache.HtmCache;
+import l2server.gameserver.cache.HtmTemplate;
 import l2server.gameserver.model.actor.instance.Player;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * the HTML parser in the client knowns these standard and non-standard tags and attributes
  * VOLUMN
@@ -128,6 +132,11 @@ public final class NpcHtmlMessage extends L2GameServerPacket {
 	
 	private int npcObjId;
 	private String html;
+	// A page from the cache is only rendered when sent, with the values of its slots
+	private HtmTemplate template;
+	private Map<String, String> values;
+	// Opening and closing quote of every bypass of the html, null if unknown
+	private int[] bypasses;
 	private int itemId = 0;
 	private boolean isFirstTalk = false;
 	private boolean validate = true;
@@ -170,10 +179,13 @@ public final class NpcHtmlMessage extends L2GameServerPacket {
 		}
 		
 		html = text;
+		template = null;
+		values = null;
+		bypasses = null;
 	}
 	
 	public boolean setFile(String prefix, String path) {
-		String content = HtmCache.getInstance().getHtm(prefix, path);
+		HtmTemplate content = HtmCache.getInstance().getTemplate(prefix, path);
 		
 		if (content == null) {
 			setHtml("<html><body>My Text is missing:<br>" + path + "</body></html>");
@@ -181,12 +193,51 @@ public final class NpcHtmlMessage extends L2GameServerPacket {
 			return false;
 		}
 		
-		setHtml(content);
+		if (!content.isFullPage()) {
+			setHtml(content.getText());
+			return true;
+		}
+		
+		html = null;
+		template = content;
+		values = null;
+		bypasses = null;
 		return true;
 	}
 	
+	/**
+	 * Replaces every occurrence of the pattern, as plain text.<br>
+	 * A %name% slot of a page from the cache only records its value. Any other pattern, or a value that could hold
+	 * another slot, needs the page rendered first.
+	 */
 	public void replace(String pattern, String value) {
-		html = html.replaceAll(pattern, value.replaceAll("\\$", "\\\\\\$"));
+		if (template != null && HtmTemplate.isSlot(pattern) && value.indexOf('%') < 0) {
+			if (template.hasSlot(pattern)) {
+				if (values == null) {
+					values = new HashMap<>();
+				}
+				// the first value wins, as the slot is gone once replaced
+				values.putIfAbsent(pattern, value);
+				return;
+			}
+			if (!template.getText().contains(pattern)) {
+				return;
+			}
+		}
+		
+		html = getHtml().replace(pattern, value);
+		bypasses = null;
+	}
+	
+	private synchronized String getHtml() {
+		if (template != null) {
+			final HtmTemplate.Page page = template.render(values);
+			html = page.getHtml();
+			bypasses = page.getBypasses();
+			template = null;
+			values = null;
+		}
+		return html;
 	}
 	
 	private void buildBypassCache(Player activeChar) {
@@ -194,7 +245,15 @@ public final class NpcHtmlMessage extends L2GameServerPacket {
 			return;
 		}
 		
+		final String html = getHtml();
 		activeChar.clearBypass();
+		if (bypasses != null) {
+			for (int i = 0; i < bypasses.length; i += 2) {
+				addBypass(activeChar, html, bypasses[i], bypasses[i + 1]);
+			}
+			return;
+		}
+		
 		int len = html.length();
 		for (int i = 0; i < len; i++) {
 			int start = html.indexOf("\"bypass ", i);
@@ -203,26 +262,35 @@ public final class NpcHtmlMessage extends L2GameServerPacket {
 				break;
 			}
 			
-			if (html.substring(start + 8, start + 10).equals("-h")) {
-				start += 11;
-			} else {
-				start += 8;
-			}
-			
 			i = finish;
-			int finish2 = html.indexOf("$", start);
-			if (finish2 < finish && finish2 > 0) {
-				activeChar.addBypass2(html.substring(start, finish2).trim());
-			} else {
-				activeChar.addBypass(html.substring(start, finish).trim());
-			}
+			addBypass(activeChar, html, start, finish);
+		}
+	}
+	
+	private static void addBypass(Player activeChar, String html, int start, int finish) {
+		if (html.substring(start + 8, start + 10).equals("-h")) {
+			start += 11;
+		} else {
+			start += 8;
+		}
+		
+		int finish2 = html.indexOf("$", start);
+		if (finish2 < finish && finish2 > 0) {
+			activeChar.addBypass2(html.substring(start, finish2).trim());
+		} else {
+			activeChar.addBypass(html.substring(start, finish).trim());
 		}
 	}
 	
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		writeD(npcObjId);
-		writeS(html);
+		writeS(getHtml());
 		writeD(itemId);
 		writeD(isFirstTalk ? 0x00 : 0x01);
 	}
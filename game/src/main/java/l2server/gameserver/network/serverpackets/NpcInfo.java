@@ -390,6 +390,12 @@ public final class NpcInfo extends L2GameServerPacket {
 		abnormals = trap.getAbnormalEffect();
 	}
 
+	@Override
+	public long getSupersedeKey() {
+		// cloned players are sent as ClonedPlayerInfo instead
+		return objectId != 0 ? supersedeKey(SUPERSEDE_INFO, 0, objectId) : -1;
+	}
+
 	@Override
 	protected final void writeImpl() {
 		if (data1 == null) {
@@ -190,6 +190,11 @@ public final class NpcQuestHtmlMessage extends L2GameServerPacket {
 		}
 	}
 	
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		writeD(npcObjId);
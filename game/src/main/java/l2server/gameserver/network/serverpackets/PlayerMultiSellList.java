@@ -45,6 +45,11 @@ public final class PlayerMultiSellList extends L2GameServerPacket {
 		this.player = player;
 	}
 	
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		writeC(0x00);
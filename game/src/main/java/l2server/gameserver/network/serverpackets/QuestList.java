@@ -52,6 +52,11 @@ public class QuestList extends L2GameServerPacket {
 		}
 	}
 
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+
 	@Override
 	protected final void writeImpl() {
 		/*
@@ -45,6 +45,11 @@ public final class SetupGauge extends L2GameServerPacket {
 		time2 = maxTime;
 	}
 
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+
 	@Override
 	protected final void writeImpl() {
 		writeD(charObjId);
@@ -39,6 +39,11 @@ public final class ShortCutInit extends L2GameServerPacket {
 		shortCuts = activeChar.getAllShortCuts();
 	}
 	
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		writeD(shortCuts.length);
@@ -50,6 +50,11 @@ public class SiegeInfo extends L2GameServerPacket {
 		this.castle = castle;
 	}
 
+	@Override
+	public boolean isReceiverDependent() {
+		return true;
+	}
+
 	@Override
 	protected final void writeImpl() {
 		Player activeChar = getClient().getActiveChar();
@@ -139,6 +139,32 @@ public final class StatusUpdate extends L2GameServerPacket {
 		attributes.add(new Attribute(id, level));
 	}
 	
+	// Not receiver dependent: the visible max HP scaling, the only part that read the client, is disabled above, so
+	// a broadcast StatusUpdate is written once and shared by all its receivers.
+	
+	@Override
+	public long getSupersedeKey() {
+		// damage, heal and dot popups must all be shown
+		if (display != 0 || causerId != 0) {
+			return -1;
+		}
+		
+		// only a packet updating the same attributes can replace this one
+		int mask = 0;
+		for (Attribute attribute : attributes) {
+			int bit;
+			if (attribute.id >= LEVEL && attribute.id <= REPUTATION) {
+				bit = attribute.id - LEVEL;
+			} else if (attribute.id == CUR_CP || attribute.id == MAX_CP) {
+				bit = attribute.id - CUR_CP + 27;
+			} else {
+				return -1;
+			}
+			mask |= 1 << bit;
+		}
+		return supersedeKey(SUPERSEDE_STATUS, mask, objectId);
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		writeD(objectId);
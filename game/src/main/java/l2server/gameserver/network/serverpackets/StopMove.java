@@ -45,6 +45,11 @@ public final class StopMove extends L2GameServerPacket {
 		this.heading = heading;
 	}
 	
+	@Override
+	public long getSupersedeKey() {
+		return supersedeKey(SUPERSEDE_POSITION, getOpcodeVariant(), objectId);
+	}
+
 	@Override
 	protected final void writeImpl() {
 		writeD(objectId);
@@ -281,6 +281,11 @@ public final class UserInfo extends L2GameServerPacket {
 		buffer.get(data, 0, size);
 	}
 	
+	@Override
+	public long getSupersedeKey() {
+		return supersedeKey(SUPERSEDE_INFO, 0, objectId);
+	}
+	
 	@Override
 	protected final void writeImpl() {
 		writeD(objectId);
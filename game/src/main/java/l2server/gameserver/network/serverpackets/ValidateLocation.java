@@ -38,6 +38,11 @@ public class ValidateLocation extends L2GameServerPacket {
 		heading = cha.getHeading();
 	}
 	
+	@Override
+	public long getSupersedeKey() {
+		return supersedeKey(SUPERSEDE_POSITION, getOpcodeVariant(), charObjId);
+	}
+
 	@Override
 	protected final void writeImpl() {
 		writeD(charObjId);
@@ -18,6 +18,7 @@ package l2server.gameserver.pathfinding;
 import l2server.Config;
 import l2server.gameserver.model.World;
 import l2server.gameserver.pathfinding.cellnodes.CellPathFinding;
+import l2server.gameserver.pathfinding.clusters.HierarchicalPathFinding;
 import l2server.gameserver.pathfinding.geonodes.GeoPathFinding;
 
 import java.util.List;
@@ -33,6 +34,9 @@ public abstract class PathFinding {
 		} else
 		// Cell pathfinding, calculated directly from geodata files
 		{
+			if (Config.PATHFIND_HIERARCHICAL) {
+				return HierarchicalPathFinding.getInstance();
+			}
 			return CellPathFinding.getInstance();
 		}
 	}
@@ -0,0 +1,320 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver.pathfinding;
+
+import l2server.Config;
+import l2server.gameserver.GeoData;
+import l2server.gameserver.model.World;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the path searches of the AI on its own threads.<br>
+ * <br>
+ * A request returns right away with a future, completed once the path is found. Requests towards the same target
+ * cell from starts close to a search already running share that search, and every one of them then cuts the shared
+ * path from its own position. Searches taking longer than the configured timeout, or not even queued because too
+ * many are waiting, complete as timed out and the caller walks straight instead. A caller gives up on its search by
+ * cancelling its future, and a search given up by all its callers is dropped when its turn comes. A search already
+ * running can't be stopped and goes on to the end, even once timed out.
+ */
+public class PathFindingService {
+	private static Logger log = LoggerFactory.getLogger(PathFindingService.class.getName());
+
+	// Latencies kept to compute the percentiles
+	private static final int LATENCY_SAMPLES = 1024;
+	// Starts closer than this, in geo cells, share the search of the first one
+	private static final int COALESCE_RANGE = 8;
+	// Points of a shared path a caller tries to reach straight from its own position
+	private static final int SMOOTHING_LOOKAHEAD = 4;
+
+	private final ThreadPoolExecutor executor;
+	private final ScheduledThreadPoolExecutor timer;
+	private final ConcurrentHashMap<Target, Search> searches = new ConcurrentHashMap<>();
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder timedOut = new LongAdder();
+	private final LongAdder abandoned = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+	private final AtomicInteger latencyIndex = new AtomicInteger();
+
+	public static PathFindingService getInstance() {
+		return SingletonHolder.instance;
+	}
+
+	private PathFindingService() {
+		final AtomicInteger threadId = new AtomicInteger();
+		final ThreadFactory threadFactory = r -> {
+			final Thread thread = new Thread(r, "PathFinder-" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		final int threads = Math.max(Config.PATHFIND_THREADS, 1);
+		executor = new ThreadPoolExecutor(threads,
+				threads,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(Config.PATHFIND_QUEUE_SIZE, 1)),
+				threadFactory);
+		timer = new ScheduledThreadPoolExecutor(1, r -> {
+			final Thread thread = new Thread(r, "PathFinderTimeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+
+		log.info("Pathfinding with " + threads + " threads, up to " + Config.PATHFIND_QUEUE_SIZE + " waiting, timeout " +
+				Config.PATHFIND_TIMEOUT + "ms");
+	}
+
+	/**
+	 * Requests a path for a non playable character.
+	 *
+	 * @return the future result, completed on a pathfinding thread, to cancel if the path isn't needed anymore
+	 */
+	public CompletableFuture<PathResult> findPath(int x, int y, int z, int tx, int ty, int tz, int instanceId) {
+		requests.increment();
+
+		final Target target = new Target(tx, ty, tz, instanceId);
+		final Search running = searches.get(target);
+		if (running != null && running.isNear(x, y)) {
+			coalesced.increment();
+			final CompletableFuture<PathResult> caller = running.addCaller();
+			final CompletableFuture<PathResult> path = caller.thenCompose(shared -> {
+				if (shared.isTimedOut() || shared.getPath() == null) {
+					return CompletableFuture.completedFuture(shared);
+				}
+
+				final List<AbstractNodeLoc> smoothed = smooth(shared.getPath(), x, y, z, instanceId);
+				// the shared path can't be joined from here, this caller needs its own search
+				return smoothed != null ? CompletableFuture.completedFuture(new PathResult(smoothed, false)) : search(x, y, z, tx, ty, tz, target, false);
+			});
+			// cancelling the composed future doesn't reach the shared search
+			path.whenComplete((result, e) -> caller.cancel(false));
+			return path;
+		}
+
+		return search(x, y, z, tx, ty, tz, target, true);
+	}
+
+	private CompletableFuture<PathResult> search(int x, int y, int z, int tx, int ty, int tz, Target target, boolean shared) {
+		final Search search = new Search(x, y, z, tx, ty, tz, target.instanceId);
+		final CompletableFuture<PathResult> caller = search.addCaller();
+		if (shared) {
+			searches.putIfAbsent(target, search);
+		}
+
+		final ScheduledFuture<?> timeout = timer.schedule(() -> {
+			if (search.result.complete(PathResult.TIMED_OUT)) {
+				timedOut.increment();
+			}
+		}, Config.PATHFIND_TIMEOUT, TimeUnit.MILLISECONDS);
+
+		search.result.whenComplete((result, e) -> {
+			timeout.cancel(false);
+			searches.remove(target, search);
+			if (search.result.isCancelled()) {
+				abandoned.increment();
+				return;
+			}
+			completed.increment();
+			final int index = latencyIndex.getAndIncrement() & LATENCY_SAMPLES - 1;
+			latencies.set(index, System.nanoTime() - search.requestTime);
+		});
+
+		try {
+			executor.execute(search);
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			search.result.complete(PathResult.TIMED_OUT);
+		}
+		return caller;
+	}
+
+	/**
+	 * Cuts a path found from a nearby start so that it begins from the given position.
+	 *
+	 * @return the path from the furthest of its first points walkable straight from the position, or null if none is
+	 */
+	private static List<AbstractNodeLoc> smooth(List<AbstractNodeLoc> path, int x, int y, int z, int instanceId) {
+		// the last point is the target, a path needs two points to be followed
+		for (int i = Math.min(SMOOTHING_LOOKAHEAD, path.size() - 2); i >= 0; i--) {
+			final AbstractNodeLoc point = path.get(i);
+			if (GeoData.getInstance().canMoveFromToTarget(x, y, z, point.getX(), point.getY(), point.getZ(), instanceId)) {
+				return new ArrayList<>(path.subList(i, path.size()));
+			}
+		}
+		return null;
+	}
+
+	public String[] getStats() {
+		final int samples = (int) Math.min(completed.sum(), LATENCY_SAMPLES);
+		final long[] sorted = new long[samples];
+		for (int i = 0; i < samples; i++) {
+			sorted[i] = latencies.get(i);
+		}
+		Arrays.sort(sorted);
+
+		return new String[]{
+				"Async pathfinding requests: " + requests.sum() + " (coalesced " + coalesced.sum() + ", timed out " + timedOut.sum() + ", abandoned " + abandoned.sum() +
+						", rejected due to overload " + rejected.sum() + ")",
+				"Async pathfinding waiting/running: " + executor.getQueue().size() + "/" + executor.getActiveCount(),
+				"Async pathfinding latency p50/p99 (ms): " + (samples > 0 ?
+						TimeUnit.NANOSECONDS.toMillis(sorted[samples / 2]) + "/" + TimeUnit.NANOSECONDS.toMillis(sorted[samples * 99 / 100]) : "-/-") +
+						" (last " + samples + ")"};
+	}
+
+	/**
+	 * The outcome of a request: the path, null if there is none, or a timeout.
+	 */
+	public static final class PathResult {
+		static final PathResult TIMED_OUT = new PathResult(null, true);
+
+		private final List<AbstractNodeLoc> path;
+		private final boolean timedOut;
+
+		PathResult(List<AbstractNodeLoc> path, boolean timedOut) {
+			this.path = path;
+			this.timedOut = timedOut;
+		}
+
+		public List<AbstractNodeLoc> getPath() {
+			return path;
+		}
+
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+	}
+
+	private static final class Target {
+		private final int x;
+		private final int y;
+		private final int z;
+		private final int instanceId;
+
+		Target(int x, int y, int z, int instanceId) {
+			this.x = x - World.MAP_MIN_X >> 4;
+			this.y = y - World.MAP_MIN_Y >> 4;
+			// the same cell on another floor is another target
+			this.z = z >> 6;
+			this.instanceId = instanceId;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Target)) {
+				return false;
+			}
+			final Target other = (Target) o;
+			return x == other.x && y == other.y && z == other.z && instanceId == other.instanceId;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((x * 31 + y) * 31 + z) * 31 + instanceId;
+		}
+	}
+
+	private static final class Search implements Runnable {
+		private final int x;
+		private final int y;
+		private final int z;
+		private final int tx;
+		private final int ty;
+		private final int tz;
+		private final int instanceId;
+		private final long requestTime = System.nanoTime();
+		private final CompletableFuture<PathResult> result = new CompletableFuture<>();
+		// Callers still waiting for the result
+		private final AtomicInteger callers = new AtomicInteger();
+
+		Search(int x, int y, int z, int tx, int ty, int tz, int instanceId) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.tx = tx;
+			this.ty = ty;
+			this.tz = tz;
+			this.instanceId = instanceId;
+		}
+
+		boolean isNear(int x, int y) {
+			return Math.abs(x - this.x >> 4) <= COALESCE_RANGE && Math.abs(y - this.y >> 4) <= COALESCE_RANGE;
+		}
+
+		/**
+		 * @return the result for one more caller, who gives up on the search by cancelling it
+		 */
+		CompletableFuture<PathResult> addCaller() {
+			callers.incrementAndGet();
+			final CompletableFuture<PathResult> caller = new CompletableFuture<>();
+			// a search dropped before a late caller joined it is as good as timed out
+			result.whenComplete((r, e) -> caller.complete(e == null ? r : PathResult.TIMED_OUT));
+			caller.whenComplete((r, e) -> {
+				if (caller.isCancelled()) {
+					callers.decrementAndGet();
+				}
+			});
+			return caller;
+		}
+
+		@Override
+		public void run() {
+			// timed out while waiting
+			if (result.isDone()) {
+				return;
+			}
+
+			// nobody waits for the path anymore
+			if (callers.get() == 0) {
+				result.cancel(false);
+				return;
+			}
+
+			try {
+				result.complete(new PathResult(PathFinding.getInstance().findPath(x, y, z, tx, ty, tz, instanceId, false), false));
+			} catch (Exception e) {
+				log.warn("Pathfinding failed", e);
+				result.complete(new PathResult(null, false));
+			}
+		}
+	}
+
+	@SuppressWarnings("synthetic-access")
+	private static class SingletonHolder {
+		protected static final PathFindingService instance = new PathFindingService();
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver.pathfinding.clusters;
+
+import gnu.trove.TLongIntHashMap;
+import l2server.Config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Abstract graph of a geodata region.<br>
+ * <br>
+ * The region is split in square clusters. Every passage between two clusters has an entrance node on each side,
+ * joined by an inter-cluster edge, and the entrances of a cluster are joined by intra-cluster edges weighted with
+ * the length of the shortest walk between them. The nodes are sorted by cluster and the edges stored by node in
+ * flat arrays. Edges towards another region point to an external key, resolved with the graph of that region.
+ */
+final class ClusterGraph {
+	static final int CLUSTER_SIZE = 64;
+	static final int REGION_SIZE = 2048;
+	static final int CLUSTERS_PER_SIDE = REGION_SIZE / CLUSTER_SIZE;
+
+	// "L2CG"
+	private static final int MAGIC = 0x4C324347;
+	// Increase on any change of the format or of the way graphs are built
+	private static final int VERSION = 1;
+
+	final short region;
+	final int originX;
+	final int originY;
+
+	final int[] nodeX;
+	final int[] nodeY;
+	final int[] nodeZ;
+	// Nodes of the cluster c are clusterOffsets[c] until clusterOffsets[c + 1]
+	final int[] clusterOffsets;
+	// Edges of the node n are edgeOffsets[n] until edgeOffsets[n + 1]
+	final int[] edgeOffsets;
+	// A local node, or -1 - the index of an external key
+	final int[] edgeTargets;
+	final float[] edgeCosts;
+	final long[] externalKeys;
+
+	private final TLongIntHashMap nodeIndexes;
+
+	ClusterGraph(short region,
+	             int[] nodeX,
+	             int[] nodeY,
+	             int[] nodeZ,
+	             int[] clusterOffsets,
+	             int[] edgeOffsets,
+	             int[] edgeTargets,
+	             float[] edgeCosts,
+	             long[] externalKeys) {
+		this.region = region;
+		originX = getOriginX(region);
+		originY = getOriginY(region);
+		this.nodeX = nodeX;
+		this.nodeY = nodeY;
+		this.nodeZ = nodeZ;
+		this.clusterOffsets = clusterOffsets;
+		this.edgeOffsets = edgeOffsets;
+		this.edgeTargets = edgeTargets;
+		this.edgeCosts = edgeCosts;
+		this.externalKeys = externalKeys;
+
+		nodeIndexes = new TLongIntHashMap(nodeX.length);
+		for (int i = 0; i < nodeX.length; i++) {
+			nodeIndexes.put(getKey(nodeX[i], nodeY[i], nodeZ[i]), i);
+		}
+	}
+
+	static int getOriginX(short region) {
+		return (region >> 5) - Config.WORLD_X_MIN << 11;
+	}
+
+	static int getOriginY(short region) {
+		return (region & 31) - Config.WORLD_Y_MIN << 11;
+	}
+
+	/**
+	 * @return the region of a geo cell, the same offset GeoEngine uses
+	 */
+	static short getRegion(int x, int y) {
+		return (short) ((x >> 11) + Config.WORLD_X_MIN << 5 | (y >> 11) + Config.WORLD_Y_MIN);
+	}
+
+	static long getKey(int x, int y, int z) {
+		return (long) x << 40 | (long) y << 20 | z & 0xFFFFF;
+	}
+
+	static int getKeyX(long key) {
+		return (int) (key >>> 40);
+	}
+
+	static int getKeyY(long key) {
+		return (int) (key >>> 20) & 0xFFFFF;
+	}
+
+	static int getKeyZ(long key) {
+		return (int) key << 12 >> 12;
+	}
+
+	int getNodeCount() {
+		return nodeX.length;
+	}
+
+	int getEdgeCount() {
+		return edgeTargets.length;
+	}
+
+	/**
+	 * @return the node at the given cell and height, or -1
+	 */
+	int getNode(int x, int y, int z) {
+		final long key = getKey(x, y, z);
+		return nodeIndexes.containsKey(key) ? nodeIndexes.get(key) : -1;
+	}
+
+	int getCluster(int x, int y) {
+		return (x - originX) / CLUSTER_SIZE * CLUSTERS_PER_SIDE + (y - originY) / CLUSTER_SIZE;
+	}
+
+	int getClusterMinX(int cluster) {
+		return originX + cluster / CLUSTERS_PER_SIDE * CLUSTER_SIZE;
+	}
+
+	int getClusterMinY(int cluster) {
+		return originY + cluster % CLUSTERS_PER_SIDE * CLUSTER_SIZE;
+	}
+
+	void write(File file, long[] sources) throws IOException {
+		file.getParentFile().mkdirs();
+		final File tempFile = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(CLUSTER_SIZE);
+			writeArray(out, sources);
+			out.writeInt(nodeX.length);
+			for (int i = 0; i < nodeX.length; i++) {
+				out.writeInt(nodeX[i]);
+				out.writeInt(nodeY[i]);
+				out.writeInt(nodeZ[i]);
+			}
+			writeArray(out, clusterOffsets);
+			writeArray(out, edgeOffsets);
+			writeArray(out, edgeTargets);
+			out.writeInt(edgeCosts.length);
+			for (float cost : edgeCosts) {
+				out.writeFloat(cost);
+			}
+			writeArray(out, externalKeys);
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return the graph stored in the given file, or null if it was built with another format or other geodata
+	 */
+	static ClusterGraph read(File file, short region, long[] sources) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != CLUSTER_SIZE || !Arrays.equals(readLongs(in), sources)) {
+				return null;
+			}
+
+			final int nodeCount = in.readInt();
+			final int[] nodeX = new int[nodeCount];
+			final int[] nodeY = new int[nodeCount];
+			final int[] nodeZ = new int[nodeCount];
+			for (int i = 0; i < nodeCount; i++) {
+				nodeX[i] = in.readInt();
+				nodeY[i] = in.readInt();
+				nodeZ[i] = in.readInt();
+			}
+			final int[] clusterOffsets = readInts(in);
+			final int[] edgeOffsets = readInts(in);
+			final int[] edgeTargets = readInts(in);
+			final float[] edgeCosts = new float[in.readInt()];
+			for (int i = 0; i < edgeCosts.length; i++) {
+				edgeCosts[i] = in.readFloat();
+			}
+			final long[] externalKeys = readLongs(in);
+			return new ClusterGraph(region, nodeX, nodeY, nodeZ, clusterOffsets, edgeOffsets, edgeTargets, edgeCosts, externalKeys);
+		}
+	}
+
+	private static void writeArray(DataOutputStream out, int[] array) throws IOException {
+		out.writeInt(array.length);
+		for (int value : array) {
+			out.writeInt(value);
+		}
+	}
+
+	private static void writeArray(DataOutputStream out, long[] array) throws IOException {
+		out.writeInt(array.length);
+		for (long value : array) {
+			out.writeLong(value);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException {
+		final int[] array = new int[in.readInt()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = in.readInt();
+		}
+		return array;
+	}
+
+	private static long[] readLongs(DataInputStream in) throws IOException {
+		final long[] array = new long[in.readInt()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = in.readLong();
+		}
+		return array;
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver.pathfinding.clusters;
+
+import gnu.trove.TLongIntHashMap;
+import l2server.gameserver.GeoData;
+import l2server.gameserver.model.World;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static l2server.gameserver.pathfinding.clusters.ClusterGraph.CLUSTERS_PER_SIDE;
+import static l2server.gameserver.pathfinding.clusters.ClusterGraph.CLUSTER_SIZE;
+
+/**
+ * Builds the abstract graph of a region from its geodata.<br>
+ * <br>
+ * The passages of a border are found from the border cells alone, in the same order whichever side asks, so the
+ * regions on both sides of a region border agree on their entrances without knowing each other's graph.
+ */
+final class ClusterGraphBuilder {
+	// Entrances at least this wide get a node at each end instead of a single one in the middle
+	private static final int WIDE_ENTRANCE = 6;
+	// Highest step between the two cells of a passage
+	private static final int MAX_PASSAGE_STEP = 48;
+
+	private final ClusterSearch search = new ClusterSearch(CLUSTER_SIZE);
+
+	private final short region;
+	private final int originX;
+	private final int originY;
+
+	private int[] nodeX = new int[1024];
+	private int[] nodeY = new int[1024];
+	private int[] nodeZ = new int[1024];
+	private int nodeCount;
+	private final TLongIntHashMap nodeIndexes = new TLongIntHashMap();
+
+	private int[] edgeFrom = new int[4096];
+	private int[] edgeTo = new int[4096];
+	private float[] edgeCost = new float[4096];
+	private int edgeCount;
+
+	private final List<long[]> passages = new ArrayList<>();
+	private final TLongIntHashMap externalIndexes = new TLongIntHashMap();
+	private final List<Long> externalKeys = new ArrayList<>();
+
+	ClusterGraphBuilder(short region) {
+		this.region = region;
+		originX = ClusterGraph.getOriginX(region);
+		originY = ClusterGraph.getOriginY(region);
+	}
+
+	ClusterGraph build() {
+		final int[] clusterOffsets = new int[CLUSTERS_PER_SIDE * CLUSTERS_PER_SIDE + 1];
+		for (int cluster = 0; cluster < CLUSTERS_PER_SIDE * CLUSTERS_PER_SIDE; cluster++) {
+			clusterOffsets[cluster] = nodeCount;
+
+			final int minX = originX + cluster / CLUSTERS_PER_SIDE * CLUSTER_SIZE;
+			final int minY = originY + cluster % CLUSTERS_PER_SIDE * CLUSTER_SIZE;
+			// west and north borders, this cluster is the second side
+			addEntrances(minX - 1, minY, 1, 0, false);
+			addEntrances(minX, minY - 1, 0, 1, false);
+			// east and south borders, this cluster is the first side
+			addEntrances(minX + CLUSTER_SIZE - 1, minY, 1, 0, true);
+			addEntrances(minX, minY + CLUSTER_SIZE - 1, 0, 1, true);
+
+			// shortest walks between the entrances of the cluster, the same both ways
+			for (int node = clusterOffsets[cluster]; node < nodeCount - 1; node++) {
+				final float[] costs =
+						search.run(nodeX[node], nodeY[node], nodeZ[node], minX, minY, nodeX, nodeY, nodeZ, node + 1, nodeCount - node - 1);
+				for (int i = 0; i < costs.length; i++) {
+					if (costs[i] != Float.POSITIVE_INFINITY) {
+						addEdge(node, node + 1 + i, costs[i]);
+						addEdge(node + 1 + i, node, costs[i]);
+					}
+				}
+			}
+		}
+		clusterOffsets[clusterOffsets.length - 1] = nodeCount;
+
+		// passages, now that every node of the region exists
+		for (long[] passage : passages) {
+			final int from = (int) passage[0];
+			final long otherKey = passage[1];
+			final float cost = Float.intBitsToFloat((int) passage[2]);
+			final int otherX = ClusterGraph.getKeyX(otherKey);
+			final int otherY = ClusterGraph.getKeyY(otherKey);
+			if (ClusterGraph.getRegion(otherX, otherY) == region) {
+				if (nodeIndexes.containsKey(otherKey)) {
+					addEdge(from, nodeIndexes.get(otherKey), cost);
+				}
+			} else {
+				if (!externalIndexes.containsKey(otherKey)) {
+					externalIndexes.put(otherKey, externalKeys.size());
+					externalKeys.add(otherKey);
+				}
+				addEdge(from, -1 - externalIndexes.get(otherKey), cost);
+			}
+		}
+
+		// edges sorted by node
+		final int[] edgeOffsets = new int[nodeCount + 1];
+		for (int i = 0; i < edgeCount; i++) {
+			edgeOffsets[edgeFrom[i] + 1]++;
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			edgeOffsets[i + 1] += edgeOffsets[i];
+		}
+		final int[] positions = Arrays.copyOf(edgeOffsets, nodeCount);
+		final int[] edgeTargets = new int[edgeCount];
+		final float[] edgeCosts = new float[edgeCount];
+		for (int i = 0; i < edgeCount; i++) {
+			final int position = positions[edgeFrom[i]]++;
+			edgeTargets[position] = edgeTo[i];
+			edgeCosts[position] = edgeCost[i];
+		}
+
+		final long[] externals = new long[externalKeys.size()];
+		for (int i = 0; i < externals.length; i++) {
+			externals[i] = externalKeys.get(i);
+		}
+
+		return new ClusterGraph(region,
+				Arrays.copyOf(nodeX, nodeCount),
+				Arrays.copyOf(nodeY, nodeCount),
+				Arrays.copyOf(nodeZ, nodeCount),
+				clusterOffsets,
+				edgeOffsets,
+				edgeTargets,
+				edgeCosts,
+				externals);
+	}
+
+	/**
+	 * Adds the entrances of this cluster's side of a border.
+	 *
+	 * @param x, y      the first cell of the first side (west or north) of the border
+	 * @param dx, dy    the step from the first side to the second one
+	 * @param firstSide whether this cluster is on the first side
+	 */
+	private void addEntrances(int x, int y, int dx, int dy, boolean firstSide) {
+		for (int[] passage : findPassages(x, y, dx, dy)) {
+			final int ownX = firstSide ? passage[0] : passage[3];
+			final int ownY = firstSide ? passage[1] : passage[4];
+			final int ownZ = firstSide ? passage[2] : passage[5];
+			final int otherX = firstSide ? passage[3] : passage[0];
+			final int otherY = firstSide ? passage[4] : passage[1];
+			final int otherZ = firstSide ? passage[5] : passage[2];
+
+			final int node = getNode(ownX, ownY, ownZ);
+			final float cost = 1 + Math.abs(ownZ - otherZ) / 16f;
+			passages.add(new long[]{node, ClusterGraph.getKey(otherX, otherY, otherZ), Float.floatToIntBits(cost)});
+		}
+	}
+
+	/**
+	 * @return the passages across a border, as first side x, y, z and second side x, y, z
+	 */
+	private static List<int[]> findPassages(int x, int y, int dx, int dy) {
+		final List<int[]> result = new ArrayList<>();
+		if (x < 0 || y < 0 || !hasGeo(x, y) || !hasGeo(x + dx, y + dy)) {
+			return result;
+		}
+
+		final byte forward = dx != 0 ? ClusterSearch.EAST : ClusterSearch.SOUTH;
+		final byte backward = dx != 0 ? ClusterSearch.WEST : ClusterSearch.NORTH;
+		final GeoData geo = GeoData.getInstance();
+
+		// open stretches of passable cells along the border, one for each layer
+		final List<int[]> open = new ArrayList<>();
+		for (int i = 0; i <= CLUSTER_SIZE; i++) {
+			final List<int[]> extended = new ArrayList<>();
+			if (i < CLUSTER_SIZE) {
+				final int ax = x + dy * i;
+				final int ay = y + dx * i;
+				for (short layer : geo.getLayers(ax, ay)) {
+					if ((layer & forward) == 0) {
+						continue;
+					}
+					final int az = ClusterSearch.getHeight(layer);
+					final short other = geo.getHeightAndNSWE(ax + dx, ay + dy, az);
+					final int bz = ClusterSearch.getHeight(other);
+					if ((other & backward) == 0 || Math.abs(bz - az) > MAX_PASSAGE_STEP) {
+						continue;
+					}
+
+					int[] stretch = null;
+					for (int[] candidate : open) {
+						if (candidate[1] == i - 1 && Math.abs(candidate[2 + 2 * (i - 1 - candidate[0])] - az) <= 16) {
+							stretch = candidate;
+							break;
+						}
+					}
+					if (stretch == null) {
+						// start, end, then the heights of both sides for every cell
+						stretch = new int[2 + 2 * CLUSTER_SIZE];
+						stretch[0] = i;
+					} else {
+						open.remove(stretch);
+					}
+					stretch[1] = i;
+					stretch[2 + 2 * (i - stretch[0])] = az;
+					stretch[3 + 2 * (i - stretch[0])] = bz;
+					extended.add(stretch);
+				}
+			}
+
+			// stretches not extended by this cell are closed
+			for (int[] stretch : open) {
+				final int start = stretch[0];
+				final int end = stretch[1];
+				if (end - start + 1 >= WIDE_ENTRANCE) {
+					result.add(getPassage(x, y, dx, dy, stretch, start));
+					result.add(getPassage(x, y, dx, dy, stretch, end));
+				} else {
+					result.add(getPassage(x, y, dx, dy, stretch, (start + end) / 2));
+				}
+			}
+			open.clear();
+			open.addAll(extended);
+		}
+		return result;
+	}
+
+	private static int[] getPassage(int x, int y, int dx, int dy, int[] stretch, int i) {
+		final int ax = x + dy * i;
+		final int ay = y + dx * i;
+		final int cell = i - stretch[0];
+		return new int[]{ax, ay, stretch[2 + 2 * cell], ax + dx, ay + dy, stretch[3 + 2 * cell]};
+	}
+
+	private static boolean hasGeo(int x, int y) {
+		return GeoData.getInstance().hasGeo((x << 4) + World.MAP_MIN_X, (y << 4) + World.MAP_MIN_Y);
+	}
+
+	private int getNode(int x, int y, int z) {
+		final long key = ClusterGraph.getKey(x, y, z);
+		if (nodeIndexes.containsKey(key)) {
+			return nodeIndexes.get(key);
+		}
+
+		if (nodeCount == nodeX.length) {
+			nodeX = Arrays.copyOf(nodeX, nodeCount * 2);
+			nodeY = Arrays.copyOf(nodeY, nodeCount * 2);
+			nodeZ = Arrays.copyOf(nodeZ, nodeCount * 2);
+		}
+		nodeX[nodeCount] = x;
+		nodeY[nodeCount] = y;
+		nodeZ[nodeCount] = z;
+		nodeIndexes.put(key, nodeCount);
+		return nodeCount++;
+	}
+
+	private void addEdge(int from, int to, float cost) {
+		if (edgeCount == edgeFrom.length) {
+			edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+			edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+			edgeCost = Arrays.copyOf(edgeCost, edgeCount * 2);
+		}
+		edgeFrom[edgeCount] = from;
+		edgeTo[edgeCount] = to;
+		edgeCost[edgeCount] = cost;
+		edgeCount++;
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver.pathfinding.clusters;
+
+import l2server.gameserver.GeoData;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra over the geodata cells of a single cluster, from one cell to the entrances of the cluster.<br>
+ * The search never leaves the cluster square, and keeps its states in flat arrays reused by every search of the
+ * same thread. A cell with several layers gets one state for each layer reached, chained from the cell.
+ */
+final class ClusterSearch {
+	static final byte EAST = 1;
+	static final byte WEST = 2;
+	static final byte SOUTH = 4;
+	static final byte NORTH = 8;
+
+	private static final float DIAGONAL_COST = 1.4142135f;
+	// Heights of a cell closer than this are the same layer
+	static final int LAYER_TOLERANCE = 8;
+
+	private final int size;
+	// First state of every cell of the cluster plus one, 0 if the cell wasn't reached
+	private final int[] cellStates;
+	// Cells holding a target, to skip the target loop for every other cell
+	private final boolean[] targetCells;
+
+	private int[] stateX = new int[1024];
+	private int[] stateY = new int[1024];
+	private int[] stateZ = new int[1024];
+	private byte[] stateNSWE = new byte[1024];
+	private float[] stateCost = new float[1024];
+	private boolean[] stateClosed = new boolean[1024];
+	private int[] stateNext = new int[1024];
+	private int stateCount;
+
+	private int[] heap = new int[1024];
+	private float[] heapCost = new float[1024];
+	private int heapSize;
+
+	private int minX;
+	private int minY;
+
+	ClusterSearch(int size) {
+		this.size = size;
+		cellStates = new int[size * size];
+		targetCells = new boolean[size * size];
+	}
+
+	static int getHeight(short heightAndNSWE) {
+		short height = (short) (heightAndNSWE & 0x0fff0);
+		return height >> 1;
+	}
+
+	/**
+	 * Searches from the given cell to the targets first..first+count-1 of the given arrays, inside the cluster square
+	 * starting at minX, minY.
+	 *
+	 * @return the cost to reach each target, Float.POSITIVE_INFINITY for the unreachable ones
+	 */
+	float[] run(int x, int y, int z, int minX, int minY, int[] targetX, int[] targetY, int[] targetZ, int first, int count) {
+		this.minX = minX;
+		this.minY = minY;
+		final float[] costs = new float[count];
+		Arrays.fill(costs, Float.POSITIVE_INFINITY);
+		if (count == 0) {
+			return costs;
+		}
+
+		for (int i = 0; i < count; i++) {
+			final int cell = getCell(targetX[first + i], targetY[first + i]);
+			if (cell >= 0) {
+				targetCells[cell] = true;
+			}
+		}
+
+		try {
+			final short start = GeoData.getInstance().getHeightAndNSWE(x, y, z);
+			final int startState = getState(x, y, getHeight(start), (byte) (start & 0x0f));
+			if (startState < 0) {
+				return costs;
+			}
+			stateCost[startState] = 0;
+			push(startState, 0);
+
+			int found = 0;
+			while (heapSize > 0 && found < count) {
+				final int state = pop();
+				if (stateClosed[state]) {
+					continue;
+				}
+				stateClosed[state] = true;
+
+				if (targetCells[getCell(stateX[state], stateY[state])]) {
+					for (int i = 0; i < count; i++) {
+						if (costs[i] == Float.POSITIVE_INFINITY && targetX[first + i] == stateX[state] && targetY[first + i] == stateY[state] &&
+								Math.abs(targetZ[first + i] - stateZ[state]) <= LAYER_TOLERANCE) {
+							costs[i] = stateCost[state];
+							found++;
+						}
+					}
+				}
+
+				expand(state);
+			}
+			return costs;
+		} finally {
+			reset(targetX, targetY, first, count);
+		}
+	}
+
+	private void expand(int state) {
+		final int x = stateX[state];
+		final int y = stateY[state];
+		final byte nswe = stateNSWE[state];
+
+		final int east = (nswe & EAST) != 0 ? visit(state, x + 1, y, 1) : -1;
+		final int south = (nswe & SOUTH) != 0 ? visit(state, x, y + 1, 1) : -1;
+		final int west = (nswe & WEST) != 0 ? visit(state, x - 1, y, 1) : -1;
+		final int north = (nswe & NORTH) != 0 ? visit(state, x, y - 1, 1) : -1;
+
+		// diagonals only when both sides are open, as CellNodeBuffer does
+		if (east >= 0 && south >= 0 && (stateNSWE[east] & SOUTH) != 0 && (stateNSWE[south] & EAST) != 0) {
+			visit(state, x + 1, y + 1, DIAGONAL_COST);
+		}
+		if (south >= 0 && west >= 0 && (stateNSWE[west] & SOUTH) != 0 && (stateNSWE[south] & WEST) != 0) {
+			visit(state, x - 1, y + 1, DIAGONAL_COST);
+		}
+		if (north >= 0 && east >= 0 && (stateNSWE[east] & NORTH) != 0 && (stateNSWE[north] & EAST) != 0) {
+			visit(state, x + 1, y - 1, DIAGONAL_COST);
+		}
+		if (north >= 0 && west >= 0 && (stateNSWE[west] & NORTH) != 0 && (stateNSWE[north] & WEST) != 0) {
+			visit(state, x - 1, y - 1, DIAGONAL_COST);
+		}
+	}
+
+	/**
+	 * @return the state of the neighbor cell, or -1 if it's outside the cluster
+	 */
+	private int visit(int from, int x, int y, float cost) {
+		if (getCell(x, y) < 0) {
+			return -1;
+		}
+
+		final short geo = GeoData.getInstance().getHeightAndNSWE(x, y, stateZ[from]);
+		final int z = getHeight(geo);
+		final int state = getState(x, y, z, (byte) (geo & 0x0f));
+		if (stateClosed[state]) {
+			return state;
+		}
+
+		// height differences count as distance, a cell is 16 units wide
+		final float newCost = stateCost[from] + cost + Math.abs(z - stateZ[from]) / 16f;
+		if (newCost < stateCost[state]) {
+			stateCost[state] = newCost;
+			push(state, newCost);
+		}
+		return state;
+	}
+
+	private int getCell(int x, int y) {
+		final int localX = x - minX;
+		final int localY = y - minY;
+		if (localX < 0 || localX >= size || localY < 0 || localY >= size) {
+			return -1;
+		}
+		return localX * size + localY;
+	}
+
+	private int getState(int x, int y, int z, byte nswe) {
+		final int cell = getCell(x, y);
+		if (cell < 0) {
+			return -1;
+		}
+
+		for (int state = cellStates[cell] - 1; state >= 0; state = stateNext[state]) {
+			if (Math.abs(stateZ[state] - z) <= LAYER_TOLERANCE) {
+				return state;
+			}
+		}
+
+		if (stateCount == stateX.length) {
+			final int capacity = stateCount * 2;
+			stateX = Arrays.copyOf(stateX, capacity);
+			stateY = Arrays.copyOf(stateY, capacity);
+			stateZ = Arrays.copyOf(stateZ, capacity);
+			stateNSWE = Arrays.copyOf(stateNSWE, capacity);
+			stateCost = Arrays.copyOf(stateCost, capacity);
+			stateClosed = Arrays.copyOf(stateClosed, capacity);
+			stateNext = Arrays.copyOf(stateNext, capacity);
+		}
+
+		final int state = stateCount++;
+		stateX[state] = x;
+		stateY[state] = y;
+		stateZ[state] = z;
+		stateNSWE[state] = nswe;
+		stateCost[state] = Float.POSITIVE_INFINITY;
+		stateClosed[state] = false;
+		stateNext[state] = cellStates[cell] - 1;
+		cellStates[cell] = state + 1;
+		return state;
+	}
+
+	private void reset(int[] targetX, int[] targetY, int first, int count) {
+		for (int state = 0; state < stateCount; state++) {
+			cellStates[getCell(stateX[state], stateY[state])] = 0;
+		}
+		for (int i = 0; i < count; i++) {
+			final int cell = getCell(targetX[first + i], targetY[first + i]);
+			if (cell >= 0) {
+				targetCells[cell] = false;
+			}
+		}
+		stateCount = 0;
+		heapSize = 0;
+	}
+
+	private void push(int state, float cost) {
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, heapSize * 2);
+			heapCost = Arrays.copyOf(heapCost, heapSize * 2);
+		}
+
+		int i = heapSize++;
+		while (i > 0) {
+			final int parent = i - 1 >> 1;
+			if (heapCost[parent] <= cost) {
+				break;
+			}
+			heap[i] = heap[parent];
+			heapCost[i] = heapCost[parent];
+			i = parent;
+		}
+		heap[i] = state;
+		heapCost[i] = cost;
+	}
+
+	private int pop() {
+		final int result = heap[0];
+		final int last = heap[--heapSize];
+		final float lastCost = heapCost[heapSize];
+
+		int i = 0;
+		while (true) {
+			int child = (i << 1) + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heapCost[child + 1] < heapCost[child]) {
+				child++;
+			}
+			if (heapCost[child] >= lastCost) {
+				break;
+			}
+			heap[i] = heap[child];
+			heapCost[i] = heapCost[child];
+			i = child;
+		}
+		heap[i] = last;
+		heapCost[i] = lastCost;
+		return result;
+	}
+}
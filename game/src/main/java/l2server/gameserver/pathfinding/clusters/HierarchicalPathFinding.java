@@ -0,0 +1,647 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.gameserver.pathfinding.clusters;
+
+import gnu.trove.TIntFloatHashMap;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIntHashMap;
+import l2server.Config;
+import l2server.gameserver.GeoData;
+import l2server.gameserver.datatables.DoorTable;
+import l2server.gameserver.model.World;
+import l2server.gameserver.pathfinding.AbstractNodeLoc;
+import l2server.gameserver.pathfinding.PathFinding;
+import l2server.gameserver.pathfinding.cellnodes.CellPathFinding;
+import l2server.gameserver.pathfinding.cellnodes.NodeLoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static l2server.gameserver.pathfinding.clusters.ClusterGraph.CLUSTER_SIZE;
+
+/**
+ * Hierarchical pathfinding (HPA*) over the geodata.<br>
+ * <br>
+ * Every geodata region gets an abstract graph of its clusters (see {@link ClusterGraph}), built in the background on
+ * startup and kept under cache/pathnodes in the datapack root, so it's only built again when a geodata file changes.
+ * A search first plans across the abstract graph, then refines every step with {@link CellPathFinding}, which only
+ * ever has to walk within a cluster. Paths inside a single cluster, or through regions whose graph isn't ready yet,
+ * go to CellPathFinding directly.<br>
+ * <br>
+ * Doors aren't part of the geodata. An abstract edge whose refined walk crosses a closed door is left out of the
+ * searches until a door opens again.
+ */
+public class HierarchicalPathFinding extends PathFinding {
+	private static Logger log = LoggerFactory.getLogger(HierarchicalPathFinding.class.getName());
+
+	private static final int START = -1;
+	private static final int TARGET = -2;
+	private static final int MAX_ITERATIONS = 20000;
+	// Times a search is planned again after finding closed doors on its way
+	private static final int MAX_REPLANS = 3;
+	// Path requests kept for the benchmark
+	private static final int RECORDED_REQUESTS = 1000;
+
+	private static volatile boolean loaded = false;
+
+	private final CellPathFinding cellPathFinding = CellPathFinding.getInstance();
+	private final AtomicReferenceArray<ClusterGraph> graphs = new AtomicReferenceArray<>(1 << 11);
+	private final ExecutorService builder;
+	private final ThreadLocal<ClusterSearch> searches = ThreadLocal.withInitial(() -> new ClusterSearch(CLUSTER_SIZE));
+
+	// Abstract edges crossing closed doors, as from << 32 | to
+	private final Set<Long> blockedEdges = ConcurrentHashMap.newKeySet();
+
+	private final AtomicReferenceArray<int[]> recordedRequests = new AtomicReferenceArray<>(RECORDED_REQUESTS);
+	private final AtomicInteger nextRecordedRequest = new AtomicInteger();
+
+	private final AtomicInteger pendingRegions = new AtomicInteger();
+	private final LongAdder builtRegions = new LongAdder();
+	private final LongAdder cachedRegions = new LongAdder();
+	private final LongAdder searchCount = new LongAdder();
+	private final LongAdder searchTime = new LongAdder();
+	private final LongAdder searchIterations = new LongAdder();
+	private final LongAdder searchFails = new LongAdder();
+	private final LongAdder cellSearches = new LongAdder();
+	private final LongAdder doorReplans = new LongAdder();
+
+	public static HierarchicalPathFinding getInstance() {
+		return SingletonHolder.instance;
+	}
+
+	private HierarchicalPathFinding() {
+		builder = Executors.newFixedThreadPool(Math.max(Config.PATHFIND_CLUSTER_THREADS, 1), new BuilderThreadFactory());
+
+		final long start = System.currentTimeMillis();
+		for (int rx = Config.WORLD_X_MIN; rx <= Config.WORLD_X_MAX; rx++) {
+			for (int ry = Config.WORLD_Y_MIN; ry <= Config.WORLD_Y_MAX; ry++) {
+				if (hasGeo(rx, ry)) {
+					submitRegion((byte) rx, (byte) ry, start);
+				}
+			}
+		}
+		log.info("HierarchicalPathFinding: preparing the cluster graphs of " + pendingRegions.get() + " regions in the background");
+		loaded = true;
+	}
+
+	/**
+	 * Called when a geodata file is loaded or unloaded, the graphs of the region and its neighbors are built again.
+	 */
+	public static void onGeodataChanged(byte rx, byte ry) {
+		if (!loaded) {
+			return;
+		}
+
+		final HierarchicalPathFinding instance = getInstance();
+		final long start = System.currentTimeMillis();
+		for (int x = rx - 1; x <= rx + 1; x++) {
+			for (int y = ry - 1; y <= ry + 1; y++) {
+				if ((x == rx || y == ry) && x >= Config.WORLD_X_MIN && x <= Config.WORLD_X_MAX && y >= Config.WORLD_Y_MIN &&
+						y <= Config.WORLD_Y_MAX) {
+					instance.graphs.set(getRegionOffset(x, y), null);
+					if (hasGeo(x, y)) {
+						instance.submitRegion((byte) x, (byte) y, start);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called when a door opens, the edges found blocked by doors are tried again.
+	 */
+	public static void onDoorOpened() {
+		if (loaded) {
+			getInstance().blockedEdges.clear();
+		}
+	}
+
+	private static short getRegionOffset(int rx, int ry) {
+		return (short) ((rx << 5) + ry);
+	}
+
+	private static boolean hasGeo(int rx, int ry) {
+		return GeoData.getInstance()
+				.hasGeo(World.MAP_MIN_X + (rx - Config.WORLD_X_MIN << 15), World.MAP_MIN_Y + (ry - Config.WORLD_Y_MIN << 15));
+	}
+
+	private void submitRegion(byte rx, byte ry, long start) {
+		pendingRegions.incrementAndGet();
+		builder.execute(() -> {
+			try {
+				loadRegion(rx, ry);
+			} catch (Exception e) {
+				log.warn("HierarchicalPathFinding: could not prepare the cluster graph of region " + rx + "_" + ry, e);
+			} finally {
+				if (pendingRegions.decrementAndGet() == 0) {
+					log.info("HierarchicalPathFinding: cluster graphs ready in " + (System.currentTimeMillis() - start) / 1000 + "s, " +
+							builtRegions.sum() + " built and " + cachedRegions.sum() + " read from the cache");
+				}
+			}
+		});
+	}
+
+	private void loadRegion(byte rx, byte ry) throws IOException {
+		final short region = getRegionOffset(rx, ry);
+		final File cacheFile = new File(Config.DATAPACK_ROOT, "cache/pathnodes/" + rx + "_" + ry + ".bin");
+		final long[] sources = getSources(rx, ry);
+
+		ClusterGraph graph = null;
+		try {
+			graph = ClusterGraph.read(cacheFile, region, sources);
+		} catch (IOException e) {
+			log.warn("HierarchicalPathFinding: could not read " + cacheFile.getPath() + ", building it again", e);
+		}
+
+		if (graph != null) {
+			cachedRegions.increment();
+		} else {
+			final long start = System.currentTimeMillis();
+			graph = new ClusterGraphBuilder(region).build();
+			graph.write(cacheFile, sources);
+			builtRegions.increment();
+			log.debug("HierarchicalPathFinding: built region " + rx + "_" + ry + " in " + (System.currentTimeMillis() - start) + "ms, " +
+					graph.getNodeCount() + " nodes");
+		}
+		graphs.set(region, graph);
+	}
+
+	/**
+	 * @return the size and modification time of the geodata files a region graph depends on: its own and the ones of
+	 * the neighbors sharing a border
+	 */
+	private static long[] getSources(byte rx, byte ry) {
+		final int[][] regions = {{rx, ry}, {rx - 1, ry}, {rx + 1, ry}, {rx, ry - 1}, {rx, ry + 1}};
+		final long[] sources = new long[regions.length * 2];
+		for (int i = 0; i < regions.length; i++) {
+			final File file =
+					new File(Config.DATAPACK_ROOT + "/" + Config.DATA_FOLDER + "/geodata/" + regions[i][0] + "_" + regions[i][1] + ".l2j");
+			sources[i * 2] = file.length();
+			sources[i * 2 + 1] = file.lastModified();
+		}
+		return sources;
+	}
+
+	@Override
+	public boolean pathNodesExist(short regionoffset) {
+		return graphs.get(regionoffset) != null;
+	}
+
+	@Override
+	public List<AbstractNodeLoc> findPath(int x, int y, int z, int tx, int ty, int tz, int instanceId, boolean playable) {
+		final int index = nextRecordedRequest.getAndIncrement() & Integer.MAX_VALUE;
+		recordedRequests.set(index % RECORDED_REQUESTS, new int[]{x, y, z, tx, ty, tz, instanceId, playable ? 1 : 0});
+
+		return search(x, y, z, tx, ty, tz, instanceId, playable);
+	}
+
+	private List<AbstractNodeLoc> search(int x, int y, int z, int tx, int ty, int tz, int instanceId, boolean playable) {
+		final GeoData geo = GeoData.getInstance();
+		if (!geo.hasGeo(x, y) || !geo.hasGeo(tx, ty)) {
+			return null;
+		}
+
+		final int gx = x - World.MAP_MIN_X >> 4;
+		final int gy = y - World.MAP_MIN_Y >> 4;
+		final int gtx = tx - World.MAP_MIN_X >> 4;
+		final int gty = ty - World.MAP_MIN_Y >> 4;
+		final ClusterGraph startGraph = graphs.get(ClusterGraph.getRegion(gx, gy));
+		final ClusterGraph targetGraph = graphs.get(ClusterGraph.getRegion(gtx, gty));
+		if (startGraph == null || targetGraph == null ||
+				startGraph == targetGraph && startGraph.getCluster(gx, gy) == targetGraph.getCluster(gtx, gty)) {
+			cellSearches.increment();
+			return cellPathFinding.findPath(x, y, z, tx, ty, tz, instanceId, playable);
+		}
+
+		final long start = System.nanoTime();
+		try {
+			final int gz = ClusterSearch.getHeight(geo.getHeightAndNSWE(gx, gy, z));
+			final int gtz = ClusterSearch.getHeight(geo.getHeightAndNSWE(gtx, gty, tz));
+			// edges found blocked by doors in this search, including the ones from the start and to the target
+			final Set<Long> blocked = new HashSet<>();
+			for (int plan = 0; plan <= MAX_REPLANS; plan++) {
+				final int[] nodes = plan(startGraph, gx, gy, gz, targetGraph, gtx, gty, gtz, blocked);
+				if (nodes == null) {
+					searchFails.increment();
+					return null;
+				}
+
+				final List<AbstractNodeLoc> path = refine(nodes, gx, gy, gz, gtx, gty, gtz, x, y, z, instanceId, blocked);
+				if (path != null) {
+					postFilter(path, x, y, z, instanceId, playable);
+					return path;
+				}
+				doorReplans.increment();
+			}
+
+			searchFails.increment();
+			return null;
+		} finally {
+			searchCount.increment();
+			searchTime.add(System.nanoTime() - start);
+		}
+	}
+
+	private static final class SearchNode implements Comparable<SearchNode> {
+		final int id;
+		final float cost;
+		final float estimate;
+
+		SearchNode(int id, float cost, float estimate) {
+			this.id = id;
+			this.cost = cost;
+			this.estimate = estimate;
+		}
+
+		@Override
+		public int compareTo(SearchNode other) {
+			return Float.compare(estimate, other.estimate);
+		}
+	}
+
+	private static int getId(ClusterGraph graph, int node) {
+		return graph.region << 20 | node;
+	}
+
+	private ClusterGraph getGraph(int id) {
+		return graphs.get(id >>> 20);
+	}
+
+	private static long getEdgeKey(int from, int to) {
+		return (long) from << 32 | to & 0xFFFFFFFFL;
+	}
+
+	private boolean isBlocked(int from, int to, Set<Long> blocked) {
+		final long key = getEdgeKey(from, to);
+		return blocked.contains(key) || blockedEdges.contains(key);
+	}
+
+	/**
+	 * A* over the abstract graph, from the start cell to the target cell through the entrances of the clusters.
+	 *
+	 * @return the ids of the entrances to go through, or null if there's no way
+	 */
+	private int[] plan(ClusterGraph startGraph, int gx, int gy, int gz, ClusterGraph targetGraph, int gtx, int gty, int gtz, Set<Long> blocked) {
+		final TIntFloatHashMap costs = new TIntFloatHashMap();
+		final TIntIntHashMap parents = new TIntIntHashMap();
+		final TIntHashSet closed = new TIntHashSet();
+		final PriorityQueue<SearchNode> open = new PriorityQueue<>();
+
+		// from the start cell to the entrances of its cluster
+		final int startCluster = startGraph.getCluster(gx, gy);
+		final int startFirst = startGraph.clusterOffsets[startCluster];
+		final float[] startCosts = searches.get()
+				.run(gx,
+						gy,
+						gz,
+						startGraph.getClusterMinX(startCluster),
+						startGraph.getClusterMinY(startCluster),
+						startGraph.nodeX,
+						startGraph.nodeY,
+						startGraph.nodeZ,
+						startFirst,
+						startGraph.clusterOffsets[startCluster + 1] - startFirst);
+		for (int i = 0; i < startCosts.length; i++) {
+			final int id = getId(startGraph, startFirst + i);
+			if (startCosts[i] != Float.POSITIVE_INFINITY && !isBlocked(START, id, blocked)) {
+				costs.put(id, startCosts[i]);
+				parents.put(id, START);
+				open.add(new SearchNode(id, startCosts[i], startCosts[i] + estimate(startGraph, startFirst + i, gtx, gty)));
+			}
+		}
+
+		// and from the target cell to the entrances of its cluster, the walks are the same both ways
+		final int targetCluster = targetGraph.getCluster(gtx, gty);
+		final int targetFirst = targetGraph.clusterOffsets[targetCluster];
+		final float[] targetCosts = searches.get()
+				.run(gtx,
+						gty,
+						gtz,
+						targetGraph.getClusterMinX(targetCluster),
+						targetGraph.getClusterMinY(targetCluster),
+						targetGraph.nodeX,
+						targetGraph.nodeY,
+						targetGraph.nodeZ,
+						targetFirst,
+						targetGraph.clusterOffsets[targetCluster + 1] - targetFirst);
+
+		int iterations = 0;
+		try {
+			while (!open.isEmpty() && iterations++ < MAX_ITERATIONS) {
+				final SearchNode current = open.poll();
+				if (current.id == TARGET) {
+					return getPlan(parents);
+				}
+				if (!closed.add(current.id)) {
+					continue;
+				}
+
+				final ClusterGraph graph = getGraph(current.id);
+				final int node = current.id & 0xFFFFF;
+				if (graph == targetGraph && node >= targetFirst && node < targetFirst + targetCosts.length) {
+					final float targetCost = targetCosts[node - targetFirst];
+					if (targetCost != Float.POSITIVE_INFINITY && !isBlocked(current.id, TARGET, blocked) &&
+							(!costs.containsKey(TARGET) || current.cost + targetCost < costs.get(TARGET))) {
+						costs.put(TARGET, current.cost + targetCost);
+						parents.put(TARGET, current.id);
+						open.add(new SearchNode(TARGET, current.cost + targetCost, current.cost + targetCost));
+					}
+				}
+
+				for (int edge = graph.edgeOffsets[node]; edge < graph.edgeOffsets[node + 1]; edge++) {
+					ClusterGraph neighborGraph = graph;
+					int neighbor = graph.edgeTargets[edge];
+					if (neighbor < 0) {
+						final long key = graph.externalKeys[-1 - neighbor];
+						neighborGraph = graphs.get(ClusterGraph.getRegion(ClusterGraph.getKeyX(key), ClusterGraph.getKeyY(key)));
+						if (neighborGraph == null) {
+							continue;
+						}
+						neighbor = neighborGraph.getNode(ClusterGraph.getKeyX(key), ClusterGraph.getKeyY(key), ClusterGraph.getKeyZ(key));
+						if (neighbor < 0) {
+							continue;
+						}
+					}
+
+					final int id = getId(neighborGraph, neighbor);
+					final float cost = current.cost + graph.edgeCosts[edge];
+					if (closed.contains(id) || costs.containsKey(id) && costs.get(id) <= cost || isBlocked(current.id, id, blocked)) {
+						continue;
+					}
+					costs.put(id, cost);
+					parents.put(id, current.id);
+					open.add(new SearchNode(id, cost, cost + estimate(neighborGraph, neighbor, gtx, gty)));
+				}
+			}
+			return null;
+		} finally {
+			searchIterations.add(iterations);
+		}
+	}
+
+	private static float estimate(ClusterGraph graph, int node, int gtx, int gty) {
+		final int dx = graph.nodeX[node] - gtx;
+		final int dy = graph.nodeY[node] - gty;
+		return (float) Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private static int[] getPlan(TIntIntHashMap parents) {
+		int length = 0;
+		for (int id = parents.get(TARGET); id != START; id = parents.get(id)) {
+			length++;
+		}
+
+		final int[] plan = new int[length];
+		for (int id = parents.get(TARGET); id != START; id = parents.get(id)) {
+			plan[--length] = id;
+		}
+		return plan;
+	}
+
+	/**
+	 * Walks the planned entrances cell by cell.
+	 *
+	 * @return the path, or null if a step couldn't be walked or crosses a closed door, after blocking it
+	 */
+	private List<AbstractNodeLoc> refine(int[] nodes,
+	                                     int gx,
+	                                     int gy,
+	                                     int gz,
+	                                     int gtx,
+	                                     int gty,
+	                                     int gtz,
+	                                     int x,
+	                                     int y,
+	                                     int z,
+	                                     int instanceId,
+	                                     Set<Long> blocked) {
+		final List<AbstractNodeLoc> path = new ArrayList<>();
+		int fromId = START;
+		int fromX = gx;
+		int fromY = gy;
+		int fromZ = gz;
+		AbstractNodeLoc last = null;
+		for (int i = 0; i <= nodes.length; i++) {
+			final int toId;
+			final int toX;
+			final int toY;
+			final int toZ;
+			if (i < nodes.length) {
+				toId = nodes[i];
+				final ClusterGraph graph = getGraph(toId);
+				toX = graph.nodeX[toId & 0xFFFFF];
+				toY = graph.nodeY[toId & 0xFFFFF];
+				toZ = graph.nodeZ[toId & 0xFFFFF];
+			} else {
+				toId = TARGET;
+				toX = gtx;
+				toY = gty;
+				toZ = gtz;
+			}
+
+			final List<AbstractNodeLoc> step;
+			if (Math.abs(toX - fromX) <= 1 && Math.abs(toY - fromY) <= 1) {
+				step = new ArrayList<>(1);
+				step.add(new NodeLoc(toX, toY, (short) toZ));
+			} else {
+				step = cellPathFinding.findPath(getWorldX(fromX), getWorldY(fromY), fromZ, getWorldX(toX), getWorldY(toY), toZ, instanceId, false);
+			}
+
+			boolean crossesDoor = step == null;
+			for (int j = 0; !crossesDoor && j < step.size(); j++) {
+				final AbstractNodeLoc loc = step.get(j);
+				crossesDoor = last == null ? DoorTable.getInstance().checkIfDoorsBetween(x, y, z, loc.getX(), loc.getY(), loc.getZ(), instanceId) :
+						DoorTable.getInstance().checkIfDoorsBetween(last, loc, instanceId);
+				last = loc;
+			}
+			if (crossesDoor) {
+				// the walks from the start and to the target are only valid for this search
+				if (fromId == START || toId == TARGET) {
+					blocked.add(getEdgeKey(fromId, toId));
+				} else {
+					blockedEdges.add(getEdgeKey(fromId, toId));
+				}
+				return null;
+			}
+
+			path.addAll(step);
+			fromId = toId;
+			fromX = toX;
+			fromY = toY;
+			fromZ = toZ;
+		}
+		return path;
+	}
+
+	private static int getWorldX(int geoX) {
+		return (geoX << 4) + World.MAP_MIN_X;
+	}
+
+	private static int getWorldY(int geoY) {
+		return (geoY << 4) + World.MAP_MIN_Y;
+	}
+
+	/**
+	 * Removes the points that can be skipped walking straight, the steps were already filtered one by one.
+	 */
+	private static void postFilter(List<AbstractNodeLoc> path, int x, int y, int z, int instanceId, boolean playable) {
+		if (path.size() < 3 || Config.MAX_POSTFILTER_PASSES <= 0) {
+			return;
+		}
+
+		boolean remove;
+		int pass = 0;
+		do {
+			pass++;
+			remove = false;
+			final ListIterator<AbstractNodeLoc> middlePoint = path.listIterator();
+			int currentX = x;
+			int currentY = y;
+			int currentZ = z;
+			while (middlePoint.nextIndex() < path.size() - 1) {
+				final AbstractNodeLoc locMiddle = middlePoint.next();
+				final AbstractNodeLoc locEnd = path.get(middlePoint.nextIndex());
+				if (GeoData.getInstance().canMoveFromToTarget(currentX, currentY, currentZ, locEnd.getX(), locEnd.getY(), locEnd.getZ(), instanceId)) {
+					middlePoint.remove();
+					remove = true;
+				} else {
+					currentX = locMiddle.getX();
+					currentY = locMiddle.getY();
+					currentZ = locMiddle.getZ();
+				}
+			}
+		}
+		// only one postfilter pass for AI
+		while (playable && remove && path.size() > 2 && pass < Config.MAX_POSTFILTER_PASSES);
+	}
+
+	/**
+	 * Runs the last recorded path requests with CellPathFinding and with this pathfinding.
+	 */
+	public String[] benchmark() {
+		final List<int[]> requests = new ArrayList<>();
+		for (int i = 0; i < RECORDED_REQUESTS; i++) {
+			final int[] request = recordedRequests.get(i);
+			if (request != null) {
+				requests.add(request);
+			}
+		}
+		if (requests.isEmpty()) {
+			return new String[]{"No path requests recorded yet"};
+		}
+
+		final long[] cellTimes = new long[requests.size()];
+		final long[] hierarchicalTimes = new long[requests.size()];
+		int cellFound = 0;
+		int hierarchicalFound = 0;
+		long cellPoints = 0;
+		long hierarchicalPoints = 0;
+		for (int i = 0; i < requests.size(); i++) {
+			final int[] r = requests.get(i);
+
+			long start = System.nanoTime();
+			List<AbstractNodeLoc> path = cellPathFinding.findPath(r[0], r[1], r[2], r[3], r[4], r[5], r[6], r[7] == 1);
+			cellTimes[i] = System.nanoTime() - start;
+			if (path != null) {
+				cellFound++;
+				cellPoints += path.size();
+			}
+
+			start = System.nanoTime();
+			path = search(r[0], r[1], r[2], r[3], r[4], r[5], r[6], r[7] == 1);
+			hierarchicalTimes[i] = System.nanoTime() - start;
+			if (path != null) {
+				hierarchicalFound++;
+				hierarchicalPoints += path.size();
+			}
+		}
+
+		return new String[]{
+				"Benchmark of " + requests.size() + " recorded path requests",
+				formatBenchmark("Cell", cellTimes, cellFound, cellPoints),
+				formatBenchmark("Hierarchical", hierarchicalTimes, hierarchicalFound, hierarchicalPoints)};
+	}
+
+	private static String formatBenchmark(String name, long[] times, int found, long points) {
+		long total = 0;
+		for (long time : times) {
+			total += time;
+		}
+		Arrays.sort(times);
+		return name + ": found " + found + "/" + times.length + ", avg/p99(ms): " +
+				String.format("%1.2f", total / 1e6 / times.length) + "/" + String.format("%1.2f", times[times.length * 99 / 100] / 1e6) +
+				", avg points: " + (found > 0 ? String.format("%1.1f", (double) points / found) : "-");
+	}
+
+	@Override
+	public String[] getStat() {
+		int regions = 0;
+		long nodes = 0;
+		long edges = 0;
+		for (int i = 0; i < graphs.length(); i++) {
+			final ClusterGraph graph = graphs.get(i);
+			if (graph != null) {
+				regions++;
+				nodes += graph.getNodeCount();
+				edges += graph.getEdgeCount();
+			}
+		}
+
+		final long searches = searchCount.sum();
+		final String[] cellStats = cellPathFinding.getStat();
+		final String[] result = Arrays.copyOf(new String[]{
+				"Cluster graphs: " + regions + " regions (" + pendingRegions.get() + " pending), " + nodes + " nodes, " + edges + " edges",
+				"Hierarchical searches: " + searches + " (fail " + searchFails.sum() + ", replanned for doors " + doorReplans.sum() + ")" +
+						(searches > 0 ? ", avg(ms)/iterations: " + String.format("%1.2f", searchTime.sum() / 1e6 / searches) + "/" +
+								searchIterations.sum() / searches : ""),
+				"Left to CellPathFinding: " + cellSearches.sum() + ", edges blocked by doors: " + blockedEdges.size()}, 3 + cellStats.length);
+		System.arraycopy(cellStats, 0, result, 3, cellStats.length);
+		return result;
+	}
+
+	private static class BuilderThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadId = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, "ClusterGraphBuilder-" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+
+	@SuppressWarnings("synthetic-access")
+	private static class SingletonHolder {
+		protected static final HierarchicalPathFinding instance = new HierarchicalPathFinding();
+	}
+}
@@ -43,6 +43,11 @@ public final class Calculator {
 	 */
 	private Func[] functions;
 
+	/**
+	 * True if none of the Funcs is conditional, see Func.isCacheable()
+	 */
+	private boolean cacheable = true;
+
 	/**
 	 * Constructor of Calculator (Init value : emptyFuncs).<BR><BR>
 	 */
@@ -55,6 +60,7 @@ public final class Calculator {
 	 */
 	public Calculator(Calculator c) {
 		functions = c.functions;
+		cacheable = c.cacheable;
 	}
 
 	/**
@@ -99,6 +105,25 @@ public final class Calculator {
 		return functions.length;
 	}
 
+	/**
+	 * Return true if the result of the Calculator doesn't depend on the target or skill it is run for.<BR><BR>
+	 */
+	public boolean isCacheable() {
+		return cacheable;
+	}
+
+	private void setFunctions(Func[] funcs) {
+		boolean cacheable = true;
+		for (Func func : funcs) {
+			if (!func.isCacheable()) {
+				cacheable = false;
+				break;
+			}
+		}
+		functions = funcs;
+		this.cacheable = cacheable;
+	}
+
 	/**
 	 * Add a Func to the Calculator.<BR><BR>
 	 */
@@ -119,7 +144,7 @@ public final class Calculator {
 			tmp[i + 1] = funcs[i];
 		}
 
-		functions = tmp;
+		setFunctions(tmp);
 	}
 
 	/**
@@ -144,9 +169,9 @@ public final class Calculator {
 		}
 
 		if (tmp.length == 0) {
-			functions = emptyFuncs;
+			setFunctions(emptyFuncs);
 		} else {
-			functions = tmp;
+			setFunctions(tmp);
 		}
 	}
 
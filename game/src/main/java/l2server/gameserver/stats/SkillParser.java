@@ -66,13 +66,22 @@ public final class SkillParser extends StatsParser {
 
 	private Map<Integer, Skill> skills = new HashMap<>();
 
+	// Level -> enchant route -> enchant levels
+	private Map<Integer, Map<Integer, Integer>> enchantRoutes;
+	// Enchant route -> base level, for the EnchantCostsTable
+	private Map<Integer, Integer> routeBaseLevels;
+	private int levels;
+	// Set of the skill being built on demand, see build(int, int, int)
+	private StatsSet buildSet;
+	private boolean tablesParsed;
+
 	public SkillParser(XmlNode node) {
 		super(node);
 	}
 
 	@Override
 	protected StatsSet getStatsSet() {
-		return sets[currentLevel];
+		return buildSet != null ? buildSet : sets[currentLevel];
 	}
 
 	protected String getTableValue(String name) {
@@ -189,10 +198,122 @@ public final class SkillParser extends StatsParser {
 		}
 	}
 
+	/**
+	 * Reads the levels and the enchant routes of the skill, without building anything.
+	 * Doesn't touch the EnchantCostsTable, so the skills can be indexed in parallel: see registerEnchantRoutes().
+	 */
+	public void index() {
+		levels = getNode().getInt("levels");
+		enchantRoutes = new HashMap<>();
+		routeBaseLevels = new LinkedHashMap<>();
+		for (XmlNode n : getNode().getChildren()) {
+			boolean enabled = n.getBool("enabled", true);
+			if (Config.isServer(Config.TENKAI)) {
+				enabled &= !n.getBool("isClassic", false);
+			}
+
+			if (n.getName().equalsIgnoreCase("enchantRoute") && enabled) {
+				int route = n.getInt("id");
+				String[] routeLevels = n.getString("level").split(",");
+				int enchantLevels = EnchantCostsTable.getInstance().getEnchantGroupDetails().size();
+				routeBaseLevels.putIfAbsent(route, Integer.parseInt(routeLevels[0]));
+				for (String routeLevel : routeLevels) {
+					enchantRoutes.computeIfAbsent(Integer.parseInt(routeLevel), k -> new HashMap<>()).put(route, enchantLevels);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Registers the enchant routes read by index() in the EnchantCostsTable. Called once per skill, in the order of the
+	 * skill files, since the first skill of an id gives its base level.
+	 */
+	public void registerEnchantRoutes() {
+		for (Map.Entry<Integer, Integer> route : routeBaseLevels.entrySet()) {
+			EnchantCostsTable.getInstance().addNewRouteForSkill(getId(), route.getValue(), route.getKey());
+		}
+	}
+
+	public int getLevels() {
+		return levels;
+	}
+
+	/**
+	 * @return the enchant routes of the given level with their number of enchant levels
+	 */
+	public Map<Integer, Integer> getEnchantRoutes(int level) {
+		Map<Integer, Integer> routes = enchantRoutes.get(level);
+		return routes != null ? routes : Collections.emptyMap();
+	}
+
+	public boolean exists(int level, int route, int enchantLevel) {
+		if (level < 1 || level > levels) {
+			return false;
+		}
+		if (route == 0) {
+			return true;
+		}
+
+		Integer enchantLevels = getEnchantRoutes(level).get(route);
+		return enchantLevels != null && enchantLevel >= 1 && enchantLevel <= enchantLevels;
+	}
+
+	/**
+	 * Builds a single level of the skill, with the same values parse() would give it.
+	 * The tables are parsed on the first call and shared by all the levels built afterwards.
+	 *
+	 * @return the skill, or null if the skill doesn't have that level or enchant
+	 */
+	public synchronized Skill build(int level, int route, int enchantLevel) {
+		if (!exists(level, route, enchantLevel)) {
+			return null;
+		}
+
+		if (!tablesParsed) {
+			for (XmlNode n : getNode().getChildren()) {
+				if (n.getName().equalsIgnoreCase("table")) {
+					parseTable(n);
+				}
+			}
+			tablesParsed = true;
+		}
+
+		StatsSet set = new StatsSet();
+		set.set("skill_id", getId());
+		set.set("level", level);
+		if (route > 0) {
+			set.set("enchantRouteId", route);
+			set.set("enchantLevel", enchantLevel);
+		}
+		set.set("name", getName());
+
+		currentLevel = level;
+		currentEnchantRoute = route;
+		currentEnchantLevel = enchantLevel;
+		buildSet = set;
+		try {
+			for (XmlNode n : getNode().getChildren()) {
+				if (n.getName().equalsIgnoreCase("set")) {
+					parseBeanSet(n, set);
+				}
+			}
+
+			Skill skill = set.getEnum("skillType", SkillType.class).makeSkill(set);
+			for (XmlNode n : getNode().getChildren()) {
+				if (n.getName().equalsIgnoreCase("for")) {
+					parseTemplate(n, skill);
+				}
+			}
+			return skill;
+		} finally {
+			buildSet = null;
+		}
+	}
+
 	@Override
 	public void parse() throws RuntimeException {
 		// Basic data
-		int levels = getNode().getInt("levels");
+		index();
 		sets = new StatsSet[levels];
 		for (int i = 0; i < levels; i++) {
 			sets[i] = new StatsSet();
@@ -206,37 +327,25 @@ public final class SkillParser extends StatsParser {
 		}
 
 		// Enchant routes
-		for (XmlNode n : getNode().getChildren()) {
-			boolean enabled = n.getBool("enabled", true);
-			if (Config.isServer(Config.TENKAI)) {
-				enabled &= !n.getBool("isClassic", false);
-			}
-
-			if (n.getName().equalsIgnoreCase("enchantRoute") && enabled) {
-				int route = n.getInt("id");
-				String[] routeLevels = n.getString("level").split(",");
-				int enchantLevels = EnchantCostsTable.getInstance().addNewRouteForSkill(getId(), Integer.parseInt(routeLevels[0]), route);
-				for (String routeLevel : routeLevels) {
-					int level = Integer.parseInt(routeLevel);
-					Map<Integer, StatsSet[]> levelEnchants = enchantSets.get(level);
-					if (levelEnchants == null) {
-						levelEnchants = new HashMap<>();
-						enchantSets.put(level, levelEnchants);
-					}
-
-					StatsSet[] enchSets = new StatsSet[enchantLevels];
-					for (int i = 0; i < enchantLevels; i++) {
-						enchSets[i] = new StatsSet();
-						enchSets[i].set("skill_id", getId());
-						enchSets[i].set("level", level);
-						enchSets[i].set("enchantRouteId", route);
-						enchSets[i].set("enchantLevel", i + 1);
-						enchSets[i].set("name", getName());
-					}
-
-					levelEnchants.put(route, enchSets);
+		for (Map.Entry<Integer, Map<Integer, Integer>> levelRoutes : enchantRoutes.entrySet()) {
+			int level = levelRoutes.getKey();
+			Map<Integer, StatsSet[]> levelEnchants = new HashMap<>();
+			for (Map.Entry<Integer, Integer> routeEntry : levelRoutes.getValue().entrySet()) {
+				int route = routeEntry.getKey();
+				int enchantLevels = routeEntry.getValue();
+				StatsSet[] enchSets = new StatsSet[enchantLevels];
+				for (int i = 0; i < enchantLevels; i++) {
+					enchSets[i] = new StatsSet();
+					enchSets[i].set("skill_id", getId());
+					enchSets[i].set("level", level);
+					enchSets[i].set("enchantRouteId", route);
+					enchSets[i].set("enchantLevel", i + 1);
+					enchSets[i].set("name", getName());
 				}
+
+				levelEnchants.put(route, enchSets);
 			}
+			enchantSets.put(level, levelEnchants);
 		}
 
 		// Tables
@@ -76,6 +76,15 @@ public abstract class Func {
 		return 0x100;
 	}
 
+	/**
+	 * Return true if the result of the Func only depends on the owner stats, level and equipment,
+	 * so CharStat can keep it until one of them changes. A conditional Func may depend on the
+	 * target, the skill or anything else and is never cached.<BR><BR>
+	 */
+	public boolean isCacheable() {
+		return cond == null;
+	}
+
 	/**
 	 * Run the mathematic function of the Func.<BR><BR>
 	 */
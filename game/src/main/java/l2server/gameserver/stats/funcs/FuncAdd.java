@@ -31,6 +31,11 @@ public class FuncAdd extends Func {
 		return 0x40;
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return super.isCacheable() && lambda.isConstant();
+	}
+
 	@Override
 	public void calc(Env env) {
 		if (cond == null || cond.test(env)) {
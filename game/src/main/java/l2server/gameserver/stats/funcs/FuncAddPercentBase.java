@@ -34,6 +34,11 @@ public class FuncAddPercentBase extends Func {
 		return 0x30;
 	}
 	
+	@Override
+	public boolean isCacheable() {
+		return super.isCacheable() && lambda.isConstant();
+	}
+	
 	@Override
 	public void calc(Env env) {
 		if (cond == null || cond.test(env)) {
@@ -36,6 +36,11 @@ public class FuncEnchant extends Func {
 		return 0x0c;
 	}
 	
+	@Override
+	public boolean isCacheable() {
+		return super.isCacheable() && lambda.isConstant();
+	}
+	
 	@Override
 	public void calc(Env env) {
 		if (cond != null && !cond.test(env)) {
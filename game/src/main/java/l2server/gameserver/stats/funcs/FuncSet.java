@@ -31,6 +31,11 @@ public class FuncSet extends Func {
 		return 0x08;
 	}
 	
+	@Override
+	public boolean isCacheable() {
+		return super.isCacheable() && lambda.isConstant();
+	}
+	
 	@Override
 	public void calc(Env env) {
 		if (cond == null || cond.test(env)) {
@@ -22,4 +22,11 @@ import l2server.gameserver.stats.Env;
  */
 public abstract class Lambda {
 	public abstract double calc(Env env);
+
+	/**
+	 * @return true if calc always returns the same value, whatever the Env
+	 */
+	public boolean isConstant() {
+		return false;
+	}
 }
@@ -32,4 +32,9 @@ public final class LambdaConst extends Lambda {
 	public double calc(Env env) {
 		return value;
 	}
+
+	@Override
+	public boolean isConstant() {
+		return true;
+	}
 }
@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.concurrent.atomic.LongAdder;
 
 public class KnownListUpdateTaskManager {
 	private static Logger log = LoggerFactory.getLogger(KnownListUpdateTaskManager.class.getName());
@@ -42,12 +43,26 @@ public class KnownListUpdateTaskManager {
 
 	private static final HashSet<WorldRegion> failedRegions = new HashSet<>(1);
 
+	// Churn of the event based updates, see ObjectKnownList.updateKnownObjects()
+	private final LongAdder eventUpdates = new LongAdder();
+	private final LongAdder eventAdds = new LongAdder();
+	private final LongAdder eventRemoves = new LongAdder();
+
+	// Churn of the last sweep, with event based updates it is what the events missed
+	private volatile int lastSweepAdds;
+	private volatile int lastSweepRemoves;
+	private volatile long lastSweepTime;
+
 	private KnownListUpdateTaskManager() {
 	}
 	
 	@Load(dependencies = World.class)
 	private void initialize() {
-		ThreadPoolManager.getInstance().scheduleAiAtFixedRate(new KnownListUpdate(), 1000, Config.KNOWNLIST_UPDATE_INTERVAL);
+		if (!Config.EVENT_BASED_KNOWNLIST) {
+			ThreadPoolManager.getInstance().scheduleAiAtFixedRate(new KnownListUpdate(), 1000, Config.KNOWNLIST_UPDATE_INTERVAL);
+		} else if (Config.KNOWNLIST_CHECK_INTERVAL > 0) {
+			ThreadPoolManager.getInstance().scheduleAiAtFixedRate(new KnownListCheck(), Config.KNOWNLIST_CHECK_INTERVAL, Config.KNOWNLIST_CHECK_INTERVAL);
+		}
 	}
 	
 	public static KnownListUpdateTaskManager getInstance() {
@@ -61,6 +76,8 @@ public class KnownListUpdateTaskManager {
 		@Override
 		public void run() {
 			try {
+				long start = System.currentTimeMillis();
+				int changes = 0;
 				boolean failed;
 				for (WorldRegion regions[] : World.getInstance().getAllWorldRegions()) {
 					for (WorldRegion r : regions) // go through all world regions
@@ -70,7 +87,7 @@ public class KnownListUpdateTaskManager {
 							failed = failedRegions.contains(r); // failed on last pass
 							if (r.isActive()) // and check only if the region is active
 							{
-								updateRegion(r, fullUpdateTimer == FULL_UPDATE_TIMER || failed, updatePass);
+								changes += updateRegion(r, fullUpdateTimer == FULL_UPDATE_TIMER || failed, updatePass);
 							}
 							if (failed) {
 								failedRegions.remove(r); // if all ok, remove
@@ -84,6 +101,12 @@ public class KnownListUpdateTaskManager {
 						}
 					}
 				}
+				if (updatePass) {
+					lastSweepRemoves = changes;
+				} else {
+					lastSweepAdds = changes;
+				}
+				lastSweepTime = System.currentTimeMillis() - start;
 				updatePass = !updatePass;
 
 				if (fullUpdateTimer > 0) {
@@ -97,7 +120,45 @@ public class KnownListUpdateTaskManager {
 		}
 	}
 
-	public void updateRegion(WorldRegion region, boolean fullUpdate, boolean forgetObjects) {
+	/**
+	 * Consistency check of the event based known lists: a full forget and add pass over the active regions,
+	 * catching what the cell changes could not see (objects not moving, asymmetric watch distances...).
+	 */
+	private class KnownListCheck implements Runnable {
+		@Override
+		public void run() {
+			try {
+				long start = System.currentTimeMillis();
+				int adds = 0;
+				int removes = 0;
+				for (WorldRegion regions[] : World.getInstance().getAllWorldRegions()) {
+					for (WorldRegion r : regions) {
+						if (!r.isActive()) {
+							continue;
+						}
+
+						try {
+							removes += updateRegion(r, true, true);
+							adds += updateRegion(r, true, false);
+						} catch (Exception e) {
+							log.warn("KnownListUpdateTaskManager: check failed for region " + r.getName() + ". " + e.getMessage(), e);
+						}
+					}
+				}
+				lastSweepAdds = adds;
+				lastSweepRemoves = removes;
+				lastSweepTime = System.currentTimeMillis() - start;
+			} catch (Exception e) {
+				log.warn("", e);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of known objects added, or removed if forgetObjects is set
+	 */
+	public int updateRegion(WorldRegion region, boolean fullUpdate, boolean forgetObjects) {
+		int changes = 0;
 		// synchronized (syncObject)
 		{
 			Collection<WorldObject> vObj = region.getVisibleObjects().values();
@@ -114,7 +175,9 @@ public class KnownListUpdateTaskManager {
 							object instanceof Attackable && ((Attackable) object).getEnemyClan() != null;
 
 					if (forgetObjects) {
+						int known = object.getKnownList().getKnownObjects().size();
 						object.getKnownList().forgetObjects(aggro || fullUpdate);
+						changes += Math.max(0, known - object.getKnownList().getKnownObjects().size());
 						continue;
 					}
 					for (WorldRegion regi : region.getSurroundingRegions()) {
@@ -123,8 +186,8 @@ public class KnownListUpdateTaskManager {
 							// synchronized (regi.getVisibleObjects())
 							{
 								for (WorldObject obj : inrObj) {
-									if (obj != object) {
-										object.getKnownList().addKnownObject(obj);
+									if (obj != object && object.getKnownList().addKnownObject(obj)) {
+										changes++;
 									}
 								}
 							}
@@ -134,8 +197,8 @@ public class KnownListUpdateTaskManager {
 								// synchronized (regi.getVisiblePlayable())
 								{
 									for (WorldObject obj : inrPls) {
-										if (obj != object) {
-											object.getKnownList().addKnownObject(obj);
+										if (obj != object && object.getKnownList().addKnownObject(obj)) {
+											changes++;
 										}
 									}
 								}
@@ -145,6 +208,27 @@ public class KnownListUpdateTaskManager {
 				}
 			}
 		}
+		return changes;
+	}
+
+	/**
+	 * Called after each event based update of a known list.
+	 */
+	public void onKnownListUpdate(int added, int removed) {
+		eventUpdates.increment();
+		if (added > 0) {
+			eventAdds.add(added);
+		}
+		if (removed > 0) {
+			eventRemoves.add(removed);
+		}
+	}
+
+	public String[] getStats() {
+		return new String[]{
+				"Known lists: " + (Config.EVENT_BASED_KNOWNLIST ? "event based" : "periodic sweep"),
+				" |- Cell change updates: " + eventUpdates.sum() + " (added: " + eventAdds.sum() + ", removed: " + eventRemoves.sum() + ")",
+				" |- Last sweep: added " + lastSweepAdds + ", removed " + lastSweepRemoves + " in " + lastSweepTime + " ms"};
 	}
 
 	@SuppressWarnings("synthetic-access")
@@ -62,6 +62,7 @@ public final class Broadcast {
 	 * <FONT COLOR=#FF0000><B> <U>Caution</U> : This method DOESN'T SEND Server->Client packet to this Creature (to do this use method toSelfAndKnownPlayers)</B></FONT><BR><BR>
 	 */
 	public static void toPlayersTargettingMyself(Creature character, L2GameServerPacket mov) {
+		mov.setBroadcast();
 		if (Config.DEBUG) {
 			log.debug("players to notify:" + character.getKnownList().getKnownPlayers().size() + " packet:" + mov.getType());
 		}
@@ -98,6 +99,7 @@ public final class Broadcast {
 	 * <BR>
 	 */
 	public static void toKnownPlayers(Creature character, L2GameServerPacket mov) {
+		mov.setBroadcast();
 		if (Config.DEBUG) {
 			log.debug("players to notify:" + character.getKnownList().getKnownPlayers().size() + " packet:" + mov.getType());
 		}
@@ -156,6 +158,8 @@ public final class Broadcast {
 			radius = 1500;
 		}
 
+		mov.setBroadcast();
+
 		Collection<Player> plrs = character.getKnownList().getKnownPlayers().values();
 		//synchronized (character.getKnownList().getKnownPlayers())
 		{
@@ -175,6 +179,7 @@ public final class Broadcast {
 	 * In order to inform other players of state modification on the Creature, server just need to go through knownPlayers to send Server->Client Packet<BR><BR>
 	 */
 	public static void toSelfAndKnownPlayers(Creature character, L2GameServerPacket mov) {
+		mov.setBroadcast();
 		if (character instanceof Player) {
 			character.sendPacket(mov);
 		}
@@ -188,6 +193,8 @@ public final class Broadcast {
 			radiusSq = 360000;
 		}
 
+		mov.setBroadcast();
+
 		if (character instanceof Player) {
 			character.sendPacket(mov);
 		}
@@ -212,6 +219,7 @@ public final class Broadcast {
 	 * <FONT COLOR=#FF0000><B> <U>Caution</U> : This method DOESN'T SEND Server->Client packet to this Creature (to do this use method toSelfAndKnownPlayers)</B></FONT><BR><BR>
 	 */
 	public static void toAllOnlinePlayers(L2GameServerPacket mov, int dimensionId) {
+		mov.setBroadcast();
 		if (Config.DEBUG) {
 			log.debug("Players to notify: " + World.getInstance().getAllPlayersCount() + " (with packet " + mov.getType() + ")");
 		}
@@ -243,6 +251,7 @@ public final class Broadcast {
 	}
 
 	public static void toPlayersInInstance(L2GameServerPacket mov, int instanceId) {
+		mov.setBroadcast();
 		Collection<Player> pls = World.getInstance().getAllPlayers().values();
 		//synchronized (character.getKnownList().getKnownPlayers())
 		{
@@ -0,0 +1,94 @@
+package l2server.gameserver
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+/**
+ * A cancel followed by the direct write of the same rows, as Quest.deleteQuestInDb does, racing the flush of the
+ * pending rows: the flushed rows must never land after the direct write.
+ */
+class DatabaseWriterTest {
+
+	private val key = "character_quests:1:Q00001"
+
+	/**
+	 * Logs the writes instead of running them. The first flush waits in its write until released.
+	 */
+	private inner class RecordingWriter(hold: Boolean) : DatabaseWriter(1) {
+		val log: MutableList<String> = Collections.synchronizedList(ArrayList())
+		val writing = CountDownLatch(1)
+		val release = CountDownLatch(if (hold) 1 else 0)
+
+		init {
+			write(1, key, DatabaseWriter.Rows().add("UPDATE character_quests SET value=? WHERE charId=? AND name=?", "1", 1, "Q00001"))
+		}
+
+		override fun write(entries: List<DatabaseWriter.Entry>) {
+			if (entries.isEmpty()) {
+				return
+			}
+			writing.countDown()
+			release.await()
+			entries.forEach { log.add("flushed " + it.key) }
+		}
+
+		fun cancelAndWriteDirectly(ownerCancel: Boolean) {
+			if (ownerCancel) {
+				cancel(1, "character_quests:")
+			} else {
+				cancel(key)
+			}
+			log.add("direct $key")
+		}
+	}
+
+	private fun testCancelDuringFlush(ownerFlush: Boolean, ownerCancel: Boolean) {
+		val writer = RecordingWriter(true)
+		val flusher = thread { if (ownerFlush) writer.flush(1) else writer.flushAll() }
+		assertTrue(writer.writing.await(5, TimeUnit.SECONDS))
+
+		val canceller = thread { writer.cancelAndWriteDirectly(ownerCancel) }
+		// the cancel must wait for the rows being written
+		canceller.join(200)
+		assertTrue(canceller.isAlive)
+
+		writer.release.countDown()
+		flusher.join()
+		canceller.join()
+		assertEquals(listOf("flushed $key", "direct $key"), writer.log)
+	}
+
+	@Test
+	fun testCancelDuringFlushAll() {
+		testCancelDuringFlush(false, false)
+	}
+
+	@Test
+	fun testCancelDuringOwnerFlush() {
+		testCancelDuringFlush(true, false)
+		testCancelDuringFlush(true, true)
+	}
+
+	@Test
+	fun testCancelRacingFlush() {
+		for (round in 0 until 2000) {
+			val writer = RecordingWriter(false)
+			val start = CountDownLatch(1)
+			val flusher = thread {
+				start.await()
+				if (round % 2 == 0) writer.flushAll() else writer.flush(1)
+			}
+			start.countDown()
+			writer.cancelAndWriteDirectly(false)
+			flusher.join()
+
+			// either cancelled before the flush took the rows, or flushed before the direct write
+			assertEquals("direct $key", writer.log.last())
+		}
+	}
+}
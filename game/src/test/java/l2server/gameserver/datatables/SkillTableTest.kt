@@ -1,6 +1,10 @@
 package l2server.gameserver.datatables
 
+import l2server.Config
 import l2server.gameserver.LoadTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertSame
 import org.junit.Test
 
 /**
@@ -13,4 +17,37 @@ class SkillTableTest : LoadTest() {
 		initializeServer()
 		SkillTable.getInstance().load()
 	}
+
+	@Test
+	fun testLazyLoad() {
+		initializeServer()
+		val eagerHeap = measureLoad(false)
+		val eager = SkillTable.getInstance().getInfo(4215, 1)
+		val eagerMaxLevel = SkillTable.getInstance().getMaxLevel(4215)
+
+		val lazyHeap = measureLoad(true)
+		try {
+			val lazy = SkillTable.getInstance().getInfo(4215, 1)
+			assertNotNull(lazy)
+			assertEquals(eager.name, lazy.name)
+			assertEquals(eager.skillType, lazy.skillType)
+			assertEquals(eagerMaxLevel, SkillTable.getInstance().getMaxLevel(4215))
+			// built once, then cached
+			assertSame(lazy, SkillTable.getInstance().getInfo(4215, 1))
+			// too high levels fall back to the max level, like on eager mode
+			assertSame(SkillTable.getInstance().getInfo(4215, eagerMaxLevel), SkillTable.getInstance().getInfo(4215, eagerMaxLevel + 1))
+		} finally {
+			Config.LAZY_SKILLS = false
+		}
+
+		log.info("Skill heap: eager " + eagerHeap / 1024 / 1024 + " MB, lazy " + lazyHeap / 1024 / 1024 + " MB")
+	}
+
+	private fun measureLoad(lazy: Boolean): Long {
+		Config.LAZY_SKILLS = lazy
+		SkillTable.getInstance().load()
+		val runtime = Runtime.getRuntime()
+		System.gc()
+		return runtime.totalMemory() - runtime.freeMemory()
+	}
 }
@@ -17,6 +17,9 @@ fun main(args: Array<String>) {
 			get("/") {
 				call.respondText("Ktor UP!")
 			}
+			get("/stats") {
+				call.respondText(LoginController.getInstance().stats.joinToString("\n"))
+			}
 		}
 	}
 	server.start(wait = true)
@@ -0,0 +1,135 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.loginserver;
+
+import l2server.Config;
+import l2server.loginserver.network.L2LoginClient;
+import l2server.loginserver.network.serverpackets.ServerList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the client authentications (password hashing and account queries) on their own bounded pool, instead of the
+ * general packet threads. When a game server restart sends every player back to the login server at once, the
+ * authentications beyond the queue size are refused right away with a server overloaded message, instead of piling
+ * up for minutes behind the others.
+ */
+public class LoginAuthenticator {
+	private static Logger log = LoggerFactory.getLogger(LoginAuthenticator.class.getName());
+
+	// Latencies kept to compute the percentiles
+	private static final int LATENCY_SAMPLES = 1024;
+	// Time the server list waits for the character counts of the game servers
+	private static final int SERVER_LIST_CHECKS = 10;
+	private static final long SERVER_LIST_CHECK_DELAY = 100;
+
+	private final ThreadPoolExecutor executor;
+	private final ScheduledExecutorService scheduler;
+
+	private final LongAdder authentications = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+	private final AtomicInteger latencyIndex = new AtomicInteger();
+
+	LoginAuthenticator() {
+		AtomicInteger threadId = new AtomicInteger();
+		ThreadFactory threadFactory = r -> {
+			Thread thread = new Thread(r, "Authenticator-" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		executor = new ThreadPoolExecutor(Config.LOGIN_AUTH_THREADS,
+				Config.LOGIN_AUTH_THREADS,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Config.LOGIN_AUTH_QUEUE_SIZE),
+				threadFactory);
+		scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+		log.info("Authenticating with " + Config.LOGIN_AUTH_THREADS + " threads, up to " + Config.LOGIN_AUTH_QUEUE_SIZE + " waiting");
+	}
+
+	/**
+	 * Queues an authentication.
+	 *
+	 * @return false if the queue is full, the client should be told to try again later
+	 */
+	public boolean submit(Runnable authentication) {
+		final long queueTime = System.nanoTime();
+		try {
+			executor.execute(() -> {
+				try {
+					authentication.run();
+				} catch (Exception e) {
+					log.warn("Authentication failed", e);
+				} finally {
+					authentications.increment();
+					final int index = latencyIndex.getAndIncrement() & LATENCY_SAMPLES - 1;
+					latencies.set(index, System.nanoTime() - queueTime);
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			return false;
+		}
+	}
+
+	/**
+	 * Sends the server list once the game servers replied with the characters of the account, or after a second.
+	 * The wait is scheduled, so it doesn't hold an authentication thread.
+	 */
+	public void sendServerList(L2LoginClient client) {
+		sendServerList(client, 0);
+	}
+
+	private void sendServerList(L2LoginClient client, int checks) {
+		if (client.getCharsOnServ() != null || checks >= SERVER_LIST_CHECKS) {
+			client.sendPacket(new ServerList(client));
+			return;
+		}
+
+		scheduler.schedule(() -> sendServerList(client, checks + 1), SERVER_LIST_CHECK_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	public String[] getStats() {
+		final int samples = (int) Math.min(authentications.sum(), LATENCY_SAMPLES);
+		final long[] sorted = new long[samples];
+		for (int i = 0; i < samples; i++) {
+			sorted[i] = latencies.get(i);
+		}
+		Arrays.sort(sorted);
+
+		return new String[]{
+				"Authentications: " + authentications.sum() + ", rejected due to overload: " + rejected.sum(),
+				"Authentications waiting/running: " + executor.getQueue().size() + "/" + executor.getActiveCount(),
+				"Authentication latency p50/p99 (ms): " + (samples > 0 ?
+						TimeUnit.NANOSECONDS.toMillis(sorted[samples / 2]) + "/" + TimeUnit.NANOSECONDS.toMillis(sorted[samples * 99 / 100]) : "-/-") +
+						" (last " + samples + ")"};
+	}
+}
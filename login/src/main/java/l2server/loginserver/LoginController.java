@@ -32,16 +32,20 @@ import javax.crypto.Cipher;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.GeneralSecurityException;
-import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
 import java.security.interfaces.RSAPrivateKey;
-import java.security.spec.RSAKeyGenParameterSpec;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class ...
@@ -68,12 +72,18 @@ public class LoginController {
 
 	private final Map<InetAddress, FailedLoginAttempt> hackProtection;
 
-	protected ScrambledKeyPair[] keyPairs;
+	private final LoginAuthenticator authenticator;
 
-	private final Thread purge;
+	// Accounts that logged in recently, and the account queries in progress
+	private final Map<String, AccountRow> accountCache = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<AccountRow>> accountLookups = new ConcurrentHashMap<>();
+	private final LongAdder accountQueries = new LongAdder();
+	private final LongAdder accountCacheHits = new LongAdder();
+	private final LongAdder accountLookupsShared = new LongAdder();
+
+	private final LoginKeyPool keyPool;
 
-	protected byte[][] blowfishKeys;
-	private static final int BLOWFISH_KEYS = 20;
+	private final Thread purge;
 
 	public static void load() throws GeneralSecurityException {
 		synchronized (LoginController.class) {
@@ -92,26 +102,12 @@ public class LoginController {
 	private LoginController() throws GeneralSecurityException {
 		log.info("Loading LoginController...");
 
-		hackProtection = new HashMap<>();
+		hackProtection = new ConcurrentHashMap<>();
+		authenticator = new LoginAuthenticator();
 
-		keyPairs = new ScrambledKeyPair[10];
+		keyPool = new LoginKeyPool();
 
-		KeyPairGenerator keygen = null;
-
-		keygen = KeyPairGenerator.getInstance("RSA");
-		RSAKeyGenParameterSpec spec = new RSAKeyGenParameterSpec(1024, RSAKeyGenParameterSpec.F4);
-		keygen.initialize(spec);
-
-		//generate the initial set of keys
-		for (int i = 0; i < 10; i++) {
-			keyPairs[i] = new ScrambledKeyPair(keygen.generateKeyPair());
-		}
-		log.info("Cached 10 KeyPairs for RSA communication");
-
-		testCipher((RSAPrivateKey) keyPairs[0].pair.getPrivate());
-
-		// Store keys for blowfish communication
-		generateBlowFishKeys();
+		testCipher((RSAPrivateKey) keyPool.getScrambledRSAKeyPair().pair.getPrivate());
 
 		purge = new PurgeThread();
 		purge.setDaemon(true);
@@ -131,22 +127,11 @@ public class LoginController {
 		rsaCipher.init(Cipher.DECRYPT_MODE, key);
 	}
 
-	private void generateBlowFishKeys() {
-		blowfishKeys = new byte[BLOWFISH_KEYS][16];
-
-		for (int i = 0; i < BLOWFISH_KEYS; i++) {
-			for (int j = 0; j < blowfishKeys[i].length; j++) {
-				blowfishKeys[i][j] = (byte) (Rnd.nextInt(255) + 1);
-			}
-		}
-		log.info("Stored " + blowfishKeys.length + " keys for Blowfish communication");
-	}
-
 	/**
-	 * @return Returns a random key
+	 * @return Returns a new key
 	 */
 	public byte[] getBlowfishKey() {
-		return blowfishKeys[(int) (Math.random() * BLOWFISH_KEYS)];
+		return keyPool.getBlowfishKey();
 	}
 
 	public SessionKey assignSessionKeyToClient(String account, L2LoginClient client) {
@@ -386,6 +371,7 @@ public class LoginController {
 					statement.setString(2, client.getAccount());
 					statement.executeUpdate();
 					statement.close();
+					invalidateAccount(client.getAccount());
 				} catch (Exception e) {
 					log.warn("Could not set lastServer: " + e.getMessage(), e);
 				} finally {
@@ -409,6 +395,7 @@ public class LoginController {
 			statement.setString(2, account);
 			statement.executeUpdate();
 			statement.close();
+			invalidateAccount(account);
 		} catch (Exception e) {
 			log.warn("Could not set accessLevel: " + e.getMessage(), e);
 		} finally {
@@ -498,7 +485,7 @@ public class LoginController {
 	 * @return a scrambled keypair
 	 */
 	public ScrambledKeyPair getScrambledRSAKeyPair() {
-		return keyPairs[0];
+		return keyPool.getScrambledRSAKeyPair();
 	}
 
 	/**
@@ -518,36 +505,19 @@ public class LoginController {
 		Connection con = null;
 		try {
 			byte[] hash = PasswordCrypt.INSTANCE.encryptPassword(user, password);
-			byte[] expected = null;
-			int access = 0;
-			int lastServer = 1;
-			String userIP = null;
-
-			con = DatabasePool.getInstance().getConnection();
-			PreparedStatement statement = con.prepareStatement("SELECT password, accessLevel, lastServer, userIP FROM accounts WHERE login=?");
-			statement.setString(1, user);
-			ResultSet rset = statement.executeQuery();
-			if (rset.next()) {
-				expected = Base64.decode(rset.getString("password"));
-				access = rset.getInt("accessLevel");
-				lastServer = rset.getInt("lastServer");
-				userIP = rset.getString("userIP");
-				if (lastServer <= 0) {
-					lastServer = 1; // minServerId is 1 in Interlude
-				}
-				if (Config.DEBUG) {
-					log.debug("account exists");
-				}
+			AccountRow account = getAccount(user);
+			if (account != null && Config.DEBUG) {
+				log.debug("account exists");
 			}
-			rset.close();
-			statement.close();
 
 			// if account doesn't exist
-			if (expected == null) {
+			if (account == null) {
 				if (Config.AUTO_CREATE_ACCOUNTS)
 				{
 					if (user.length() >= 2 && user.length() <= 14) {
-						statement = con.prepareStatement("INSERT INTO accounts (login,password,lastactive,accessLevel,lastIP) VALUES(?,?,?,?,?)");
+						con = DatabasePool.getInstance().getConnection();
+						PreparedStatement statement =
+								con.prepareStatement("INSERT INTO accounts (login,password,lastactive,accessLevel,lastIP) VALUES(?,?,?,?,?)");
 						statement.setString(1, user);
 						statement.setString(2, Base64.encodeBytes(hash));
 						statement.setLong(3, System.currentTimeMillis());
@@ -594,15 +564,16 @@ public class LoginController {
 				}
 			} else {
 				// is this account banned?
-				if (access < 0) {
+				if (account.accessLevel < 0) {
 					if (Config.LOG_LOGIN_CONTROLLER) {
 						loginLog.info("'" + user + "' " + address.getHostAddress() + " - ERR : AccountBanned", "loginLog");
 					}
 
-					client.setAccessLevel(access);
+					client.setAccessLevel(account.accessLevel);
 					return false;
 				}
 				// Check IP
+				String userIP = account.userIP;
 				if (userIP != null) {
 					if (!isValidIPAddress(userIP)) {
 						// Address is not valid so it's a domain name, get IP
@@ -622,29 +593,15 @@ public class LoginController {
 					}
 				}
 				// check password hash
-				ok = true;
-				for (int i = 0; i < expected.length; i++) {
-					if (hash[i] != expected[i]) {
-						ok = false;
-						break;
-					}
-				}
+				ok = MessageDigest.isEqual(hash, account.password);
 			}
 
 			if (ok) {
-				client.setAccessLevel(access);
-				client.setLastServer(lastServer);
-				PreparedStatement statement2 = con.prepareStatement("SELECT lastIP, lastIP2 FROM accounts WHERE login=?");
-				statement2.setString(1, user);
-				rset = statement2.executeQuery();
-				String lastIP = null;
-				String lastIP2 = null;
-				if (rset.next()) {
-					lastIP = rset.getString("lastIP");
-					lastIP2 = rset.getString("lastIP2");
-				}
-				rset.close();
-				statement2.close();
+				client.setAccessLevel(account.accessLevel);
+				client.setLastServer(account.lastServer);
+				String lastIP = account.lastIP;
+				String lastIP2 = account.lastIP2;
+				con = DatabasePool.getInstance().getConnection();
 				if (lastIP == null || !lastIP.equals(address.getHostAddress())) {
 					PreparedStatement statement3 =
 							con.prepareStatement("UPDATE accounts SET lastactive=?, lastIP=?, lastIP2=?, lastIP3=? WHERE login=?");
@@ -655,6 +612,8 @@ public class LoginController {
 					statement3.setString(5, user);
 					statement3.execute();
 					statement3.close();
+					lastIP2 = lastIP;
+					lastIP = address.getHostAddress();
 				} else {
 					PreparedStatement statement3 = con.prepareStatement("UPDATE accounts SET lastactive=? WHERE login=?");
 					statement3.setLong(1, System.currentTimeMillis());
@@ -662,6 +621,8 @@ public class LoginController {
 					statement3.execute();
 					statement3.close();
 				}
+
+				cacheAccount(user, new AccountRow(account.password, account.accessLevel, account.lastServer, account.userIP, lastIP, lastIP2));
 			}
 		} catch (Exception e) {
 			log.warn("Could not check password(" + user + "):" + e.getMessage(), e);
@@ -700,6 +661,108 @@ public class LoginController {
 		return ok;
 	}
 
+	/**
+	 * Returns the account row used to authenticate, or null if the account doesn't exist.<br>
+	 * Accounts that logged in recently are answered from memory, and when several logins of the same account arrive
+	 * together (a client retrying, or a bot), a single query is done and its result shared among them.
+	 */
+	private AccountRow getAccount(String user) throws SQLException {
+		AccountRow account = accountCache.get(user);
+		if (account != null) {
+			if (account.expireTime > System.currentTimeMillis()) {
+				accountCacheHits.increment();
+				return account;
+			}
+			accountCache.remove(user, account);
+		}
+
+		CompletableFuture<AccountRow> lookup = new CompletableFuture<>();
+		CompletableFuture<AccountRow> pending = accountLookups.putIfAbsent(user, lookup);
+		if (pending != null) {
+			accountLookupsShared.increment();
+			try {
+				return pending.get();
+			} catch (ExecutionException e) {
+				throw new SQLException("Could not load account " + user, e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while loading account " + user, e);
+			}
+		}
+
+		try {
+			account = loadAccount(user);
+			lookup.complete(account);
+			return account;
+		} catch (SQLException | RuntimeException e) {
+			lookup.completeExceptionally(e);
+			throw e;
+		} finally {
+			accountLookups.remove(user, lookup);
+		}
+	}
+
+	private AccountRow loadAccount(String user) throws SQLException {
+		accountQueries.increment();
+		Connection con = null;
+		try {
+			con = DatabasePool.getInstance().getConnection();
+			PreparedStatement statement =
+					con.prepareStatement("SELECT password, accessLevel, lastServer, userIP, lastIP, lastIP2 FROM accounts WHERE login=?");
+			statement.setString(1, user);
+			ResultSet rset = statement.executeQuery();
+			AccountRow account = null;
+			if (rset.next()) {
+				int lastServer = rset.getInt("lastServer");
+				if (lastServer <= 0) {
+					lastServer = 1; // minServerId is 1 in Interlude
+				}
+				account = new AccountRow(Base64.decode(rset.getString("password")),
+						rset.getInt("accessLevel"),
+						lastServer,
+						rset.getString("userIP"),
+						rset.getString("lastIP"),
+						rset.getString("lastIP2"));
+			}
+			rset.close();
+			statement.close();
+			return account;
+		} finally {
+			DatabasePool.close(con);
+		}
+	}
+
+	private void cacheAccount(String user, AccountRow account) {
+		if (Config.LOGIN_ACCOUNT_CACHE_TIME > 0) {
+			accountCache.put(user, account);
+		}
+	}
+
+	/**
+	 * Drops the cached row of an account, called whenever the login server changes it.
+	 */
+	private void invalidateAccount(String account) {
+		accountCache.remove(account);
+	}
+
+	public boolean submitAuthentication(Runnable authentication) {
+		return authenticator.submit(authentication);
+	}
+
+	public void sendServerList(L2LoginClient client) {
+		authenticator.sendServerList(client);
+	}
+
+	public String[] getStats() {
+		String[] authStats = authenticator.getStats();
+		String[] keyStats = keyPool.getStats();
+		String[] stats = Arrays.copyOf(authStats, authStats.length + 1 + keyStats.length);
+		stats[authStats.length] = "Account queries: " + accountQueries.sum() + ", cache hits: " + accountCacheHits.sum() + ", shared lookups: " +
+				accountLookupsShared.sum() + ", cached: " + accountCache.size();
+		System.arraycopy(keyStats, 0, stats, authStats.length + 1, keyStats.length);
+		return stats;
+	}
+
 	/**
 	 * user name is not case sensitive any more
 	 *
@@ -777,6 +840,7 @@ public class LoginController {
 					statement3.execute();
 					statement3.close();
 				}
+				invalidateAccount(login);
 			}
 		} catch (Exception e) {
 			log.warn("Could not check password(" + sessionKey + "):" + e.getMessage(), e);
@@ -864,6 +928,26 @@ public class LoginController {
 		return true;
 	}
 
+	private static final class AccountRow {
+		private final byte[] password;
+		private final int accessLevel;
+		private final int lastServer;
+		private final String userIP;
+		private final String lastIP;
+		private final String lastIP2;
+		private final long expireTime;
+
+		private AccountRow(byte[] password, int accessLevel, int lastServer, String userIP, String lastIP, String lastIP2) {
+			this.password = password;
+			this.accessLevel = accessLevel;
+			this.lastServer = lastServer;
+			this.userIP = userIP;
+			this.lastIP = lastIP;
+			this.lastIP2 = lastIP2;
+			expireTime = System.currentTimeMillis() + Config.LOGIN_ACCOUNT_CACHE_TIME;
+		}
+	}
+
 	class FailedLoginAttempt {
 		//private InetAddress ipAddress;
 		private int count;
@@ -0,0 +1,140 @@
+/*
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package l2server.loginserver;
+
+import l2server.Config;
+import l2server.util.Rnd;
+import l2server.util.crypt.ScrambledKeyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Key material handed to the login clients.<br>
+ * <br>
+ * The RSA pairs are kept in a ring, generated in parallel on startup. A low priority thread then replaces one pair
+ * at a time, so every pair is renewed within the configured lifetime while the clients keep taking pairs from the
+ * ring without ever waiting for a generation. Blowfish keys are cheap and generated for every client.
+ */
+public class LoginKeyPool {
+	private static Logger log = LoggerFactory.getLogger(LoginKeyPool.class.getName());
+
+	private static final int BLOWFISH_KEY_SIZE = 16;
+	// The shortest delay between two generations of the refill thread
+	private static final long MIN_ROTATION_DELAY = 100;
+
+	private final AtomicReferenceArray<ScrambledKeyPair> keyPairs;
+	private final AtomicInteger nextKeyPair = new AtomicInteger();
+	private final ScheduledExecutorService refiller;
+	private final long rotationDelay;
+	// Only used by the refill thread
+	private int rotationIndex;
+
+	private final ThreadLocal<KeyPairGenerator> generators = ThreadLocal.withInitial(() -> {
+		try {
+			return createGenerator();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	private final long startTime = System.currentTimeMillis();
+	private final LongAdder generated = new LongAdder();
+	private final LongAdder generationTime = new LongAdder();
+	private final LongAdder handedOut = new LongAdder();
+
+	LoginKeyPool() throws GeneralSecurityException {
+		// fails right away if RSA isn't available
+		createGenerator();
+
+		final int size = Math.max(Config.LOGIN_RSA_KEY_POOL_SIZE, 1);
+		final long start = System.currentTimeMillis();
+		keyPairs = new AtomicReferenceArray<>(IntStream.range(0, size).parallel().mapToObj(i -> generate()).toArray(ScrambledKeyPair[]::new));
+		log.info("Cached " + size + " KeyPairs for RSA communication in " + (System.currentTimeMillis() - start) + "ms");
+
+		rotationDelay = Math.max(Config.LOGIN_RSA_KEY_LIFETIME / size, MIN_ROTATION_DELAY);
+		refiller = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "RSAKeyRefill");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		if (Config.LOGIN_RSA_KEY_LIFETIME > 0) {
+			refiller.scheduleWithFixedDelay(this::rotate, rotationDelay, rotationDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static KeyPairGenerator createGenerator() throws GeneralSecurityException {
+		KeyPairGenerator keygen = KeyPairGenerator.getInstance("RSA");
+		keygen.initialize(new RSAKeyGenParameterSpec(1024, RSAKeyGenParameterSpec.F4));
+		return keygen;
+	}
+
+	private ScrambledKeyPair generate() {
+		final long start = System.nanoTime();
+		final ScrambledKeyPair pair = new ScrambledKeyPair(generators.get().generateKeyPair());
+		generationTime.add(System.nanoTime() - start);
+		generated.increment();
+		return pair;
+	}
+
+	/**
+	 * Replaces the oldest pair of the ring.
+	 */
+	private void rotate() {
+		try {
+			keyPairs.set(rotationIndex, generate());
+			rotationIndex = (rotationIndex + 1) % keyPairs.length();
+		} catch (Exception e) {
+			// a scheduled task that throws is never run again
+			log.warn("Could not generate an RSA key pair", e);
+		}
+	}
+
+	public ScrambledKeyPair getScrambledRSAKeyPair() {
+		handedOut.increment();
+		return keyPairs.get((nextKeyPair.getAndIncrement() & Integer.MAX_VALUE) % keyPairs.length());
+	}
+
+	public byte[] getBlowfishKey() {
+		byte[] key = new byte[BLOWFISH_KEY_SIZE];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = (byte) (Rnd.nextInt(255) + 1);
+		}
+		return key;
+	}
+
+	public String[] getStats() {
+		final long count = generated.sum();
+		final long minutes = Math.max((System.currentTimeMillis() - startTime) / 60000, 1);
+		return new String[]{
+				"RSA key pool: " + keyPairs.length() + " pairs, one renewed every " + rotationDelay + "ms" +
+						(Config.LOGIN_RSA_KEY_LIFETIME > 0 ? "" : " (rotation disabled)"),
+				"RSA pairs generated: " + count + " (" + count / minutes + "/min), average generation time (ms): " +
+						(count > 0 ? TimeUnit.NANOSECONDS.toMillis(generationTime.sum() / count) : "-"),
+				"RSA pairs handed out: " + handedOut.sum() + " (" + (count > 0 ? handedOut.sum() / count : 0) + " clients per pair)"};
+	}
+}
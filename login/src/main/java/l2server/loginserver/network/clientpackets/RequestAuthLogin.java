@@ -22,7 +22,6 @@ import l2server.loginserver.network.L2LoginClient;
 import l2server.loginserver.network.serverpackets.AccountKicked;
 import l2server.loginserver.network.serverpackets.LoginFail;
 import l2server.loginserver.network.serverpackets.LoginOk;
-import l2server.loginserver.network.serverpackets.ServerList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -88,6 +87,14 @@ public class RequestAuthLogin extends L2LoginClientPacket {
 		ncotp |= decrypted[0x7e] << 16;
 		ncotp |= decrypted[0x7f] << 24;
 		
+		// the password hashing and account queries don't hold the packet threads
+		if (!LoginController.getInstance().submitAuthentication(this::authenticate)) {
+			client.close(LoginFail.LoginFailReason.REASON_SERVER_OVERLOADED);
+		}
+	}
+
+	private void authenticate() {
+		L2LoginClient client = getClient();
 		LoginController lc = LoginController.getInstance();
 		/*try
 		{*/
@@ -99,18 +106,9 @@ public class RequestAuthLogin extends L2LoginClientPacket {
 				client.setState(L2LoginClient.LoginClientState.AUTHED_LOGIN);
 				client.setSessionKey(lc.assignSessionKeyToClient(user, client));
 				if (Config.SHOW_LICENCE) {
-					client.sendPacket(new LoginOk(getClient().getSessionKey()));
+					client.sendPacket(new LoginOk(client.getSessionKey()));
 				} else {
-					int time = 0;
-					while (getClient().getCharsOnServ() == null && time < 10) {
-						try {
-							Thread.sleep(100);
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
-						time++;
-					}
-					getClient().sendPacket(new ServerList(getClient()));
+					lc.sendServerList(client);
 				}
 				break;
 			case INVALID_PASSWORD:
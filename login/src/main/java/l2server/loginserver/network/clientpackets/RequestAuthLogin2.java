@@ -25,7 +25,6 @@ import l2server.loginserver.network.serverpackets.AccountKicked;
 import l2server.loginserver.network.serverpackets.AccountKicked.AccountKickedReason;
 import l2server.loginserver.network.serverpackets.LoginFail.LoginFailReason;
 import l2server.loginserver.network.serverpackets.LoginOk;
-import l2server.loginserver.network.serverpackets.ServerList;
 
 /**
  * @author Pere
@@ -68,6 +67,13 @@ public class RequestAuthLogin2 extends L2LoginClientPacket {
 	
 	@Override
 	public void run() {
+		// the account queries don't hold the packet threads
+		if (!LoginController.getInstance().submitAuthentication(this::authenticate)) {
+			getClient().close(LoginFailReason.REASON_SERVER_OVERLOADED);
+		}
+	}
+
+	private void authenticate() {
 		L2LoginClient client = getClient();
 		LoginController lc = LoginController.getInstance();
 		/*try
@@ -85,18 +91,9 @@ public class RequestAuthLogin2 extends L2LoginClientPacket {
 				client.setState(LoginClientState.AUTHED_LOGIN);
 				client.setSessionKey(lc.assignSessionKeyToClient(user, client));
 				if (Config.SHOW_LICENCE) {
-					client.sendPacket(new LoginOk(getClient().getSessionKey()));
+					client.sendPacket(new LoginOk(client.getSessionKey()));
 				} else {
-					int time = 0;
-					while (getClient().getCharsOnServ() == null && time < 10) {
-						try {
-							Thread.sleep(100);
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
-						time++;
-					}
-					getClient().sendPacket(new ServerList(getClient()));
+					lc.sendServerList(client);
 				}
 				break;
 			case INVALID_PASSWORD: